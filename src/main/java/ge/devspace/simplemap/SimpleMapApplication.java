@@ -2,8 +2,10 @@ package ge.devspace.simplemap;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class SimpleMapApplication {
     public static void main(String[] args) {
         SpringApplication.run(SimpleMapApplication.class, args);
@@ -1,25 +1,65 @@
 package ge.devspace.simplemap.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ge.devspace.simplemap.entity.GeoServerOutboxEntry;
 import ge.devspace.simplemap.entity.SimpleFactory;
 import ge.devspace.simplemap.entity.SimpleRoad;
 import ge.devspace.simplemap.entity.SimpleForest;
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoJsonLine;
+import ge.devspace.simplemap.geo.GeoJsonPolygon;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.LevelOfDetail;
+import ge.devspace.simplemap.geo.TileMath;
 import ge.devspace.simplemap.repository.SimpleFactoryRepository;
 import ge.devspace.simplemap.repository.SimpleRoadRepository;
 import ge.devspace.simplemap.repository.SimpleForestRepository;
-import ge.devspace.simplemap.service.GeoServerService;
+import ge.devspace.simplemap.service.FactoryClusterService;
+import ge.devspace.simplemap.service.FeatureChangedEvent;
+import ge.devspace.simplemap.service.GeoJsonLayerService;
+import ge.devspace.simplemap.service.BulkImportService;
+import ge.devspace.simplemap.service.EntityCacheService;
+import ge.devspace.simplemap.service.GeoServerHealthMonitor;
+import ge.devspace.simplemap.service.GeoServerReconciliationService;
+import ge.devspace.simplemap.service.GeoServerSyncService;
+import ge.devspace.simplemap.service.LayerExportService;
+import ge.devspace.simplemap.service.LayerPage;
+import ge.devspace.simplemap.service.LayerResponseCache;
+import ge.devspace.simplemap.service.LayerVersionService;
+import ge.devspace.simplemap.service.SnapshotService;
+import ge.devspace.simplemap.service.SpatialIndexService;
+import ge.devspace.simplemap.service.VectorTileService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/geo")
 public class SimpleGeoController {
 
+    private static final int VIEWPORT_PADDING_PIXELS = 16;
+    private static final MediaType VECTOR_TILE = MediaType.parseMediaType("application/vnd.mapbox-vector-tile");
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType FLATGEOBUF = MediaType.parseMediaType("application/vnd.flatgeobuf");
+
     @Autowired
     private SimpleRoadRepository roadRepository;
     
@@ -30,121 +70,407 @@ public class SimpleGeoController {
     private SimpleForestRepository forestRepository;
     
     @Autowired
-    private GeoServerService geoServerService;
+    private GeoServerSyncService geoServerSyncService;
+
+    @Autowired
+    private GeoServerHealthMonitor geoServerHealthMonitor;
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private LayerExportService layerExportService;
+
+    @Autowired
+    private EntityCacheService entityCacheService;
+
+    @Autowired
+    private GeoServerReconciliationService geoServerReconciliationService;
+
+    @Autowired
+    private GeoJsonLayerService geoJsonLayerService;
 
+    @Autowired
+    private SpatialIndexService spatialIndexService;
+
+    @Autowired
+    private VectorTileService vectorTileService;
+
+    @Autowired
+    private LayerVersionService layerVersionService;
+
+    @Autowired
+    private FactoryClusterService factoryClusterService;
+
+    @Autowired
+    private LayerResponseCache layerResponseCache;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * The layer endpoints page through a layer in id order with {@code after=<id>&limit=}
+     * (a full page ends with a {@code nextAfter} cursor), and stream one feature per line
+     * as NDJSON when asked to.
+     * <p>
+     * As for forests, {@code zoom} or {@code tolerance} selects a simplified level of the road lines.
+     */
     @GetMapping("/roads")
-    public Map<String, Object> getRoads() {
-        List<SimpleRoad> roads = roadRepository.findAll();
-        
-        Map<String, Object> geoJson = new HashMap<>();
-        geoJson.put("type", "FeatureCollection");
-        
-        List<Map<String, Object>> features = roads.stream().map(road -> {
-            Map<String, Object> feature = new HashMap<>();
-            feature.put("type", "Feature");
-            
-            Map<String, Object> properties = new HashMap<>();
-            properties.put("id", road.getId());
-            properties.put("name", road.getName());
-            properties.put("type", road.getType());
-            properties.put("length", road.getLength());
-            properties.put("material", road.getMaterial());
-            feature.put("properties", properties);
-            
-            Map<String, Object> geometry = new HashMap<>();
-            geometry.put("type", "LineString");
-            double[][] coords = {{road.getStartLng(), road.getStartLat()}, {road.getEndLng(), road.getEndLat()}};
-            geometry.put("coordinates", coords);
-            feature.put("geometry", geometry);
-            
-            return feature;
-        }).collect(Collectors.toList());
-        
-        geoJson.put("features", features);
-        return geoJson;
+    public ResponseEntity<StreamingResponseBody> getRoads(@RequestParam(required = false) String bbox,
+                                                          @RequestParam(required = false) Integer zoom,
+                                                          @RequestParam(required = false) Double tolerance,
+                                                          @RequestParam(required = false) Long after,
+                                                          @RequestParam(required = false) Integer limit,
+                                                          @RequestParam(required = false) String format,
+                                                          WebRequest request) throws IOException {
+        BoundingBox viewport;
+        LayerPage page;
+        try {
+            viewport = bbox == null ? null : viewport(bbox, zoom);
+            page = LayerPage.of(after, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        int level = level(zoom, tolerance);
+        boolean ndjson = wantsNdjson(format, request);
+        if (viewport == null && page == null && !ndjson && layerResponseCache.isEnabled()) {
+            return cachedLayer(GeoLayer.ROADS, level, level == LevelOfDetail.FULL ? null : "all-lod" + level, request);
+        }
+        String etag = layerVersionService.etag(GeoLayer.ROADS,
+            variant(viewport, page, ndjson, level == LevelOfDetail.FULL ? null : "lod" + level));
+        // Sets the ETag header, and answers 304 when If-None-Match already matches it
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+            .contentType(ndjson ? NDJSON : MediaType.APPLICATION_JSON)
+            .cacheControl(CacheControl.noCache())
+            .body(out -> geoJsonLayerService.writeRoads(viewport, level, page, ndjson, out));
     }
 
     @GetMapping("/factories")
-    public Map<String, Object> getFactories() {
-        List<SimpleFactory> factories = factoryRepository.findAll();
-        
-        Map<String, Object> geoJson = new HashMap<>();
-        geoJson.put("type", "FeatureCollection");
-        
-        List<Map<String, Object>> features = factories.stream().map(factory -> {
-            Map<String, Object> feature = new HashMap<>();
-            feature.put("type", "Feature");
-            
-            Map<String, Object> properties = new HashMap<>();
-            properties.put("id", factory.getId());
-            properties.put("name", factory.getName());
-            properties.put("type", factory.getType());
-            properties.put("capacity", factory.getCapacity());
-            properties.put("status", factory.getStatus());
-            feature.put("properties", properties);
-            
-            Map<String, Object> geometry = new HashMap<>();
-            geometry.put("type", "Point");
-            double[] coords = {factory.getLongitude(), factory.getLatitude()};
-            geometry.put("coordinates", coords);
-            feature.put("geometry", geometry);
-            
-            return feature;
-        }).collect(Collectors.toList());
-        
-        geoJson.put("features", features);
-        return geoJson;
+    public ResponseEntity<StreamingResponseBody> getFactories(@RequestParam(required = false) String bbox,
+                                                              @RequestParam(required = false) Integer zoom,
+                                                              @RequestParam(required = false) Long after,
+                                                              @RequestParam(required = false) Integer limit,
+                                                              @RequestParam(required = false) String format,
+                                                              WebRequest request) throws IOException {
+        BoundingBox viewport;
+        LayerPage page;
+        try {
+            viewport = bbox == null ? null : viewport(bbox, zoom);
+            page = LayerPage.of(after, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean ndjson = wantsNdjson(format, request);
+        if (viewport == null && page == null && !ndjson && layerResponseCache.isEnabled()) {
+            return cachedLayer(GeoLayer.FACTORIES, LevelOfDetail.FULL, null, request);
+        }
+        String etag = layerVersionService.etag(GeoLayer.FACTORIES, variant(viewport, page, ndjson, null));
+        // Sets the ETag header, and answers 304 when If-None-Match already matches it
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+            .contentType(ndjson ? NDJSON : MediaType.APPLICATION_JSON)
+            .cacheControl(CacheControl.noCache())
+            .body(out -> geoJsonLayerService.writeFactories(viewport, page, ndjson, out));
+    }
+
+    @GetMapping("/factories/clusters")
+    public ResponseEntity<Map<String, Object>> getFactoryClusters(@RequestParam String bbox, @RequestParam int zoom) {
+        BoundingBox viewport;
+        try {
+            viewport = BoundingBox.parse(bbox);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(factoryClusterService.getClusters(viewport, zoom));
     }
 
+    /**
+     * {@code zoom} (or an explicit {@code tolerance} in degrees) selects a simplified
+     * level of detail for the polygons; without either every vertex is returned.
+     */
     @GetMapping("/forests")
-    public Map<String, Object> getForests() {
-        List<SimpleForest> forests = forestRepository.findAll();
-        
-        Map<String, Object> geoJson = new HashMap<>();
-        geoJson.put("type", "FeatureCollection");
-        
-        List<Map<String, Object>> features = forests.stream().map(forest -> {
-            Map<String, Object> feature = new HashMap<>();
-            feature.put("type", "Feature");
-            
-            Map<String, Object> properties = new HashMap<>();
-            properties.put("id", forest.getId());
-            properties.put("name", forest.getName());
-            properties.put("type", forest.getType());
-            properties.put("area", forest.getArea());
-            properties.put("density", forest.getDensity());
-            properties.put("status", forest.getStatus());
-            feature.put("properties", properties);
-            
-            Map<String, Object> geometry = new HashMap<>();
-            if (forest.getCoordinates() != null && !forest.getCoordinates().isEmpty()) {
-                try {
-                    // Parse coordinates JSON string
-                    com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-                    Object coords = mapper.readValue(forest.getCoordinates(), Object.class);
-                    geometry.put("type", "Polygon");
-                    geometry.put("coordinates", coords);
-                } catch (Exception e) {
-                    // Fallback to point if polygon parsing fails
-                    geometry.put("type", "Point");
-                    double[] coords = {forest.getCenterLng(), forest.getCenterLat()};
-                    geometry.put("coordinates", coords);
+    public ResponseEntity<StreamingResponseBody> getForests(@RequestParam(required = false) String bbox,
+                                                            @RequestParam(required = false) Integer zoom,
+                                                            @RequestParam(required = false) Double tolerance,
+                                                            @RequestParam(required = false) Long after,
+                                                            @RequestParam(required = false) Integer limit,
+                                                            @RequestParam(required = false) String format,
+                                                            WebRequest request) throws IOException {
+        BoundingBox viewport;
+        LayerPage page;
+        try {
+            viewport = bbox == null ? null : viewport(bbox, zoom);
+            page = LayerPage.of(after, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        int level = level(zoom, tolerance);
+        boolean ndjson = wantsNdjson(format, request);
+        if (viewport == null && page == null && !ndjson && layerResponseCache.isEnabled()) {
+            return cachedLayer(GeoLayer.FORESTS, level, "all-lod" + level, request);
+        }
+        String etag = layerVersionService.etag(GeoLayer.FORESTS, variant(viewport, page, ndjson, "lod" + level));
+        // Sets the ETag header, and answers 304 when If-None-Match already matches it
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+            .contentType(ndjson ? NDJSON : MediaType.APPLICATION_JSON)
+            .cacheControl(CacheControl.noCache())
+            .body(out -> geoJsonLayerService.writeForests(viewport, level, page, ndjson, out));
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getLayerCacheStats() {
+        return ResponseEntity.ok(layerResponseCache.getStats());
+    }
+
+    @GetMapping("/versions")
+    public ResponseEntity<Map<String, Object>> getLayerVersions() {
+        return ResponseEntity.ok(layerVersionService.getVersions());
+    }
+
+    @GetMapping("/tiles/{layer}/{z}/{x}/{y}.mvt")
+    public ResponseEntity<byte[]> getVectorTile(@PathVariable String layer, @PathVariable int z,
+                                                @PathVariable int x, @PathVariable int y) {
+        GeoLayer geoLayer;
+        try {
+            geoLayer = GeoLayer.fromPath(layer);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!TileMath.isValid(z, x, y)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+            .contentType(VECTOR_TILE)
+            .body(vectorTileService.getTile(geoLayer, z, x, y));
+    }
+
+    /**
+     * The whole layer as FlatGeobuf. Byte range requests are answered from the same file, so
+     * clients can read the header and spatial index first and then fetch only what they need.
+     */
+    @GetMapping("/export/{layer}.fgb")
+    public ResponseEntity<Resource> exportFlatGeobuf(@PathVariable String layer, WebRequest request) throws IOException {
+        GeoLayer geoLayer;
+        try {
+            geoLayer = GeoLayer.fromPath(layer);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+        LayerExportService.ExportFile file = layerExportService.flatGeobuf(geoLayer);
+        String etag = layerVersionService.etag(geoLayer, file.version(), "fgb");
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+            .contentType(FLATGEOBUF)
+            .cacheControl(CacheControl.noCache())
+            .header(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(geoLayer.getPath() + ".fgb").build().toString())
+            .body(new FileSystemResource(file.path()));
+    }
+
+    @GetMapping("/entity-cache/stats")
+    public ResponseEntity<Map<String, Object>> getEntityCacheStats() {
+        return ResponseEntity.ok(entityCacheService.getStats());
+    }
+
+    @GetMapping("/export/stats")
+    public ResponseEntity<Map<String, Object>> getExportStats() {
+        return ResponseEntity.ok(layerExportService.getStats());
+    }
+
+    @GetMapping("/tiles/stats")
+    public ResponseEntity<Map<String, Object>> getVectorTileStats() {
+        return ResponseEntity.ok(vectorTileService.getStats());
+    }
+
+    @GetMapping("/index/stats")
+    public ResponseEntity<Map<String, Object>> getSpatialIndexStats() {
+        return ResponseEntity.ok(spatialIndexService.getStats());
+    }
+
+    @GetMapping("/index/{layer}")
+    public ResponseEntity<Map<String, Object>> searchSpatialIndex(@PathVariable String layer, @RequestParam String bbox) {
+        GeoLayer geoLayer;
+        BoundingBox window;
+        try {
+            geoLayer = GeoLayer.fromPath(layer);
+            window = BoundingBox.parse(bbox);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("layer", geoLayer.getPath());
+        result.put("ids", spatialIndexService.search(geoLayer, window));
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/index/{layer}/at")
+    public ResponseEntity<Map<String, Object>> findInSpatialIndex(@PathVariable String layer,
+                                                                  @RequestParam double lng, @RequestParam double lat) {
+        GeoLayer geoLayer;
+        try {
+            geoLayer = GeoLayer.fromPath(layer);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("layer", geoLayer.getPath());
+        result.put("ids", spatialIndexService.containing(geoLayer, lng, lat));
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/index/{layer}/nearest")
+    public ResponseEntity<Map<String, Object>> findNearest(@PathVariable String layer,
+                                                           @RequestParam double lng, @RequestParam double lat,
+                                                           @RequestParam(defaultValue = "10") int limit) {
+        GeoLayer geoLayer;
+        try {
+            geoLayer = GeoLayer.fromPath(layer);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (limit < 1 || limit > 1000) {
+            return ResponseEntity.badRequest().build();
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("layer", geoLayer.getPath());
+        result.put("ids", spatialIndexService.nearest(geoLayer, lng, lat, limit));
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> getSnapshotStatus() {
+        return ResponseEntity.ok(snapshotService.getStatus());
+    }
+
+    /**
+     * Writes the current data to the snapshot file that {@code geo.snapshot.restore} starts from.
+     */
+    @PostMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> writeSnapshot() throws IOException {
+        Map<String, Object> result = snapshotService.write();
+        if (result == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(snapshotService.getStatus());
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Serves a whole layer from the pre-serialized response cache, gzipped when the
+     * client accepts it. Each encoding gets its own strong ETag.
+     */
+    private ResponseEntity<StreamingResponseBody> cachedLayer(GeoLayer layer, int level, String variant,
+                                                              WebRequest request) throws IOException {
+        LayerResponseCache.CachedLayer cached = layerResponseCache.get(layer, level);
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        String encodingVariant = gzip ? (variant == null ? "gzip" : variant + "-gzip") : variant;
+        String etag = layerVersionService.etag(layer, cached.version(), encodingVariant);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        byte[] body = gzip ? cached.gzip() : cached.json();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .contentLength(body.length)
+            .cacheControl(CacheControl.noCache())
+            .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(out -> out.write(body));
+    }
+
+    /**
+     * {@link LevelOfDetail} level for a {@code zoom} or an explicit {@code tolerance} in degrees; full detail without either.
+     */
+    private static int level(Integer zoom, Double tolerance) {
+        if (tolerance != null) {
+            return LevelOfDetail.forTolerance(tolerance);
+        }
+        return zoom != null ? LevelOfDetail.forZoom(zoom) : LevelOfDetail.FULL;
+    }
+
+    /**
+     * NDJSON is selected with {@code format=ndjson} or an {@code Accept: application/x-ndjson} header.
+     */
+    private static boolean wantsNdjson(String format, WebRequest request) {
+        if (format != null) {
+            return format.equalsIgnoreCase("ndjson");
+        }
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept != null && accept.contains(NDJSON.toString());
+    }
+
+    /**
+     * ETag variant of a layer query; "all" stands for the whole layer.
+     */
+    private static String variant(BoundingBox viewport, LayerPage page, boolean ndjson, String detail) {
+        StringBuilder variant = new StringBuilder(viewport == null ? "all" : viewport.toParameter());
+        if (detail != null) {
+            variant.append('-').append(detail);
+        }
+        if (page != null) {
+            variant.append('-').append(page.toParameter());
+        }
+        if (ndjson) {
+            variant.append("-ndjson");
+        }
+        return variant.toString();
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim().replace(" ", "");
+                if (parameter.matches("q=0(\\.0*)?")) {
+                    refused = true;
                 }
-            } else {
-                geometry.put("type", "Point");
-                double[] coords = {forest.getCenterLng(), forest.getCenterLat()};
-                geometry.put("coordinates", coords);
             }
-            feature.put("geometry", geometry);
-            
-            return feature;
-        }).collect(Collectors.toList());
-        
-        geoJson.put("features", features);
-        return geoJson;
+            if (!refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Viewport for a bbox query, padded by a few pixels at the given zoom so that
+     * markers and strokes straddling the screen edge are still returned.
+     */
+    private BoundingBox viewport(String bbox, Integer zoom) {
+        BoundingBox box = BoundingBox.parse(bbox);
+        if (zoom == null) {
+            return box;
+        }
+        return box.expandBy(VIEWPORT_PADDING_PIXELS * BoundingBox.degreesPerPixel(zoom));
     }
 
     // Factory CRUD operations
+    @Transactional
     @PostMapping("/factories")
     public ResponseEntity<SimpleFactory> createFactory(@RequestBody Map<String, Object> factoryData) {
         SimpleFactory factory = new SimpleFactory(
@@ -157,17 +483,20 @@ public class SimpleGeoController {
         );
         
         SimpleFactory savedFactory = factoryRepository.save(factory);
+        eventPublisher.publishEvent(new FeatureChangedEvent(GeoLayer.FACTORIES, savedFactory.getId(), null, savedFactory.getEnvelope()));
         
-        // Synchronize with GeoServer
-        geoServerService.synchronizeFactory(savedFactory, "create");
+        // Queued for GeoServer in the same transaction, sent by GeoServerSyncService
+        geoServerSyncService.enqueue(GeoLayer.FACTORIES, savedFactory.getId(), GeoServerOutboxEntry.Operation.UPSERT);
         
         return ResponseEntity.ok(savedFactory);
     }
 
+    @Transactional
     @PutMapping("/factories/{id}")
     public ResponseEntity<SimpleFactory> updateFactory(@PathVariable Long id, @RequestBody Map<String, Object> factoryData) {
         return factoryRepository.findById(id)
             .map(factory -> {
+                BoundingBox before = factory.getEnvelope();
                 factory.setName((String) factoryData.get("name"));
                 factory.setType((String) factoryData.get("type"));
                 factory.setStatus((String) factoryData.get("status"));
@@ -175,24 +504,25 @@ public class SimpleGeoController {
                 factory.setLatitude((Double) factoryData.get("latitude"));
                 factory.setLongitude((Double) factoryData.get("longitude"));
                 
-                SimpleFactory updatedFactory = factoryRepository.save(factory);
+                SimpleFactory updatedFactory = factoryRepository.saveAndFlush(factory);
+                eventPublisher.publishEvent(new FeatureChangedEvent(GeoLayer.FACTORIES, id, before, updatedFactory.getEnvelope()));
                 
-                // Synchronize with GeoServer
-                geoServerService.synchronizeFactory(updatedFactory, "update");
+                // Queued for GeoServer in the same transaction, sent by GeoServerSyncService
+                geoServerSyncService.enqueue(GeoLayer.FACTORIES, updatedFactory.getId(), GeoServerOutboxEntry.Operation.UPSERT);
                 
                 return ResponseEntity.ok(updatedFactory);
             })
             .orElse(ResponseEntity.notFound().build());
     }
 
+    @Transactional
     @DeleteMapping("/factories/{id}")
     public ResponseEntity<?> deleteFactory(@PathVariable Long id) {
         return factoryRepository.findById(id)
             .map(factory -> {
-                // Synchronize with GeoServer before deleting
-                geoServerService.synchronizeFactory(factory, "delete");
-                
                 factoryRepository.delete(factory);
+                geoServerSyncService.enqueue(GeoLayer.FACTORIES, id, GeoServerOutboxEntry.Operation.DELETE);
+                eventPublisher.publishEvent(new FeatureChangedEvent(GeoLayer.FACTORIES, id, factory.getEnvelope(), null));
                 return ResponseEntity.ok().build();
             })
             .orElse(ResponseEntity.notFound().build());
@@ -205,79 +535,163 @@ public class SimpleGeoController {
             .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Streams a GeoJSON FeatureCollection, NDJSON or CSV file into a layer. The format comes
+     * from {@code format} (geojson, ndjson, csv) or else the Content-Type.
+     */
+    @PostMapping("/import/{layer}")
+    public ResponseEntity<Map<String, Object>> importFeatures(@PathVariable String layer,
+                                                              @RequestParam(required = false) String format,
+                                                              @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+                                                              InputStream body) throws IOException {
+        GeoLayer geoLayer;
+        BulkImportService.Format importFormat;
+        try {
+            geoLayer = GeoLayer.fromPath(layer);
+            importFormat = BulkImportService.resolveFormat(format, contentType);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(bulkImportService.importFeatures(geoLayer, importFormat, body));
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            // Malformed input outside of a single feature, e.g. no FeatureCollection at all
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
     @GetMapping("/geoserver/status")
     public ResponseEntity<Map<String, Object>> getGeoServerStatus() {
-        Map<String, Object> status = new HashMap<>();
-        boolean isConnected = geoServerService.testConnection();
-        status.put("connected", isConnected);
-        status.put("message", isConnected ? "GeoServer-თან კავშირი წარმატებულია" : "GeoServer-თან კავშირი ვერ მოხერხდა");
-        return ResponseEntity.ok(status);
+        // Answered from the last background probe
+        return ResponseEntity.ok(geoServerHealthMonitor.getStatus());
+    }
+
+    @GetMapping("/geoserver/sync")
+    public ResponseEntity<Map<String, Object>> getGeoServerSyncStatus() {
+        return ResponseEntity.ok(geoServerSyncService.getStatus());
+    }
+
+    /**
+     * Starts reconciling GeoServer with the database; unfinished layers resume from their
+     * checkpoint unless {@code restart} is set.
+     */
+    @PostMapping("/geoserver/reconcile")
+    public ResponseEntity<Map<String, Object>> startReconciliation(
+            @RequestParam(defaultValue = "false") boolean restart) {
+        if (!geoServerReconciliationService.start(restart)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(geoServerReconciliationService.getProgress());
+        }
+        return ResponseEntity.accepted().body(geoServerReconciliationService.getProgress());
+    }
+
+    @GetMapping("/geoserver/reconcile")
+    public ResponseEntity<Map<String, Object>> getReconciliationProgress() {
+        return ResponseEntity.ok(geoServerReconciliationService.getProgress());
     }
 
     @GetMapping("/geoserver/test-detailed")
-    public ResponseEntity<Map<String, Object>> testGeoServerDetailed() {
-        Map<String, Object> result = geoServerService.testConnectionDetailed();
-        return ResponseEntity.ok(result);
+    public ResponseEntity<Map<String, Object>> testGeoServerDetailed(
+            @RequestParam(defaultValue = "false") boolean refresh) {
+        if (refresh || geoServerHealthMonitor.getLastCheck() == null) {
+            geoServerHealthMonitor.check();
+        }
+        return ResponseEntity.ok(geoServerHealthMonitor.getLastCheck());
     }
 
     // Road CRUD operations
+    @Transactional
     @PostMapping("/roads")
     public ResponseEntity<SimpleRoad> createRoad(@RequestBody Map<String, Object> roadData) {
+        List<double[]> line;
+        try {
+            line = GeoJsonLine.parse(roadData.get("coordinates"), objectMapper);
+            if (line == null && hasEndpoints(roadData)) {
+                line = GeoJsonLine.segment((Double) roadData.get("startLng"), (Double) roadData.get("startLat"),
+                    (Double) roadData.get("endLng"), (Double) roadData.get("endLat"));
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
         SimpleRoad road = new SimpleRoad(
             (String) roadData.get("name"),
             (String) roadData.get("type"),
             (String) roadData.get("material"),
-            (Double) roadData.get("startLat"),
-            (Double) roadData.get("startLng"),
-            (Double) roadData.get("endLat"),
-            (Double) roadData.get("endLng"),
+            line,
             (Double) roadData.get("length")
         );
         
         SimpleRoad savedRoad = roadRepository.save(road);
+        eventPublisher.publishEvent(new FeatureChangedEvent(GeoLayer.ROADS, savedRoad.getId(), null, savedRoad.getEnvelope()));
         
-        // Synchronize with GeoServer
-        geoServerService.synchronizeRoad(savedRoad, "create");
+        // Queued for GeoServer in the same transaction, sent by GeoServerSyncService
+        geoServerSyncService.enqueue(GeoLayer.ROADS, savedRoad.getId(), GeoServerOutboxEntry.Operation.UPSERT);
         
         return ResponseEntity.ok(savedRoad);
     }
 
+    @Transactional
     @PutMapping("/roads/{id}")
     public ResponseEntity<SimpleRoad> updateRoad(@PathVariable Long id, @RequestBody Map<String, Object> roadData) {
+        List<double[]> line;
+        List<double[]> segment = null;
+        try {
+            line = GeoJsonLine.parse(roadData.get("coordinates"), objectMapper);
+            if (line == null && hasEndpoints(roadData)) {
+                segment = GeoJsonLine.segment((Double) roadData.get("startLng"), (Double) roadData.get("startLat"),
+                    (Double) roadData.get("endLng"), (Double) roadData.get("endLat"));
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<double[]> endpoints = segment;
         return roadRepository.findById(id)
             .map(road -> {
+                BoundingBox before = road.getEnvelope();
                 road.setName((String) roadData.get("name"));
                 road.setType((String) roadData.get("type"));
                 road.setMaterial((String) roadData.get("material"));
-                road.setStartLat((Double) roadData.get("startLat"));
-                road.setStartLng((Double) roadData.get("startLng"));
-                road.setEndLat((Double) roadData.get("endLat"));
-                road.setEndLng((Double) roadData.get("endLng"));
+                if (endpoints != null) {
+                    road.setEndpoints(endpoints);
+                } else {
+                    road.setLine(line);
+                }
                 road.setLength((Double) roadData.get("length"));
                 
-                SimpleRoad updatedRoad = roadRepository.save(road);
+                SimpleRoad updatedRoad = roadRepository.saveAndFlush(road);
+                eventPublisher.publishEvent(new FeatureChangedEvent(GeoLayer.ROADS, id, before, updatedRoad.getEnvelope()));
                 
-                // Synchronize with GeoServer
-                geoServerService.synchronizeRoad(updatedRoad, "update");
+                // Queued for GeoServer in the same transaction, sent by GeoServerSyncService
+                geoServerSyncService.enqueue(GeoLayer.ROADS, updatedRoad.getId(), GeoServerOutboxEntry.Operation.UPSERT);
                 
                 return ResponseEntity.ok(updatedRoad);
             })
             .orElse(ResponseEntity.notFound().build());
     }
 
+    @Transactional
     @DeleteMapping("/roads/{id}")
     public ResponseEntity<?> deleteRoad(@PathVariable Long id) {
         return roadRepository.findById(id)
             .map(road -> {
-                // Synchronize with GeoServer before deleting
-                geoServerService.synchronizeRoad(road, "delete");
-                
                 roadRepository.delete(road);
+                geoServerSyncService.enqueue(GeoLayer.ROADS, id, GeoServerOutboxEntry.Operation.DELETE);
+                eventPublisher.publishEvent(new FeatureChangedEvent(GeoLayer.ROADS, id, road.getEnvelope(), null));
                 return ResponseEntity.ok().build();
             })
             .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Roads are given either as GeoJSON LineString/MultiLineString {@code coordinates}
+     * or, as before, by their start and end point.
+     */
+    private static boolean hasEndpoints(Map<String, Object> roadData) {
+        return roadData.get("startLat") != null && roadData.get("startLng") != null
+            && roadData.get("endLat") != null && roadData.get("endLng") != null;
+    }
+
     @GetMapping("/roads/{id}")
     public ResponseEntity<SimpleRoad> getRoad(@PathVariable Long id) {
         return roadRepository.findById(id)
@@ -286,8 +700,15 @@ public class SimpleGeoController {
     }
 
     // Forest CRUD operations
+    @Transactional
     @PostMapping("/forests")
     public ResponseEntity<SimpleForest> createForest(@RequestBody Map<String, Object> forestData) {
+        List<double[]> polygon;
+        try {
+            polygon = GeoJsonPolygon.parse(forestData.get("coordinates"), objectMapper);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
         SimpleForest forest = new SimpleForest(
             (String) forestData.get("name"),
             (String) forestData.get("type"),
@@ -296,21 +717,30 @@ public class SimpleGeoController {
             (String) forestData.get("status"),
             (Double) forestData.get("centerLat"),
             (Double) forestData.get("centerLng"),
-            (String) forestData.get("coordinates")
+            polygon
         );
         
         SimpleForest savedForest = forestRepository.save(forest);
+        eventPublisher.publishEvent(new FeatureChangedEvent(GeoLayer.FORESTS, savedForest.getId(), null, savedForest.getEnvelope()));
         
-        // Synchronize with GeoServer
-        geoServerService.synchronizeForest(savedForest, "create");
+        // Queued for GeoServer in the same transaction, sent by GeoServerSyncService
+        geoServerSyncService.enqueue(GeoLayer.FORESTS, savedForest.getId(), GeoServerOutboxEntry.Operation.UPSERT);
         
         return ResponseEntity.ok(savedForest);
     }
 
+    @Transactional
     @PutMapping("/forests/{id}")
     public ResponseEntity<SimpleForest> updateForest(@PathVariable Long id, @RequestBody Map<String, Object> forestData) {
+        List<double[]> polygon;
+        try {
+            polygon = GeoJsonPolygon.parse(forestData.get("coordinates"), objectMapper);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
         return forestRepository.findById(id)
             .map(forest -> {
+                BoundingBox before = forest.getEnvelope();
                 forest.setName((String) forestData.get("name"));
                 forest.setType((String) forestData.get("type"));
                 forest.setArea((Double) forestData.get("area"));
@@ -318,26 +748,27 @@ public class SimpleGeoController {
                 forest.setStatus((String) forestData.get("status"));
                 forest.setCenterLat((Double) forestData.get("centerLat"));
                 forest.setCenterLng((Double) forestData.get("centerLng"));
-                forest.setCoordinates((String) forestData.get("coordinates"));
+                forest.setPolygon(polygon);
                 
-                SimpleForest updatedForest = forestRepository.save(forest);
+                SimpleForest updatedForest = forestRepository.saveAndFlush(forest);
+                eventPublisher.publishEvent(new FeatureChangedEvent(GeoLayer.FORESTS, id, before, updatedForest.getEnvelope()));
                 
-                // Synchronize with GeoServer
-                geoServerService.synchronizeForest(updatedForest, "update");
+                // Queued for GeoServer in the same transaction, sent by GeoServerSyncService
+                geoServerSyncService.enqueue(GeoLayer.FORESTS, updatedForest.getId(), GeoServerOutboxEntry.Operation.UPSERT);
                 
                 return ResponseEntity.ok(updatedForest);
             })
             .orElse(ResponseEntity.notFound().build());
     }
 
+    @Transactional
     @DeleteMapping("/forests/{id}")
     public ResponseEntity<?> deleteForest(@PathVariable Long id) {
         return forestRepository.findById(id)
             .map(forest -> {
-                // Synchronize with GeoServer before deleting
-                geoServerService.synchronizeForest(forest, "delete");
-                
                 forestRepository.delete(forest);
+                geoServerSyncService.enqueue(GeoLayer.FORESTS, id, GeoServerOutboxEntry.Operation.DELETE);
+                eventPublisher.publishEvent(new FeatureChangedEvent(GeoLayer.FORESTS, id, forest.getEnvelope(), null));
                 return ResponseEntity.ok().build();
             })
             .orElse(ResponseEntity.notFound().build());
@@ -0,0 +1,74 @@
+package ge.devspace.simplemap.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ge.devspace.simplemap.service.SnapshotService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Answers 503 to API requests that need the database while a snapshot restore is pending or
+ * still filling it, so nothing reads the half-filled tables or writes ids the restore will
+ * insert. During a background restore, layer reads, tiles and clusters are served from the
+ * snapshot and the in-memory views, and pass; so do the stats endpoints.
+ */
+@Component
+public class SnapshotLoadingFilter extends OncePerRequestFilter {
+
+    private static final Pattern SERVED_WHILE_LOADING = Pattern.compile(
+        "/api/geo/(roads|factories|forests|factories/clusters|tiles/.+|versions|[a-z-]+/stats)");
+
+    // Only in memory; with PostGIS the spatial queries go to the database
+    private static final Pattern SPATIAL_INDEX = Pattern.compile("/api/geo/index/.+");
+
+    private static final Pattern STATUS = Pattern.compile("/api/geo/snapshot");
+
+    private static final int RETRY_AFTER_SECONDS = 5;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${geo.postgis.enabled:false}")
+    private boolean postgis;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !snapshotService.isRestoring() || !request.getRequestURI().startsWith("/api/geo/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI();
+        boolean read = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+        boolean served = snapshotService.getServingSnapshot() != null
+            && (SERVED_WHILE_LOADING.matcher(path).matches() || (!postgis && SPATIAL_INDEX.matcher(path).matches()));
+        if (read && (served || STATUS.matcher(path).matches())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", "The database is being restored from a snapshot");
+        body.put("snapshot", snapshotService.getStatus());
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+}
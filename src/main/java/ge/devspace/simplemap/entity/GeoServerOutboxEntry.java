@@ -0,0 +1,76 @@
+package ge.devspace.simplemap.entity;
+
+import ge.devspace.simplemap.geo.GeoLayer;
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * A feature change still to be sent to GeoServer. Written in the same transaction
+ * as the feature itself and removed once GeoServer has accepted it.
+ */
+@Entity
+@Table(name = "geoserver_outbox", indexes = {
+    @Index(name = "idx_geoserver_outbox_next_attempt", columnList = "nextAttemptAt, id")
+})
+public class GeoServerOutboxEntry {
+
+    public enum Operation { UPSERT, DELETE }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "geoserver_outbox_seq")
+    @SequenceGenerator(name = "geoserver_outbox_seq", sequenceName = "geoserver_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private GeoLayer layer;
+
+    @Column(nullable = false)
+    private Long featureId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private Operation operation;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    @Column(nullable = false)
+    private Instant nextAttemptAt;
+
+    private int attempts;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    public GeoServerOutboxEntry() {}
+
+    public GeoServerOutboxEntry(GeoLayer layer, Long featureId, Operation operation) {
+        this.layer = layer;
+        this.featureId = featureId;
+        this.operation = operation;
+        this.createdAt = Instant.now();
+        this.nextAttemptAt = createdAt;
+    }
+
+    // Getters and setters
+    public Long getId() { return id; }
+
+    public GeoLayer getLayer() { return layer; }
+
+    public Long getFeatureId() { return featureId; }
+
+    public Operation getOperation() { return operation; }
+
+    public Instant getCreatedAt() { return createdAt; }
+
+    public Instant getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Instant nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
@@ -0,0 +1,78 @@
+package ge.devspace.simplemap.entity;
+
+import ge.devspace.simplemap.geo.GeoLayer;
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Progress of the GeoServer reconciliation of one layer. Saved after every page, so an
+ * interrupted run continues after {@code lastId} instead of starting over.
+ */
+@Entity
+@Table(name = "reconciliation_checkpoint")
+public class ReconciliationCheckpoint {
+
+    public enum State { RUNNING, FAILED, DONE }
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private GeoLayer layer;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private State state;
+
+    private long lastId;
+    private long scanned;
+    private long upserted;
+    private long deleted;
+
+    @Column(nullable = false)
+    private Instant startedAt;
+
+    private Instant updatedAt;
+    private Instant finishedAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    public ReconciliationCheckpoint() {}
+
+    public ReconciliationCheckpoint(GeoLayer layer) {
+        this.layer = layer;
+        this.state = State.RUNNING;
+        this.startedAt = Instant.now();
+        this.updatedAt = startedAt;
+    }
+
+    // Getters and setters
+    public GeoLayer getLayer() { return layer; }
+
+    public State getState() { return state; }
+    public void setState(State state) { this.state = state; }
+
+    public long getLastId() { return lastId; }
+    public void setLastId(long lastId) { this.lastId = lastId; }
+
+    public long getScanned() { return scanned; }
+    public void setScanned(long scanned) { this.scanned = scanned; }
+
+    public long getUpserted() { return upserted; }
+    public void setUpserted(long upserted) { this.upserted = upserted; }
+
+    public long getDeleted() { return deleted; }
+    public void setDeleted(long deleted) { this.deleted = deleted; }
+
+    public Instant getStartedAt() { return startedAt; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+
+    public Instant getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
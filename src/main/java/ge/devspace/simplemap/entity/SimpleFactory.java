@@ -1,12 +1,21 @@
 package ge.devspace.simplemap.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import ge.devspace.simplemap.geo.BoundingBox;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
-@Table(name = "simple_factories")
+@Table(name = "simple_factories", indexes = {
+    @Index(name = "idx_simple_factories_lng_lat", columnList = "longitude, latitude")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class SimpleFactory {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "simple_factories_seq")
+    @SequenceGenerator(name = "simple_factories_seq", sequenceName = "simple_factories_seq", allocationSize = 50)
     private Long id;
     
     private String name;
@@ -48,4 +57,12 @@ public class SimpleFactory {
 
     public Double getLongitude() { return longitude; }
     public void setLongitude(Double longitude) { this.longitude = longitude; }
+
+    @JsonIgnore
+    public BoundingBox getEnvelope() {
+        if (latitude == null || longitude == null) {
+            return null;
+        }
+        return BoundingBox.ofPoint(longitude, latitude);
+    }
 }
\ No newline at end of file
@@ -1,12 +1,27 @@
 package ge.devspace.simplemap.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoJsonPolygon;
+import ge.devspace.simplemap.geo.LevelOfDetail;
+import ge.devspace.simplemap.geo.Twkb;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import java.util.List;
 
 @Entity
-@Table(name = "simple_forests")
+@Table(name = "simple_forests", indexes = {
+    @Index(name = "idx_simple_forests_min_lng", columnList = "minLng, maxLng"),
+    @Index(name = "idx_simple_forests_min_lat", columnList = "minLat, maxLat")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class SimpleForest {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "simple_forests_seq")
+    @SequenceGenerator(name = "simple_forests_seq", sequenceName = "simple_forests_seq", allocationSize = 50)
     private Long id;
     
     private String name;
@@ -16,12 +31,25 @@ public class SimpleForest {
     private String status;
     private Double centerLat;
     private Double centerLng;
-    private String coordinates; // JSON string for polygon coordinates
+
+    // Polygon rings as TWKB, validated and encoded once on write
+    @Column(length = 1_048_576)
+    private byte[] geometry;
+
+    // Simplified copies of geometry for low zooms, see LevelOfDetail
+    @Column(length = 1_048_576)
+    private byte[] simplified;
+
+    // Polygon envelope (or the center point when there is no polygon), maintained on write
+    private Double minLng;
+    private Double minLat;
+    private Double maxLng;
+    private Double maxLat;
 
     public SimpleForest() {}
 
     public SimpleForest(String name, String type, Double area, String density, String status, 
-                       Double centerLat, Double centerLng, String coordinates) {
+                       Double centerLat, Double centerLng, List<double[]> polygon) {
         this.name = name;
         this.type = type;
         this.area = area;
@@ -29,7 +57,7 @@ public class SimpleForest {
         this.status = status;
         this.centerLat = centerLat;
         this.centerLng = centerLng;
-        this.coordinates = coordinates;
+        setPolygon(polygon);
     }
 
     // Getters and setters
@@ -57,6 +85,87 @@ public class SimpleForest {
     public Double getCenterLng() { return centerLng; }
     public void setCenterLng(Double centerLng) { this.centerLng = centerLng; }
 
-    public String getCoordinates() { return coordinates; }
-    public void setCoordinates(String coordinates) { this.coordinates = coordinates; }
-}
\ No newline at end of file
+    @JsonIgnore
+    public byte[] getGeometry() { return geometry; }
+
+    /**
+     * TWKB geometry simplified to the given {@link LevelOfDetail} level, or the full geometry.
+     */
+    @JsonIgnore
+    public byte[] getGeometry(int level) {
+        byte[] levelGeometry = LevelOfDetail.select(simplified, level);
+        return levelGeometry != null ? levelGeometry : geometry;
+    }
+
+    /**
+     * Polygon rings as interleaved lng/lat pairs, or null when the forest has no polygon.
+     */
+    @JsonIgnore
+    public List<double[]> getPolygon() {
+        return geometry == null ? null : Twkb.parts(geometry);
+    }
+
+    /**
+     * Rings must already be validated, see {@link GeoJsonPolygon#parse}.
+     */
+    public void setPolygon(List<double[]> polygon) {
+        if (polygon == null || polygon.isEmpty()) {
+            this.geometry = null;
+            this.simplified = null;
+        } else {
+            this.geometry = Twkb.polygon(polygon);
+            this.simplified = LevelOfDetail.encodePolygon(polygon);
+        }
+    }
+
+    /**
+     * GeoJSON Polygon coordinates as a JSON string, kept for API compatibility.
+     */
+    public String getCoordinates() {
+        return geometry == null ? null : GeoJsonPolygon.toJson(getPolygon());
+    }
+
+    @JsonIgnore
+    public Double getMinLng() { return minLng; }
+
+    @JsonIgnore
+    public Double getMinLat() { return minLat; }
+
+    @JsonIgnore
+    public Double getMaxLng() { return maxLng; }
+
+    @JsonIgnore
+    public Double getMaxLat() { return maxLat; }
+
+    @JsonIgnore
+    public BoundingBox getEnvelope() {
+        if (minLng == null || minLat == null || maxLng == null || maxLat == null) {
+            return null;
+        }
+        return new BoundingBox(minLng, minLat, maxLng, maxLat);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void updateEnvelope() {
+        minLng = minLat = maxLng = maxLat = null;
+        if (geometry != null) {
+            Twkb.read(geometry, new Twkb.PartVisitor() {
+                @Override
+                public void startPart(int pointCount) {
+                }
+
+                @Override
+                public void point(double lng, double lat) {
+                    minLng = minLng == null ? lng : Math.min(minLng, lng);
+                    minLat = minLat == null ? lat : Math.min(minLat, lat);
+                    maxLng = maxLng == null ? lng : Math.max(maxLng, lng);
+                    maxLat = maxLat == null ? lat : Math.max(maxLat, lat);
+                }
+            });
+        } else if (centerLat != null && centerLng != null) {
+            minLng = maxLng = centerLng;
+            minLat = maxLat = centerLat;
+        }
+    }
+}
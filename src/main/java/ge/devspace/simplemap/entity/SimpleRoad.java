@@ -1,34 +1,72 @@
 package ge.devspace.simplemap.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoJsonLine;
+import ge.devspace.simplemap.geo.LevelOfDetail;
+import ge.devspace.simplemap.geo.Twkb;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import java.util.List;
 
 @Entity
-@Table(name = "simple_roads")
+@Table(name = "simple_roads", indexes = {
+    @Index(name = "idx_simple_roads_min_lng", columnList = "minLng, maxLng"),
+    @Index(name = "idx_simple_roads_min_lat", columnList = "minLat, maxLat")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class SimpleRoad {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "simple_roads_seq")
+    @SequenceGenerator(name = "simple_roads_seq", sequenceName = "simple_roads_seq", allocationSize = 50)
     private Long id;
     
     private String name;
     private String type;
     private String material;
+    // First and last vertex of the line, kept for API compatibility
     private Double startLat;
     private Double startLng;
     private Double endLat;
     private Double endLng;
+    // Kilometres; measured along the line on write when not given
     private Double length;
 
+    // LineString, or MultiLineString for several parts, as TWKB
+    @Column(length = 1_048_576)
+    private byte[] geometry;
+
+    // Simplified copies of geometry for low zooms, see LevelOfDetail
+    @Column(length = 1_048_576)
+    private byte[] simplified;
+
+    // Envelope of every vertex, maintained on write for bbox queries
+    private Double minLng;
+    private Double minLat;
+    private Double maxLng;
+    private Double maxLat;
+
     public SimpleRoad() {}
 
     public SimpleRoad(String name, String type, String material, Double startLat, Double startLng, Double endLat, Double endLng, Double length) {
         this.name = name;
         this.type = type;
         this.material = material;
-        this.startLat = startLat;
-        this.startLng = startLng;
-        this.endLat = endLat;
-        this.endLng = endLng;
         this.length = length;
+        if (startLat != null && startLng != null && endLat != null && endLng != null) {
+            setLine(GeoJsonLine.segment(startLng, startLat, endLng, endLat));
+        }
+    }
+
+    public SimpleRoad(String name, String type, String material, List<double[]> line, Double length) {
+        this.name = name;
+        this.type = type;
+        this.material = material;
+        this.length = length;
+        setLine(line);
     }
 
     // Getters and setters
@@ -45,17 +83,114 @@ public class SimpleRoad {
     public void setMaterial(String material) { this.material = material; }
 
     public Double getStartLat() { return startLat; }
-    public void setStartLat(Double startLat) { this.startLat = startLat; }
 
     public Double getStartLng() { return startLng; }
-    public void setStartLng(Double startLng) { this.startLng = startLng; }
 
     public Double getEndLat() { return endLat; }
-    public void setEndLat(Double endLat) { this.endLat = endLat; }
 
     public Double getEndLng() { return endLng; }
-    public void setEndLng(Double endLng) { this.endLng = endLng; }
 
     public Double getLength() { return length; }
     public void setLength(Double length) { this.length = length; }
+
+    @JsonIgnore
+    public byte[] getGeometry() { return geometry; }
+
+    /**
+     * TWKB geometry simplified to the given {@link LevelOfDetail} level, or the full geometry.
+     */
+    @JsonIgnore
+    public byte[] getGeometry(int level) {
+        byte[] levelGeometry = LevelOfDetail.select(simplified, level);
+        return levelGeometry != null ? levelGeometry : geometry;
+    }
+
+    /**
+     * Lines as interleaved lng/lat pairs, or null when the road has no geometry.
+     */
+    @JsonIgnore
+    public List<double[]> getLine() {
+        return geometry == null ? null : Twkb.parts(geometry);
+    }
+
+    /**
+     * Lines must already be validated, see {@link GeoJsonLine#parse}.
+     */
+    public void setLine(List<double[]> line) {
+        if (line == null || line.isEmpty()) {
+            geometry = simplified = null;
+            startLat = startLng = endLat = endLng = null;
+            return;
+        }
+        geometry = Twkb.lines(line);
+        simplified = LevelOfDetail.encodeLines(line);
+        double[] first = line.get(0);
+        double[] last = line.get(line.size() - 1);
+        startLng = first[0];
+        startLat = first[1];
+        endLng = last[last.length - 2];
+        endLat = last[last.length - 1];
+    }
+
+    /**
+     * Replaces the geometry by a straight line, unless start and end are unchanged:
+     * clients that only edit the end points (the map form) then keep the vertices in between.
+     *
+     * @param segment two-point line, see {@link GeoJsonLine#segment}
+     */
+    public void setEndpoints(List<double[]> segment) {
+        double[] ends = segment.get(0);
+        if (geometry == null || ends[0] != startLng || ends[1] != startLat || ends[2] != endLng || ends[3] != endLat) {
+            setLine(segment);
+        }
+    }
+
+    /**
+     * GeoJSON LineString (or MultiLineString) coordinates as a JSON string.
+     */
+    public String getCoordinates() {
+        return geometry == null ? null : GeoJsonLine.toJson(getLine());
+    }
+
+    @JsonIgnore
+    public Double getMinLng() { return minLng; }
+
+    @JsonIgnore
+    public Double getMinLat() { return minLat; }
+
+    @JsonIgnore
+    public Double getMaxLng() { return maxLng; }
+
+    @JsonIgnore
+    public Double getMaxLat() { return maxLat; }
+
+    @JsonIgnore
+    public BoundingBox getEnvelope() {
+        if (minLng == null || minLat == null || maxLng == null || maxLat == null) {
+            return null;
+        }
+        return new BoundingBox(minLng, minLat, maxLng, maxLat);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void updateEnvelope() {
+        minLng = minLat = maxLng = maxLat = null;
+        if (geometry == null) {
+            return;
+        }
+        List<double[]> line = getLine();
+        for (double[] part : line) {
+            for (int i = 0; i + 1 < part.length; i += 2) {
+                minLng = minLng == null ? part[i] : Math.min(minLng, part[i]);
+                minLat = minLat == null ? part[i + 1] : Math.min(minLat, part[i + 1]);
+                maxLng = maxLng == null ? part[i] : Math.max(maxLng, part[i]);
+                maxLat = maxLat == null ? part[i + 1] : Math.max(maxLat, part[i + 1]);
+            }
+        }
+        if (length == null) {
+            // To the metre
+            length = Math.round(GeoJsonLine.length(line) * 1000) / 1000.0;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package ge.devspace.simplemap.geo;
+
+/**
+ * Axis-aligned envelope in EPSG:4326 degrees (lng = x, lat = y).
+ */
+public record BoundingBox(double minLng, double minLat, double maxLng, double maxLat) {
+
+    public BoundingBox {
+        if (minLng > maxLng || minLat > maxLat) {
+            throw new IllegalArgumentException("Invalid bounding box: min is greater than max");
+        }
+    }
+
+    /**
+     * Parses the {@code minLng,minLat,maxLng,maxLat} form used by the bbox request parameter.
+     */
+    public static BoundingBox parse(String bbox) {
+        String[] parts = bbox.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("bbox must be minLng,minLat,maxLng,maxLat");
+        }
+        double[] values = new double[4];
+        for (int i = 0; i < 4; i++) {
+            try {
+                values[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bbox contains a non-numeric value: " + bbox);
+            }
+            // parseDouble accepts "NaN" and "Infinity", which would slip past every comparison below
+            if (!Double.isFinite(values[i])) {
+                throw new IllegalArgumentException("bbox contains a non-finite value: " + bbox);
+            }
+        }
+        return new BoundingBox(values[0], values[1], values[2], values[3]);
+    }
+
+    public static BoundingBox ofPoint(double lng, double lat) {
+        return new BoundingBox(lng, lat, lng, lat);
+    }
+
+    public boolean intersects(BoundingBox other) {
+        return minLng <= other.maxLng && maxLng >= other.minLng
+            && minLat <= other.maxLat && maxLat >= other.minLat;
+    }
+
+    public boolean contains(double lng, double lat) {
+        return lng >= minLng && lng <= maxLng && lat >= minLat && lat <= maxLat;
+    }
+
+    public BoundingBox expandBy(double degrees) {
+        return new BoundingBox(minLng - degrees, minLat - degrees, maxLng + degrees, maxLat + degrees);
+    }
+
+    public BoundingBox union(BoundingBox other) {
+        return new BoundingBox(
+            Math.min(minLng, other.minLng), Math.min(minLat, other.minLat),
+            Math.max(maxLng, other.maxLng), Math.max(maxLat, other.maxLat)
+        );
+    }
+
+    /**
+     * Inverse of {@link #parse}.
+     */
+    public String toParameter() {
+        return minLng + "," + minLat + "," + maxLng + "," + maxLat;
+    }
+
+    /**
+     * Width of one 256px web-mercator tile pixel in degrees of longitude at the given zoom.
+     */
+    public static double degreesPerPixel(int zoom) {
+        return 360.0 / (256.0 * (1L << Math.max(0, Math.min(zoom, 30))));
+    }
+}
@@ -0,0 +1,191 @@
+package ge.devspace.simplemap.geo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical grid of point clusters, one grid per zoom from 0 to {@link #MAX_ZOOM}.
+ * <p>
+ * A cell is {@link #CELL_PIXELS} screen pixels wide at its zoom and aggregates the count,
+ * coordinate sums and summed weight of the points inside it. Adding, moving or removing
+ * a point touches exactly one cell per zoom, so the grid never has to be rebuilt.
+ * Above {@link #MAX_ZOOM} the finest grid is used.
+ */
+public class ClusterGrid {
+
+    public static final int MAX_ZOOM = 16;
+
+    /** Cell size in 256px tile pixels: 4x4 cells per tile. */
+    public static final int CELL_PIXELS = 64;
+
+    private static final int CELLS_PER_TILE_SHIFT = 2;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Map<Long, Cell>> levels = new ArrayList<>(MAX_ZOOM + 1);
+    private final Map<Long, Member> members = new HashMap<>();
+
+    public ClusterGrid() {
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            levels.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * One cluster: the centroid of its points, how many there are and their summed weight.
+     * {@code id} is the point's id when the cluster holds a single point, otherwise null.
+     */
+    public record Cluster(double lng, double lat, int count, long weight, Long id) {
+    }
+
+    /**
+     * Adds a point, or moves it (and updates its weight) when the id is already present.
+     */
+    public void put(long id, double lng, double lat, long weight) {
+        lock.writeLock().lock();
+        try {
+            Member member = new Member(lng, lat, weight);
+            Member previous = members.put(id, member);
+            if (previous != null) {
+                update(id, previous, -1);
+            }
+            update(id, member, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Member previous = members.remove(id);
+            if (previous != null) {
+                update(id, previous, -1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            members.clear();
+            for (Map<Long, Cell> level : levels) {
+                level.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Cluster> query(BoundingBox box, int zoom) {
+        int z = Math.max(0, Math.min(zoom, MAX_ZOOM));
+        int cellZoom = z + CELLS_PER_TILE_SHIFT;
+        long minX = cellIndex(TileMath.lngToTileX(box.minLng(), cellZoom), cellZoom);
+        long maxX = cellIndex(TileMath.lngToTileX(box.maxLng(), cellZoom), cellZoom);
+        long minY = cellIndex(TileMath.latToTileY(box.maxLat(), cellZoom), cellZoom);
+        long maxY = cellIndex(TileMath.latToTileY(box.minLat(), cellZoom), cellZoom);
+
+        List<Cluster> clusters = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Map<Long, Cell> level = levels.get(z);
+            long rangeCells = (maxX - minX + 1) * (maxY - minY + 1);
+            if (rangeCells <= level.size()) {
+                for (long x = minX; x <= maxX; x++) {
+                    for (long y = minY; y <= maxY; y++) {
+                        Cell cell = level.get(key(x, y));
+                        if (cell != null) {
+                            clusters.add(cell.toCluster());
+                        }
+                    }
+                }
+            } else {
+                // Fewer occupied cells than cells in the window: scan the occupied ones
+                for (Map.Entry<Long, Cell> entry : level.entrySet()) {
+                    long x = entry.getKey() >>> 32;
+                    long y = entry.getKey() & 0xFFFFFFFFL;
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                        clusters.add(entry.getValue().toCluster());
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return clusters;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return members.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int cellCount() {
+        lock.readLock().lock();
+        try {
+            int cells = 0;
+            for (Map<Long, Cell> level : levels) {
+                cells += level.size();
+            }
+            return cells;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void update(long id, Member member, int sign) {
+        // Tile coordinates only scale by powers of two between zooms, so every coarser cell is
+        // the finest one shifted right; no need to project the point once per level
+        int finestZoom = MAX_ZOOM + CELLS_PER_TILE_SHIFT;
+        long finestX = cellIndex(TileMath.lngToTileX(member.lng, finestZoom), finestZoom);
+        long finestY = cellIndex(TileMath.latToTileY(member.lat, finestZoom), finestZoom);
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            long x = finestX >> (MAX_ZOOM - zoom);
+            long y = finestY >> (MAX_ZOOM - zoom);
+            Map<Long, Cell> level = levels.get(zoom);
+            long key = key(x, y);
+            Cell cell = level.computeIfAbsent(key, k -> new Cell());
+            cell.count += sign;
+            cell.lngSum += sign * member.lng;
+            cell.latSum += sign * member.lat;
+            cell.weight += sign * member.weight;
+            cell.idSum += sign * id;
+            if (cell.count == 0) {
+                level.remove(key);
+            }
+        }
+    }
+
+    private static long cellIndex(double tileCoordinate, int cellZoom) {
+        long cells = 1L << cellZoom;
+        return Math.max(0, Math.min(cells - 1, (long) Math.floor(tileCoordinate)));
+    }
+
+    private static long key(long x, long y) {
+        return (x << 32) | y;
+    }
+
+    private record Member(double lng, double lat, long weight) {
+    }
+
+    private static final class Cell {
+        private int count;
+        private double lngSum;
+        private double latSum;
+        private long weight;
+        // With a single member this is exactly that member's id
+        private long idSum;
+
+        Cluster toCluster() {
+            return new Cluster(lngSum / count, latSum / count, count, weight, count == 1 ? idSum : null);
+        }
+    }
+}
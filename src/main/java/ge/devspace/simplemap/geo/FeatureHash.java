@@ -0,0 +1,123 @@
+package ge.devspace.simplemap.geo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 64-bit FNV-1a content hash of a feature's attributes and geometry, computed the same way
+ * from a {@link WfsFeature} and from a GeoJSON feature returned by GeoServer, so that the
+ * two sides can be compared without sending the features themselves.
+ * <p>
+ * Values are normalized before hashing: numbers by their decimal value ({@code 5}, {@code 5.0}
+ * and {@code "5"} are equal), coordinates at {@link Twkb#PRECISION} digits, and geometries by
+ * their parts only, so a Polygon and a single-part MultiPolygon with the same rings are equal.
+ */
+public final class FeatureHash {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+    private static final double SCALE = Math.pow(10, Twkb.PRECISION);
+
+    private long hash = OFFSET_BASIS;
+
+    private FeatureHash() {
+    }
+
+    public static long of(WfsFeature feature, List<String> propertyNames) {
+        FeatureHash hash = new FeatureHash();
+        for (String name : propertyNames) {
+            hash.value(feature.properties().get(name));
+        }
+        if (feature.geometry() != null) {
+            Twkb.read(feature.geometry(), new Twkb.PartVisitor() {
+                @Override
+                public void startPart(int pointCount) {
+                    hash.part(pointCount);
+                }
+
+                @Override
+                public void point(double lng, double lat) {
+                    hash.coordinate(lng).coordinate(lat);
+                }
+            });
+        }
+        return hash.hash;
+    }
+
+    /**
+     * @param feature a GeoJSON Feature with {@code properties} and {@code geometry}
+     */
+    public static long of(JsonNode feature, List<String> propertyNames) {
+        FeatureHash hash = new FeatureHash();
+        JsonNode properties = feature.path("properties");
+        for (String name : propertyNames) {
+            JsonNode value = properties.get(name);
+            hash.value(value == null || value.isNull() ? null : value.isNumber() ? value.decimalValue() : value.asText());
+        }
+        JsonNode coordinates = feature.path("geometry").path("coordinates");
+        if (coordinates.isArray()) {
+            if (coordinates.path(0).isNumber()) {
+                // A Point is a single position rather than a list of them
+                hash.part(1).position(coordinates);
+            } else {
+                hash.parts(coordinates);
+            }
+        }
+        return hash.hash;
+    }
+
+    private void parts(JsonNode coordinates) {
+        if (coordinates.path(0).path(0).isNumber()) {
+            part(coordinates.size());
+            for (JsonNode position : coordinates) {
+                position(position);
+            }
+        } else {
+            for (JsonNode child : coordinates) {
+                parts(child);
+            }
+        }
+    }
+
+    private void position(JsonNode position) {
+        coordinate(position.path(0).asDouble()).coordinate(position.path(1).asDouble());
+    }
+
+    private FeatureHash value(Object value) {
+        if (value == null) {
+            return mix(0);
+        }
+        String text = value instanceof Number number
+            ? new BigDecimal(number.toString()).stripTrailingZeros().toPlainString()
+            : value.toString();
+        mix(1);
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            mix(b);
+        }
+        return mix(0xff);
+    }
+
+    private FeatureHash part(int pointCount) {
+        mix(2);
+        return mix64(pointCount);
+    }
+
+    private FeatureHash coordinate(double value) {
+        return mix64(Math.round(value * SCALE));
+    }
+
+    private FeatureHash mix64(long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            mix((int) (value >>> shift));
+        }
+        return this;
+    }
+
+    private FeatureHash mix(int b) {
+        hash = (hash ^ (b & 0xff)) * PRIME;
+        return this;
+    }
+}
@@ -0,0 +1,224 @@
+package ge.devspace.simplemap.geo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal FlatBuffers encoder for the handful of tables FlatGeobuf needs.
+ * <p>
+ * Unlike the official builders it writes front to back: each table is preceded by its
+ * vtable and followed by the strings, vectors and tables it references. Reference fields
+ * are reserved first and patched once the target is written, which keeps every unsigned
+ * offset pointing forward as the format requires. All alignment is relative to the start
+ * of the buffer.
+ */
+final class FlatBufferWriter {
+
+    private ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    void reset() {
+        buffer.clear();
+    }
+
+    int position() {
+        return buffer.position();
+    }
+
+    /**
+     * Reserves the root table offset, to be {@link #patch patched} with the table position.
+     */
+    int reserveRoot() {
+        return reserveOffset();
+    }
+
+    Table startTable(int fieldCount) {
+        return new Table(fieldCount);
+    }
+
+    /**
+     * Points the offset reserved at {@code slot} to {@code target}.
+     */
+    void patch(int slot, int target) {
+        buffer.putInt(slot, target - slot);
+    }
+
+    int string(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        align(4);
+        int start = buffer.position();
+        ensure(4 + bytes.length + 1);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        buffer.put((byte) 0);
+        return start;
+    }
+
+    int doubles(double[] values, int count) {
+        startVector(count, 8);
+        int start = buffer.position();
+        ensure(4 + count * 8);
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(values[i]);
+        }
+        return start;
+    }
+
+    int uints(int[] values, int count) {
+        startVector(count, 4);
+        int start = buffer.position();
+        ensure(4 + count * 4);
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(values[i]);
+        }
+        return start;
+    }
+
+    int bytes(byte[] values, int count) {
+        startVector(count, 1);
+        int start = buffer.position();
+        ensure(4 + count);
+        buffer.putInt(count);
+        buffer.put(values, 0, count);
+        return start;
+    }
+
+    /**
+     * Writes a vector of {@code count} table offsets; element {@code i} is patched at
+     * {@code start + 4 + 4 * i}.
+     */
+    int offsets(int count) {
+        startVector(count, 4);
+        int start = buffer.position();
+        ensure(4 + count * 4);
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(0);
+        }
+        return start;
+    }
+
+    byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.get(0, bytes);
+        return bytes;
+    }
+
+    /**
+     * The encoded bytes as a buffer positioned at the start, valid until the next write.
+     */
+    ByteBuffer contents() {
+        return buffer.duplicate().flip();
+    }
+
+    private int reserveOffset() {
+        align(4);
+        int slot = buffer.position();
+        ensure(4);
+        buffer.putInt(0);
+        return slot;
+    }
+
+    /**
+     * Aligns so that the elements following the 4 byte length are aligned to their own size.
+     */
+    private void startVector(int count, int elementSize) {
+        int alignment = Math.max(elementSize, 4);
+        ensure(alignment + 4);
+        while ((buffer.position() + 4) % alignment != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private void align(int alignment) {
+        ensure(alignment);
+        while (buffer.position() % alignment != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        grown.put(buffer.flip());
+        buffer = grown;
+    }
+
+    /**
+     * A table being written: its vtable is already in place and fields are appended in
+     * any order, each recorded in the vtable as it is written.
+     */
+    final class Table {
+
+        private final int vtable;
+        private final int start;
+
+        private Table(int fieldCount) {
+            align(2);
+            vtable = buffer.position();
+            int vtableSize = 4 + 2 * fieldCount;
+            ensure(vtableSize);
+            buffer.putShort((short) vtableSize);
+            for (int i = 0; i < fieldCount + 1; i++) {
+                buffer.putShort((short) 0);
+            }
+            align(4);
+            start = buffer.position();
+            ensure(4);
+            buffer.putInt(start - vtable);
+        }
+
+        int position() {
+            return start;
+        }
+
+        void addByte(int field, int value) {
+            ensure(1);
+            mark(field);
+            buffer.put((byte) value);
+        }
+
+        void addShort(int field, int value) {
+            align(2);
+            mark(field);
+            buffer.putShort((short) value);
+        }
+
+        void addInt(int field, int value) {
+            align(4);
+            mark(field);
+            buffer.putInt(value);
+        }
+
+        void addLong(int field, long value) {
+            align(8);
+            mark(field);
+            buffer.putLong(value);
+        }
+
+        /**
+         * Reserves a reference field, to be {@link FlatBufferWriter#patch patched} with the target.
+         */
+        int addOffset(int field) {
+            align(4);
+            mark(field);
+            int slot = buffer.position();
+            buffer.putInt(0);
+            return slot;
+        }
+
+        void end() {
+            buffer.putShort(vtable + 2, (short) (buffer.position() - start));
+        }
+
+        private void mark(int field) {
+            ensure(8);
+            buffer.putShort(vtable + 4 + 2 * field, (short) (buffer.position() - start));
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package ge.devspace.simplemap.geo;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a layer as FlatGeobuf (https://flatgeobuf.org): a header, a packed Hilbert R-tree
+ * over the feature envelopes and the features as size-prefixed FlatBuffers, in tree order.
+ * <p>
+ * The index has to precede the features and the features have to be in Hilbert order, so
+ * nothing can be written until every feature is known. Features are therefore encoded as
+ * they arrive and spilled to a temporary file; only their envelope, spill position and size
+ * stay in memory (about 50 bytes each). {@link #writeTo} then sorts, writes header and index
+ * and copies the features across in their final order.
+ * <p>
+ * Geometries are taken as {@link Twkb}, whose type codes match FlatGeobuf's. Coordinates are
+ * EPSG:4326 lng/lat.
+ */
+public final class FlatGeobufWriter implements Closeable {
+
+    public static final int UNKNOWN = 0;
+
+    private static final byte[] MAGIC = {0x66, 0x67, 0x62, 0x03, 0x66, 0x67, 0x62, 0x00};
+    private static final int NODE_SIZE = 16;
+    private static final int NODE_BYTES = 40;
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    // Field ids from the FlatGeobuf header.fbs and feature.fbs schemas
+    private static final int HEADER_NAME = 0;
+    private static final int HEADER_ENVELOPE = 1;
+    private static final int HEADER_GEOMETRY_TYPE = 2;
+    private static final int HEADER_COLUMNS = 7;
+    private static final int HEADER_FEATURES_COUNT = 8;
+    private static final int HEADER_INDEX_NODE_SIZE = 9;
+    private static final int HEADER_CRS = 10;
+    private static final int HEADER_FIELDS = 11;
+    private static final int COLUMN_NAME = 0;
+    private static final int COLUMN_TYPE = 1;
+    private static final int COLUMN_FIELDS = 2;
+    private static final int CRS_ORG = 0;
+    private static final int CRS_CODE = 1;
+    private static final int CRS_FIELDS = 2;
+    private static final int FEATURE_GEOMETRY = 0;
+    private static final int FEATURE_PROPERTIES = 1;
+    private static final int FEATURE_FIELDS = 2;
+    private static final int GEOMETRY_ENDS = 0;
+    private static final int GEOMETRY_XY = 1;
+    private static final int GEOMETRY_TYPE = 6;
+    private static final int GEOMETRY_FIELDS = 7;
+
+    /**
+     * Attribute column types, with their FlatGeobuf codes.
+     */
+    public enum ColumnType {
+        INT(5), LONG(7), DOUBLE(10), STRING(11);
+
+        private final int code;
+
+        ColumnType(int code) {
+            this.code = code;
+        }
+    }
+
+    public record Column(String name, ColumnType type) {
+    }
+
+    private final String name;
+    private final int geometryType;
+    private final List<Column> columns;
+    private final Path spillFile;
+    private final OutputStream spill;
+    private final FlatBufferWriter flatBuffer = new FlatBufferWriter();
+
+    private double[] coordinates = new double[256];
+    private int[] ends = new int[8];
+    private byte[] properties = new byte[256];
+
+    private int count;
+    private long spillSize;
+    private double[] boxes = new double[1024 * 4];
+    private long[] spillOffsets = new long[1024];
+    private int[] sizes = new int[1024];
+    private final double[] extent = {
+        Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+
+    /**
+     * @param geometryType {@link Twkb} type shared by all features, or {@link #UNKNOWN} for mixed layers
+     * @param spillFile    temporary file for the encoded features, deleted on {@link #close()}
+     */
+    public FlatGeobufWriter(String name, int geometryType, List<Column> columns, Path spillFile) throws IOException {
+        this.name = name;
+        this.geometryType = geometryType;
+        this.columns = List.copyOf(columns);
+        this.spillFile = spillFile;
+        this.spill = new BufferedOutputStream(Files.newOutputStream(spillFile), 1 << 16);
+    }
+
+    public int getFeatureCount() {
+        return count;
+    }
+
+    /**
+     * Encodes one feature. The spatial index needs an envelope for every feature, so
+     * features without a geometry are skipped.
+     *
+     * @param values one value per column, in column order; null values are left out
+     * @return false if the feature was skipped
+     */
+    public boolean add(byte[] twkb, Object[] values) throws IOException {
+        if (twkb == null) {
+            return false;
+        }
+        int[] shape = decode(twkb);
+        int pointCount = shape[0];
+        int partCount = shape[1];
+        if (pointCount == 0) {
+            return false;
+        }
+        int propertiesLength = encodeProperties(values);
+
+        flatBuffer.reset();
+        int root = flatBuffer.reserveRoot();
+        FlatBufferWriter.Table feature = flatBuffer.startTable(FEATURE_FIELDS);
+        int geometrySlot = feature.addOffset(FEATURE_GEOMETRY);
+        int propertiesSlot = propertiesLength > 0 ? feature.addOffset(FEATURE_PROPERTIES) : -1;
+        feature.end();
+        flatBuffer.patch(root, feature.position());
+
+        FlatBufferWriter.Table geometry = flatBuffer.startTable(GEOMETRY_FIELDS);
+        // Ends are only needed to split several parts (rings, lines)
+        int endsSlot = partCount > 1 ? geometry.addOffset(GEOMETRY_ENDS) : -1;
+        int xySlot = geometry.addOffset(GEOMETRY_XY);
+        geometry.addByte(GEOMETRY_TYPE, Twkb.type(twkb));
+        geometry.end();
+        flatBuffer.patch(geometrySlot, geometry.position());
+        if (endsSlot >= 0) {
+            flatBuffer.patch(endsSlot, flatBuffer.uints(ends, partCount));
+        }
+        flatBuffer.patch(xySlot, flatBuffer.doubles(coordinates, pointCount * 2));
+        if (propertiesSlot >= 0) {
+            flatBuffer.patch(propertiesSlot, flatBuffer.bytes(properties, propertiesLength));
+        }
+
+        ByteBuffer encoded = flatBuffer.contents();
+        int size = encoded.remaining();
+        writeIntLE(spill, size);
+        spill.write(encoded.array(), 0, size);
+
+        if (count == sizes.length) {
+            int capacity = count * 2;
+            boxes = Arrays.copyOf(boxes, capacity * 4);
+            spillOffsets = Arrays.copyOf(spillOffsets, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        envelope(pointCount, boxes, count * 4);
+        extent[0] = Math.min(extent[0], boxes[count * 4]);
+        extent[1] = Math.min(extent[1], boxes[count * 4 + 1]);
+        extent[2] = Math.max(extent[2], boxes[count * 4 + 2]);
+        extent[3] = Math.max(extent[3], boxes[count * 4 + 3]);
+        spillOffsets[count] = spillSize;
+        sizes[count] = 4 + size;
+        spillSize += 4 + size;
+        count++;
+        return true;
+    }
+
+    /**
+     * Writes the complete file: magic bytes, header, index and the features in Hilbert order.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        spill.flush();
+        int[] order = hilbertOrder();
+
+        out.write(MAGIC);
+        byte[] header = encodeHeader();
+        writeIntLE(out, header.length);
+        out.write(header);
+        if (count > 0) {
+            writeIndex(out, order);
+        }
+
+        try (FileChannel channel = FileChannel.open(spillFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            for (int i = 0; i < count; i++) {
+                int feature = order[i];
+                int size = sizes[feature];
+                if (size > buffer.capacity()) {
+                    buffer = ByteBuffer.allocate(size);
+                }
+                buffer.clear().limit(size);
+                long position = spillOffsets[feature];
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("Spill file ended early");
+                    }
+                }
+                out.write(buffer.array(), 0, size);
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            spill.close();
+        } finally {
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    /**
+     * Decodes the TWKB into {@link #coordinates} and the cumulative part {@link #ends}.
+     *
+     * @return point and part count
+     */
+    private int[] decode(byte[] twkb) {
+        int[] shape = new int[2];
+        Twkb.read(twkb, new Twkb.PartVisitor() {
+            @Override
+            public void startPart(int pointCount) {
+                int needed = (shape[0] + pointCount) * 2;
+                if (needed > coordinates.length) {
+                    coordinates = Arrays.copyOf(coordinates, Math.max(needed, coordinates.length * 2));
+                }
+            }
+
+            @Override
+            public void point(double lng, double lat) {
+                coordinates[shape[0] * 2] = lng;
+                coordinates[shape[0] * 2 + 1] = lat;
+                shape[0]++;
+            }
+
+            @Override
+            public void endPart() {
+                if (shape[1] == ends.length) {
+                    ends = Arrays.copyOf(ends, ends.length * 2);
+                }
+                ends[shape[1]++] = shape[0];
+            }
+        });
+        return shape;
+    }
+
+    private void envelope(int pointCount, double[] target, int offset) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < pointCount; i++) {
+            minX = Math.min(minX, coordinates[i * 2]);
+            minY = Math.min(minY, coordinates[i * 2 + 1]);
+            maxX = Math.max(maxX, coordinates[i * 2]);
+            maxY = Math.max(maxY, coordinates[i * 2 + 1]);
+        }
+        target[offset] = minX;
+        target[offset + 1] = minY;
+        target[offset + 2] = maxX;
+        target[offset + 3] = maxY;
+    }
+
+    /**
+     * Encodes the non-null values as (column index, value) pairs: little endian numbers,
+     * strings as a 4 byte length followed by UTF-8.
+     */
+    private int encodeProperties(Object[] values) {
+        ByteBuffer buffer = ByteBuffer.wrap(properties).order(ByteOrder.LITTLE_ENDIAN);
+        for (int column = 0; column < columns.size(); column++) {
+            Object value = values[column];
+            if (value == null) {
+                continue;
+            }
+            byte[] text = null;
+            int size = switch (columns.get(column).type()) {
+                case INT -> 4;
+                case LONG, DOUBLE -> 8;
+                case STRING -> {
+                    text = value.toString().getBytes(StandardCharsets.UTF_8);
+                    yield 4 + text.length;
+                }
+            };
+            if (buffer.remaining() < 2 + size) {
+                properties = Arrays.copyOf(properties, Math.max(properties.length * 2, buffer.position() + 2 + size));
+                buffer = ByteBuffer.wrap(properties).order(ByteOrder.LITTLE_ENDIAN).position(buffer.position());
+            }
+            buffer.putShort((short) column);
+            switch (columns.get(column).type()) {
+                case INT -> buffer.putInt(((Number) value).intValue());
+                case LONG -> buffer.putLong(((Number) value).longValue());
+                case DOUBLE -> buffer.putDouble(((Number) value).doubleValue());
+                case STRING -> buffer.putInt(text.length).put(text);
+            }
+        }
+        return buffer.position();
+    }
+
+    private byte[] encodeHeader() {
+        flatBuffer.reset();
+        int root = flatBuffer.reserveRoot();
+        FlatBufferWriter.Table header = flatBuffer.startTable(HEADER_FIELDS);
+        int nameSlot = header.addOffset(HEADER_NAME);
+        int envelopeSlot = count > 0 ? header.addOffset(HEADER_ENVELOPE) : -1;
+        int columnsSlot = header.addOffset(HEADER_COLUMNS);
+        int crsSlot = header.addOffset(HEADER_CRS);
+        header.addLong(HEADER_FEATURES_COUNT, count);
+        // Node size 0 tells readers there is no index
+        header.addShort(HEADER_INDEX_NODE_SIZE, count > 0 ? NODE_SIZE : 0);
+        header.addByte(HEADER_GEOMETRY_TYPE, geometryType);
+        header.end();
+        flatBuffer.patch(root, header.position());
+
+        flatBuffer.patch(nameSlot, flatBuffer.string(name));
+        if (envelopeSlot >= 0) {
+            flatBuffer.patch(envelopeSlot, flatBuffer.doubles(extent, 4));
+        }
+        int columnVector = flatBuffer.offsets(columns.size());
+        flatBuffer.patch(columnsSlot, columnVector);
+        for (int i = 0; i < columns.size(); i++) {
+            FlatBufferWriter.Table column = flatBuffer.startTable(COLUMN_FIELDS);
+            int columnNameSlot = column.addOffset(COLUMN_NAME);
+            column.addByte(COLUMN_TYPE, columns.get(i).type().code);
+            column.end();
+            flatBuffer.patch(columnVector + 4 + 4 * i, column.position());
+            flatBuffer.patch(columnNameSlot, flatBuffer.string(columns.get(i).name()));
+        }
+
+        FlatBufferWriter.Table crs = flatBuffer.startTable(CRS_FIELDS);
+        int orgSlot = crs.addOffset(CRS_ORG);
+        crs.addInt(CRS_CODE, 4326);
+        crs.end();
+        flatBuffer.patch(crsSlot, crs.position());
+        flatBuffer.patch(orgSlot, flatBuffer.string("EPSG"));
+        return flatBuffer.toByteArray();
+    }
+
+    /**
+     * Feature indexes sorted by the Hilbert value of their envelope centers within the extent.
+     */
+    private int[] hilbertOrder() {
+        long[] keys = new long[count];
+        double width = extent[2] - extent[0];
+        double height = extent[3] - extent[1];
+        for (int i = 0; i < count; i++) {
+            double centerX = (boxes[i * 4] + boxes[i * 4 + 2]) / 2;
+            double centerY = (boxes[i * 4 + 1] + boxes[i * 4 + 3]) / 2;
+            int x = width == 0 ? 0 : (int) Math.floor(HILBERT_MAX * (centerX - extent[0]) / width);
+            int y = height == 0 ? 0 : (int) Math.floor(HILBERT_MAX * (centerY - extent[1]) / height);
+            // Hilbert value in the high bits, feature index in the low 31: sorting needs no boxing
+            keys[i] = (Integer.toUnsignedLong(hilbert(x, y)) << 31) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) (keys[i] & Integer.MAX_VALUE);
+        }
+        return order;
+    }
+
+    /**
+     * Writes the packed R-tree, root first and leaves last. A leaf holds the byte offset of
+     * its feature from the start of the feature section, an inner node the position of its
+     * first child among all nodes.
+     */
+    private void writeIndex(OutputStream out, int[] order) throws IOException {
+        // Always at least a root above the leaves, even for a single feature
+        int levels = 1;
+        int n = count;
+        do {
+            n = (n + NODE_SIZE - 1) / NODE_SIZE;
+            levels++;
+        } while (n != 1);
+        int[] levelSizes = new int[levels];
+        levelSizes[0] = count;
+        int nodeCount = count;
+        for (int level = 1; level < levels; level++) {
+            levelSizes[level] = (levelSizes[level - 1] + NODE_SIZE - 1) / NODE_SIZE;
+            nodeCount += levelSizes[level];
+        }
+        int[] levelStarts = new int[levels];
+        int remaining = nodeCount;
+        for (int level = 0; level < levels; level++) {
+            remaining -= levelSizes[level];
+            levelStarts[level] = remaining;
+        }
+
+        double[] nodeBoxes = new double[nodeCount * 4];
+        long[] nodeOffsets = new long[nodeCount];
+        long featureOffset = 0;
+        for (int i = 0; i < count; i++) {
+            int feature = order[i];
+            int node = levelStarts[0] + i;
+            System.arraycopy(boxes, feature * 4, nodeBoxes, node * 4, 4);
+            nodeOffsets[node] = featureOffset;
+            featureOffset += sizes[feature];
+        }
+        for (int level = 0; level < levels - 1; level++) {
+            int end = levelStarts[level] + levelSizes[level];
+            int parent = levelStarts[level + 1];
+            for (int first = levelStarts[level]; first < end; first += NODE_SIZE, parent++) {
+                int target = parent * 4;
+                nodeBoxes[target] = Double.POSITIVE_INFINITY;
+                nodeBoxes[target + 1] = Double.POSITIVE_INFINITY;
+                nodeBoxes[target + 2] = Double.NEGATIVE_INFINITY;
+                nodeBoxes[target + 3] = Double.NEGATIVE_INFINITY;
+                for (int child = first; child < Math.min(first + NODE_SIZE, end); child++) {
+                    int source = child * 4;
+                    nodeBoxes[target] = Math.min(nodeBoxes[target], nodeBoxes[source]);
+                    nodeBoxes[target + 1] = Math.min(nodeBoxes[target + 1], nodeBoxes[source + 1]);
+                    nodeBoxes[target + 2] = Math.max(nodeBoxes[target + 2], nodeBoxes[source + 2]);
+                    nodeBoxes[target + 3] = Math.max(nodeBoxes[target + 3], nodeBoxes[source + 3]);
+                }
+                nodeOffsets[parent] = first;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(NODE_BYTES * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        for (int node = 0; node < nodeCount; node++) {
+            if (!buffer.hasRemaining()) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            buffer.putDouble(nodeBoxes[node * 4])
+                .putDouble(nodeBoxes[node * 4 + 1])
+                .putDouble(nodeBoxes[node * 4 + 2])
+                .putDouble(nodeBoxes[node * 4 + 3])
+                .putLong(nodeOffsets[node]);
+        }
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    /**
+     * Position of (x, y) on a 16 bit Hilbert curve, as in the FlatGeobuf reference implementations.
+     */
+    static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int aa = a | (b >>> 1);
+        int bb = (a >>> 1) ^ a;
+        int cc = ((c >>> 1) ^ (b & (d >>> 1))) ^ c;
+        int dd = ((a & (c >>> 1)) ^ (d >>> 1)) ^ d;
+
+        a = aa;
+        b = bb;
+        c = cc;
+        d = dd;
+        aa = (a & (a >>> 2)) ^ (b & (b >>> 2));
+        bb = (a & (b >>> 2)) ^ (b & ((a ^ b) >>> 2));
+        cc ^= (a & (c >>> 2)) ^ (b & (d >>> 2));
+        dd ^= (b & (c >>> 2)) ^ ((a ^ b) & (d >>> 2));
+
+        a = aa;
+        b = bb;
+        c = cc;
+        d = dd;
+        aa = (a & (a >>> 4)) ^ (b & (b >>> 4));
+        bb = (a & (b >>> 4)) ^ (b & ((a ^ b) >>> 4));
+        cc ^= (a & (c >>> 4)) ^ (b & (d >>> 4));
+        dd ^= (b & (c >>> 4)) ^ ((a ^ b) & (d >>> 4));
+
+        a = aa;
+        b = bb;
+        c = cc;
+        d = dd;
+        cc ^= (a & (c >>> 8)) ^ (b & (d >>> 8));
+        dd ^= (b & (c >>> 8)) ^ ((a ^ b) & (d >>> 8));
+
+        a = cc ^ (cc >>> 1);
+        b = dd ^ (dd >>> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+        return (interleave(i1) << 1) | interleave(i0);
+    }
+
+    private static int interleave(int value) {
+        value = (value | (value << 8)) & 0x00FF00FF;
+        value = (value | (value << 4)) & 0x0F0F0F0F;
+        value = (value | (value << 2)) & 0x33333333;
+        return (value | (value << 1)) & 0x55555555;
+    }
+
+    private static void writeIntLE(OutputStream out, int value) throws IOException {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
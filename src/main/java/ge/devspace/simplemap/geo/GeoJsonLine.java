@@ -0,0 +1,145 @@
+package ge.devspace.simplemap.geo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses and validates the {@code coordinates} member of a GeoJSON LineString
+ * ({@code [[lng, lat], ...]}) or MultiLineString ({@code [[[lng, lat], ...], ...]})
+ * into lines of interleaved lng/lat pairs.
+ * Every method throws {@link IllegalArgumentException} for input that is not a usable line.
+ */
+public final class GeoJsonLine {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private GeoJsonLine() {
+    }
+
+    /**
+     * Accepts the coordinates either as a JSON string or as the already-bound
+     * list structure of a request body. Returns null for a missing or empty value.
+     */
+    public static List<double[]> parse(Object coordinates, ObjectMapper objectMapper) {
+        if (coordinates == null) {
+            return null;
+        }
+        JsonNode node;
+        if (coordinates instanceof String json) {
+            if (json.isBlank()) {
+                return null;
+            }
+            try {
+                node = objectMapper.readTree(json);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Line coordinates are not valid JSON");
+            }
+        } else {
+            node = objectMapper.valueToTree(coordinates);
+        }
+        return parse(node);
+    }
+
+    /**
+     * The nesting depth tells a LineString from a MultiLineString.
+     */
+    public static List<double[]> parse(JsonNode coordinates) {
+        if (coordinates == null || coordinates.isNull()) {
+            return null;
+        }
+        if (!coordinates.isArray() || coordinates.isEmpty()) {
+            throw new IllegalArgumentException("Line must be a non-empty array of positions");
+        }
+        List<double[]> lines = new ArrayList<>();
+        if (coordinates.get(0).path(0).isArray()) {
+            for (JsonNode line : coordinates) {
+                lines.add(parseLine(line));
+            }
+        } else {
+            lines.add(parseLine(coordinates));
+        }
+        return lines;
+    }
+
+    /**
+     * A straight line between two points, validated like parsed coordinates.
+     */
+    public static List<double[]> segment(double startLng, double startLat, double endLng, double endLat) {
+        double[] line = new double[4];
+        position(line, 0, startLng, startLat);
+        position(line, 1, endLng, endLat);
+        return List.of(line);
+    }
+
+    /**
+     * Serializes lines back to GeoJSON coordinates: LineString form for one line,
+     * MultiLineString form for several.
+     */
+    public static String toJson(List<double[]> lines) {
+        StringBuilder json = new StringBuilder();
+        boolean multi = lines.size() > 1;
+        if (multi) {
+            json.append('[');
+        }
+        for (int l = 0; l < lines.size(); l++) {
+            double[] line = lines.get(l);
+            json.append(l == 0 ? "[" : ",[");
+            for (int i = 0; i + 1 < line.length; i += 2) {
+                json.append(i == 0 ? "[" : ",[").append(line[i]).append(',').append(line[i + 1]).append(']');
+            }
+            json.append(']');
+        }
+        if (multi) {
+            json.append(']');
+        }
+        return json.toString();
+    }
+
+    /**
+     * Great-circle length of all lines in kilometres.
+     */
+    public static double length(List<double[]> lines) {
+        double length = 0;
+        for (double[] line : lines) {
+            for (int i = 0; i + 3 < line.length; i += 2) {
+                double lat1 = Math.toRadians(line[i + 1]);
+                double lat2 = Math.toRadians(line[i + 3]);
+                double dLat = lat2 - lat1;
+                double dLng = Math.toRadians(line[i + 2] - line[i]);
+                double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                    + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+                length += 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+            }
+        }
+        return length;
+    }
+
+    private static double[] parseLine(JsonNode line) {
+        if (!line.isArray() || line.size() < 2) {
+            throw new IllegalArgumentException("Line must have at least 2 positions");
+        }
+        double[] points = new double[line.size() * 2];
+        for (int i = 0; i < line.size(); i++) {
+            JsonNode position = line.get(i);
+            if (!position.isArray() || position.size() < 2
+                    || !position.get(0).isNumber() || !position.get(1).isNumber()) {
+                throw new IllegalArgumentException("Line position must be [lng, lat]");
+            }
+            position(points, i, position.get(0).asDouble(), position.get(1).asDouble());
+        }
+        return points;
+    }
+
+    private static void position(double[] points, int index, double lng, double lat) {
+        if (!(lng >= -180 && lng <= 180 && lat >= -90 && lat <= 90)) {
+            throw new IllegalArgumentException("Line position out of range: [" + lng + ", " + lat + "]");
+        }
+        // Stored at TWKB precision, so validate what will actually be persisted
+        points[index * 2] = Twkb.quantize(lng);
+        points[index * 2 + 1] = Twkb.quantize(lat);
+    }
+}
@@ -0,0 +1,112 @@
+package ge.devspace.simplemap.geo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses and validates the {@code coordinates} member of a GeoJSON Polygon
+ * ({@code [[[lng, lat], ...], ...]}) into rings of interleaved lng/lat pairs.
+ * Every method throws {@link IllegalArgumentException} for input that is not a usable polygon.
+ */
+public final class GeoJsonPolygon {
+
+    private GeoJsonPolygon() {
+    }
+
+    /**
+     * Accepts the coordinates either as a JSON string or as the already-bound
+     * list structure of a request body. Returns null for a missing or empty value.
+     */
+    public static List<double[]> parse(Object coordinates, ObjectMapper objectMapper) {
+        if (coordinates == null) {
+            return null;
+        }
+        JsonNode node;
+        if (coordinates instanceof String json) {
+            if (json.isBlank()) {
+                return null;
+            }
+            try {
+                node = objectMapper.readTree(json);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Polygon coordinates are not valid JSON");
+            }
+        } else {
+            node = objectMapper.valueToTree(coordinates);
+        }
+        return parse(node);
+    }
+
+    public static List<double[]> parse(JsonNode polygon) {
+        if (polygon == null || polygon.isNull()) {
+            return null;
+        }
+        if (!polygon.isArray() || polygon.isEmpty()) {
+            throw new IllegalArgumentException("Polygon must be a non-empty array of linear rings");
+        }
+        List<double[]> rings = new ArrayList<>(polygon.size());
+        for (JsonNode ring : polygon) {
+            rings.add(parseRing(ring));
+        }
+        if (signedArea(rings.get(0)) == 0) {
+            throw new IllegalArgumentException("Polygon exterior ring has zero area");
+        }
+        return rings;
+    }
+
+    /**
+     * Serializes rings back to the GeoJSON Polygon coordinates form.
+     */
+    public static String toJson(List<double[]> rings) {
+        StringBuilder json = new StringBuilder();
+        json.append('[');
+        for (int r = 0; r < rings.size(); r++) {
+            double[] ring = rings.get(r);
+            json.append(r == 0 ? "[" : ",[");
+            for (int i = 0; i + 1 < ring.length; i += 2) {
+                json.append(i == 0 ? "[" : ",[").append(ring[i]).append(',').append(ring[i + 1]).append(']');
+            }
+            json.append(']');
+        }
+        return json.append(']').toString();
+    }
+
+    private static double[] parseRing(JsonNode ring) {
+        if (!ring.isArray() || ring.size() < 4) {
+            throw new IllegalArgumentException("Polygon ring must have at least 4 positions");
+        }
+        double[] points = new double[ring.size() * 2];
+        for (int i = 0; i < ring.size(); i++) {
+            JsonNode position = ring.get(i);
+            if (!position.isArray() || position.size() < 2
+                    || !position.get(0).isNumber() || !position.get(1).isNumber()) {
+                throw new IllegalArgumentException("Polygon position must be [lng, lat]");
+            }
+            double lng = position.get(0).asDouble();
+            double lat = position.get(1).asDouble();
+            if (!(lng >= -180 && lng <= 180 && lat >= -90 && lat <= 90)) {
+                throw new IllegalArgumentException("Polygon position out of range: [" + lng + ", " + lat + "]");
+            }
+            // Stored at TWKB precision, so validate what will actually be persisted
+            points[i * 2] = Twkb.quantize(lng);
+            points[i * 2 + 1] = Twkb.quantize(lat);
+        }
+        int last = points.length - 2;
+        if (points[0] != points[last] || points[1] != points[last + 1]) {
+            throw new IllegalArgumentException("Polygon ring is not closed");
+        }
+        return points;
+    }
+
+    private static double signedArea(double[] ring) {
+        double area = 0;
+        for (int i = 0; i + 3 < ring.length; i += 2) {
+            area += ring[i] * ring[i + 3] - ring[i + 2] * ring[i + 1];
+        }
+        return area / 2;
+    }
+}
@@ -0,0 +1,253 @@
+package ge.devspace.simplemap.geo;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import ge.devspace.simplemap.repository.FactoryRow;
+import ge.devspace.simplemap.repository.ForestRow;
+import ge.devspace.simplemap.repository.RoadRow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes GeoJSON features straight to a {@link JsonGenerator}, one at a time,
+ * so a layer never has to be materialised as a map tree before serialization.
+ * In line-delimited mode (NDJSON) every feature is a top-level object on its own line
+ * and there is no enclosing FeatureCollection.
+ */
+public class GeoJsonWriter implements Closeable {
+
+    private final JsonGenerator generator;
+    private final boolean lineDelimited;
+
+    public GeoJsonWriter(JsonGenerator generator) {
+        this(generator, false);
+    }
+
+    public GeoJsonWriter(JsonGenerator generator, boolean lineDelimited) {
+        this.generator = generator;
+        this.lineDelimited = lineDelimited;
+        if (lineDelimited) {
+            // Lines are terminated explicitly instead of separated by a space
+            generator.setRootValueSeparator(null);
+        }
+    }
+
+    public void startFeatureCollection() throws IOException {
+        if (lineDelimited) {
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeStringField("type", "FeatureCollection");
+        generator.writeArrayFieldStart("features");
+    }
+
+    public void endFeatureCollection() throws IOException {
+        endFeatureCollection(null);
+    }
+
+    /**
+     * @param nextAfter cursor for the next keyset page, written as the {@code nextAfter}
+     *                  foreign member when not null
+     */
+    public void endFeatureCollection(Long nextAfter) throws IOException {
+        if (lineDelimited) {
+            return;
+        }
+        generator.writeEndArray();
+        if (nextAfter != null) {
+            generator.writeNumberField("nextAfter", nextAfter);
+        }
+        generator.writeEndObject();
+    }
+
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    /**
+     * Writes a Feature that is already serialized, e.g. by the database.
+     */
+    public void writeFeature(String featureJson) throws IOException {
+        generator.writeRawValue(featureJson);
+        if (lineDelimited) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    public void writeRoad(RoadRow road) throws IOException {
+        writeRoad(road, LevelOfDetail.FULL);
+    }
+
+    /**
+     * @param level {@link LevelOfDetail} level of the line to write
+     */
+    public void writeRoad(RoadRow road, int level) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "Feature");
+
+        generator.writeFieldName("geometry");
+        if (road.geometry() == null) {
+            generator.writeNull();
+        } else {
+            byte[] geometry = road.geometry(level);
+            generator.writeStartObject();
+            if (Twkb.type(geometry) == Twkb.LINESTRING) {
+                generator.writeStringField("type", "LineString");
+                // The single part is the coordinates array itself
+                generator.writeFieldName("coordinates");
+                writeParts(geometry);
+            } else {
+                generator.writeStringField("type", "MultiLineString");
+                generator.writeArrayFieldStart("coordinates");
+                writeParts(geometry);
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+
+        generator.writeObjectFieldStart("properties");
+        writeNumberField("id", road.id());
+        generator.writeStringField("name", road.name());
+        generator.writeStringField("type", road.type());
+        writeNumberField("length", road.length());
+        generator.writeStringField("material", road.material());
+        generator.writeEndObject();
+
+        endFeature();
+    }
+
+    public void writeFactory(FactoryRow factory) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "Feature");
+
+        generator.writeFieldName("geometry");
+        writePoint(factory.longitude(), factory.latitude());
+
+        generator.writeObjectFieldStart("properties");
+        writeNumberField("id", factory.id());
+        generator.writeStringField("name", factory.name());
+        generator.writeStringField("type", factory.type());
+        writeNumberField("capacity", factory.capacity());
+        generator.writeStringField("status", factory.status());
+        generator.writeEndObject();
+
+        endFeature();
+    }
+
+    public void writeForest(ForestRow forest) throws IOException {
+        writeForest(forest, LevelOfDetail.FULL);
+    }
+
+    /**
+     * @param level {@link LevelOfDetail} level of the polygon to write
+     */
+    public void writeForest(ForestRow forest, int level) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "Feature");
+
+        generator.writeFieldName("geometry");
+        if (forest.geometry() != null) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "Polygon");
+            generator.writeArrayFieldStart("coordinates");
+            writeParts(forest.geometry(level));
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } else {
+            // Forests without a polygon are drawn at their center point
+            writePoint(forest.centerLng(), forest.centerLat());
+        }
+
+        generator.writeObjectFieldStart("properties");
+        writeNumberField("id", forest.id());
+        generator.writeStringField("name", forest.name());
+        generator.writeStringField("type", forest.type());
+        writeNumberField("area", forest.area());
+        generator.writeStringField("density", forest.density());
+        generator.writeStringField("status", forest.status());
+        generator.writeEndObject();
+
+        endFeature();
+    }
+
+    /**
+     * Writes each TWKB part as an array of positions, decoding vertices straight into the generator.
+     */
+    private void writeParts(byte[] twkb) throws IOException {
+        try {
+            Twkb.read(twkb, new Twkb.PartVisitor() {
+                @Override
+                public void startPart(int pointCount) {
+                    try {
+                        generator.writeStartArray();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public void point(double lng, double lat) {
+                    try {
+                        writePosition(lng, lat);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public void endPart() {
+                    try {
+                        generator.writeEndArray();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void endFeature() throws IOException {
+        generator.writeEndObject();
+        if (lineDelimited) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    private void writePoint(Double lng, Double lat) throws IOException {
+        if (lng == null || lat == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeStringField("type", "Point");
+        generator.writeFieldName("coordinates");
+        writePosition(lng, lat);
+        generator.writeEndObject();
+    }
+
+    private void writePosition(double lng, double lat) throws IOException {
+        generator.writeStartArray();
+        generator.writeNumber(lng);
+        generator.writeNumber(lat);
+        generator.writeEndArray();
+    }
+
+    private void writeNumberField(String name, Number value) throws IOException {
+        generator.writeFieldName(name);
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof Long || value instanceof Integer) {
+            generator.writeNumber(value.longValue());
+        } else {
+            generator.writeNumber(value.doubleValue());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
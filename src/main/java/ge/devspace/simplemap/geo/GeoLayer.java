@@ -0,0 +1,29 @@
+package ge.devspace.simplemap.geo;
+
+/**
+ * The feature layers served under /api/geo, keyed by their URL path segment.
+ */
+public enum GeoLayer {
+    ROADS("roads"),
+    FACTORIES("factories"),
+    FORESTS("forests");
+
+    private final String path;
+
+    GeoLayer(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public static GeoLayer fromPath(String path) {
+        for (GeoLayer layer : values()) {
+            if (layer.path.equals(path)) {
+                return layer;
+            }
+        }
+        throw new IllegalArgumentException("Unknown layer: " + path);
+    }
+}
@@ -0,0 +1,132 @@
+package ge.devspace.simplemap.geo;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precomputed, progressively simplified copies of a geometry.
+ * <p>
+ * Level {@code i} is simplified to one 256px pixel at {@link #ZOOMS}{@code [i]}, so serving
+ * the level of the smallest such zoom at or above the requested one never moves a vertex by
+ * more than a pixel. Beyond the last zoom the full geometry is used ({@link #FULL}).
+ * The levels of one feature are stored together as a sequence of length-prefixed TWKB blobs.
+ */
+public final class LevelOfDetail {
+
+    /** Zooms the stored levels are simplified for, coarsest first. */
+    public static final int[] ZOOMS = {4, 7, 10, 13};
+
+    /** Level value meaning "no simplification". */
+    public static final int FULL = -1;
+
+    private LevelOfDetail() {
+    }
+
+    public static int forZoom(int zoom) {
+        for (int level = 0; level < ZOOMS.length; level++) {
+            if (zoom <= ZOOMS[level]) {
+                return level;
+            }
+        }
+        return FULL;
+    }
+
+    /**
+     * Coarsest level whose tolerance does not exceed {@code degrees}.
+     */
+    public static int forTolerance(double degrees) {
+        for (int level = 0; level < ZOOMS.length; level++) {
+            if (tolerance(level) <= degrees) {
+                return level;
+            }
+        }
+        return FULL;
+    }
+
+    public static double tolerance(int level) {
+        return BoundingBox.degreesPerPixel(ZOOMS[level]);
+    }
+
+    /**
+     * Encodes every level of a polygon. Interior rings that collapse at a level are dropped;
+     * when the exterior ring collapses the previous (finer) level is repeated.
+     */
+    public static byte[] encodePolygon(List<double[]> rings) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<double[]> finer = rings;
+        for (int level = ZOOMS.length - 1; level >= 0; level--) {
+            double tolerance = tolerance(level);
+            double[] exterior = Simplifier.simplifyRing(finer.get(0), tolerance);
+            if (exterior != null) {
+                List<double[]> simplified = new ArrayList<>(finer.size());
+                simplified.add(exterior);
+                for (int i = 1; i < finer.size(); i++) {
+                    double[] interior = Simplifier.simplifyRing(finer.get(i), tolerance);
+                    if (interior != null) {
+                        simplified.add(interior);
+                    }
+                }
+                finer = simplified;
+            }
+            // Written finest first; select() indexes from the coarse end
+            writeBlob(out, Twkb.polygon(finer));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes every level of a (multi) line string. Lines keep their end points at every
+     * level, so unlike rings they never collapse.
+     */
+    public static byte[] encodeLines(List<double[]> lines) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<double[]> finer = lines;
+        for (int level = ZOOMS.length - 1; level >= 0; level--) {
+            double tolerance = tolerance(level);
+            List<double[]> simplified = new ArrayList<>(finer.size());
+            for (double[] line : finer) {
+                simplified.add(Simplifier.simplifyLine(line, tolerance));
+            }
+            finer = simplified;
+            writeBlob(out, Twkb.lines(finer));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * TWKB geometry of one level, or null when {@code levels} is null or the level is {@link #FULL}.
+     */
+    public static byte[] select(byte[] levels, int level) {
+        if (levels == null || level == FULL) {
+            return null;
+        }
+        int target = ZOOMS.length - 1 - level;
+        int position = 0;
+        for (int i = 0; ; i++) {
+            long length = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = levels[position++] & 0xFF;
+                length |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b >= 0x80);
+            if (i == target) {
+                return Arrays.copyOfRange(levels, position, position + (int) length);
+            }
+            position += (int) length;
+        }
+    }
+
+    private static void writeBlob(ByteArrayOutputStream out, byte[] blob) {
+        long length = blob.length;
+        while ((length & ~0x7FL) != 0) {
+            out.write((int) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        out.write((int) length);
+        out.writeBytes(blob);
+    }
+}
@@ -0,0 +1,292 @@
+package ge.devspace.simplemap.geo;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.LongConsumer;
+
+/**
+ * Immutable Sort-Tile-Recursive packed R-tree.
+ * <p>
+ * Items and nodes live in flat primitive arrays: boxes are interleaved as
+ * {@code minX, minY, maxX, maxY} and every level is stored contiguously, leaves first.
+ * Because the tree is fully packed, the children of node {@code i} on a level are the
+ * {@code nodeSize} consecutive entries starting at {@code i * nodeSize} on the level below,
+ * so no child pointers are stored at all.
+ */
+public final class PackedRTree {
+
+    public static final int DEFAULT_NODE_SIZE = 16;
+
+    private static final PackedRTree EMPTY = new PackedRTree(new long[0], new double[0], new int[] {0}, DEFAULT_NODE_SIZE);
+
+    private final long[] ids;
+    // The same ids in ascending order, for membership tests
+    private final long[] sortedIds;
+    private final double[] boxes;
+    private final int[] levelOffsets;
+    private final int nodeSize;
+
+    private PackedRTree(long[] ids, double[] boxes, int[] levelOffsets, int nodeSize) {
+        this.ids = ids;
+        this.sortedIds = ids.clone();
+        Arrays.sort(sortedIds);
+        this.boxes = boxes;
+        this.levelOffsets = levelOffsets;
+        this.nodeSize = nodeSize;
+    }
+
+    public static PackedRTree empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Bulk-loads a tree from the first {@code count} items. {@code itemBoxes} holds four
+     * doubles per item. The input arrays are not modified.
+     */
+    public static PackedRTree build(long[] itemIds, double[] itemBoxes, int count) {
+        return build(itemIds, itemBoxes, count, DEFAULT_NODE_SIZE);
+    }
+
+    public static PackedRTree build(long[] itemIds, double[] itemBoxes, int count, int nodeSize) {
+        if (count == 0) {
+            return EMPTY;
+        }
+
+        int[] order = strOrder(itemBoxes, count, nodeSize);
+
+        int levels = 1;
+        int totalNodes = count;
+        for (int n = count; n > 1; levels++) {
+            n = (n + nodeSize - 1) / nodeSize;
+            totalNodes += n;
+        }
+        int[] levelOffsets = new int[levels + 1];
+
+        long[] ids = new long[count];
+        double[] boxes = new double[totalNodes * 4];
+        for (int i = 0; i < count; i++) {
+            int src = order[i];
+            ids[i] = itemIds[src];
+            System.arraycopy(itemBoxes, src * 4, boxes, i * 4, 4);
+        }
+
+        int levelStart = 0;
+        int levelSize = count;
+        for (int level = 0; level < levels - 1; level++) {
+            levelOffsets[level] = levelStart;
+            int parentStart = levelStart + levelSize;
+            int parentCount = (levelSize + nodeSize - 1) / nodeSize;
+            for (int p = 0; p < parentCount; p++) {
+                int first = levelStart + p * nodeSize;
+                int last = Math.min(first + nodeSize, levelStart + levelSize);
+                int target = (parentStart + p) * 4;
+                boxes[target] = Double.POSITIVE_INFINITY;
+                boxes[target + 1] = Double.POSITIVE_INFINITY;
+                boxes[target + 2] = Double.NEGATIVE_INFINITY;
+                boxes[target + 3] = Double.NEGATIVE_INFINITY;
+                for (int c = first; c < last; c++) {
+                    int source = c * 4;
+                    boxes[target] = Math.min(boxes[target], boxes[source]);
+                    boxes[target + 1] = Math.min(boxes[target + 1], boxes[source + 1]);
+                    boxes[target + 2] = Math.max(boxes[target + 2], boxes[source + 2]);
+                    boxes[target + 3] = Math.max(boxes[target + 3], boxes[source + 3]);
+                }
+            }
+            levelStart = parentStart;
+            levelSize = parentCount;
+        }
+        levelOffsets[levels - 1] = levelStart;
+        levelOffsets[levels] = totalNodes;
+
+        return new PackedRTree(ids, boxes, levelOffsets, nodeSize);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long idAt(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Whether an item with this id is in the tree.
+     */
+    public boolean contains(long id) {
+        return Arrays.binarySearch(sortedIds, id) >= 0;
+    }
+
+    /**
+     * Copies the envelope of item {@code index} into {@code target} at {@code offset}.
+     */
+    public void boxAt(int index, double[] target, int offset) {
+        System.arraycopy(boxes, index * 4, target, offset, 4);
+    }
+
+    /**
+     * Approximate heap footprint of the tree arrays in bytes.
+     */
+    public long memoryBytes() {
+        return (long) ids.length * 2 * Long.BYTES + (long) boxes.length * Double.BYTES;
+    }
+
+    /**
+     * Reports the id of every item whose envelope intersects the query window.
+     */
+    public void search(double minX, double minY, double maxX, double maxY, LongConsumer consumer) {
+        if (ids.length == 0) {
+            return;
+        }
+        int rootLevel = levelOffsets.length - 2;
+        // Each stack entry packs (level, node index within the level)
+        long[] stack = new long[rootLevel * nodeSize + 1];
+        int top = 0;
+        stack[top++] = ((long) rootLevel << 32);
+
+        while (top > 0) {
+            long entry = stack[--top];
+            int level = (int) (entry >>> 32);
+            int index = (int) entry;
+            int box = (levelOffsets[level] + index) * 4;
+            if (boxes[box] > maxX || boxes[box + 1] > maxY || boxes[box + 2] < minX || boxes[box + 3] < minY) {
+                continue;
+            }
+            if (level == 0) {
+                consumer.accept(ids[index]);
+                continue;
+            }
+            int childLevel = level - 1;
+            int childCount = levelOffsets[childLevel + 1] - levelOffsets[childLevel];
+            int first = index * nodeSize;
+            int last = Math.min(first + nodeSize, childCount);
+            for (int c = last - 1; c >= first; c--) {
+                stack[top++] = ((long) childLevel << 32) | c;
+            }
+        }
+    }
+
+    /**
+     * Receives items in order of distance; returns false to stop the search.
+     */
+    @FunctionalInterface
+    public interface NeighborVisitor {
+        boolean visit(long id, double distance);
+    }
+
+    /**
+     * Reports items in order of increasing distance from the point to their envelope (zero
+     * when the point is inside it) until the visitor stops. Best-first search: nodes are
+     * expanded in order of their own envelope distance, so only the nodes closer than the
+     * last reported item are ever opened.
+     */
+    public void nearest(double x, double y, NeighborVisitor visitor) {
+        if (ids.length == 0) {
+            return;
+        }
+        int rootLevel = levelOffsets.length - 2;
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distanceSquared));
+        queue.add(new Candidate(rootLevel, 0, distanceSquared(levelOffsets[rootLevel], x, y)));
+
+        while (!queue.isEmpty()) {
+            Candidate candidate = queue.poll();
+            if (candidate.level() == 0) {
+                if (!visitor.visit(ids[candidate.index()], Math.sqrt(candidate.distanceSquared()))) {
+                    return;
+                }
+                continue;
+            }
+            int childLevel = candidate.level() - 1;
+            int childCount = levelOffsets[childLevel + 1] - levelOffsets[childLevel];
+            int first = candidate.index() * nodeSize;
+            int last = Math.min(first + nodeSize, childCount);
+            for (int c = first; c < last; c++) {
+                queue.add(new Candidate(childLevel, c, distanceSquared(levelOffsets[childLevel] + c, x, y)));
+            }
+        }
+    }
+
+    private record Candidate(int level, int index, double distanceSquared) {
+    }
+
+    private double distanceSquared(int node, double x, double y) {
+        int box = node * 4;
+        double dx = Math.max(Math.max(boxes[box] - x, 0), x - boxes[box + 2]);
+        double dy = Math.max(Math.max(boxes[box + 1] - y, 0), y - boxes[box + 3]);
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Sort-Tile-Recursive ordering: sort by center x, cut into vertical slices of
+     * {@code sqrt(leafCount)} leaves each, then sort every slice by center y.
+     */
+    private static int[] strOrder(double[] itemBoxes, int count, int nodeSize) {
+        int[] order = new int[count];
+        double[] centerX = new double[count];
+        double[] centerY = new double[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            centerX[i] = (itemBoxes[i * 4] + itemBoxes[i * 4 + 2]) / 2;
+            centerY[i] = (itemBoxes[i * 4 + 1] + itemBoxes[i * 4 + 3]) / 2;
+        }
+
+        int leafCount = (count + nodeSize - 1) / nodeSize;
+        int sliceCount = (int) Math.ceil(Math.sqrt(leafCount));
+        int sliceSize = sliceCount * nodeSize;
+
+        sortByKey(order, centerX, 0, count - 1);
+        for (int start = 0; start < count; start += sliceSize) {
+            sortByKey(order, centerY, start, Math.min(start + sliceSize, count) - 1);
+        }
+        return order;
+    }
+
+    /**
+     * In-place quicksort of {@code order[lo..hi]} by {@code keys[order[i]]}, without boxing.
+     */
+    private static void sortByKey(int[] order, double[] keys, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            double pivot = medianOfThree(keys[order[lo]], keys[order[mid]], keys[order[hi]]);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[order[i]] < pivot) {
+                    i++;
+                }
+                while (keys[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller half to bound stack depth
+            if (j - lo < hi - i) {
+                sortByKey(order, keys, lo, j);
+                lo = i;
+            } else {
+                sortByKey(order, keys, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            int value = order[i];
+            double key = keys[value];
+            int j = i - 1;
+            while (j >= lo && keys[order[j]] > key) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = value;
+        }
+    }
+
+    private static double medianOfThree(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+}
@@ -0,0 +1,131 @@
+package ge.devspace.simplemap.geo;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of interleaved lng/lat coordinate arrays.
+ * Tolerances are in degrees and distances are measured in plain lng/lat space,
+ * which is accurate enough for picking which vertices survive at a given zoom.
+ */
+public final class Simplifier {
+
+    private Simplifier() {
+    }
+
+    /**
+     * Simplifies an open line string; the first and last vertices are always kept.
+     */
+    public static double[] simplifyLine(double[] coordinates, double tolerance) {
+        int points = coordinates.length / 2;
+        if (points <= 2 || tolerance <= 0) {
+            return coordinates;
+        }
+        boolean[] keep = new boolean[points];
+        keep[0] = keep[points - 1] = true;
+        markKept(coordinates, 0, points - 1, tolerance * tolerance, keep);
+        return collect(coordinates, keep);
+    }
+
+    /**
+     * Simplifies a closed ring. Returns null when fewer than four vertices (a triangle)
+     * would remain, i.e. the ring collapses at this tolerance.
+     */
+    public static double[] simplifyRing(double[] ring, double tolerance) {
+        int points = ring.length / 2;
+        if (points <= 4 || tolerance <= 0) {
+            return ring;
+        }
+        // Split the ring at the vertex farthest from its start, so that neither half
+        // has coincident end points and the split vertex is always kept.
+        int split = 1;
+        double farthest = -1;
+        for (int i = 1; i < points - 1; i++) {
+            double dx = ring[i * 2] - ring[0];
+            double dy = ring[i * 2 + 1] - ring[1];
+            double distance = dx * dx + dy * dy;
+            if (distance > farthest) {
+                farthest = distance;
+                split = i;
+            }
+        }
+        boolean[] keep = new boolean[points];
+        keep[0] = keep[split] = keep[points - 1] = true;
+        double squaredTolerance = tolerance * tolerance;
+        markKept(ring, 0, split, squaredTolerance, keep);
+        markKept(ring, split, points - 1, squaredTolerance, keep);
+        double[] simplified = collect(ring, keep);
+        return simplified.length < 8 ? null : simplified;
+    }
+
+    /**
+     * Iterative Douglas-Peucker over [first, last], using an explicit stack so that
+     * long rings cannot overflow the call stack.
+     */
+    private static void markKept(double[] coordinates, int first, int last, double squaredTolerance, boolean[] keep) {
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = first;
+        stack[top++] = last;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            int index = -1;
+            double maxDistance = squaredTolerance;
+            for (int i = start + 1; i < end; i++) {
+                double distance = squaredSegmentDistance(coordinates, i, start, end);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = i;
+                }
+            }
+            if (index >= 0) {
+                keep[index] = true;
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = start;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = end;
+            }
+        }
+    }
+
+    private static double squaredSegmentDistance(double[] coordinates, int point, int start, int end) {
+        double x = coordinates[start * 2];
+        double y = coordinates[start * 2 + 1];
+        double dx = coordinates[end * 2] - x;
+        double dy = coordinates[end * 2 + 1] - y;
+        if (dx != 0 || dy != 0) {
+            double t = ((coordinates[point * 2] - x) * dx + (coordinates[point * 2 + 1] - y) * dy) / (dx * dx + dy * dy);
+            if (t > 1) {
+                x = coordinates[end * 2];
+                y = coordinates[end * 2 + 1];
+            } else if (t > 0) {
+                x += dx * t;
+                y += dy * t;
+            }
+        }
+        dx = coordinates[point * 2] - x;
+        dy = coordinates[point * 2 + 1] - y;
+        return dx * dx + dy * dy;
+    }
+
+    private static double[] collect(double[] coordinates, boolean[] keep) {
+        int count = 0;
+        for (boolean kept : keep) {
+            if (kept) {
+                count++;
+            }
+        }
+        double[] result = new double[count * 2];
+        int offset = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                result[offset++] = coordinates[i * 2];
+                result[offset++] = coordinates[i * 2 + 1];
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,296 @@
+package ge.devspace.simplemap.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Read-optimised spatial index: a bulk-loaded {@link PackedRTree} plus a small
+ * write overlay. Writes go to the overlay (new envelopes) and a tombstone set
+ * (ids of the packed tree that were replaced or removed); once the overlay grows past a fraction of
+ * the tree, but at most a few thousand entries since it is scanned linearly, it is merged into
+ * a freshly packed tree.
+ * <p>
+ * A full {@link #load} from data read over a longer time is bracketed by {@link #beginLoad}:
+ * writes made in between are logged and replayed onto the loaded items, so a write that
+ * the read missed is not lost when the new tree replaces the old one.
+ */
+public class SpatialIndex {
+
+    private static final int MIN_REBUILD_THRESHOLD = 1024;
+    private static final int MAX_REBUILD_THRESHOLD = 4096;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private PackedRTree tree = PackedRTree.empty();
+    private final LongHashSet tombstones = new LongHashSet();
+
+    private long[] overlayIds = new long[16];
+    private double[] overlayBoxes = new double[16 * 4];
+    private int overlaySize;
+
+    private long generation;
+
+    // Writes since beginLoad(), replayed by the next load(); null when no load is in progress
+    private List<Write> loadWrites;
+
+    private record Write(long id, BoundingBox box) {
+    }
+
+    /**
+     * Starts logging writes for the next {@link #load}. Call it before reading the items to load.
+     */
+    public void beginLoad() {
+        lock.writeLock().lock();
+        try {
+            loadWrites = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the write log of a load that will not happen, e.g. because reading the items failed.
+     */
+    public void abortLoad() {
+        lock.writeLock().lock();
+        try {
+            loadWrites = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole index with the given items and starts a new generation. Writes
+     * logged since {@link #beginLoad} are applied on top; replaying one the items already
+     * contain is harmless.
+     */
+    public void load(long[] ids, double[] boxes, int count) {
+        PackedRTree packed = PackedRTree.build(ids, boxes, count);
+        lock.writeLock().lock();
+        try {
+            tree = packed;
+            tombstones.clear();
+            overlaySize = 0;
+            generation++;
+            List<Write> writes = loadWrites;
+            loadWrites = null;
+            if (writes != null) {
+                for (Write write : writes) {
+                    if (write.box() == null) {
+                        applyRemove(write.id());
+                    } else {
+                        applyPut(write.id(), write.box());
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(long id, BoundingBox box) {
+        lock.writeLock().lock();
+        try {
+            log(id, box);
+            applyPut(id, box);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            log(id, null);
+            applyRemove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void search(BoundingBox window, LongConsumer consumer) {
+        search(window.minLng(), window.minLat(), window.maxLng(), window.maxLat(), consumer);
+    }
+
+    public void search(double minX, double minY, double maxX, double maxY, LongConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            if (tombstones.isEmpty()) {
+                tree.search(minX, minY, maxX, maxY, consumer);
+            } else {
+                tree.search(minX, minY, maxX, maxY, id -> {
+                    if (!tombstones.contains(id)) {
+                        consumer.accept(id);
+                    }
+                });
+            }
+            for (int i = 0; i < overlaySize; i++) {
+                int offset = i * 4;
+                if (overlayBoxes[offset] <= maxX && overlayBoxes[offset + 1] <= maxY
+                        && overlayBoxes[offset + 2] >= minX && overlayBoxes[offset + 3] >= minY) {
+                    consumer.accept(overlayIds[i]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of all features whose envelope contains the point.
+     */
+    public void containing(double x, double y, LongConsumer consumer) {
+        search(x, y, x, y, consumer);
+    }
+
+    /**
+     * Ids of the {@code limit} features nearest to the point by envelope distance, nearest first.
+     */
+    public long[] nearest(double x, double y, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Neighbor> neighbors = new ArrayList<>();
+            tree.nearest(x, y, (id, distance) -> {
+                if (!tombstones.contains(id)) {
+                    neighbors.add(new Neighbor(id, distance));
+                }
+                return neighbors.size() < limit;
+            });
+            // Overlay entries compete with the nearest ones from the packed tree
+            for (int i = 0; i < overlaySize; i++) {
+                int offset = i * 4;
+                double dx = Math.max(Math.max(overlayBoxes[offset] - x, 0), x - overlayBoxes[offset + 2]);
+                double dy = Math.max(Math.max(overlayBoxes[offset + 1] - y, 0), y - overlayBoxes[offset + 3]);
+                neighbors.add(new Neighbor(overlayIds[i], Math.sqrt(dx * dx + dy * dy)));
+            }
+            neighbors.sort(Comparator.comparingDouble(Neighbor::distance));
+            return neighbors.stream().limit(limit).mapToLong(Neighbor::id).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private record Neighbor(long id, double distance) {
+    }
+
+    /**
+     * Bumped by every full {@link #load}; incremental writes keep the generation.
+     */
+    public long getGeneration() {
+        lock.readLock().lock();
+        try {
+            return generation;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            // Exact: every tombstone hides one packed item, and the overlay holds each id once
+            return tree.size() - tombstones.size() + overlaySize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return tree.memoryBytes() + (long) overlayIds.length * Long.BYTES + (long) overlayBoxes.length * Double.BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int overlaySize() {
+        lock.readLock().lock();
+        try {
+            return overlaySize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void log(long id, BoundingBox box) {
+        if (loadWrites != null) {
+            loadWrites.add(new Write(id, box));
+        }
+    }
+
+    private void applyPut(long id, BoundingBox box) {
+        removeFromOverlay(id);
+        shadow(id);
+        if (overlaySize == overlayIds.length) {
+            overlayIds = Arrays.copyOf(overlayIds, overlaySize * 2);
+            overlayBoxes = Arrays.copyOf(overlayBoxes, overlaySize * 2 * 4);
+        }
+        overlayIds[overlaySize] = id;
+        int offset = overlaySize * 4;
+        overlayBoxes[offset] = box.minLng();
+        overlayBoxes[offset + 1] = box.minLat();
+        overlayBoxes[offset + 2] = box.maxLng();
+        overlayBoxes[offset + 3] = box.maxLat();
+        overlaySize++;
+        rebuildIfNeeded();
+    }
+
+    private void applyRemove(long id) {
+        removeFromOverlay(id);
+        shadow(id);
+        rebuildIfNeeded();
+    }
+
+    /**
+     * Tombstones the id only if the packed tree has it, so that tombstones count packed items.
+     */
+    private void shadow(long id) {
+        if (tree.contains(id)) {
+            tombstones.add(id);
+        }
+    }
+
+    private void removeFromOverlay(long id) {
+        for (int i = 0; i < overlaySize; i++) {
+            if (overlayIds[i] == id) {
+                int last = overlaySize - 1;
+                overlayIds[i] = overlayIds[last];
+                System.arraycopy(overlayBoxes, last * 4, overlayBoxes, i * 4, 4);
+                overlaySize--;
+                return;
+            }
+        }
+    }
+
+    private void rebuildIfNeeded() {
+        int threshold = Math.min(MAX_REBUILD_THRESHOLD, Math.max(MIN_REBUILD_THRESHOLD, tree.size() / 8));
+        if (overlaySize + tombstones.size() < threshold) {
+            return;
+        }
+        int capacity = tree.size() + overlaySize;
+        long[] ids = new long[capacity];
+        double[] boxes = new double[capacity * 4];
+        int count = 0;
+        for (int i = 0; i < tree.size(); i++) {
+            long id = tree.idAt(i);
+            if (!tombstones.contains(id)) {
+                ids[count] = id;
+                tree.boxAt(i, boxes, count * 4);
+                count++;
+            }
+        }
+        System.arraycopy(overlayIds, 0, ids, count, overlaySize);
+        System.arraycopy(overlayBoxes, 0, boxes, count * 4, overlaySize * 4);
+        count += overlaySize;
+
+        tree = PackedRTree.build(ids, boxes, count);
+        tombstones.clear();
+        overlaySize = 0;
+    }
+}
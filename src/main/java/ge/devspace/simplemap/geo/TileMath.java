@@ -0,0 +1,61 @@
+package ge.devspace.simplemap.geo;
+
+/**
+ * Web-mercator (EPSG:3857) XYZ tile arithmetic.
+ */
+public final class TileMath {
+
+    public static final int MAX_ZOOM = 22;
+
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    private TileMath() {
+    }
+
+    public static boolean isValid(int z, int x, int y) {
+        if (z < 0 || z > MAX_ZOOM) {
+            return false;
+        }
+        int tiles = 1 << z;
+        return x >= 0 && x < tiles && y >= 0 && y < tiles;
+    }
+
+    /**
+     * Geographic envelope of a tile.
+     */
+    public static BoundingBox tileBounds(int z, int x, int y) {
+        return new BoundingBox(tileToLng(x, z), tileToLat(y + 1, z), tileToLng(x + 1, z), tileToLat(y, z));
+    }
+
+    /**
+     * Longitude to a fractional position in world tile units (0..2^z).
+     */
+    public static double lngToTileX(double lng, int z) {
+        return (lng + 180.0) / 360.0 * (1 << z);
+    }
+
+    /**
+     * Latitude to a fractional position in world tile units (0..2^z), y growing southwards.
+     */
+    public static double latToTileY(double lat, int z) {
+        double clamped = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat));
+        double sin = Math.sin(Math.toRadians(clamped));
+        return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * (1 << z);
+    }
+
+    public static double tileToLng(double x, int z) {
+        return x / (1 << z) * 360.0 - 180.0;
+    }
+
+    public static double tileToLat(double y, int z) {
+        double n = Math.PI - 2.0 * Math.PI * y / (1 << z);
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    /**
+     * Whether the tile's envelope intersects the box.
+     */
+    public static boolean intersects(int z, int x, int y, BoundingBox box) {
+        return tileBounds(z, x, y).intersects(box);
+    }
+}
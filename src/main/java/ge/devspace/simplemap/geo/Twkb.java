@@ -0,0 +1,279 @@
+package ge.devspace.simplemap.geo;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tiny Well-Known Binary (TWKB) codec for 2D geometries.
+ * <p>
+ * Coordinates are scaled to integers at {@link #PRECISION} decimal places and stored
+ * as zig-zag varint deltas from the previous vertex, typically 3-6 bytes per vertex
+ * instead of 16 for WKB. The format is read natively by PostGIS ({@code ST_GeomFromTWKB}).
+ * Parts are rings for polygons and line strings for (multi)line strings, each given as
+ * interleaved lng/lat pairs.
+ */
+public final class Twkb {
+
+    /** Decimal places kept, about 1cm at the equator. */
+    public static final int PRECISION = 7;
+
+    public static final int POINT = 1;
+    public static final int LINESTRING = 2;
+    public static final int POLYGON = 3;
+    public static final int MULTILINESTRING = 5;
+
+    private static final int FLAG_BBOX = 0x01;
+    private static final int FLAG_SIZE = 0x02;
+    private static final int FLAG_ID_LIST = 0x04;
+    private static final int FLAG_EXTENDED_DIMENSIONS = 0x08;
+    private static final int FLAG_EMPTY = 0x10;
+
+    private static final double SCALE = Math.pow(10, PRECISION);
+
+    /**
+     * Receives the vertices of a decoded geometry part by part.
+     */
+    public interface PartVisitor {
+        void startPart(int pointCount);
+
+        void point(double lng, double lat);
+
+        default void endPart() {
+        }
+    }
+
+    private Twkb() {
+    }
+
+    public static byte[] point(double lng, double lat) {
+        Writer writer = new Writer(POINT);
+        writer.writePoint(lng, lat);
+        return writer.toByteArray();
+    }
+
+    public static byte[] polygon(List<double[]> rings) {
+        Writer writer = new Writer(POLYGON);
+        writer.writeUnsigned(rings.size());
+        for (double[] ring : rings) {
+            writer.writePart(ring);
+        }
+        return writer.toByteArray();
+    }
+
+    public static byte[] lineString(double[] coordinates) {
+        Writer writer = new Writer(LINESTRING);
+        writer.writePart(coordinates);
+        return writer.toByteArray();
+    }
+
+    public static byte[] multiLineString(List<double[]> lines) {
+        Writer writer = new Writer(MULTILINESTRING);
+        writer.writeUnsigned(lines.size());
+        for (double[] line : lines) {
+            writer.writePart(line);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * A LineString for a single line, otherwise a MultiLineString.
+     */
+    public static byte[] lines(List<double[]> lines) {
+        return lines.size() == 1 ? lineString(lines.get(0)) : multiLineString(lines);
+    }
+
+    public static int type(byte[] twkb) {
+        return twkb[0] & 0x0F;
+    }
+
+    /**
+     * Rounds a coordinate to the precision it will have after a TWKB round trip.
+     */
+    public static double quantize(double value) {
+        return Math.round(value * SCALE) / SCALE;
+    }
+
+    /**
+     * Streams the parts of a point, line string, polygon or multi line string.
+     */
+    public static void read(byte[] twkb, PartVisitor visitor) {
+        Reader reader = new Reader(twkb);
+        int type = reader.type;
+        if (reader.empty) {
+            return;
+        }
+        switch (type) {
+            case POINT -> {
+                visitor.startPart(1);
+                reader.readPoint(visitor);
+                visitor.endPart();
+            }
+            case LINESTRING -> reader.readPart(visitor);
+            case POLYGON, MULTILINESTRING -> {
+                int parts = (int) reader.readUnsigned();
+                if (type == MULTILINESTRING && reader.hasIdList) {
+                    for (int i = 0; i < parts; i++) {
+                        reader.readSigned();
+                    }
+                }
+                for (int i = 0; i < parts; i++) {
+                    reader.readPart(visitor);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unsupported TWKB geometry type: " + type);
+        }
+    }
+
+    /**
+     * Decodes every part into an interleaved lng/lat array.
+     */
+    public static List<double[]> parts(byte[] twkb) {
+        List<double[]> parts = new ArrayList<>();
+        read(twkb, new PartVisitor() {
+            private double[] current;
+            private int size;
+
+            @Override
+            public void startPart(int pointCount) {
+                current = new double[pointCount * 2];
+                size = 0;
+            }
+
+            @Override
+            public void point(double lng, double lat) {
+                current[size++] = lng;
+                current[size++] = lat;
+            }
+
+            @Override
+            public void endPart() {
+                parts.add(current);
+            }
+        });
+        return parts;
+    }
+
+    private static final class Writer {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private long lastX;
+        private long lastY;
+
+        Writer(int type) {
+            out.write((zigZag(PRECISION) << 4) | type);
+            out.write(0);
+        }
+
+        void writePart(double[] coordinates) {
+            int points = coordinates.length / 2;
+            writeUnsigned(points);
+            for (int i = 0; i < points; i++) {
+                writePoint(coordinates[i * 2], coordinates[i * 2 + 1]);
+            }
+        }
+
+        void writePoint(double lng, double lat) {
+            long x = Math.round(lng * SCALE);
+            long y = Math.round(lat * SCALE);
+            writeSigned(x - lastX);
+            writeSigned(y - lastY);
+            lastX = x;
+            lastY = y;
+        }
+
+        void writeSigned(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+
+        void writeUnsigned(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private static int zigZag(int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+        private final int type;
+        private final double divisor;
+        private final boolean empty;
+        private final boolean hasIdList;
+        private long lastX;
+        private long lastY;
+
+        Reader(byte[] data) {
+            if (data == null || data.length < 2) {
+                throw new IllegalArgumentException("TWKB geometry is truncated");
+            }
+            this.data = data;
+            int header = data[0] & 0xFF;
+            int metadata = data[1] & 0xFF;
+            position = 2;
+            type = header & 0x0F;
+            int zigZagPrecision = header >>> 4;
+            int precision = (zigZagPrecision >>> 1) ^ -(zigZagPrecision & 1);
+            divisor = Math.pow(10, precision);
+            if ((metadata & FLAG_EXTENDED_DIMENSIONS) != 0) {
+                throw new IllegalArgumentException("Only 2D TWKB geometries are supported");
+            }
+            if ((metadata & FLAG_SIZE) != 0) {
+                readUnsigned();
+            }
+            if ((metadata & FLAG_BBOX) != 0) {
+                for (int i = 0; i < 4; i++) {
+                    readSigned();
+                }
+            }
+            hasIdList = (metadata & FLAG_ID_LIST) != 0;
+            empty = (metadata & FLAG_EMPTY) != 0;
+        }
+
+        void readPart(PartVisitor visitor) {
+            int points = (int) readUnsigned();
+            visitor.startPart(points);
+            for (int i = 0; i < points; i++) {
+                readPoint(visitor);
+            }
+            visitor.endPart();
+        }
+
+        void readPoint(PartVisitor visitor) {
+            lastX += readSigned();
+            lastY += readSigned();
+            // Dividing (rather than multiplying by 10^-p) returns 44.79, not 44.790000000000006
+            visitor.point(lastX / divisor, lastY / divisor);
+        }
+
+        long readSigned() {
+            long value = readUnsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readUnsigned() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                if (position >= data.length) {
+                    throw new IllegalArgumentException("TWKB geometry is truncated");
+                }
+                int b = data[position++] & 0xFF;
+                result |= (long) (b & 0x7F) << shift;
+                if (b < 0x80) {
+                    return result;
+                }
+                shift += 7;
+            }
+        }
+    }
+}
@@ -0,0 +1,564 @@
+package ge.devspace.simplemap.geo;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes one layer of a Mapbox Vector Tile (spec 2.1) for a single z/x/y tile.
+ * <p>
+ * Geometry is given in EPSG:4326, projected to web-mercator tile space, clipped to
+ * the tile plus a pixel buffer and quantised to the integer tile extent. Features
+ * that end up with no geometry inside the tile are dropped.
+ */
+public class VectorTileEncoder {
+
+    public static final int DEFAULT_EXTENT = 4096;
+    public static final int DEFAULT_BUFFER = 64;
+
+    private static final int CMD_MOVE_TO = 1;
+    private static final int CMD_LINE_TO = 2;
+    private static final int CMD_CLOSE_PATH = 7;
+
+    private static final int GEOM_POINT = 1;
+    private static final int GEOM_LINESTRING = 2;
+    private static final int GEOM_POLYGON = 3;
+
+    private final String layerName;
+    private final int z;
+    private final int x;
+    private final int y;
+    private final int extent;
+    private final double clipMin;
+    private final double clipMax;
+
+    private final Map<String, Integer> keys = new HashMap<>();
+    private final List<String> keyList = new ArrayList<>();
+    private final Map<Object, Integer> values = new HashMap<>();
+    private final List<Object> valueList = new ArrayList<>();
+    private final ByteArrayOutputStream features = new ByteArrayOutputStream();
+    private int featureCount;
+
+    public VectorTileEncoder(String layerName, int z, int x, int y) {
+        this(layerName, z, x, y, DEFAULT_EXTENT, DEFAULT_BUFFER);
+    }
+
+    public VectorTileEncoder(String layerName, int z, int x, int y, int extent, int buffer) {
+        this.layerName = layerName;
+        this.z = z;
+        this.x = x;
+        this.y = y;
+        this.extent = extent;
+        this.clipMin = -buffer;
+        this.clipMax = extent + buffer;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    public void addPoint(long id, double lng, double lat, Map<String, Object> properties) {
+        double px = projectX(lng);
+        double py = projectY(lat);
+        if (px < clipMin || px > clipMax || py < clipMin || py > clipMax) {
+            return;
+        }
+        GeometryCommands geometry = new GeometryCommands();
+        geometry.moveTo(Math.round(px), Math.round(py));
+        addFeature(id, GEOM_POINT, geometry, properties);
+    }
+
+    /**
+     * @param coordinates interleaved lng/lat pairs
+     */
+    public void addLineString(long id, double[] coordinates, Map<String, Object> properties) {
+        addLineString(id, List.of(coordinates), properties);
+    }
+
+    /**
+     * Adds a (multi) line string as one feature.
+     *
+     * @param lines each line as interleaved lng/lat pairs
+     */
+    public void addLineString(long id, List<double[]> lines, Map<String, Object> properties) {
+        GeometryCommands geometry = new GeometryCommands();
+        for (double[] line : lines) {
+            addLine(geometry, line);
+        }
+        if (!geometry.isEmpty()) {
+            addFeature(id, GEOM_LINESTRING, geometry, properties);
+        }
+    }
+
+    private void addLine(GeometryCommands geometry, double[] coordinates) {
+        int points = coordinates.length / 2;
+        if (points < 2) {
+            return;
+        }
+        double[] projected = project(coordinates);
+        LongPath part = new LongPath();
+        for (int i = 0; i < points - 1; i++) {
+            double[] segment = clipSegment(projected[i * 2], projected[i * 2 + 1], projected[i * 2 + 2], projected[i * 2 + 3]);
+            if (segment == null) {
+                geometry.lineString(part);
+                part.clear();
+                continue;
+            }
+            long ax = Math.round(segment[0]);
+            long ay = Math.round(segment[1]);
+            if (part.isEmpty() || part.lastX() != ax || part.lastY() != ay) {
+                geometry.lineString(part);
+                part.clear();
+                part.add(ax, ay);
+            }
+            part.add(Math.round(segment[2]), Math.round(segment[3]));
+            if (segment[4] != 0) {
+                // The segment left the clip window: close this part
+                geometry.lineString(part);
+                part.clear();
+            }
+        }
+        geometry.lineString(part);
+    }
+
+    /**
+     * @param rings exterior ring first, then holes; each ring as interleaved lng/lat pairs
+     */
+    public void addPolygon(long id, List<double[]> rings, Map<String, Object> properties) {
+        GeometryCommands geometry = new GeometryCommands();
+        boolean exterior = true;
+        for (double[] ring : rings) {
+            double[] clipped = clipRing(project(ring));
+            LongPath path = new LongPath();
+            for (int i = 0; i + 1 < clipped.length; i += 2) {
+                path.addDistinct(Math.round(clipped[i]), Math.round(clipped[i + 1]));
+            }
+            if (path.size() > 1 && path.lastX() == path.x(0) && path.lastY() == path.y(0)) {
+                path.removeLast();
+            }
+            if (path.size() < 3 || path.signedArea() == 0) {
+                if (exterior) {
+                    // Without an exterior ring the holes are meaningless
+                    return;
+                }
+                continue;
+            }
+            // MVT wants exterior rings with positive area (clockwise with y down), holes negative
+            if ((path.signedArea() > 0) != exterior) {
+                path.reverse();
+            }
+            geometry.ring(path);
+            exterior = false;
+        }
+        if (!geometry.isEmpty()) {
+            addFeature(id, GEOM_POLYGON, geometry, properties);
+        }
+    }
+
+    /**
+     * Serialises the tile containing this single layer.
+     */
+    public byte[] encode() {
+        ProtoWriter layer = new ProtoWriter();
+        layer.writeUInt32(15, 2);
+        layer.writeString(1, layerName);
+        layer.writeRaw(features.toByteArray());
+        for (String key : keyList) {
+            layer.writeString(3, key);
+        }
+        for (Object value : valueList) {
+            layer.writeMessage(4, encodeValue(value));
+        }
+        layer.writeUInt32(5, extent);
+
+        ProtoWriter tile = new ProtoWriter();
+        tile.writeMessage(3, layer.toByteArray());
+        return tile.toByteArray();
+    }
+
+    private void addFeature(long id, int type, GeometryCommands geometry, Map<String, Object> properties) {
+        ProtoWriter feature = new ProtoWriter();
+        feature.writeUInt64(1, id);
+        List<Integer> tags = new ArrayList<>();
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            if (property.getValue() == null) {
+                continue;
+            }
+            tags.add(keys.computeIfAbsent(property.getKey(), key -> {
+                keyList.add(key);
+                return keyList.size() - 1;
+            }));
+            tags.add(values.computeIfAbsent(normalizeValue(property.getValue()), value -> {
+                valueList.add(value);
+                return valueList.size() - 1;
+            }));
+        }
+        feature.writePacked(2, tags);
+        feature.writeUInt32(3, type);
+        feature.writePacked(4, geometry.commands);
+
+        ProtoWriter wrapper = new ProtoWriter();
+        wrapper.writeMessage(2, feature.toByteArray());
+        features.writeBytes(wrapper.toByteArray());
+        featureCount++;
+    }
+
+    private static Object normalizeValue(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof Long || value instanceof Double || value instanceof Boolean) {
+            return value;
+        }
+        return value.toString();
+    }
+
+    private static byte[] encodeValue(Object value) {
+        ProtoWriter writer = new ProtoWriter();
+        if (value instanceof String text) {
+            writer.writeString(1, text);
+        } else if (value instanceof Double number) {
+            writer.writeDouble(3, number);
+        } else if (value instanceof Long number) {
+            writer.writeSInt64(6, number);
+        } else if (value instanceof Boolean flag) {
+            writer.writeUInt32(7, flag ? 1 : 0);
+        }
+        return writer.toByteArray();
+    }
+
+    private double projectX(double lng) {
+        return (TileMath.lngToTileX(lng, z) - x) * extent;
+    }
+
+    private double projectY(double lat) {
+        return (TileMath.latToTileY(lat, z) - y) * extent;
+    }
+
+    private double[] project(double[] coordinates) {
+        double[] projected = new double[coordinates.length];
+        for (int i = 0; i + 1 < coordinates.length; i += 2) {
+            projected[i] = projectX(coordinates[i]);
+            projected[i + 1] = projectY(coordinates[i + 1]);
+        }
+        return projected;
+    }
+
+    /**
+     * Liang-Barsky clip of one segment against the buffered tile window.
+     *
+     * @return {x0, y0, x1, y1, exited} or null when the segment is outside;
+     *         {@code exited} is 1 when the segment end was cut off
+     */
+    private double[] clipSegment(double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double t0 = 0;
+        double t1 = 1;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {x0 - clipMin, clipMax - x0, y0 - clipMin, clipMax - y0};
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return null;
+                }
+                continue;
+            }
+            double t = q[i] / p[i];
+            if (p[i] < 0) {
+                if (t > t1) {
+                    return null;
+                }
+                t0 = Math.max(t0, t);
+            } else {
+                if (t < t0) {
+                    return null;
+                }
+                t1 = Math.min(t1, t);
+            }
+        }
+        return new double[] {x0 + t0 * dx, y0 + t0 * dy, x0 + t1 * dx, y0 + t1 * dy, t1 < 1 ? 1 : 0};
+    }
+
+    /**
+     * Sutherland-Hodgman clip of a closed ring against the buffered tile window.
+     */
+    private double[] clipRing(double[] ring) {
+        double[] result = ring;
+        for (int edge = 0; edge < 4 && result.length >= 6; edge++) {
+            result = clipRingEdge(result, edge);
+        }
+        return result;
+    }
+
+    private double[] clipRingEdge(double[] ring, int edge) {
+        int points = ring.length / 2;
+        double[] out = new double[(points * 2 + 2) * 2];
+        int size = 0;
+        for (int i = 0; i < points; i++) {
+            double cx = ring[i * 2];
+            double cy = ring[i * 2 + 1];
+            int prev = (i + points - 1) % points;
+            double px = ring[prev * 2];
+            double py = ring[prev * 2 + 1];
+            boolean currentInside = inside(cx, cy, edge);
+            boolean previousInside = inside(px, py, edge);
+            if (currentInside != previousInside) {
+                double[] hit = intersect(px, py, cx, cy, edge);
+                out[size++] = hit[0];
+                out[size++] = hit[1];
+            }
+            if (currentInside) {
+                out[size++] = cx;
+                out[size++] = cy;
+            }
+        }
+        double[] clipped = new double[size];
+        System.arraycopy(out, 0, clipped, 0, size);
+        return clipped;
+    }
+
+    private boolean inside(double px, double py, int edge) {
+        return switch (edge) {
+            case 0 -> px >= clipMin;
+            case 1 -> px <= clipMax;
+            case 2 -> py >= clipMin;
+            default -> py <= clipMax;
+        };
+    }
+
+    private double[] intersect(double x0, double y0, double x1, double y1, int edge) {
+        double bound = (edge == 0 || edge == 2) ? clipMin : clipMax;
+        if (edge < 2) {
+            double t = (bound - x0) / (x1 - x0);
+            return new double[] {bound, y0 + t * (y1 - y0)};
+        }
+        double t = (bound - y0) / (y1 - y0);
+        return new double[] {x0 + t * (x1 - x0), bound};
+    }
+
+    /**
+     * Accumulates MVT geometry commands, tracking the cursor across parts and rings.
+     */
+    private static final class GeometryCommands {
+        private final List<Integer> commands = new ArrayList<>();
+        private long cursorX;
+        private long cursorY;
+
+        boolean isEmpty() {
+            return commands.isEmpty();
+        }
+
+        void moveTo(long px, long py) {
+            commands.add(command(CMD_MOVE_TO, 1));
+            delta(px, py);
+        }
+
+        void lineString(LongPath path) {
+            path.dropConsecutiveDuplicates();
+            if (path.size() < 2) {
+                return;
+            }
+            moveTo(path.x(0), path.y(0));
+            commands.add(command(CMD_LINE_TO, path.size() - 1));
+            for (int i = 1; i < path.size(); i++) {
+                delta(path.x(i), path.y(i));
+            }
+        }
+
+        void ring(LongPath path) {
+            moveTo(path.x(0), path.y(0));
+            commands.add(command(CMD_LINE_TO, path.size() - 1));
+            for (int i = 1; i < path.size(); i++) {
+                delta(path.x(i), path.y(i));
+            }
+            commands.add(command(CMD_CLOSE_PATH, 1));
+        }
+
+        private void delta(long px, long py) {
+            commands.add(zigZag(px - cursorX));
+            commands.add(zigZag(py - cursorY));
+            cursorX = px;
+            cursorY = py;
+        }
+
+        private static int command(int id, int count) {
+            return (id & 0x7) | (count << 3);
+        }
+
+        private static int zigZag(long n) {
+            return (int) ((n << 1) ^ (n >> 63));
+        }
+    }
+
+    /**
+     * Growable path of integer tile coordinates.
+     */
+    private static final class LongPath {
+        private long[] coords = new long[32];
+        private int size;
+
+        void add(long px, long py) {
+            if ((size + 1) * 2 > coords.length) {
+                long[] grown = new long[coords.length * 2];
+                System.arraycopy(coords, 0, grown, 0, size * 2);
+                coords = grown;
+            }
+            coords[size * 2] = px;
+            coords[size * 2 + 1] = py;
+            size++;
+        }
+
+        void addDistinct(long px, long py) {
+            if (size == 0 || lastX() != px || lastY() != py) {
+                add(px, py);
+            }
+        }
+
+        void dropConsecutiveDuplicates() {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (kept > 0 && coords[i * 2] == coords[(kept - 1) * 2] && coords[i * 2 + 1] == coords[(kept - 1) * 2 + 1]) {
+                    continue;
+                }
+                coords[kept * 2] = coords[i * 2];
+                coords[kept * 2 + 1] = coords[i * 2 + 1];
+                kept++;
+            }
+            size = kept;
+        }
+
+        void removeLast() {
+            size--;
+        }
+
+        void reverse() {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                long tx = coords[i * 2];
+                long ty = coords[i * 2 + 1];
+                coords[i * 2] = coords[j * 2];
+                coords[i * 2 + 1] = coords[j * 2 + 1];
+                coords[j * 2] = tx;
+                coords[j * 2 + 1] = ty;
+            }
+        }
+
+        long signedArea() {
+            long area = 0;
+            for (int i = 0; i < size; i++) {
+                int j = (i + 1) % size;
+                area += coords[i * 2] * coords[j * 2 + 1] - coords[j * 2] * coords[i * 2 + 1];
+            }
+            return area;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long x(int i) {
+            return coords[i * 2];
+        }
+
+        long y(int i) {
+            return coords[i * 2 + 1];
+        }
+
+        long lastX() {
+            return coords[(size - 1) * 2];
+        }
+
+        long lastY() {
+            return coords[(size - 1) * 2 + 1];
+        }
+    }
+
+    /**
+     * Just enough of the protobuf wire format for vector tiles.
+     */
+    private static final class ProtoWriter {
+        private static final int WIRE_VARINT = 0;
+        private static final int WIRE_FIXED64 = 1;
+        private static final int WIRE_LENGTH_DELIMITED = 2;
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        void writeUInt32(int field, int value) {
+            writeTag(field, WIRE_VARINT);
+            writeVarint(value & 0xFFFFFFFFL);
+        }
+
+        void writeUInt64(int field, long value) {
+            writeTag(field, WIRE_VARINT);
+            writeVarint(value);
+        }
+
+        void writeSInt64(int field, long value) {
+            writeTag(field, WIRE_VARINT);
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeDouble(int field, double value) {
+            writeTag(field, WIRE_FIXED64);
+            long bits = Double.doubleToLongBits(value);
+            for (int i = 0; i < 8; i++) {
+                out.write((int) (bits >>> (8 * i)) & 0xFF);
+            }
+        }
+
+        void writeString(int field, String value) {
+            writeMessage(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeMessage(int field, byte[] bytes) {
+            writeTag(field, WIRE_LENGTH_DELIMITED);
+            writeVarint(bytes.length);
+            out.writeBytes(bytes);
+        }
+
+        void writePacked(int field, List<Integer> values) {
+            if (values.isEmpty()) {
+                return;
+            }
+            ProtoWriter packed = new ProtoWriter();
+            for (int value : values) {
+                packed.writeVarint(value & 0xFFFFFFFFL);
+            }
+            writeMessage(field, packed.toByteArray());
+        }
+
+        void writeRaw(byte[] bytes) {
+            out.writeBytes(bytes);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private void writeTag(int field, int wireType) {
+            writeVarint(((long) field << 3) | wireType);
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+}
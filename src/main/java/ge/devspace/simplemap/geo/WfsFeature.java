@@ -0,0 +1,10 @@
+package ge.devspace.simplemap.geo;
+
+import java.util.Map;
+
+/**
+ * A feature as sent to a WFS-T endpoint: its layer, id, attribute values in schema
+ * order (null where a value is missing) and a TWKB point, line string or polygon geometry.
+ */
+public record WfsFeature(GeoLayer layer, long id, Map<String, Object> properties, byte[] geometry) {
+}
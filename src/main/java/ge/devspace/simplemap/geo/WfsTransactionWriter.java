@@ -0,0 +1,218 @@
+package ge.devspace.simplemap.geo;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Streams a WFS 1.1.0 {@code wfs:Transaction} with GML 3 geometries straight to an output stream.
+ * Any number of Insert, Update and Delete operations can be written between construction
+ * and {@link #close()}; nothing is buffered beyond the XML writer itself.
+ * <p>
+ * Geometries are written in lng/lat order as {@code gml:pos} / {@code gml:posList}, with
+ * {@code srsName="EPSG:4326"}, which GeoServer reads as x/y.
+ */
+public class WfsTransactionWriter implements AutoCloseable {
+
+    public static final String WFS_NAMESPACE = "http://www.opengis.net/wfs";
+    public static final String GML_NAMESPACE = "http://www.opengis.net/gml";
+    public static final String OGC_NAMESPACE = "http://www.opengis.net/ogc";
+
+    private static final String SRS_NAME = "EPSG:4326";
+    private static final String GEOMETRY_PROPERTY = "geom";
+    private static final String ID_PROPERTY = "id";
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    private final XMLStreamWriter xml;
+    private final String prefix;
+    private final String namespace;
+    private final StringBuilder positions = new StringBuilder(256);
+
+    /**
+     * @param prefix    prefix of the feature type namespace, e.g. the GeoServer workspace name
+     * @param namespace URI of the feature type namespace
+     */
+    public WfsTransactionWriter(OutputStream out, String prefix, String namespace) throws XMLStreamException {
+        this.prefix = prefix;
+        this.namespace = namespace;
+        xml = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeStartElement("wfs", "Transaction", WFS_NAMESPACE);
+        xml.writeNamespace("wfs", WFS_NAMESPACE);
+        xml.writeNamespace("gml", GML_NAMESPACE);
+        xml.writeNamespace("ogc", OGC_NAMESPACE);
+        xml.writeNamespace(prefix, namespace);
+        xml.writeAttribute("version", "1.1.0");
+        xml.writeAttribute("service", "WFS");
+    }
+
+    public void insert(WfsFeature feature) throws XMLStreamException {
+        xml.writeStartElement("wfs", "Insert", WFS_NAMESPACE);
+        xml.writeStartElement(prefix, feature.layer().getPath(), namespace);
+        writeProperty(ID_PROPERTY, feature.id());
+        for (Map.Entry<String, Object> property : feature.properties().entrySet()) {
+            writeProperty(property.getKey(), property.getValue());
+        }
+        if (feature.geometry() != null) {
+            xml.writeStartElement(prefix, GEOMETRY_PROPERTY, namespace);
+            writeGeometry(feature.geometry());
+            xml.writeEndElement();
+        }
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    /**
+     * Replaces every attribute and the geometry of the feature with the same id.
+     * A null attribute is written without a {@code wfs:Value}, which sets it to null.
+     */
+    public void update(WfsFeature feature) throws XMLStreamException {
+        xml.writeStartElement("wfs", "Update", WFS_NAMESPACE);
+        xml.writeAttribute("typeName", prefix + ":" + feature.layer().getPath());
+        for (Map.Entry<String, Object> property : feature.properties().entrySet()) {
+            xml.writeStartElement("wfs", "Property", WFS_NAMESPACE);
+            writeTextElement("wfs", "Name", WFS_NAMESPACE, property.getKey());
+            if (property.getValue() != null) {
+                writeTextElement("wfs", "Value", WFS_NAMESPACE, property.getValue().toString());
+            }
+            xml.writeEndElement();
+        }
+        if (feature.geometry() != null) {
+            xml.writeStartElement("wfs", "Property", WFS_NAMESPACE);
+            writeTextElement("wfs", "Name", WFS_NAMESPACE, GEOMETRY_PROPERTY);
+            xml.writeStartElement("wfs", "Value", WFS_NAMESPACE);
+            writeGeometry(feature.geometry());
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+        writeIdFilter(feature.id());
+        xml.writeEndElement();
+    }
+
+    public void delete(GeoLayer layer, long id) throws XMLStreamException {
+        xml.writeStartElement("wfs", "Delete", WFS_NAMESPACE);
+        xml.writeAttribute("typeName", prefix + ":" + layer.getPath());
+        writeIdFilter(id);
+        xml.writeEndElement();
+    }
+
+    /**
+     * Ends the transaction document and flushes it. The output stream itself is left open.
+     */
+    @Override
+    public void close() throws XMLStreamException {
+        xml.writeEndElement();
+        xml.writeEndDocument();
+        xml.flush();
+        xml.close();
+    }
+
+    private void writeIdFilter(long id) throws XMLStreamException {
+        xml.writeStartElement("ogc", "Filter", OGC_NAMESPACE);
+        xml.writeStartElement("ogc", "PropertyIsEqualTo", OGC_NAMESPACE);
+        writeTextElement("ogc", "PropertyName", OGC_NAMESPACE, ID_PROPERTY);
+        writeTextElement("ogc", "Literal", OGC_NAMESPACE, Long.toString(id));
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    private void writeProperty(String name, Object value) throws XMLStreamException {
+        if (value != null) {
+            writeTextElement(prefix, name, namespace, value.toString());
+        }
+    }
+
+    private void writeTextElement(String elementPrefix, String name, String elementNamespace, String text)
+            throws XMLStreamException {
+        xml.writeStartElement(elementPrefix, name, elementNamespace);
+        xml.writeCharacters(text);
+        xml.writeEndElement();
+    }
+
+    private void writeGeometry(byte[] twkb) throws XMLStreamException {
+        int type = Twkb.type(twkb);
+        switch (type) {
+            case Twkb.POINT -> xml.writeStartElement("gml", "Point", GML_NAMESPACE);
+            case Twkb.LINESTRING -> xml.writeStartElement("gml", "LineString", GML_NAMESPACE);
+            case Twkb.MULTILINESTRING -> xml.writeStartElement("gml", "MultiCurve", GML_NAMESPACE);
+            case Twkb.POLYGON -> xml.writeStartElement("gml", "Polygon", GML_NAMESPACE);
+            default -> throw new IllegalArgumentException("Unsupported geometry type for WFS: " + type);
+        }
+        xml.writeAttribute("srsName", SRS_NAME);
+        try {
+            Twkb.read(twkb, new PositionsVisitor(type));
+        } catch (UncheckedXmlException e) {
+            throw e.getCause();
+        }
+        xml.writeEndElement();
+    }
+
+    /**
+     * Writes each TWKB part as the GML element its geometry type calls for, reusing one
+     * buffer for the coordinate text.
+     */
+    private final class PositionsVisitor implements Twkb.PartVisitor {
+        private final int type;
+        private int part;
+
+        PositionsVisitor(int type) {
+            this.type = type;
+        }
+
+        @Override
+        public void startPart(int pointCount) {
+            positions.setLength(0);
+        }
+
+        @Override
+        public void point(double lng, double lat) {
+            if (!positions.isEmpty()) {
+                positions.append(' ');
+            }
+            positions.append(lng).append(' ').append(lat);
+        }
+
+        @Override
+        public void endPart() {
+            try {
+                switch (type) {
+                    case Twkb.POINT -> writeTextElement("gml", "pos", GML_NAMESPACE, positions.toString());
+                    case Twkb.LINESTRING -> writeTextElement("gml", "posList", GML_NAMESPACE, positions.toString());
+                    case Twkb.MULTILINESTRING -> {
+                        xml.writeStartElement("gml", "curveMember", GML_NAMESPACE);
+                        xml.writeStartElement("gml", "LineString", GML_NAMESPACE);
+                        writeTextElement("gml", "posList", GML_NAMESPACE, positions.toString());
+                        xml.writeEndElement();
+                        xml.writeEndElement();
+                    }
+                    case Twkb.POLYGON -> {
+                        xml.writeStartElement("gml", part == 0 ? "exterior" : "interior", GML_NAMESPACE);
+                        xml.writeStartElement("gml", "LinearRing", GML_NAMESPACE);
+                        writeTextElement("gml", "posList", GML_NAMESPACE, positions.toString());
+                        xml.writeEndElement();
+                        xml.writeEndElement();
+                    }
+                }
+            } catch (XMLStreamException e) {
+                throw new UncheckedXmlException(e);
+            }
+            part++;
+        }
+    }
+
+    private static final class UncheckedXmlException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UncheckedXmlException(XMLStreamException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized XMLStreamException getCause() {
+            return (XMLStreamException) super.getCause();
+        }
+    }
+}
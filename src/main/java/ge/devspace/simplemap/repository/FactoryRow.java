@@ -0,0 +1,8 @@
+package ge.devspace.simplemap.repository;
+
+/**
+ * The columns of a factory that are drawn or exported, read without loading a managed {@code SimpleFactory}.
+ */
+public record FactoryRow(Long id, String name, String type, Integer capacity, String status,
+                         Double longitude, Double latitude) {
+}
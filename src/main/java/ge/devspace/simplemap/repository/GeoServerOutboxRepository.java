@@ -0,0 +1,34 @@
+package ge.devspace.simplemap.repository;
+
+import ge.devspace.simplemap.entity.GeoServerOutboxEntry;
+import ge.devspace.simplemap.geo.GeoLayer;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface GeoServerOutboxRepository extends JpaRepository<GeoServerOutboxEntry, Long> {
+
+    /**
+     * Oldest entries that are due, in the order they were written.
+     */
+    @Query("select e from GeoServerOutboxEntry e where e.nextAttemptAt <= :now order by e.id")
+    List<GeoServerOutboxEntry> findReady(@Param("now") Instant now, Limit limit);
+
+    /**
+     * Features of a layer in {@code (after, upTo]} that still have changes waiting to be sent.
+     */
+    @Query("select distinct e.featureId from GeoServerOutboxEntry e where e.layer = :layer and e.featureId > :after and e.featureId <= :upTo")
+    List<Long> findPendingFeatureIds(@Param("layer") GeoLayer layer, @Param("after") long after, @Param("upTo") long upTo);
+
+    @Query("select count(e) from GeoServerOutboxEntry e where e.attempts > 0")
+    long countRetrying();
+
+    @Query("select min(e.createdAt) from GeoServerOutboxEntry e")
+    Instant findOldestCreatedAt();
+}
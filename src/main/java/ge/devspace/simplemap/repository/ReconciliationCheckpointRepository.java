@@ -0,0 +1,10 @@
+package ge.devspace.simplemap.repository;
+
+import ge.devspace.simplemap.entity.ReconciliationCheckpoint;
+import ge.devspace.simplemap.geo.GeoLayer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReconciliationCheckpointRepository extends JpaRepository<ReconciliationCheckpoint, GeoLayer> {
+}
@@ -0,0 +1,19 @@
+package ge.devspace.simplemap.repository;
+
+import ge.devspace.simplemap.geo.LevelOfDetail;
+
+/**
+ * The columns of a road that are drawn or exported, read without loading a managed {@code SimpleRoad}.
+ * {@code geometry} is the full TWKB line, {@code simplified} the {@link LevelOfDetail} blob.
+ */
+public record RoadRow(Long id, String name, String type, Double length, String material,
+                      byte[] geometry, byte[] simplified) {
+
+    /**
+     * TWKB geometry simplified to the given {@link LevelOfDetail} level, or the full geometry.
+     */
+    public byte[] geometry(int level) {
+        byte[] levelGeometry = LevelOfDetail.select(simplified, level);
+        return levelGeometry != null ? levelGeometry : geometry;
+    }
+}
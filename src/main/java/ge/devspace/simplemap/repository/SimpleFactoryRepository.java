@@ -1,9 +1,112 @@
 package ge.devspace.simplemap.repository;
 
 import ge.devspace.simplemap.entity.SimpleFactory;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.stream.Stream;
+
 @Repository
 public interface SimpleFactoryRepository extends JpaRepository<SimpleFactory, Long> {
-}
\ No newline at end of file
+
+    /**
+     * Every factory as a {@link FactoryRow}, read like {@link SimpleRoadRepository#streamRows()}.
+     */
+    @Query("""
+        select new ge.devspace.simplemap.repository.FactoryRow(
+            f.id, f.name, f.type, f.capacity, f.status, f.longitude, f.latitude)
+        from SimpleFactory f
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<FactoryRow> streamRows();
+
+    @Query("""
+        select new ge.devspace.simplemap.repository.FactoryRow(
+            f.id, f.name, f.type, f.capacity, f.status, f.longitude, f.latitude)
+        from SimpleFactory f
+        where f.longitude between :minLng and :maxLng
+          and f.latitude between :minLat and :maxLat
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<FactoryRow> streamRowsWithinBounds(@Param("minLng") double minLng, @Param("minLat") double minLat,
+                                              @Param("maxLng") double maxLng, @Param("maxLat") double maxLat);
+
+    /**
+     * Keyset page: up to {@code limit} features with an id greater than {@code after}, in id order.
+     */
+    @Query("select f from SimpleFactory f where f.id > :after order by f.id")
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = AvailableHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    Stream<SimpleFactory> streamAfter(@Param("after") long after, Limit limit);
+
+    @Query("""
+        select new ge.devspace.simplemap.repository.FactoryRow(
+            f.id, f.name, f.type, f.capacity, f.status, f.longitude, f.latitude)
+        from SimpleFactory f
+        where f.id > :after
+        order by f.id
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<FactoryRow> streamRowsAfter(@Param("after") long after, Limit limit);
+
+    @Query("""
+        select new ge.devspace.simplemap.repository.FactoryRow(
+            f.id, f.name, f.type, f.capacity, f.status, f.longitude, f.latitude)
+        from SimpleFactory f
+        where f.id > :after
+          and f.longitude between :minLng and :maxLng
+          and f.latitude between :minLat and :maxLat
+        order by f.id
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<FactoryRow> streamRowsWithinBoundsAfter(@Param("minLng") double minLng, @Param("minLat") double minLat,
+                                                   @Param("maxLng") double maxLng, @Param("maxLat") double maxLat,
+                                                   @Param("after") long after, Limit limit);
+
+    /**
+     * Rows of {id, minLng, minLat, maxLng, maxLat} for bulk-loading the spatial index.
+     */
+    @Query("""
+        select f.id, f.longitude, f.latitude, f.longitude, f.latitude from SimpleFactory f
+        where f.longitude is not null and f.latitude is not null
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Object[]> streamEnvelopes();
+
+    /**
+     * Rows of {id, longitude, latitude, capacity} for bulk-loading the cluster grid.
+     */
+    @Query("""
+        select f.id, f.longitude, f.latitude, f.capacity from SimpleFactory f
+        where f.longitude is not null and f.latitude is not null
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Object[]> streamClusterPoints();
+}
@@ -1,9 +1,100 @@
 package ge.devspace.simplemap.repository;
 
 import ge.devspace.simplemap.entity.SimpleForest;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.stream.Stream;
+
 @Repository
 public interface SimpleForestRepository extends JpaRepository<SimpleForest, Long> {
+
+    /**
+     * Every forest as a {@link ForestRow}, read like {@link SimpleRoadRepository#streamRows()}.
+     */
+    @Query("""
+        select new ge.devspace.simplemap.repository.ForestRow(
+            f.id, f.name, f.type, f.area, f.density, f.status, f.centerLng, f.centerLat,
+            f.geometry, f.simplified)
+        from SimpleForest f
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<ForestRow> streamRows();
+
+    @Query("""
+        select new ge.devspace.simplemap.repository.ForestRow(
+            f.id, f.name, f.type, f.area, f.density, f.status, f.centerLng, f.centerLat,
+            f.geometry, f.simplified)
+        from SimpleForest f
+        where f.minLng <= :maxLng and f.maxLng >= :minLng
+          and f.minLat <= :maxLat and f.maxLat >= :minLat
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<ForestRow> streamRowsIntersecting(@Param("minLng") double minLng, @Param("minLat") double minLat,
+                                             @Param("maxLng") double maxLng, @Param("maxLat") double maxLat);
+
+    /**
+     * Keyset page: up to {@code limit} features with an id greater than {@code after}, in id order.
+     */
+    @Query("select f from SimpleForest f where f.id > :after order by f.id")
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = AvailableHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    Stream<SimpleForest> streamAfter(@Param("after") long after, Limit limit);
+
+    @Query("""
+        select new ge.devspace.simplemap.repository.ForestRow(
+            f.id, f.name, f.type, f.area, f.density, f.status, f.centerLng, f.centerLat,
+            f.geometry, f.simplified)
+        from SimpleForest f
+        where f.id > :after
+        order by f.id
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<ForestRow> streamRowsAfter(@Param("after") long after, Limit limit);
+
+    @Query("""
+        select new ge.devspace.simplemap.repository.ForestRow(
+            f.id, f.name, f.type, f.area, f.density, f.status, f.centerLng, f.centerLat,
+            f.geometry, f.simplified)
+        from SimpleForest f
+        where f.id > :after
+          and f.minLng <= :maxLng and f.maxLng >= :minLng
+          and f.minLat <= :maxLat and f.maxLat >= :minLat
+        order by f.id
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<ForestRow> streamRowsIntersectingAfter(@Param("minLng") double minLng, @Param("minLat") double minLat,
+                                                  @Param("maxLng") double maxLng, @Param("maxLat") double maxLat,
+                                                  @Param("after") long after, Limit limit);
+
+    /**
+     * Rows of {id, minLng, minLat, maxLng, maxLat} for bulk-loading the spatial index.
+     */
+    @Query("select f.id, f.minLng, f.minLat, f.maxLng, f.maxLat from SimpleForest f where f.minLng is not null")
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Object[]> streamEnvelopes();
 }
\ No newline at end of file
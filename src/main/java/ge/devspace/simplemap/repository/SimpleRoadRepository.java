@@ -1,9 +1,100 @@
 package ge.devspace.simplemap.repository;
 
 import ge.devspace.simplemap.entity.SimpleRoad;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.stream.Stream;
+
 @Repository
 public interface SimpleRoadRepository extends JpaRepository<SimpleRoad, Long> {
+
+    /**
+     * The RoadRow queries read plain column values: nothing enters the persistence context, so there
+     * is no snapshot to keep, dirty-check or detach. {@code MANUAL} flush mode skips the auto-flush
+     * Hibernate would otherwise run before each query, also when called inside a read-write transaction.
+     */
+    @Query("""
+        select new ge.devspace.simplemap.repository.RoadRow(
+            r.id, r.name, r.type, r.length, r.material, r.geometry, r.simplified)
+        from SimpleRoad r
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<RoadRow> streamRows();
+
+    @Query("""
+        select new ge.devspace.simplemap.repository.RoadRow(
+            r.id, r.name, r.type, r.length, r.material, r.geometry, r.simplified)
+        from SimpleRoad r
+        where r.minLng <= :maxLng and r.maxLng >= :minLng
+          and r.minLat <= :maxLat and r.maxLat >= :minLat
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<RoadRow> streamRowsIntersecting(@Param("minLng") double minLng, @Param("minLat") double minLat,
+                                           @Param("maxLng") double maxLng, @Param("maxLat") double maxLat);
+
+    /**
+     * Keyset page: up to {@code limit} features with an id greater than {@code after}, in id order.
+     * Reconciliation pages through the whole layer this way, so these reads bypass the
+     * second-level cache rather than evict the hot features from it.
+     */
+    @Query("select r from SimpleRoad r where r.id > :after order by r.id")
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = AvailableHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    Stream<SimpleRoad> streamAfter(@Param("after") long after, Limit limit);
+
+    @Query("""
+        select new ge.devspace.simplemap.repository.RoadRow(
+            r.id, r.name, r.type, r.length, r.material, r.geometry, r.simplified)
+        from SimpleRoad r
+        where r.id > :after
+        order by r.id
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<RoadRow> streamRowsAfter(@Param("after") long after, Limit limit);
+
+    @Query("""
+        select new ge.devspace.simplemap.repository.RoadRow(
+            r.id, r.name, r.type, r.length, r.material, r.geometry, r.simplified)
+        from SimpleRoad r
+        where r.id > :after
+          and r.minLng <= :maxLng and r.maxLng >= :minLng
+          and r.minLat <= :maxLat and r.maxLat >= :minLat
+        order by r.id
+        """)
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = AvailableHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    Stream<RoadRow> streamRowsIntersectingAfter(@Param("minLng") double minLng, @Param("minLat") double minLat,
+                                                @Param("maxLng") double maxLng, @Param("maxLat") double maxLat,
+                                                @Param("after") long after, Limit limit);
+
+    /**
+     * Rows of {id, minLng, minLat, maxLng, maxLat} for bulk-loading the spatial index.
+     */
+    @Query("select r.id, r.minLng, r.minLat, r.maxLng, r.maxLat from SimpleRoad r where r.minLng is not null")
+    @QueryHints({
+        @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Object[]> streamEnvelopes();
 }
\ No newline at end of file
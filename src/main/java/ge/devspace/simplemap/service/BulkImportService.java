@@ -0,0 +1,468 @@
+package ge.devspace.simplemap.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ge.devspace.simplemap.entity.GeoServerOutboxEntry;
+import ge.devspace.simplemap.entity.SimpleFactory;
+import ge.devspace.simplemap.entity.SimpleForest;
+import ge.devspace.simplemap.entity.SimpleRoad;
+import ge.devspace.simplemap.geo.GeoJsonLine;
+import ge.devspace.simplemap.geo.GeoJsonPolygon;
+import ge.devspace.simplemap.geo.GeoLayer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming bulk import of features from GeoJSON FeatureCollections, NDJSON (one Feature
+ * per line) and CSV (a header row naming the columns).
+ * <p>
+ * Input is parsed one feature at a time and written in transactions of
+ * {@code geo.import.batch-size} rows. Sequence ids let Hibernate send each batch as JDBC
+ * batch inserts; the persistence context is cleared after every batch so memory stays flat.
+ * Each feature is queued in the GeoServer outbox within its batch, so the dispatcher sends
+ * the new features in full WFS-T batches. Invalid features are skipped and reported; they
+ * do not abort the import. Malformed input does, but batches written before it are kept.
+ * <p>
+ * Attributes are read from GeoJSON {@code properties} or CSV columns with the same names as
+ * the JSON API. Geometry comes from the GeoJSON {@code geometry} (a CSV {@code geometry}
+ * column may hold one as JSON) or from the coordinate attributes
+ * ({@code latitude}/{@code longitude}, road {@code coordinates} or {@code startLat}..{@code endLng},
+ * {@code coordinates}/{@code centerLat}/{@code centerLng}).
+ */
+@Service
+public class BulkImportService {
+
+    public enum Format { GEOJSON, NDJSON, CSV }
+
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private GeoServerSyncService geoServerSyncService;
+
+    @Autowired
+    private SpatialIndexService spatialIndexService;
+
+    @Autowired
+    private FactoryClusterService factoryClusterService;
+
+    @Autowired
+    private LayerVersionService layerVersionService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${geo.import.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * One input feature: attribute lookup plus an optional GeoJSON geometry.
+     */
+    private interface FeatureRecord {
+        String text(String name);
+
+        JsonNode geometry();
+    }
+
+    @FunctionalInterface
+    private interface RecordSink {
+        void accept(FeatureRecord record);
+    }
+
+    /**
+     * Picks the format from an explicit {@code format} parameter or the request content type.
+     *
+     * @throws IllegalArgumentException when neither names a supported format
+     */
+    public static Format resolveFormat(String format, String contentType) {
+        String value = format != null ? format : contentType;
+        if (value == null) {
+            throw new IllegalArgumentException("Format is required");
+        }
+        value = value.toLowerCase(Locale.ROOT);
+        if (value.contains("ndjson") || value.contains("geo+json-seq") || value.contains("jsonl")) {
+            return Format.NDJSON;
+        }
+        if (value.contains("csv")) {
+            return Format.CSV;
+        }
+        if (value.contains("json")) {
+            return Format.GEOJSON;
+        }
+        throw new IllegalArgumentException("Unsupported format: " + value);
+    }
+
+    public Map<String, Object> importFeatures(GeoLayer layer, Format format, InputStream in) throws IOException {
+        long started = System.nanoTime();
+        Batch batch = new Batch(layer, true);
+        try {
+            switch (format) {
+                case GEOJSON -> readFeatureCollection(in, batch::add);
+                case NDJSON -> readLineDelimited(in, batch::add);
+                case CSV -> readCsv(in, batch::add);
+            }
+        } finally {
+            // Batches are committed as they fill, so even a truncated or malformed file keeps
+            // what was read before the error; make that visible too
+            batch.flush();
+            if (batch.imported > 0) {
+                // Bulk writes publish no per-feature events; rebuild the in-memory views once instead
+                spatialIndexService.reload(layer);
+                if (layer == GeoLayer.FACTORIES) {
+                    factoryClusterService.load();
+                }
+                layerVersionService.bump(layer);
+            }
+        }
+
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        System.out.println("Imported " + batch.imported + " " + layer.getPath() + " (" + batch.rejected
+            + " rejected) in " + batch.batches + " batches, " + elapsedMillis + " ms");
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("layer", layer.getPath());
+        result.put("format", format.name().toLowerCase(Locale.ROOT));
+        result.put("imported", batch.imported);
+        result.put("rejected", batch.rejected);
+        result.put("batches", batch.batches);
+        result.put("elapsedMs", elapsedMillis);
+        result.put("errors", batch.errors);
+        return result;
+    }
+
+    /**
+     * Writes entities built elsewhere, e.g. generated benchmark data, in the same batched
+     * transactions as an import. They are not queued for GeoServer, and the in-memory views
+     * are left to the caller.
+     *
+     * @return the number of rows written
+     */
+    public long insertAll(GeoLayer layer, Iterator<?> entities) {
+        Batch batch = new Batch(layer, false);
+        while (entities.hasNext()) {
+            batch.addEntity(entities.next());
+        }
+        batch.flush();
+        return batch.imported;
+    }
+
+    private void readFeatureCollection(InputStream in, RecordSink sink) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a GeoJSON FeatureCollection");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "features".equals(field)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        sink.accept(jsonRecord(parser.readValueAsTree()));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private void readLineDelimited(InputStream in, RecordSink sink) throws IOException {
+        try (MappingIterator<JsonNode> features = objectMapper.readerFor(JsonNode.class).readValues(in)) {
+            while (features.hasNextValue()) {
+                sink.accept(jsonRecord(features.nextValue()));
+            }
+        }
+    }
+
+    private void readCsv(InputStream in, RecordSink sink) throws IOException {
+        CsvReader csv = new CsvReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024));
+        List<String> header = csv.readRecord();
+        if (header == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            // Tolerate a byte order mark and stray spaces in the header
+            columns.put(header.get(i).replace("\uFEFF", "").trim(), i);
+        }
+        List<String> row;
+        while ((row = csv.readRecord()) != null) {
+            List<String> values = row;
+            sink.accept(new FeatureRecord() {
+                @Override
+                public String text(String name) {
+                    Integer column = columns.get(name);
+                    if (column == null || column >= values.size()) {
+                        return null;
+                    }
+                    String value = values.get(column).trim();
+                    return value.isEmpty() ? null : value;
+                }
+
+                @Override
+                public JsonNode geometry() {
+                    String geometry = text("geometry");
+                    if (geometry == null) {
+                        return null;
+                    }
+                    try {
+                        return objectMapper.readTree(geometry);
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException("geometry column is not valid GeoJSON");
+                    }
+                }
+            });
+        }
+    }
+
+    private static FeatureRecord jsonRecord(JsonNode feature) {
+        JsonNode properties = feature.path("properties");
+        return new FeatureRecord() {
+            @Override
+            public String text(String name) {
+                JsonNode value = properties.get(name);
+                if (value == null || value.isNull()) {
+                    return null;
+                }
+                // Nested values (e.g. polygon coordinates) are passed on as JSON
+                return value.isContainerNode() ? value.toString() : value.asText();
+            }
+
+            @Override
+            public JsonNode geometry() {
+                JsonNode geometry = feature.get("geometry");
+                return geometry == null || geometry.isNull() ? null : geometry;
+            }
+        };
+    }
+
+    /**
+     * Rows waiting to be written, plus the running totals of the import.
+     */
+    private class Batch {
+        private final GeoLayer layer;
+        private final boolean queueForGeoServer;
+        private final List<Object> pending = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private long row;
+        private long imported;
+        private long rejected;
+        private int batches;
+
+        Batch(GeoLayer layer, boolean queueForGeoServer) {
+            this.layer = layer;
+            this.queueForGeoServer = queueForGeoServer;
+        }
+
+        void add(FeatureRecord record) {
+            row++;
+            Object entity;
+            try {
+                entity = switch (layer) {
+                    case ROADS -> toRoad(record);
+                    case FACTORIES -> toFactory(record);
+                    case FORESTS -> toForest(record);
+                };
+            } catch (IllegalArgumentException e) {
+                rejected++;
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add("feature " + row + ": " + e.getMessage());
+                }
+                return;
+            }
+            addEntity(entity);
+        }
+
+        void addEntity(Object entity) {
+            pending.add(entity);
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                // Keep imported rows out of the second-level cache, where they would push out the hot features.
+                // Hibernate caches inserts as the transaction commits, so the mode is restored only after that.
+                Session session = entityManager.unwrap(Session.class);
+                CacheMode cacheMode = session.getCacheMode();
+                session.setCacheMode(CacheMode.IGNORE);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        session.setCacheMode(cacheMode);
+                    }
+                });
+                for (Object entity : pending) {
+                    entityManager.persist(entity);
+                    if (queueForGeoServer) {
+                        geoServerSyncService.enqueue(layer, idOf(entity), GeoServerOutboxEntry.Operation.UPSERT);
+                    }
+                }
+                entityManager.flush();
+                entityManager.clear();
+            });
+            imported += pending.size();
+            batches++;
+            pending.clear();
+        }
+    }
+
+    private static Long idOf(Object entity) {
+        if (entity instanceof SimpleRoad road) {
+            return road.getId();
+        }
+        if (entity instanceof SimpleFactory factory) {
+            return factory.getId();
+        }
+        return ((SimpleForest) entity).getId();
+    }
+
+    private SimpleFactory toFactory(FeatureRecord record) {
+        double[] position;
+        JsonNode geometry = record.geometry();
+        if (geometry != null) {
+            requireType(geometry, "Point");
+            position = position(geometry.path("coordinates"));
+        } else {
+            position = new double[] {
+                requireCoordinate(record, "longitude", 180), requireCoordinate(record, "latitude", 90)
+            };
+        }
+        return new SimpleFactory(record.text("name"), record.text("type"), record.text("status"),
+            integer(record, "capacity"), position[1], position[0]);
+    }
+
+    private SimpleRoad toRoad(FeatureRecord record) {
+        List<double[]> line;
+        JsonNode geometry = record.geometry();
+        if (geometry != null) {
+            String type = geometry.path("type").asText();
+            if (!type.equals("LineString") && !type.equals("MultiLineString")) {
+                throw new IllegalArgumentException("Expected a LineString or MultiLineString geometry, got "
+                    + geometry.path("type").asText("none"));
+            }
+            line = GeoJsonLine.parse(geometry.path("coordinates"));
+        } else if (record.text("coordinates") != null) {
+            line = GeoJsonLine.parse(record.text("coordinates"), objectMapper);
+        } else {
+            line = GeoJsonLine.segment(requireCoordinate(record, "startLng", 180), requireCoordinate(record, "startLat", 90),
+                requireCoordinate(record, "endLng", 180), requireCoordinate(record, "endLat", 90));
+        }
+        if (line == null) {
+            throw new IllegalArgumentException("Road has no line");
+        }
+        return new SimpleRoad(record.text("name"), record.text("type"), record.text("material"),
+            line, number(record, "length"));
+    }
+
+    private SimpleForest toForest(FeatureRecord record) {
+        List<double[]> polygon;
+        JsonNode geometry = record.geometry();
+        if (geometry != null) {
+            requireType(geometry, "Polygon");
+            polygon = GeoJsonPolygon.parse(geometry.path("coordinates"));
+        } else {
+            polygon = GeoJsonPolygon.parse(record.text("coordinates"), objectMapper);
+        }
+        Double centerLat = number(record, "centerLat");
+        Double centerLng = number(record, "centerLng");
+        if ((centerLat == null || centerLng == null) && polygon != null) {
+            // Center of the exterior ring's envelope
+            double[] ring = polygon.get(0);
+            double minLng = Double.MAX_VALUE, minLat = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+            for (int i = 0; i + 1 < ring.length; i += 2) {
+                minLng = Math.min(minLng, ring[i]);
+                maxLng = Math.max(maxLng, ring[i]);
+                minLat = Math.min(minLat, ring[i + 1]);
+                maxLat = Math.max(maxLat, ring[i + 1]);
+            }
+            centerLng = (minLng + maxLng) / 2;
+            centerLat = (minLat + maxLat) / 2;
+        }
+        if (centerLat == null || centerLng == null) {
+            throw new IllegalArgumentException("Forest needs a polygon or centerLat/centerLng");
+        }
+        return new SimpleForest(record.text("name"), record.text("type"), number(record, "area"),
+            record.text("density"), record.text("status"), centerLat, centerLng, polygon);
+    }
+
+    private static void requireType(JsonNode geometry, String type) {
+        if (!type.equals(geometry.path("type").asText())) {
+            throw new IllegalArgumentException("Expected a " + type + " geometry, got " + geometry.path("type").asText("none"));
+        }
+    }
+
+    private static double[] position(JsonNode position) {
+        if (!position.isArray() || position.size() < 2 || !position.get(0).isNumber() || !position.get(1).isNumber()) {
+            throw new IllegalArgumentException("Position must be [lng, lat]");
+        }
+        return new double[] {
+            checkRange(position.get(0).asDouble(), 180, "longitude"),
+            checkRange(position.get(1).asDouble(), 90, "latitude")
+        };
+    }
+
+    private static double requireCoordinate(FeatureRecord record, String name, double limit) {
+        Double value = number(record, name);
+        if (value == null) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        return checkRange(value, limit, name);
+    }
+
+    private static double checkRange(double value, double limit, String name) {
+        if (!Double.isFinite(value) || value < -limit || value > limit) {
+            throw new IllegalArgumentException(name + " out of range: " + value);
+        }
+        return value;
+    }
+
+    private static Double number(FeatureRecord record, String name) {
+        String value = record.text(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a number: " + value);
+        }
+    }
+
+    private static Integer integer(FeatureRecord record, String name) {
+        Double value = number(record, name);
+        return value == null ? null : (int) Math.round(value);
+    }
+}
@@ -0,0 +1,138 @@
+package ge.devspace.simplemap.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Consecutive-failure circuit breaker with a recent-latency window.
+ * <p>
+ * CLOSED lets every call through. After {@code failureThreshold} failures in a row it
+ * turns OPEN and refuses calls for {@code openDuration}. After that it is HALF_OPEN:
+ * exactly one trial call goes through, and its outcome closes or reopens the circuit.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final int LATENCY_SAMPLES = 32;
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private Instant openedAt;
+    private boolean trialInFlight;
+    private long totalFailures;
+    private long rejectedCalls;
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+    private int latencyNext;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Whether a call may go ahead now. A true result must be followed by
+     * {@link #onSuccess}, {@link #onFailure} or {@link #cancel}.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && !Instant.now().isBefore(openedAt.plus(openDuration))) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        boolean allowed = switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> !trialInFlight;
+        };
+        if (state == State.HALF_OPEN && allowed) {
+            trialInFlight = true;
+        }
+        if (!allowed) {
+            rejectedCalls++;
+        }
+        return allowed;
+    }
+
+    /**
+     * Whether {@link #tryAcquire} would currently let a call through, without taking the trial slot.
+     */
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> !Instant.now().isBefore(openedAt.plus(openDuration));
+            case HALF_OPEN -> !trialInFlight;
+        };
+    }
+
+    public synchronized void onSuccess(long latencyNanos) {
+        recordLatency(latencyNanos);
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure(long latencyNanos) {
+        recordLatency(latencyNanos);
+        consecutiveFailures++;
+        totalFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                System.err.println("GeoServer circuit opened after " + consecutiveFailures + " consecutive failures");
+            }
+            state = State.OPEN;
+            openedAt = Instant.now();
+        }
+    }
+
+    /**
+     * Gives up an acquired call without an outcome, e.g. when the request could not be built.
+     */
+    public synchronized void cancel() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void recordLatency(long latencyNanos) {
+        latencies[latencyNext] = latencyNanos;
+        latencyNext = (latencyNext + 1) % LATENCY_SAMPLES;
+        latencyCount = Math.min(latencyCount + 1, LATENCY_SAMPLES);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state);
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("totalFailures", totalFailures);
+        stats.put("rejectedCalls", rejectedCalls);
+        stats.put("openedAt", state == State.CLOSED ? null : openedAt);
+        stats.put("retryAt", state == State.OPEN ? openedAt.plus(openDuration) : null);
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("samples", latencyCount);
+        if (latencyCount > 0) {
+            long sum = 0;
+            long max = 0;
+            for (int i = 0; i < latencyCount; i++) {
+                sum += latencies[i];
+                max = Math.max(max, latencies[i]);
+            }
+            int last = (latencyNext + LATENCY_SAMPLES - 1) % LATENCY_SAMPLES;
+            latency.put("lastMs", latencies[last] / 1_000_000.0);
+            latency.put("averageMs", sum / latencyCount / 1_000_000.0);
+            latency.put("maxMs", max / 1_000_000.0);
+        }
+        stats.put("latency", latency);
+        return stats;
+    }
+}
@@ -0,0 +1,85 @@
+package ge.devspace.simplemap.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal streaming RFC 4180 reader: comma separated, fields optionally in double quotes,
+ * quotes escaped by doubling, line breaks allowed inside quoted fields. Reads one record at
+ * a time, so the input is never held in memory as a whole.
+ */
+public class CsvReader {
+
+    private final Reader in;
+    private int next = -2;
+
+    /**
+     * @param in should be buffered, characters are read one at a time
+     */
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * The next record, or null at the end of the input. Blank lines are skipped.
+     *
+     * @throws IllegalArgumentException for a quoted field that is never closed
+     */
+    public List<String> readRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int c = read();
+        while (c == '\r' || c == '\n') {
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+        while (true) {
+            if (c == '"' && field.isEmpty()) {
+                // Quoted field: read up to the closing quote
+                while (true) {
+                    c = read();
+                    if (c == -1) {
+                        throw new IllegalArgumentException("Unterminated quoted CSV field");
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            break;
+                        }
+                    }
+                    field.append((char) c);
+                }
+            }
+            if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                c = read();
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                fields.add(field.toString());
+                if (c == '\r') {
+                    int lf = read();
+                    if (lf != '\n') {
+                        next = lf;
+                    }
+                }
+                return fields;
+            } else {
+                field.append((char) c);
+                c = read();
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (next != -2) {
+            int c = next;
+            next = -2;
+            return c;
+        }
+        return in.read();
+    }
+}
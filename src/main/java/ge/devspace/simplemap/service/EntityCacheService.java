@@ -0,0 +1,104 @@
+package ge.devspace.simplemap.service;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import ge.devspace.simplemap.entity.SimpleFactory;
+import ge.devspace.simplemap.entity.SimpleForest;
+import ge.devspace.simplemap.entity.SimpleRoad;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Hibernate second-level cache for the three feature entities, held in Caffeine through JCache.
+ * <p>
+ * Every {@code findById} (the single-feature GET, PUT and DELETE endpoints, outbox dispatch,
+ * cluster updates) is answered from it once the feature has been read or written. Entries
+ * are {@code READ_WRITE}: Hibernate updates or removes them when the transaction that
+ * saved or deleted the feature commits, so the cache needs no invalidation of its own.
+ * Each entity gets its own region, bounded by {@code geo.entity-cache.max-size} entries
+ * and dropped {@code geo.entity-cache.ttl} after it was written.
+ */
+@Service
+public class EntityCacheService implements HibernatePropertiesCustomizer {
+
+    private static final List<Class<?>> ENTITIES = List.of(SimpleRoad.class, SimpleFactory.class, SimpleForest.class);
+
+    // Lazy: the EntityManagerFactory is only built after customize() has run
+    @Lazy
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${geo.entity-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${geo.entity-cache.ttl:PT10M}")
+    private Duration ttl;
+
+    private CacheManager cacheManager;
+
+    /**
+     * Creates the regions and hands their cache manager to Hibernate's JCache region factory.
+     */
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        CaffeineCachingProvider provider = (CaffeineCachingProvider) Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        // A manager of our own rather than the shared default one, so a second application
+        // context in the same JVM (e.g. in tests) gets its own regions
+        cacheManager = provider.getCacheManager(URI.create("simple-map-" + UUID.randomUUID()), provider.getDefaultClassLoader());
+        for (Class<?> entity : ENTITIES) {
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+            configuration.setMaximumSize(OptionalLong.of(maxSize));
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+            cacheManager.createCache(entity.getName(), configuration);
+        }
+        hibernateProperties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+    }
+
+    @PreDestroy
+    void close() {
+        if (cacheManager != null) {
+            cacheManager.close();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxSize", maxSize);
+        stats.put("ttl", ttl.toString());
+        Map<String, Object> regions = new LinkedHashMap<>();
+        for (Class<?> entity : ENTITIES) {
+            CacheRegionStatistics region = statistics.getDomainDataRegionStatistics(entity.getName());
+            long lookups = region.getHitCount() + region.getMissCount();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("size", cacheManager.getCache(entity.getName())
+                .unwrap(com.github.benmanes.caffeine.cache.Cache.class).estimatedSize());
+            entry.put("hits", region.getHitCount());
+            entry.put("misses", region.getMissCount());
+            entry.put("puts", region.getPutCount());
+            entry.put("hitRatio", lookups == 0 ? 0.0 : (double) region.getHitCount() / lookups);
+            regions.put(entity.getSimpleName(), entry);
+        }
+        stats.put("regions", regions);
+        return stats;
+    }
+}
@@ -0,0 +1,116 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.entity.SimpleFactory;
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.ClusterGrid;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Factory clusters per zoom, weighted by capacity. Bulk-loaded once the application
+ * is ready and kept current from {@link FeatureChangedEvent}s.
+ */
+@Service
+public class FactoryClusterService {
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ClusterGrid grid = new ClusterGrid();
+
+    private volatile boolean restored;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!restored) {
+            load();
+        }
+    }
+
+    /**
+     * Fills the grid from points read elsewhere, e.g. a {@link SnapshotFile}, in place of the
+     * database load once the application is ready.
+     */
+    public void restore(long[] ids, double[] boxes, long[] weights, int count) {
+        long started = System.nanoTime();
+        restored = true;
+        grid.clear();
+        for (int i = 0; i < count; i++) {
+            grid.put(ids[i], boxes[i * 4], boxes[i * 4 + 1], weights[i]);
+        }
+        System.out.println("Factory clusters restored: " + grid.size() + " factories in "
+            + grid.cellCount() + " cells in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+
+    public void load() {
+        long started = System.nanoTime();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        grid.clear();
+        transaction.executeWithoutResult(status -> {
+            try (Stream<Object[]> rows = factoryRepository.streamClusterPoints()) {
+                rows.forEach(row -> grid.put(
+                    ((Number) row[0]).longValue(),
+                    ((Number) row[1]).doubleValue(),
+                    ((Number) row[2]).doubleValue(),
+                    row[3] == null ? 0 : ((Number) row[3]).longValue()));
+            }
+        });
+        System.out.println("Factory clusters loaded: " + grid.size() + " factories in "
+            + grid.cellCount() + " cells in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeatureChanged(FeatureChangedEvent event) {
+        if (event.layer() != GeoLayer.FACTORIES) {
+            return;
+        }
+        if (event.isDelete()) {
+            grid.remove(event.featureId());
+            return;
+        }
+        // The event carries the envelope but not the capacity, so read the saved row back
+        SimpleFactory factory = factoryRepository.findById(event.featureId()).orElse(null);
+        if (factory == null || factory.getLongitude() == null || factory.getLatitude() == null) {
+            grid.remove(event.featureId());
+        } else {
+            grid.put(factory.getId(), factory.getLongitude(), factory.getLatitude(),
+                factory.getCapacity() == null ? 0 : factory.getCapacity());
+        }
+    }
+
+    public Map<String, Object> getClusters(BoundingBox viewport, int zoom) {
+        List<Map<String, Object>> clusters = new ArrayList<>();
+        for (ClusterGrid.Cluster cluster : grid.query(viewport, zoom)) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("lng", cluster.lng());
+            item.put("lat", cluster.lat());
+            item.put("count", cluster.count());
+            item.put("capacity", cluster.weight());
+            if (cluster.id() != null) {
+                item.put("id", cluster.id());
+            }
+            clusters.add(item);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("zoom", zoom);
+        result.put("clusters", clusters);
+        return result;
+    }
+}
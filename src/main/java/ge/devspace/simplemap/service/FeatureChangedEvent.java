@@ -0,0 +1,15 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoLayer;
+
+/**
+ * Published by the CRUD handlers after a feature has been written.
+ * {@code before} is null for creates and {@code after} is null for deletes.
+ */
+public record FeatureChangedEvent(GeoLayer layer, long featureId, BoundingBox before, BoundingBox after) {
+
+    public boolean isDelete() {
+        return after == null;
+    }
+}
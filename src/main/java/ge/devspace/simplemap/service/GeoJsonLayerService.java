@@ -0,0 +1,207 @@
+package ge.devspace.simplemap.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoJsonWriter;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.LevelOfDetail;
+import ge.devspace.simplemap.repository.FactoryRow;
+import ge.devspace.simplemap.repository.ForestRow;
+import ge.devspace.simplemap.repository.RoadRow;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import ge.devspace.simplemap.repository.SimpleForestRepository;
+import ge.devspace.simplemap.repository.SimpleRoadRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Streams layer FeatureCollections row by row from the repositories to an output stream.
+ * Features are read as record projections ({@link RoadRow} etc.) rather than entities, so
+ * nothing accumulates in the persistence context and memory stays flat regardless of layer size.
+ * Every read runs in a read-only transaction, which also puts the Hibernate session in
+ * {@code MANUAL} flush mode and the JDBC connection in read-only mode.
+ * With {@code geo.postgis.enabled} the features are selected and encoded by PostGIS instead
+ * and copied to the output as they arrive. While a snapshot is being restored in the
+ * background, they are read from the snapshot.
+ */
+@Service
+public class GeoJsonLayerService {
+
+    private static final int LINES_PER_FLUSH = 256;
+
+    @Autowired
+    private SimpleRoadRepository roadRepository;
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    @Autowired
+    private SimpleForestRepository forestRepository;
+
+    @Autowired
+    private PostGisService postGisService;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${geo.postgis.enabled:false}")
+    private boolean postgis;
+
+    /**
+     * @param level {@link LevelOfDetail} level of the lines, {@link LevelOfDetail#FULL} for every vertex
+     */
+    @Transactional(readOnly = true)
+    public void writeRoads(BoundingBox viewport, int level, LayerPage page, boolean lineDelimited,
+                           OutputStream out) throws IOException {
+        SnapshotFile snapshot = snapshotService.getServingSnapshot();
+        if (snapshot != null) {
+            writeCollection(snapshot.roads(viewport, page), page, lineDelimited, out,
+                (writer, road) -> writer.writeRoad(road, level), RoadRow::id);
+            return;
+        }
+        if (postgis) {
+            writeEncoded(postGisService.streamGeoJson(GeoLayer.ROADS, viewport, page, level), page, lineDelimited, out);
+            return;
+        }
+        Stream<RoadRow> roads;
+        if (page == null) {
+            roads = viewport == null
+                ? roadRepository.streamRows()
+                : roadRepository.streamRowsIntersecting(viewport.minLng(), viewport.minLat(), viewport.maxLng(), viewport.maxLat());
+        } else {
+            roads = viewport == null
+                ? roadRepository.streamRowsAfter(page.after(), Limit.of(page.limit()))
+                : roadRepository.streamRowsIntersectingAfter(viewport.minLng(), viewport.minLat(), viewport.maxLng(), viewport.maxLat(),
+                    page.after(), Limit.of(page.limit()));
+        }
+        writeCollection(roads, page, lineDelimited, out, (writer, road) -> writer.writeRoad(road, level), RoadRow::id);
+    }
+
+    @Transactional(readOnly = true)
+    public void writeFactories(BoundingBox viewport, LayerPage page, boolean lineDelimited, OutputStream out) throws IOException {
+        SnapshotFile snapshot = snapshotService.getServingSnapshot();
+        if (snapshot != null) {
+            writeCollection(snapshot.factories(viewport, page), page, lineDelimited, out,
+                GeoJsonWriter::writeFactory, FactoryRow::id);
+            return;
+        }
+        if (postgis) {
+            writeEncoded(postGisService.streamGeoJson(GeoLayer.FACTORIES, viewport, page, LevelOfDetail.FULL), page, lineDelimited, out);
+            return;
+        }
+        Stream<FactoryRow> factories;
+        if (page == null) {
+            factories = viewport == null
+                ? factoryRepository.streamRows()
+                : factoryRepository.streamRowsWithinBounds(viewport.minLng(), viewport.minLat(), viewport.maxLng(), viewport.maxLat());
+        } else {
+            factories = viewport == null
+                ? factoryRepository.streamRowsAfter(page.after(), Limit.of(page.limit()))
+                : factoryRepository.streamRowsWithinBoundsAfter(viewport.minLng(), viewport.minLat(), viewport.maxLng(), viewport.maxLat(),
+                    page.after(), Limit.of(page.limit()));
+        }
+        writeCollection(factories, page, lineDelimited, out, GeoJsonWriter::writeFactory, FactoryRow::id);
+    }
+
+    /**
+     * @param level {@link LevelOfDetail} level of the polygons, {@link LevelOfDetail#FULL} for every vertex
+     */
+    @Transactional(readOnly = true)
+    public void writeForests(BoundingBox viewport, int level, LayerPage page, boolean lineDelimited,
+                             OutputStream out) throws IOException {
+        SnapshotFile snapshot = snapshotService.getServingSnapshot();
+        if (snapshot != null) {
+            writeCollection(snapshot.forests(viewport, page), page, lineDelimited, out,
+                (writer, forest) -> writer.writeForest(forest, level), ForestRow::id);
+            return;
+        }
+        if (postgis) {
+            writeEncoded(postGisService.streamGeoJson(GeoLayer.FORESTS, viewport, page, level), page, lineDelimited, out);
+            return;
+        }
+        Stream<ForestRow> forests;
+        if (page == null) {
+            forests = viewport == null
+                ? forestRepository.streamRows()
+                : forestRepository.streamRowsIntersecting(viewport.minLng(), viewport.minLat(), viewport.maxLng(), viewport.maxLat());
+        } else {
+            forests = viewport == null
+                ? forestRepository.streamRowsAfter(page.after(), Limit.of(page.limit()))
+                : forestRepository.streamRowsIntersectingAfter(viewport.minLng(), viewport.minLat(), viewport.maxLng(), viewport.maxLat(),
+                    page.after(), Limit.of(page.limit()));
+        }
+        writeCollection(forests, page, lineDelimited, out, (writer, forest) -> writer.writeForest(forest, level), ForestRow::id);
+    }
+
+    /**
+     * Writes the features one at a time as they are read.
+     * A full keyset page ends with the cursor of the next one; NDJSON output is flushed every
+     * {@link #LINES_PER_FLUSH} features so consumers can start before the query finishes.
+     */
+    private <T> void writeCollection(Stream<T> features, LayerPage page, boolean lineDelimited, OutputStream out,
+                                     FeatureWriter<T> featureWriter, ToLongFunction<T> idOf) throws IOException {
+        try (features; GeoJsonWriter writer = createWriter(out, lineDelimited)) {
+            writer.startFeatureCollection();
+            Iterator<T> iterator = features.iterator();
+            int count = 0;
+            long lastId = 0;
+            while (iterator.hasNext()) {
+                T feature = iterator.next();
+                featureWriter.write(writer, feature);
+                lastId = idOf.applyAsLong(feature);
+                count++;
+                if (lineDelimited && count % LINES_PER_FLUSH == 0) {
+                    writer.flush();
+                }
+            }
+            writer.endFeatureCollection(page != null && count == page.limit() ? lastId : null);
+        }
+    }
+
+    /**
+     * Like {@link #writeCollection}, for {@code [id, json]} rows from {@link PostGisService#streamGeoJson}.
+     */
+    private void writeEncoded(Stream<Object[]> rows, LayerPage page, boolean lineDelimited, OutputStream out) throws IOException {
+        try (rows; GeoJsonWriter writer = createWriter(out, lineDelimited)) {
+            writer.startFeatureCollection();
+            Iterator<Object[]> iterator = rows.iterator();
+            int count = 0;
+            long lastId = 0;
+            while (iterator.hasNext()) {
+                Object[] row = iterator.next();
+                writer.writeFeature((String) row[1]);
+                lastId = ((Number) row[0]).longValue();
+                count++;
+                if (lineDelimited && count % LINES_PER_FLUSH == 0) {
+                    writer.flush();
+                }
+            }
+            writer.endFeatureCollection(page != null && count == page.limit() ? lastId : null);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FeatureWriter<T> {
+        void write(GeoJsonWriter writer, T feature) throws IOException;
+    }
+
+    private GeoJsonWriter createWriter(OutputStream out, boolean lineDelimited) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return new GeoJsonWriter(generator, lineDelimited);
+    }
+}
@@ -0,0 +1,62 @@
+package ge.devspace.simplemap.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Probes GeoServer in the background and keeps the last result, so status requests are
+ * answered from memory instead of each making a request of their own. Only changes in
+ * health are logged.
+ */
+@Service
+public class GeoServerHealthMonitor {
+
+    @Autowired
+    private GeoServerService geoServerService;
+
+    private volatile Map<String, Object> lastCheck;
+
+    @Scheduled(fixedDelayString = "${geoserver.health.interval:PT15S}")
+    public void check() {
+        Map<String, Object> check = geoServerService.probe();
+        boolean healthy = Boolean.TRUE.equals(check.get("success"));
+        Map<String, Object> previous = lastCheck;
+        if (previous == null || healthy != Boolean.TRUE.equals(previous.get("success"))) {
+            if (healthy) {
+                System.out.println("GeoServer is reachable (" + check.get("latencyMs") + " ms)");
+            } else {
+                System.err.println("GeoServer health check failed: " + check.get("errorType") + ": " + check.get("error"));
+            }
+        }
+        lastCheck = check;
+    }
+
+    public boolean isHealthy() {
+        Map<String, Object> check = lastCheck;
+        return check != null && Boolean.TRUE.equals(check.get("success"));
+    }
+
+    /**
+     * Result of the last probe, or null before the first one has finished.
+     */
+    public Map<String, Object> getLastCheck() {
+        return lastCheck;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> check = lastCheck;
+        boolean connected = isHealthy();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("connected", connected);
+        status.put("message", connected ? "GeoServer-თან კავშირი წარმატებულია" : "GeoServer-თან კავშირი ვერ მოხერხდა");
+        status.put("checkedAt", check == null ? null : check.get("timestamp"));
+        status.put("checkLatencyMs", check == null ? null : check.get("latencyMs"));
+        status.put("error", check == null ? null : check.get("error"));
+        status.put("circuit", geoServerService.getCircuitStats());
+        return status;
+    }
+}
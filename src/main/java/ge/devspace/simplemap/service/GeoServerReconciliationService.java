@@ -0,0 +1,268 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.entity.ReconciliationCheckpoint;
+import ge.devspace.simplemap.geo.FeatureHash;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.WfsFeature;
+import ge.devspace.simplemap.repository.GeoServerOutboxRepository;
+import ge.devspace.simplemap.repository.ReconciliationCheckpointRepository;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import ge.devspace.simplemap.repository.SimpleForestRepository;
+import ge.devspace.simplemap.repository.SimpleRoadRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Brings GeoServer back in line with the database after failed or lost synchronizations.
+ * <p>
+ * Each layer is walked in id order, one page at a time and in parallel with the other
+ * layers. For every page the {@link FeatureHash} of each row is compared with the hash of
+ * what GeoServer holds for the same id range, fetched through WFS GetFeature. Only features
+ * that differ or are missing are sent, and features GeoServer has but the database does not
+ * are deleted. Progress is checkpointed after every page, so a failed run resumes where it
+ * stopped.
+ * <p>
+ * Features with changes still in the outbox are left to {@link GeoServerSyncService}, and
+ * the features to send are read again just before sending, so a run never overwrites a
+ * newer change with an older one.
+ */
+@Service
+public class GeoServerReconciliationService {
+
+    @Autowired
+    private SimpleRoadRepository roadRepository;
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    @Autowired
+    private SimpleForestRepository forestRepository;
+
+    @Autowired
+    private GeoServerOutboxRepository outboxRepository;
+
+    @Autowired
+    private ReconciliationCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private GeoServerService geoServerService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${geoserver.reconcile.page-size:500}")
+    private int pageSize;
+
+    private final SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("geoserver-reconcile-");
+    private final Map<GeoLayer, Future<?>> running = new EnumMap<>(GeoLayer.class);
+
+    /**
+     * Runs each layer on a virtual thread when {@code spring.threads.virtual.enabled} is set on Java 21+.
+     */
+    @PostConstruct
+    void init() {
+        executor.setDaemon(true);
+        executor.setVirtualThreads(Threading.VIRTUAL.isActive(environment));
+    }
+
+    /**
+     * Starts reconciling all layers in the background.
+     *
+     * @param restart start from the first id instead of resuming unfinished layers
+     * @return false if a run is still in progress
+     */
+    public synchronized boolean start(boolean restart) {
+        if (isRunning()) {
+            return false;
+        }
+        for (GeoLayer layer : GeoLayer.values()) {
+            running.put(layer, executor.submit(() -> reconcile(layer, restart)));
+        }
+        return true;
+    }
+
+    public synchronized boolean isRunning() {
+        return running.values().stream().anyMatch(future -> !future.isDone());
+    }
+
+    public Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("running", isRunning());
+        progress.put("pageSize", pageSize);
+        progress.put("layers", checkpointRepository.findAll());
+        return progress;
+    }
+
+    private void reconcile(GeoLayer layer, boolean restart) {
+        ReconciliationCheckpoint checkpoint = checkpointRepository.findById(layer)
+            .filter(existing -> !restart && existing.getState() != ReconciliationCheckpoint.State.DONE)
+            .orElseGet(() -> new ReconciliationCheckpoint(layer));
+        checkpoint.setState(ReconciliationCheckpoint.State.RUNNING);
+        checkpoint.setLastError(null);
+        checkpoint = checkpointRepository.save(checkpoint);
+        try {
+            while (reconcilePage(checkpoint)) {
+                checkpoint = checkpointRepository.save(checkpoint);
+            }
+            checkpoint.setState(ReconciliationCheckpoint.State.DONE);
+            checkpoint.setFinishedAt(Instant.now());
+            System.out.println("GeoServer reconciliation of " + layer.getPath() + " done: " + checkpoint.getScanned()
+                + " checked, " + checkpoint.getUpserted() + " sent, " + checkpoint.getDeleted() + " deleted");
+        } catch (RuntimeException e) {
+            checkpoint.setState(ReconciliationCheckpoint.State.FAILED);
+            String error = e.getMessage();
+            checkpoint.setLastError(error == null || error.length() <= 1000 ? error : error.substring(0, 1000));
+            System.err.println("GeoServer reconciliation of " + layer.getPath() + " stopped after id "
+                + checkpoint.getLastId() + ": " + error);
+        }
+        checkpoint.setUpdatedAt(Instant.now());
+        checkpointRepository.save(checkpoint);
+    }
+
+    /**
+     * Reconciles the page after the checkpoint and advances it.
+     *
+     * @return whether more pages follow
+     */
+    private boolean reconcilePage(ReconciliationCheckpoint checkpoint) {
+        GeoLayer layer = checkpoint.getLayer();
+        List<String> propertyNames = GeoServerService.FEATURE_PROPERTIES.get(layer);
+        long after = checkpoint.getLastId();
+
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        Map<Long, Long> local = readOnly.execute(status -> {
+            Map<Long, Long> hashes = new LinkedHashMap<>();
+            try (Stream<WfsFeature> features = streamAfter(layer, after)) {
+                features.forEach(feature -> hashes.put(feature.id(), FeatureHash.of(feature, propertyNames)));
+            }
+            return hashes;
+        });
+        // The last page also covers every id GeoServer has above the last row
+        boolean lastPage = local.size() < pageSize;
+        long upTo = lastPage ? Long.MAX_VALUE : last(local.keySet());
+
+        Map<Long, Long> remote = new LinkedHashMap<>();
+        long remoteAfter = after;
+        while (true) {
+            Map<Long, Long> page = geoServerService.fetchFeatureHashes(layer, remoteAfter, upTo, pageSize);
+            remote.putAll(page);
+            if (page.size() < pageSize) {
+                break;
+            }
+            remoteAfter = last(page.keySet());
+        }
+
+        Set<Long> differing = new HashSet<>();
+        for (Map.Entry<Long, Long> row : local.entrySet()) {
+            if (!row.getValue().equals(remote.remove(row.getKey()))) {
+                differing.add(row.getKey());
+            }
+        }
+        // Whatever is left exists only in GeoServer
+        differing.addAll(remote.keySet());
+
+        if (!differing.isEmpty()) {
+            List<WfsFeature> upserts = new ArrayList<>();
+            List<Long> deletes = new ArrayList<>();
+            readOnly.executeWithoutResult(status -> {
+                differing.removeAll(outboxRepository.findPendingFeatureIds(layer, after, upTo));
+                Map<Long, WfsFeature> current = findAllById(layer, differing);
+                for (Long id : differing) {
+                    WfsFeature feature = current.get(id);
+                    if (feature == null) {
+                        deletes.add(id);
+                    } else {
+                        upserts.add(feature);
+                    }
+                }
+            });
+            send(layer, upserts, deletes);
+            checkpoint.setUpserted(checkpoint.getUpserted() + upserts.size());
+            checkpoint.setDeleted(checkpoint.getDeleted() + deletes.size());
+        }
+
+        checkpoint.setScanned(checkpoint.getScanned() + local.size());
+        if (!local.isEmpty()) {
+            checkpoint.setLastId(last(local.keySet()));
+        }
+        checkpoint.setUpdatedAt(Instant.now());
+        return !lastPage;
+    }
+
+    /**
+     * Sends the differences as delete+insert pairs, at most a page of features per transaction.
+     */
+    private void send(GeoLayer layer, List<WfsFeature> upserts, List<Long> deletes) {
+        for (int from = 0; from < deletes.size(); from += pageSize) {
+            List<Long> chunk = deletes.subList(from, Math.min(from + pageSize, deletes.size()));
+            geoServerService.executeTransaction(transaction -> {
+                for (Long id : chunk) {
+                    transaction.delete(layer, id);
+                }
+            });
+        }
+        for (int from = 0; from < upserts.size(); from += pageSize) {
+            List<WfsFeature> chunk = upserts.subList(from, Math.min(from + pageSize, upserts.size()));
+            geoServerService.executeTransaction(transaction -> {
+                for (WfsFeature feature : chunk) {
+                    transaction.delete(layer, feature.id());
+                    transaction.insert(feature);
+                }
+            });
+        }
+    }
+
+    private Stream<WfsFeature> streamAfter(GeoLayer layer, long after) {
+        Limit limit = Limit.of(pageSize);
+        return switch (layer) {
+            case ROADS -> roadRepository.streamAfter(after, limit).map(geoServerService::toWfsFeature);
+            case FACTORIES -> factoryRepository.streamAfter(after, limit).map(geoServerService::toWfsFeature);
+            case FORESTS -> forestRepository.streamAfter(after, limit).map(geoServerService::toWfsFeature);
+        };
+    }
+
+    private Map<Long, WfsFeature> findAllById(GeoLayer layer, Collection<Long> ids) {
+        Map<Long, WfsFeature> features = new LinkedHashMap<>();
+        switch (layer) {
+            case ROADS -> roadRepository.findAllById(ids)
+                .forEach(road -> features.put(road.getId(), geoServerService.toWfsFeature(road)));
+            case FACTORIES -> factoryRepository.findAllById(ids)
+                .forEach(factory -> features.put(factory.getId(), geoServerService.toWfsFeature(factory)));
+            case FORESTS -> forestRepository.findAllById(ids)
+                .forEach(forest -> features.put(forest.getId(), geoServerService.toWfsFeature(forest)));
+        }
+        return features;
+    }
+
+    private static long last(Collection<Long> ids) {
+        long last = 0;
+        for (Long id : ids) {
+            last = Math.max(last, id);
+        }
+        return last;
+    }
+}
@@ -1,15 +1,43 @@
 package ge.devspace.simplemap.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import ge.devspace.simplemap.entity.SimpleFactory;
 import ge.devspace.simplemap.entity.SimpleRoad;
 import ge.devspace.simplemap.entity.SimpleForest;
+import ge.devspace.simplemap.geo.FeatureHash;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.Twkb;
+import ge.devspace.simplemap.geo.WfsFeature;
+import ge.devspace.simplemap.geo.WfsTransactionWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
 
 @Service
@@ -27,524 +55,345 @@ public class GeoServerService {
     @Value("${geoserver.workspace:simple_map}")
     private String workspace;
 
-    private final RestTemplate restTemplate;
+    @Value("${geoserver.http.max-connections:20}")
+    private int maxConnections;
+
+    @Value("${geoserver.http.connect-timeout:PT3S}")
+    private Duration connectTimeout;
+
+    @Value("${geoserver.http.read-timeout:PT30S}")
+    private Duration readTimeout;
+
+    @Value("${geoserver.http.pool-timeout:PT5S}")
+    private Duration poolTimeout;
+
+    @Value("${geoserver.http.keep-alive:PT60S}")
+    private Duration keepAlive;
+
+    @Value("${geoserver.circuit.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${geoserver.circuit.open-duration:PT30S}")
+    private Duration openDuration;
+
+    /**
+     * Attribute names of each feature type, in the order {@link #toWfsFeature} fills them.
+     */
+    public static final Map<GeoLayer, List<String>> FEATURE_PROPERTIES = Map.of(
+        GeoLayer.ROADS, List.of("name", "type", "material", "length"),
+        GeoLayer.FACTORIES, List.of("name", "type", "status", "capacity"),
+        GeoLayer.FORESTS, List.of("name", "type", "area", "density", "status"));
+
+    private RestTemplate restTemplate;
+    private CloseableHttpClient httpClient;
+    private String authorizationHeader;
+    private String featureNamespace;
+    private CircuitBreaker circuitBreaker;
     private final ObjectMapper objectMapper;
 
     public GeoServerService() {
-        this.restTemplate = new RestTemplate();
         this.objectMapper = new ObjectMapper();
     }
 
+    /**
+     * Builds the pooled transport once the {@code geoserver.*} properties are injected.
+     * All requests go to one host, so the per-route limit is the total limit, and a
+     * worker waits at most {@code pool-timeout} for a connection instead of piling up.
+     */
+    @PostConstruct
+    void init() {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnections)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                .build())
+            .build();
+        httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(poolTimeout))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build())
+            .setKeepAliveStrategy((response, context) -> TimeValue.of(keepAlive))
+            .evictIdleConnections(TimeValue.of(keepAlive))
+            .evictExpiredConnections()
+            .build();
+        restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        circuitBreaker = new CircuitBreaker(failureThreshold, openDuration);
+
+        String credentials = geoServerUsername + ":" + geoServerPassword;
+        featureNamespace = geoServerUrl + "/" + workspace;
+        authorizationHeader = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        httpClient.close();
+    }
+
     private HttpHeaders createAuthHeaders() {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        String auth = Base64.getEncoder().encodeToString((geoServerUsername + ":" + geoServerPassword).getBytes());
-        headers.set("Authorization", "Basic " + auth);
+        headers.set(HttpHeaders.AUTHORIZATION, authorizationHeader);
         return headers;
     }
 
-    public void synchronizeFactory(SimpleFactory factory, String operation) {
-        try {
-            switch (operation.toLowerCase()) {
-                case "create":
-                case "update":
-                    createOrUpdateFactoryInGeoServer(factory);
-                    break;
-                case "delete":
-                    deleteFactoryFromGeoServer(factory.getId());
-                    break;
-            }
-        } catch (Exception e) {
-            System.err.println("GeoServer synchronization failed: " + e.getMessage());
-        }
+    /**
+     * Writes the operations of one {@code wfs:Transaction}. Called while the request body is
+     * being sent, so it must not block on anything but the output.
+     */
+    @FunctionalInterface
+    public interface WfsOperations {
+        void writeTo(WfsTransactionWriter transaction) throws XMLStreamException;
     }
 
-    private void createOrUpdateFactoryInGeoServer(SimpleFactory factory) {
-        try {
-            // Create GeoJSON feature for the factory
-            Map<String, Object> feature = createGeoJsonFeature(factory);
-            
-            // For simplicity, we'll create a WFS-T transaction
-            // In a real implementation, you would use proper WFS-T XML
-            String transactionXml = createWfsTransaction(factory, "update");
-            
-            HttpHeaders headers = createAuthHeaders();
-            headers.setContentType(MediaType.APPLICATION_XML);
-            
-            HttpEntity<String> request = new HttpEntity<>(transactionXml, headers);
-            
-            String url = geoServerUrl + "/wfs";
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                System.out.println("Factory synchronized with GeoServer successfully");
+    /**
+     * Sends one {@code wfs:Transaction}, streaming the XML into the request body as the
+     * operations are written instead of building it as a string first.
+     *
+     * @throws WfsTransactionException when GeoServer is unreachable, the circuit is open
+     *                                  or GeoServer rejects the transaction
+     */
+    public void executeTransaction(WfsOperations operations) {
+        if (!circuitBreaker.tryAcquire()) {
+            throw new WfsTransactionException("GeoServer circuit is open", false, null);
+        }
+        RequestCallback writeTransaction = request -> {
+            request.getHeaders().setContentType(MediaType.APPLICATION_XML);
+            request.getHeaders().set(HttpHeaders.AUTHORIZATION, authorizationHeader);
+            try (WfsTransactionWriter transaction = new WfsTransactionWriter(request.getBody(), workspace, featureNamespace)) {
+                operations.writeTo(transaction);
+            } catch (XMLStreamException | RuntimeException e) {
+                // Bad feature data rather than a transport problem, so let the caller isolate it
+                throw new WfsTransactionException("Could not write the transaction: " + e.getMessage(), true, e);
             }
-        } catch (Exception e) {
-            System.err.println("Failed to sync factory with GeoServer: " + e.getMessage());
+        };
+        ResponseExtractor<String> readBody = response ->
+            new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+
+        String body;
+        long started = System.nanoTime();
+        try {
+            body = restTemplate.execute(geoServerUrl + "/wfs", HttpMethod.POST, writeTransaction, readBody);
+            circuitBreaker.onSuccess(System.nanoTime() - started);
+        } catch (RestClientResponseException e) {
+            recordResponse(e, started);
+            throw new WfsTransactionException("GeoServer answered " + e.getStatusCode().value(), true, e);
+        } catch (RestClientException e) {
+            circuitBreaker.onFailure(System.nanoTime() - started);
+            throw new WfsTransactionException("GeoServer is unreachable: " + e.getMessage(), false, e);
+        } catch (WfsTransactionException e) {
+            circuitBreaker.cancel();
+            throw e;
+        }
+        // WFS reports failed transactions as an exception document, often with status 200
+        if (body != null && (body.contains("ExceptionReport") || body.contains("ServiceException"))) {
+            throw new WfsTransactionException("GeoServer rejected the transaction: " + body, true, null);
         }
     }
 
-    private void deleteFactoryFromGeoServer(Long factoryId) {
-        try {
-            String transactionXml = createWfsDeleteTransaction(factoryId);
-            
-            HttpHeaders headers = createAuthHeaders();
-            headers.setContentType(MediaType.APPLICATION_XML);
-            
-            HttpEntity<String> request = new HttpEntity<>(transactionXml, headers);
-            
-            String url = geoServerUrl + "/wfs";
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                System.out.println("Factory deleted from GeoServer successfully");
+    /**
+     * Fetches the features of a layer with {@code after < id <= upTo} through WFS GetFeature,
+     * at most {@code count} of them in id order, and returns their {@link FeatureHash} by id.
+     * The response is parsed one feature at a time.
+     *
+     * @throws WfsTransactionException when GeoServer is unreachable, the circuit is open
+     *                                  or GeoServer answers with an error
+     */
+    public Map<Long, Long> fetchFeatureHashes(GeoLayer layer, long after, long upTo, int count) {
+        if (!circuitBreaker.tryAcquire()) {
+            throw new WfsTransactionException("GeoServer circuit is open", false, null);
+        }
+        URI uri = UriComponentsBuilder.fromHttpUrl(geoServerUrl + "/wfs")
+            .queryParam("service", "WFS")
+            .queryParam("version", "2.0.0")
+            .queryParam("request", "GetFeature")
+            .queryParam("typeNames", workspace + ":" + layer.getPath())
+            .queryParam("outputFormat", "application/json")
+            .queryParam("sortBy", "id")
+            .queryParam("count", count)
+            .queryParam("CQL_FILTER", "id > " + after + " AND id <= " + upTo)
+            .encode()
+            .build()
+            .toUri();
+        List<String> propertyNames = FEATURE_PROPERTIES.get(layer);
+        RequestCallback authorize = request -> request.getHeaders().set(HttpHeaders.AUTHORIZATION, authorizationHeader);
+        ResponseExtractor<Map<Long, Long>> readHashes = response -> {
+            MediaType contentType = response.getHeaders().getContentType();
+            if (contentType == null || !contentType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                // WFS errors come back as an XML exception report
+                String body = new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+                throw new WfsTransactionException("GeoServer rejected the request: " + body, true, null);
+            }
+            Map<Long, Long> hashes = new LinkedHashMap<>();
+            try (JsonParser parser = objectMapper.createParser(response.getBody())) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected a GeoJSON FeatureCollection");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    if (parser.nextToken() == JsonToken.START_ARRAY && "features".equals(field)) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            JsonNode feature = parser.readValueAsTree();
+                            JsonNode id = feature.path("properties").path("id");
+                            if (id.canConvertToLong()) {
+                                hashes.put(id.asLong(), FeatureHash.of(feature, propertyNames));
+                            }
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
             }
-        } catch (Exception e) {
-            System.err.println("Failed to delete factory from GeoServer: " + e.getMessage());
+            return hashes;
+        };
+
+        long started = System.nanoTime();
+        try {
+            Map<Long, Long> hashes = restTemplate.execute(uri, HttpMethod.GET, authorize, readHashes);
+            circuitBreaker.onSuccess(System.nanoTime() - started);
+            return hashes;
+        } catch (RestClientResponseException e) {
+            recordResponse(e, started);
+            throw new WfsTransactionException("GeoServer answered " + e.getStatusCode().value(), true, e);
+        } catch (RestClientException e) {
+            circuitBreaker.onFailure(System.nanoTime() - started);
+            throw new WfsTransactionException("GeoServer is unreachable: " + e.getMessage(), false, e);
+        } catch (WfsTransactionException e) {
+            circuitBreaker.onSuccess(System.nanoTime() - started);
+            throw e;
         }
     }
 
-    private Map<String, Object> createGeoJsonFeature(SimpleFactory factory) {
-        Map<String, Object> feature = new HashMap<>();
-        feature.put("type", "Feature");
-        
-        Map<String, Object> properties = new HashMap<>();
-        properties.put("id", factory.getId());
+    public WfsFeature toWfsFeature(SimpleFactory factory) {
+        Map<String, Object> properties = new LinkedHashMap<>();
         properties.put("name", factory.getName());
         properties.put("type", factory.getType());
         properties.put("status", factory.getStatus());
         properties.put("capacity", factory.getCapacity());
-        feature.put("properties", properties);
-        
-        Map<String, Object> geometry = new HashMap<>();
-        geometry.put("type", "Point");
-        geometry.put("coordinates", Arrays.asList(factory.getLongitude(), factory.getLatitude()));
-        feature.put("geometry", geometry);
-        
-        return feature;
+        byte[] geometry = factory.getLongitude() == null || factory.getLatitude() == null
+            ? null : Twkb.point(factory.getLongitude(), factory.getLatitude());
+        return new WfsFeature(GeoLayer.FACTORIES, factory.getId(), properties, geometry);
     }
 
-    private String createWfsTransaction(SimpleFactory factory, String operation) {
-        // Simplified WFS-T transaction XML
-        // In a real implementation, you would create proper WFS-T XML with namespace declarations
-        return String.format("""
-            <?xml version="1.0" encoding="UTF-8"?>
-            <wfs:Transaction version="1.1.0" service="WFS"
-                xmlns:wfs="http://www.opengis.net/wfs"
-                xmlns:gml="http://www.opengis.net/gml"
-                xmlns:simple_map="%s/simple_map">
-                <wfs:Insert>
-                    <simple_map:factories>
-                        <simple_map:id>%d</simple_map:id>
-                        <simple_map:name>%s</simple_map:name>
-                        <simple_map:type>%s</simple_map:type>
-                        <simple_map:status>%s</simple_map:status>
-                        <simple_map:capacity>%d</simple_map:capacity>
-                        <simple_map:geom>
-                            <gml:Point srsName="EPSG:4326">
-                                <gml:coordinates>%f,%f</gml:coordinates>
-                            </gml:Point>
-                        </simple_map:geom>
-                    </simple_map:factories>
-                </wfs:Insert>
-            </wfs:Transaction>
-            """, 
-            geoServerUrl, 
-            factory.getId(),
-            escapeXml(factory.getName()),
-            escapeXml(factory.getType()),
-            escapeXml(factory.getStatus()),
-            factory.getCapacity(),
-            factory.getLongitude(),
-            factory.getLatitude()
-        );
+    public WfsFeature toWfsFeature(SimpleRoad road) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("name", road.getName());
+        properties.put("type", road.getType());
+        properties.put("material", road.getMaterial());
+        properties.put("length", road.getLength());
+        return new WfsFeature(GeoLayer.ROADS, road.getId(), properties, road.getGeometry());
     }
 
-    private String createWfsDeleteTransaction(Long factoryId) {
-        return String.format("""
-            <?xml version="1.0" encoding="UTF-8"?>
-            <wfs:Transaction version="1.1.0" service="WFS"
-                xmlns:wfs="http://www.opengis.net/wfs"
-                xmlns:ogc="http://www.opengis.net/ogc"
-                xmlns:simple_map="%s/simple_map">
-                <wfs:Delete typeName="simple_map:factories">
-                    <ogc:Filter>
-                        <ogc:PropertyIsEqualTo>
-                            <ogc:PropertyName>id</ogc:PropertyName>
-                            <ogc:Literal>%d</ogc:Literal>
-                        </ogc:PropertyIsEqualTo>
-                    </ogc:Filter>
-                </wfs:Delete>
-            </wfs:Transaction>
-            """, 
-            geoServerUrl, 
-            factoryId
-        );
+    public WfsFeature toWfsFeature(SimpleForest forest) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("name", forest.getName());
+        properties.put("type", forest.getType());
+        properties.put("area", forest.getArea());
+        properties.put("density", forest.getDensity());
+        properties.put("status", forest.getStatus());
+        // Use the stored polygon if available, otherwise a small square around the center point, if any
+        byte[] geometry = forest.getGeometry();
+        if (geometry == null && forest.getCenterLat() != null && forest.getCenterLng() != null) {
+            double lat = forest.getCenterLat();
+            double lng = forest.getCenterLng();
+            double offset = 0.001;
+            geometry = Twkb.polygon(List.of(new double[] {
+                lng - offset, lat - offset,
+                lng + offset, lat - offset,
+                lng + offset, lat + offset,
+                lng - offset, lat + offset,
+                lng - offset, lat - offset
+            }));
+        }
+        return new WfsFeature(GeoLayer.FORESTS, forest.getId(), properties, geometry);
     }
 
-    private String escapeXml(String text) {
-        if (text == null) return "";
-        return text.replace("&", "&amp;")
-                  .replace("<", "&lt;")
-                  .replace(">", "&gt;")
-                  .replace("\"", "&quot;")
-                  .replace("'", "&apos;");
+    /**
+     * Whether calls are currently let through; false while the circuit is open.
+     */
+    public boolean isAvailable() {
+        return circuitBreaker.isCallPermitted();
     }
 
-    public boolean testConnection() {
-        try {
-            HttpHeaders headers = createAuthHeaders();
-            HttpEntity<String> request = new HttpEntity<>(headers);
-            
-            String url = geoServerUrl + "/rest/workspaces.json";
-            System.out.println("Testing GeoServer connection to: " + url);
-            System.out.println("Using credentials: " + geoServerUsername + "/***");
-            
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, request, String.class);
-            
-            System.out.println("Response Status: " + response.getStatusCode());
-            if (response.getStatusCode().is2xxSuccessful()) {
-                System.out.println("GeoServer connection successful!");
-            } else {
-                System.out.println("GeoServer connection failed with status: " + response.getStatusCode());
-                System.out.println("Response Body: " + response.getBody());
-            }
-            
-            return response.getStatusCode().is2xxSuccessful();
-        } catch (Exception e) {
-            System.err.println("GeoServer connection test failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
-            
-            // Log more details for HTTP errors
-            if (e instanceof org.springframework.web.client.HttpClientErrorException) {
-                org.springframework.web.client.HttpClientErrorException httpError = 
-                    (org.springframework.web.client.HttpClientErrorException) e;
-                System.err.println("HTTP Status Code: " + httpError.getStatusCode());
-                System.err.println("Response Body: " + httpError.getResponseBodyAsString());
-            }
-            
-            return false;
+    public Map<String, Object> getCircuitStats() {
+        return circuitBreaker.getStats();
+    }
+
+    /**
+     * Server errors count against the circuit; client errors mean GeoServer is up and
+     * refused this particular request.
+     */
+    private void recordResponse(RestClientResponseException e, long started) {
+        if (e.getStatusCode().is5xxServerError()) {
+            circuitBreaker.onFailure(System.nanoTime() - started);
+        } else {
+            circuitBreaker.onSuccess(System.nanoTime() - started);
         }
     }
-    
-    public Map<String, Object> testConnectionDetailed() {
-        Map<String, Object> result = new HashMap<>();
+
+    /**
+     * Fetches the workspace list as a health check. Always goes out, even while the circuit
+     * is open, and its outcome feeds the circuit, so a successful probe closes it again.
+     */
+    public Map<String, Object> probe() {
+        Map<String, Object> result = new LinkedHashMap<>();
         result.put("geoserver_url", geoServerUrl);
         result.put("username", geoServerUsername);
         result.put("workspace", workspace);
         result.put("timestamp", new Date().toString());
-        
+
+        HttpEntity<String> request = new HttpEntity<>(createAuthHeaders());
+        long started = System.nanoTime();
         try {
-            // Test 1: Basic connectivity
-            HttpHeaders headers = createAuthHeaders();
-            HttpEntity<String> request = new HttpEntity<>(headers);
-            
-            String url = geoServerUrl + "/rest/workspaces.json";
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, request, String.class);
-            
+            ResponseEntity<String> response = restTemplate.exchange(geoServerUrl + "/rest/workspaces.json", HttpMethod.GET, request, String.class);
+            circuitBreaker.onSuccess(System.nanoTime() - started);
+
             result.put("success", true);
             result.put("statusCode", response.getStatusCode().value());
             result.put("statusText", response.getStatusCode().toString());
             result.put("responseBody", response.getBody());
-            
-            // Test 2: Parse response
             try {
                 JsonNode jsonResponse = objectMapper.readTree(response.getBody());
                 result.put("workspaces", jsonResponse.get("workspaces"));
             } catch (Exception e) {
                 result.put("parseError", e.getMessage());
             }
-            
-        } catch (Exception e) {
-            result.put("success", false);
-            result.put("error", e.getMessage());
-            result.put("errorType", e.getClass().getSimpleName());
-            
-            if (e instanceof org.springframework.web.client.HttpClientErrorException) {
-                org.springframework.web.client.HttpClientErrorException httpError = 
-                    (org.springframework.web.client.HttpClientErrorException) e;
+        } catch (RestClientException e) {
+            if (e instanceof RestClientResponseException httpError) {
+                recordResponse(httpError, started);
                 result.put("httpStatusCode", httpError.getStatusCode().value());
                 result.put("httpStatusText", httpError.getStatusCode().toString());
                 result.put("httpResponseBody", httpError.getResponseBodyAsString());
+            } else {
+                circuitBreaker.onFailure(System.nanoTime() - started);
             }
+            result.put("success", false);
+            result.put("error", e.getMessage());
+            result.put("errorType", e.getClass().getSimpleName());
         }
-        
+        result.put("latencyMs", (System.nanoTime() - started) / 1_000_000.0);
         return result;
     }
 
-    // Road synchronization methods
-    public void synchronizeRoad(SimpleRoad road, String operation) {
-        try {
-            switch (operation.toLowerCase()) {
-                case "create":
-                case "update":
-                    createOrUpdateRoadInGeoServer(road);
-                    break;
-                case "delete":
-                    deleteRoadFromGeoServer(road.getId());
-                    break;
-            }
-        } catch (Exception e) {
-            System.err.println("GeoServer road synchronization failed: " + e.getMessage());
-        }
-    }
+    /**
+     * A WFS request that did not go through. {@code rejected} means GeoServer was
+     * reached and refused it, as opposed to being unreachable.
+     */
+    public static class WfsTransactionException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
 
-    private void createOrUpdateRoadInGeoServer(SimpleRoad road) {
-        try {
-            String transactionXml = createRoadWfsTransaction(road);
-            
-            HttpHeaders headers = createAuthHeaders();
-            headers.setContentType(MediaType.APPLICATION_XML);
-            
-            HttpEntity<String> request = new HttpEntity<>(transactionXml, headers);
-            
-            String url = geoServerUrl + "/wfs";
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                System.out.println("Road synchronized with GeoServer successfully");
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to sync road with GeoServer: " + e.getMessage());
-        }
-    }
+        private final boolean rejected;
 
-    private void deleteRoadFromGeoServer(Long roadId) {
-        try {
-            String transactionXml = createRoadDeleteTransaction(roadId);
-            
-            HttpHeaders headers = createAuthHeaders();
-            headers.setContentType(MediaType.APPLICATION_XML);
-            
-            HttpEntity<String> request = new HttpEntity<>(transactionXml, headers);
-            
-            String url = geoServerUrl + "/wfs";
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                System.out.println("Road deleted from GeoServer successfully");
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to delete road from GeoServer: " + e.getMessage());
+        public WfsTransactionException(String message, boolean rejected, Throwable cause) {
+            super(message, cause);
+            this.rejected = rejected;
         }
-    }
 
-    private String createRoadWfsTransaction(SimpleRoad road) {
-        return String.format("""
-            <?xml version="1.0" encoding="UTF-8"?>
-            <wfs:Transaction version="1.1.0" service="WFS"
-                xmlns:wfs="http://www.opengis.net/wfs"
-                xmlns:gml="http://www.opengis.net/gml"
-                xmlns:simple_map="%s/simple_map">
-                <wfs:Insert>
-                    <simple_map:roads>
-                        <simple_map:id>%d</simple_map:id>
-                        <simple_map:name>%s</simple_map:name>
-                        <simple_map:type>%s</simple_map:type>
-                        <simple_map:material>%s</simple_map:material>
-                        <simple_map:length>%f</simple_map:length>
-                        <simple_map:geom>
-                            <gml:LineString srsName="EPSG:4326">
-                                <gml:coordinates>%f,%f %f,%f</gml:coordinates>
-                            </gml:LineString>
-                        </simple_map:geom>
-                    </simple_map:roads>
-                </wfs:Insert>
-            </wfs:Transaction>
-            """, 
-            geoServerUrl, 
-            road.getId(),
-            escapeXml(road.getName()),
-            escapeXml(road.getType()),
-            escapeXml(road.getMaterial()),
-            road.getLength(),
-            road.getStartLng(),
-            road.getStartLat(),
-            road.getEndLng(),
-            road.getEndLat()
-        );
-    }
-
-    private String createRoadDeleteTransaction(Long roadId) {
-        return String.format("""
-            <?xml version="1.0" encoding="UTF-8"?>
-            <wfs:Transaction version="1.1.0" service="WFS"
-                xmlns:wfs="http://www.opengis.net/wfs"
-                xmlns:ogc="http://www.opengis.net/ogc"
-                xmlns:simple_map="%s/simple_map">
-                <wfs:Delete typeName="simple_map:roads">
-                    <ogc:Filter>
-                        <ogc:PropertyIsEqualTo>
-                            <ogc:PropertyName>id</ogc:PropertyName>
-                            <ogc:Literal>%d</ogc:Literal>
-                        </ogc:PropertyIsEqualTo>
-                    </ogc:Filter>
-                </wfs:Delete>
-            </wfs:Transaction>
-            """, 
-            geoServerUrl, 
-            roadId
-        );
-    }
-
-    // Forest synchronization methods
-    public void synchronizeForest(SimpleForest forest, String operation) {
-        try {
-            switch (operation.toLowerCase()) {
-                case "create":
-                case "update":
-                    createOrUpdateForestInGeoServer(forest);
-                    break;
-                case "delete":
-                    deleteForestFromGeoServer(forest.getId());
-                    break;
-            }
-        } catch (Exception e) {
-            System.err.println("GeoServer forest synchronization failed: " + e.getMessage());
-        }
-    }
-
-    private void createOrUpdateForestInGeoServer(SimpleForest forest) {
-        try {
-            String transactionXml = createForestWfsTransaction(forest);
-            
-            HttpHeaders headers = createAuthHeaders();
-            headers.setContentType(MediaType.APPLICATION_XML);
-            
-            HttpEntity<String> request = new HttpEntity<>(transactionXml, headers);
-            
-            String url = geoServerUrl + "/wfs";
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                System.out.println("Forest synchronized with GeoServer successfully");
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to sync forest with GeoServer: " + e.getMessage());
-        }
-    }
-
-    private void deleteForestFromGeoServer(Long forestId) {
-        try {
-            String transactionXml = createForestDeleteTransaction(forestId);
-            
-            HttpHeaders headers = createAuthHeaders();
-            headers.setContentType(MediaType.APPLICATION_XML);
-            
-            HttpEntity<String> request = new HttpEntity<>(transactionXml, headers);
-            
-            String url = geoServerUrl + "/wfs";
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                System.out.println("Forest deleted from GeoServer successfully");
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to delete forest from GeoServer: " + e.getMessage());
-        }
-    }
-
-    private String createForestWfsTransaction(SimpleForest forest) {
-        // Use polygon coordinates if available, otherwise create a simple polygon around center point
-        String geometryXml;
-        if (forest.getCoordinates() != null && !forest.getCoordinates().isEmpty()) {
-            // Parse and use provided coordinates
-            geometryXml = String.format("""
-                <simple_map:geom>
-                    <gml:Polygon srsName="EPSG:4326">
-                        <gml:exterior>
-                            <gml:LinearRing>
-                                <gml:coordinates>%s</gml:coordinates>
-                            </gml:LinearRing>
-                        </gml:exterior>
-                    </gml:Polygon>
-                </simple_map:geom>
-                """, parseCoordinatesForGml(forest.getCoordinates()));
-        } else {
-            // Create a simple square around the center point
-            double lat = forest.getCenterLat();
-            double lng = forest.getCenterLng();
-            double offset = 0.001; // Small offset for polygon
-            geometryXml = String.format("""
-                <simple_map:geom>
-                    <gml:Polygon srsName="EPSG:4326">
-                        <gml:exterior>
-                            <gml:LinearRing>
-                                <gml:coordinates>%f,%f %f,%f %f,%f %f,%f %f,%f</gml:coordinates>
-                            </gml:LinearRing>
-                        </gml:exterior>
-                    </gml:Polygon>
-                </simple_map:geom>
-                """, 
-                lng-offset, lat-offset,
-                lng+offset, lat-offset,
-                lng+offset, lat+offset,
-                lng-offset, lat+offset,
-                lng-offset, lat-offset
-            );
-        }
-
-        return String.format("""
-            <?xml version="1.0" encoding="UTF-8"?>
-            <wfs:Transaction version="1.1.0" service="WFS"
-                xmlns:wfs="http://www.opengis.net/wfs"
-                xmlns:gml="http://www.opengis.net/gml"
-                xmlns:simple_map="%s/simple_map">
-                <wfs:Insert>
-                    <simple_map:forests>
-                        <simple_map:id>%d</simple_map:id>
-                        <simple_map:name>%s</simple_map:name>
-                        <simple_map:type>%s</simple_map:type>
-                        <simple_map:area>%f</simple_map:area>
-                        <simple_map:density>%s</simple_map:density>
-                        <simple_map:status>%s</simple_map:status>
-                        %s
-                    </simple_map:forests>
-                </wfs:Insert>
-            </wfs:Transaction>
-            """, 
-            geoServerUrl, 
-            forest.getId(),
-            escapeXml(forest.getName()),
-            escapeXml(forest.getType()),
-            forest.getArea(),
-            escapeXml(forest.getDensity()),
-            escapeXml(forest.getStatus()),
-            geometryXml
-        );
-    }
-
-    private String createForestDeleteTransaction(Long forestId) {
-        return String.format("""
-            <?xml version="1.0" encoding="UTF-8"?>
-            <wfs:Transaction version="1.1.0" service="WFS"
-                xmlns:wfs="http://www.opengis.net/wfs"
-                xmlns:ogc="http://www.opengis.net/ogc"
-                xmlns:simple_map="%s/simple_map">
-                <wfs:Delete typeName="simple_map:forests">
-                    <ogc:Filter>
-                        <ogc:PropertyIsEqualTo>
-                            <ogc:PropertyName>id</ogc:PropertyName>
-                            <ogc:Literal>%d</ogc:Literal>
-                        </ogc:PropertyIsEqualTo>
-                    </ogc:Filter>
-                </wfs:Delete>
-            </wfs:Transaction>
-            """, 
-            geoServerUrl, 
-            forestId
-        );
-    }
-
-    private String parseCoordinatesForGml(String coordinatesJson) {
-        try {
-            // Parse JSON coordinates and convert to GML format
-            ObjectMapper mapper = new ObjectMapper();
-            Object coords = mapper.readValue(coordinatesJson, Object.class);
-            // This is a simplified implementation - in production you'd want more robust parsing
-            return coordinatesJson.replaceAll("[\\[\\]\"]", "").replace(",", " ");
-        } catch (Exception e) {
-            System.err.println("Failed to parse coordinates: " + e.getMessage());
-            return "";
+        public boolean isRejected() {
+            return rejected;
         }
     }
-}
\ No newline at end of file
+}
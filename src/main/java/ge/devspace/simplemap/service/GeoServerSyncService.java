@@ -0,0 +1,248 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.entity.GeoServerOutboxEntry;
+import ge.devspace.simplemap.entity.SimpleFactory;
+import ge.devspace.simplemap.entity.SimpleForest;
+import ge.devspace.simplemap.entity.SimpleRoad;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.WfsFeature;
+import ge.devspace.simplemap.geo.WfsTransactionWriter;
+import ge.devspace.simplemap.repository.GeoServerOutboxRepository;
+import jakarta.persistence.CacheRetrieveMode;
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.xml.stream.XMLStreamException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transactional outbox for GeoServer synchronization.
+ * <p>
+ * Feature writes only record which feature changed, in the same transaction as the
+ * change itself. A scheduled dispatcher drains the outbox in id order, coalesces all
+ * pending changes of a feature into one, reads the feature's current state and streams the
+ * whole batch as a single {@code wfs:Transaction}. Failed batches are retried with
+ * exponential backoff, and nothing is sent while the GeoServer circuit is open,
+ * so nothing is lost while GeoServer is down.
+ */
+@Service
+public class GeoServerSyncService {
+
+    /**
+     * Changed features are read from the database, not the second-level cache, so that after a
+     * bulk import the dispatcher neither fills the cache with every imported row nor skews its hit ratio.
+     */
+    private static final Map<String, Object> BYPASS_CACHE = Map.of(
+        AvailableHints.HINT_SPEC_CACHE_RETRIEVE_MODE, CacheRetrieveMode.BYPASS,
+        AvailableHints.HINT_SPEC_CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+
+    @Autowired
+    private GeoServerOutboxRepository outboxRepository;
+
+    @Autowired
+    private GeoServerService geoServerService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${geoserver.sync.enabled:true}")
+    private boolean enabled;
+
+    @Value("${geoserver.sync.batch-size:200}")
+    private int batchSize;
+
+    @Value("${geoserver.sync.initial-backoff:PT2S}")
+    private Duration initialBackoff;
+
+    @Value("${geoserver.sync.max-backoff:PT5M}")
+    private Duration maxBackoff;
+
+    private final AtomicLong sentChanges = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicReference<Instant> lastSuccess = new AtomicReference<>();
+    private final AtomicReference<String> lastError = new AtomicReference<>();
+
+    private record FeatureKey(GeoLayer layer, long featureId) {
+    }
+
+    /**
+     * Records a feature change. Must run inside the transaction that writes the feature.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(GeoLayer layer, Long featureId, GeoServerOutboxEntry.Operation operation) {
+        outboxRepository.save(new GeoServerOutboxEntry(layer, featureId, operation));
+    }
+
+    @Scheduled(fixedDelayString = "${geoserver.sync.interval:PT2S}")
+    public void dispatch() {
+        // While the circuit is open, changes simply stay in the outbox
+        if (!enabled || !geoServerService.isAvailable()) {
+            return;
+        }
+        // Keep draining full batches; stop on an empty or failed one
+        while (dispatchBatch()) {
+        }
+    }
+
+    /**
+     * @return whether a full batch was sent, i.e. more entries may be waiting
+     */
+    private boolean dispatchBatch() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        List<GeoServerOutboxEntry> entries = readOnly.execute(status ->
+            outboxRepository.findReady(Instant.now(), Limit.of(batchSize)));
+        if (entries == null || entries.isEmpty()) {
+            return false;
+        }
+
+        // The last change of a feature wins; its current row decides insert or delete
+        Map<FeatureKey, List<GeoServerOutboxEntry>> changes = new LinkedHashMap<>();
+        for (GeoServerOutboxEntry entry : entries) {
+            changes.computeIfAbsent(new FeatureKey(entry.getLayer(), entry.getFeatureId()), key -> new ArrayList<>()).add(entry);
+        }
+        // Current state of every changed feature; null for features that no longer exist.
+        // A feature that cannot be converted is retried on its own and does not hold up the others.
+        Map<FeatureKey, String> failures = new LinkedHashMap<>();
+        Map<FeatureKey, WfsFeature> features = readOnly.execute(status -> {
+            Map<FeatureKey, WfsFeature> result = new LinkedHashMap<>();
+            for (FeatureKey key : changes.keySet()) {
+                try {
+                    result.put(key, load(key));
+                } catch (RuntimeException e) {
+                    failures.put(key, "Could not read " + key.layer().getPath() + " " + key.featureId() + ": " + e);
+                }
+            }
+            return result;
+        });
+        for (Map.Entry<FeatureKey, String> failure : failures.entrySet()) {
+            retryLater(changes.remove(failure.getKey()), failure.getValue());
+        }
+        if (changes.isEmpty()) {
+            return false;
+        }
+
+        try {
+            geoServerService.executeTransaction(transaction -> {
+                for (Map.Entry<FeatureKey, WfsFeature> feature : features.entrySet()) {
+                    write(transaction, feature.getKey(), feature.getValue());
+                }
+            });
+            complete(pending(changes));
+            return entries.size() == batchSize;
+        } catch (GeoServerService.WfsTransactionException e) {
+            if (!e.isRejected() || changes.size() == 1) {
+                retryLater(pending(changes), e.getMessage());
+                return false;
+            }
+        }
+
+        // GeoServer refused the batch: send features one by one so a single bad one cannot block the rest
+        for (Map.Entry<FeatureKey, List<GeoServerOutboxEntry>> change : changes.entrySet()) {
+            FeatureKey key = change.getKey();
+            try {
+                geoServerService.executeTransaction(transaction -> write(transaction, key, features.get(key)));
+                complete(change.getValue());
+            } catch (GeoServerService.WfsTransactionException e) {
+                retryLater(change.getValue(), e.getMessage());
+                if (!e.isRejected()) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<GeoServerOutboxEntry> pending(Map<FeatureKey, List<GeoServerOutboxEntry>> changes) {
+        return changes.values().stream().flatMap(List::stream).toList();
+    }
+
+    private WfsFeature load(FeatureKey key) {
+        return switch (key.layer()) {
+            case ROADS -> Optional.ofNullable(entityManager.find(SimpleRoad.class, key.featureId(), BYPASS_CACHE))
+                .map(geoServerService::toWfsFeature).orElse(null);
+            case FACTORIES -> Optional.ofNullable(entityManager.find(SimpleFactory.class, key.featureId(), BYPASS_CACHE))
+                .map(geoServerService::toWfsFeature).orElse(null);
+            case FORESTS -> Optional.ofNullable(entityManager.find(SimpleForest.class, key.featureId(), BYPASS_CACHE))
+                .map(geoServerService::toWfsFeature).orElse(null);
+        };
+    }
+
+    /**
+     * Delete-then-insert for features that still exist, so that replays and updates are idempotent.
+     */
+    private static void write(WfsTransactionWriter transaction, FeatureKey key, WfsFeature feature) throws XMLStreamException {
+        transaction.delete(key.layer(), key.featureId());
+        if (feature != null) {
+            transaction.insert(feature);
+        }
+    }
+
+    private void complete(List<GeoServerOutboxEntry> entries) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+            outboxRepository.deleteAllByIdInBatch(entries.stream().map(GeoServerOutboxEntry::getId).toList()));
+        sentChanges.addAndGet(entries.size());
+        lastSuccess.set(Instant.now());
+    }
+
+    private void retryLater(List<GeoServerOutboxEntry> entries, String error) {
+        failedBatches.incrementAndGet();
+        lastError.set(error);
+        Instant now = Instant.now();
+        for (GeoServerOutboxEntry entry : entries) {
+            int attempts = entry.getAttempts() + 1;
+            entry.setAttempts(attempts);
+            entry.setNextAttemptAt(now.plus(backoff(attempts)));
+            entry.setLastError(error == null || error.length() <= 1000 ? error : error.substring(0, 1000));
+        }
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> outboxRepository.saveAll(entries));
+        System.err.println("GeoServer synchronization of " + entries.size() + " changes failed, will retry: " + error);
+    }
+
+    /**
+     * Exponential backoff capped at {@code max-backoff}, with up to 20% jitter so that
+     * retries do not all land on a recovering GeoServer at once.
+     */
+    private Duration backoff(int attempts) {
+        long millis = initialBackoff.toMillis() << Math.min(attempts - 1, 20);
+        millis = Math.min(millis, maxBackoff.toMillis());
+        return Duration.ofMillis(millis + ThreadLocalRandom.current().nextLong(millis / 5 + 1));
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("circuit", geoServerService.getCircuitStats().get("state"));
+        status.put("pending", outboxRepository.count());
+        status.put("retrying", outboxRepository.countRetrying());
+        status.put("oldestPending", outboxRepository.findOldestCreatedAt());
+        status.put("sentChanges", sentChanges.get());
+        status.put("failedBatches", failedBatches.get());
+        status.put("lastSuccess", lastSuccess.get());
+        status.put("lastError", lastError.get());
+        return status;
+    }
+}
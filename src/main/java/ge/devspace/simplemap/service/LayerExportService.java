@@ -0,0 +1,264 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.geo.FlatGeobufWriter;
+import ge.devspace.simplemap.geo.FlatGeobufWriter.Column;
+import ge.devspace.simplemap.geo.FlatGeobufWriter.ColumnType;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.Twkb;
+import ge.devspace.simplemap.repository.FactoryRow;
+import ge.devspace.simplemap.repository.ForestRow;
+import ge.devspace.simplemap.repository.RoadRow;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import ge.devspace.simplemap.repository.SimpleForestRepository;
+import ge.devspace.simplemap.repository.SimpleRoadRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Whole-layer exports as FlatGeobuf files.
+ * <p>
+ * A layer is streamed from its repository once per {@link LayerVersionService} version into
+ * a file in {@code geo.export.directory}, then served from disk until the layer changes.
+ * Serving a file rather than a stream lets clients fetch just the header and index with
+ * HTTP range requests and then only the features inside their bbox.
+ */
+@Service
+public class LayerExportService {
+
+    private static final List<Column> ROAD_COLUMNS = List.of(
+        new Column("id", ColumnType.LONG),
+        new Column("name", ColumnType.STRING),
+        new Column("type", ColumnType.STRING),
+        new Column("length", ColumnType.DOUBLE),
+        new Column("material", ColumnType.STRING));
+
+    private static final List<Column> FACTORY_COLUMNS = List.of(
+        new Column("id", ColumnType.LONG),
+        new Column("name", ColumnType.STRING),
+        new Column("type", ColumnType.STRING),
+        new Column("capacity", ColumnType.INT),
+        new Column("status", ColumnType.STRING));
+
+    private static final List<Column> FOREST_COLUMNS = List.of(
+        new Column("id", ColumnType.LONG),
+        new Column("name", ColumnType.STRING),
+        new Column("type", ColumnType.STRING),
+        new Column("area", ColumnType.DOUBLE),
+        new Column("density", ColumnType.STRING),
+        new Column("status", ColumnType.STRING));
+
+    @Autowired
+    private SimpleRoadRepository roadRepository;
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    @Autowired
+    private SimpleForestRepository forestRepository;
+
+    @Autowired
+    private LayerVersionService layerVersionService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${geo.export.directory:${java.io.tmpdir}/simple-map-export}")
+    private Path directory;
+
+    private final Map<GeoLayer, ExportFile> files = new ConcurrentHashMap<>();
+    // The file each layer served before the current one. A download handed it just before the
+    // rebuild may still be opening it or reading ranges of it, so it is only deleted when the
+    // next rebuild retires the current file in turn
+    private final Map<GeoLayer, ExportFile> retired = new ConcurrentHashMap<>();
+    private final Map<GeoLayer, ReentrantLock> buildLocks = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+
+    /**
+     * An exported layer file. {@code skipped} counts features left out for lack of a geometry.
+     */
+    public record ExportFile(long version, Path path, int features, int skipped, long size, long buildMillis) {
+    }
+
+    /**
+     * Removes exports left by earlier runs; their versions can never be requested again.
+     */
+    @PostConstruct
+    void init() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*.{fgb,tmp}")) {
+            for (Path file : stale) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * The layer as FlatGeobuf, exporting it first if the existing file is stale.
+     */
+    public ExportFile flatGeobuf(GeoLayer layer) throws IOException {
+        long version = layerVersionService.getVersion(layer);
+        ExportFile current = files.get(layer);
+        if (current != null && current.version() == version) {
+            hits.incrementAndGet();
+            return current;
+        }
+        // A ReentrantLock, as in LayerResponseCache, so that a virtual thread does not pin during the export
+        ReentrantLock lock = buildLocks.computeIfAbsent(layer, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            current = files.get(layer);
+            if (current != null && current.version() >= version) {
+                hits.incrementAndGet();
+                return current;
+            }
+            ExportFile built = export(layer, version);
+            files.put(layer, built);
+            builds.incrementAndGet();
+            if (current != null) {
+                ExportFile previous = retired.put(layer, current);
+                if (previous != null) {
+                    try {
+                        Files.deleteIfExists(previous.path());
+                    } catch (IOException e) {
+                        System.err.println("Could not delete old export " + previous.path() + ": " + e.getMessage());
+                    }
+                }
+            }
+            return built;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", directory.toString());
+        stats.put("hits", hits.get());
+        stats.put("builds", builds.get());
+        Map<String, Object> layers = new LinkedHashMap<>();
+        files.forEach((layer, file) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("version", file.version());
+            entry.put("features", file.features());
+            entry.put("skipped", file.skipped());
+            entry.put("bytes", file.size());
+            entry.put("buildMs", file.buildMillis());
+            layers.put(layer.getPath(), entry);
+        });
+        stats.put("layers", layers);
+        return stats;
+    }
+
+    /**
+     * Streams the layer into a temporary file, then moves it into place so a half-written
+     * export is never served.
+     */
+    private ExportFile export(GeoLayer layer, long version) throws IOException {
+        long started = System.nanoTime();
+        Path target = directory.resolve(layer.getPath() + "-" + version + ".fgb");
+        Path partial = directory.resolve(layer.getPath() + "-" + version + ".fgb.tmp");
+        Path spill = directory.resolve(layer.getPath() + "-" + version + ".spill.tmp");
+        int[] skipped = new int[1];
+        try (FlatGeobufWriter writer = createWriter(layer, spill)) {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            try {
+                readOnly.executeWithoutResult(status -> skipped[0] = switch (layer) {
+                    case ROADS -> addAll(writer, roadRepository.streamRows(), RoadRow::geometry,
+                        road -> new Object[] {road.id(), road.name(), road.type(), road.length(), road.material()});
+                    case FACTORIES -> addAll(writer, factoryRepository.streamRows(), LayerExportService::factoryGeometry,
+                        factory -> new Object[] {factory.id(), factory.name(), factory.type(), factory.capacity(),
+                            factory.status()});
+                    case FORESTS -> addAll(writer, forestRepository.streamRows(), LayerExportService::forestGeometry,
+                        forest -> new Object[] {forest.id(), forest.name(), forest.type(), forest.area(),
+                            forest.density(), forest.status()});
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial), 1 << 16)) {
+                writer.writeTo(out);
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+            System.out.println("Exported " + writer.getFeatureCount() + " " + layer.getPath() + " as FlatGeobuf ("
+                + Files.size(target) + " bytes) in " + elapsedMillis + " ms");
+            return new ExportFile(version, target, writer.getFeatureCount(), skipped[0], Files.size(target), elapsedMillis);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    private static FlatGeobufWriter createWriter(GeoLayer layer, Path spill) throws IOException {
+        return switch (layer) {
+            // LineStrings, or MultiLineStrings for roads in several parts
+            case ROADS -> new FlatGeobufWriter(layer.getPath(), FlatGeobufWriter.UNKNOWN, ROAD_COLUMNS, spill);
+            case FACTORIES -> new FlatGeobufWriter(layer.getPath(), Twkb.POINT, FACTORY_COLUMNS, spill);
+            // Polygons, or center points for forests without one
+            case FORESTS -> new FlatGeobufWriter(layer.getPath(), FlatGeobufWriter.UNKNOWN, FOREST_COLUMNS, spill);
+        };
+    }
+
+    /**
+     * Adds every streamed row.
+     *
+     * @return the number of features skipped for lack of a geometry
+     */
+    private <T> int addAll(FlatGeobufWriter writer, Stream<T> rows, Function<T, byte[]> geometry,
+                           Function<T, Object[]> values) {
+        int skipped = 0;
+        try (rows) {
+            Iterator<T> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                T row = iterator.next();
+                if (!writer.add(geometry.apply(row), values.apply(row))) {
+                    skipped++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return skipped;
+    }
+
+    private static byte[] factoryGeometry(FactoryRow factory) {
+        if (factory.longitude() == null || factory.latitude() == null) {
+            return null;
+        }
+        return Twkb.point(factory.longitude(), factory.latitude());
+    }
+
+    private static byte[] forestGeometry(ForestRow forest) {
+        if (forest.geometry() != null) {
+            return forest.geometry();
+        }
+        if (forest.centerLng() == null || forest.centerLat() == null) {
+            return null;
+        }
+        return Twkb.point(forest.centerLng(), forest.centerLat());
+    }
+}
@@ -0,0 +1,34 @@
+package ge.devspace.simplemap.service;
+
+/**
+ * Keyset page of a layer: up to {@code limit} features with an id greater than {@code after}.
+ */
+public record LayerPage(long after, int limit) {
+
+    public static final int DEFAULT_LIMIT = 1000;
+    public static final int MAX_LIMIT = 10_000;
+
+    public LayerPage {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+    }
+
+    /**
+     * Page for the {@code after}/{@code limit} request parameters, or null when neither is given.
+     * Limits above {@link #MAX_LIMIT} are capped.
+     */
+    public static LayerPage of(Long after, Integer limit) {
+        if (after == null && limit == null) {
+            return null;
+        }
+        return new LayerPage(after == null ? 0 : after, Math.min(limit == null ? DEFAULT_LIMIT : limit, MAX_LIMIT));
+    }
+
+    /**
+     * Inverse of {@link #of}, for cache keys and ETags.
+     */
+    public String toParameter() {
+        return "after" + after + "-limit" + limit;
+    }
+}
@@ -0,0 +1,130 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.LevelOfDetail;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized and gzip-compressed GeoJSON of whole layers (no bbox), built once per
+ * layer version and then served straight from memory.
+ * <p>
+ * An entry is tagged with the {@link LayerVersionService} version read before it was
+ * rendered, so a write that lands mid-render can only make the entry look older than it is,
+ * never newer; writes also drop the layer's entries right away.
+ */
+@Service
+public class LayerResponseCache {
+
+    @Autowired
+    private GeoJsonLayerService geoJsonLayerService;
+
+    @Autowired
+    private LayerVersionService layerVersionService;
+
+    @Value("${geo.layer-cache.enabled:true}")
+    private boolean enabled;
+
+    private final Map<CacheKey, CachedLayer> entries = new ConcurrentHashMap<>();
+    private final Map<CacheKey, ReentrantLock> buildLocks = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+
+    /**
+     * One serialized layer representation.
+     */
+    public record CachedLayer(long version, byte[] json, byte[] gzip) {
+    }
+
+    private record CacheKey(GeoLayer layer, int level) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The layer at the given {@link LevelOfDetail} level, rendering it if the cached copy is stale.
+     */
+    public CachedLayer get(GeoLayer layer, int level) throws IOException {
+        CacheKey key = new CacheKey(layer, level);
+        long version = layerVersionService.getVersion(layer);
+        CachedLayer cached = entries.get(key);
+        if (cached != null && cached.version() == version) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        // One build per key at a time. A ReentrantLock rather than ConcurrentHashMap.compute(),
+        // whose bin monitor would pin a virtual thread for the whole JDBC read.
+        ReentrantLock lock = buildLocks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            CachedLayer current = entries.get(key);
+            if (current != null && current.version() >= version) {
+                hits.incrementAndGet();
+                return current;
+            }
+            CachedLayer built = build(layer, level, version);
+            entries.put(key, built);
+            return built;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeatureChanged(FeatureChangedEvent event) {
+        entries.keySet().removeIf(key -> key.layer() == event.layer());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        long bytes = 0;
+        for (CachedLayer cached : entries.values()) {
+            bytes += cached.json().length + cached.gzip().length;
+        }
+        stats.put("entries", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("hits", hits.get());
+        stats.put("builds", builds.get());
+        return stats;
+    }
+
+    private CachedLayer build(GeoLayer layer, int level, long version) throws IOException {
+        long started = System.nanoTime();
+        ByteArrayOutputStream json = new ByteArrayOutputStream(64 * 1024);
+        switch (layer) {
+            case ROADS -> geoJsonLayerService.writeRoads(null, level, null, false, json);
+            case FACTORIES -> geoJsonLayerService.writeFactories(null, null, false, json);
+            case FORESTS -> geoJsonLayerService.writeForests(null, level, null, false, json);
+        }
+        byte[] body = json.toByteArray();
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream(body.length / 4 + 64);
+        // Built once per version, so spend the CPU on the best ratio
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip, 8192) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(body);
+        }
+        builds.incrementAndGet();
+        System.out.println("Layer cache built for " + layer.getPath() + ": " + body.length + " bytes, "
+            + gzip.size() + " gzipped in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+        return new CachedLayer(version, body, gzip.toByteArray());
+    }
+}
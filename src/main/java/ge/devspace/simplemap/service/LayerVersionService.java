@@ -0,0 +1,69 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.geo.GeoLayer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonically increasing data version per layer, bumped by every feature write.
+ * Versions start at the boot time in milliseconds so that an ETag handed out before
+ * a restart can never match the (freshly seeded) data served after it.
+ */
+@Service
+public class LayerVersionService {
+
+    private final Map<GeoLayer, AtomicLong> versions = new EnumMap<>(GeoLayer.class);
+
+    public LayerVersionService() {
+        long bootVersion = System.currentTimeMillis();
+        for (GeoLayer layer : GeoLayer.values()) {
+            versions.put(layer, new AtomicLong(bootVersion));
+        }
+    }
+
+    public long getVersion(GeoLayer layer) {
+        return versions.get(layer).get();
+    }
+
+    public long bump(GeoLayer layer) {
+        return versions.get(layer).incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeatureChanged(FeatureChangedEvent event) {
+        bump(event.layer());
+    }
+
+    /**
+     * Strong ETag for a layer representation. {@code variant} distinguishes
+     * representations of the same version, e.g. different bbox/zoom queries,
+     * and must not contain double quotes.
+     */
+    public String etag(GeoLayer layer, String variant) {
+        return etag(layer, getVersion(layer), variant);
+    }
+
+    /**
+     * Strong ETag for a representation rendered at a known version.
+     */
+    public String etag(GeoLayer layer, long version, String variant) {
+        String tag = layer.getPath() + "-" + version;
+        if (variant != null && !variant.isEmpty()) {
+            tag += "-" + variant;
+        }
+        return "\"" + tag + "\"";
+    }
+
+    public Map<String, Object> getVersions() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (GeoLayer layer : GeoLayer.values()) {
+            result.put(layer.getPath(), getVersion(layer));
+        }
+        return result;
+    }
+}
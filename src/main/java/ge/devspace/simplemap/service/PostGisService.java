@@ -0,0 +1,155 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.LevelOfDetail;
+import ge.devspace.simplemap.geo.VectorTileEncoder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Spatial queries and GeoJSON/MVT encoding done by PostGIS, used instead of the in-memory
+ * index and the Java encoders when {@code geo.postgis.enabled} is set (postgis profile).
+ * <p>
+ * Every query runs against the generated {@code geom} column and its GiST index from
+ * {@code db/postgis.sql}. Bbox tests use {@code &&} (envelope overlap), so results match
+ * the H2 profile feature for feature.
+ */
+@Service
+public class PostGisService {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Table and attribute columns of a layer, in the order the Java writers use.
+     */
+    private record LayerTable(String table, String columns) {
+    }
+
+    private static LayerTable table(GeoLayer layer) {
+        return switch (layer) {
+            case ROADS -> new LayerTable("simple_roads", "id, name, type, length, material");
+            case FACTORIES -> new LayerTable("simple_factories", "id, name, type, capacity, status");
+            case FORESTS -> new LayerTable("simple_forests", "id, name, type, area, density, status");
+        };
+    }
+
+    /**
+     * GeoJSON Features as {@code [id, json]} rows, each encoded by {@code ST_AsGeoJSON}.
+     *
+     * @param viewport only features whose envelope intersects it, or all when null
+     * @param page     keyset page in id order, or the whole layer unordered when null
+     * @param level    {@link LevelOfDetail} level to simplify polygons to, or {@link LevelOfDetail#FULL}
+     */
+    @SuppressWarnings("unchecked")
+    public Stream<Object[]> streamGeoJson(GeoLayer layer, BoundingBox viewport, LayerPage page, int level) {
+        LayerTable table = table(layer);
+        String geometry = level == LevelOfDetail.FULL
+            ? "geom"
+            : "ST_Simplify(geom, " + LevelOfDetail.tolerance(level) + ", true)";
+        StringBuilder sql = new StringBuilder()
+            .append("select t.id, ST_AsGeoJSON(t.*, 'geom', 7) from (select ")
+            .append(table.columns()).append(", ").append(geometry).append(" as geom from ").append(table.table())
+            .append(" where true");
+        if (viewport != null) {
+            sql.append(" and geom && ST_MakeEnvelope(:minLng, :minLat, :maxLng, :maxLat, 4326)");
+        }
+        if (page != null) {
+            sql.append(" and id > :after");
+        }
+        sql.append(") t");
+        if (page != null) {
+            // On the outer query, so the rows come back in id order and not just the page's choice
+            sql.append(" order by t.id limit :limit");
+        }
+
+        Query query = entityManager.createNativeQuery(sql.toString())
+            .setHint(AvailableHints.HINT_FETCH_SIZE, 500)
+            .setHint(AvailableHints.HINT_READ_ONLY, true);
+        if (viewport != null) {
+            bindEnvelope(query, viewport);
+        }
+        if (page != null) {
+            query.setParameter("after", page.after()).setParameter("limit", page.limit());
+        }
+        return query.getResultStream();
+    }
+
+    /**
+     * The layer's features in one tile, encoded by {@code ST_AsMVT} with the same layer name,
+     * extent, clip buffer and properties as {@link VectorTileEncoder}.
+     */
+    public byte[] renderTile(GeoLayer layer, int z, int x, int y) {
+        LayerTable table = table(layer);
+        // ST_AsMVT takes the feature id column out of the properties, so the id is selected once
+        // more under its own name to stay a property as in the Java encoder
+        String sql = "select ST_AsMVT(tile, :name, :extent, 'geom', 'feature_id') from (select id as feature_id, " + table.columns()
+            + ", ST_AsMVTGeom(ST_Transform(geom, 3857), ST_TileEnvelope(:z, :x, :y), :extent, :buffer, true) as geom"
+            + " from " + table.table()
+            + " where geom && ST_Transform(ST_TileEnvelope(:z, :x, :y, margin => :margin), 4326)) tile"
+            + " where tile.geom is not null";
+        Object tile = entityManager.createNativeQuery(sql)
+            .setParameter("name", layer.getPath())
+            .setParameter("extent", VectorTileEncoder.DEFAULT_EXTENT)
+            .setParameter("buffer", VectorTileEncoder.DEFAULT_BUFFER)
+            .setParameter("margin", (double) VectorTileEncoder.DEFAULT_BUFFER / VectorTileEncoder.DEFAULT_EXTENT)
+            .setParameter("z", z)
+            .setParameter("x", x)
+            .setParameter("y", y)
+            .getSingleResult();
+        return tile == null ? new byte[0] : (byte[]) tile;
+    }
+
+    /**
+     * Ids of features whose envelope intersects the window.
+     */
+    public long[] search(GeoLayer layer, BoundingBox window) {
+        Query query = entityManager.createNativeQuery("select id from " + table(layer).table()
+            + " where geom && ST_MakeEnvelope(:minLng, :minLat, :maxLng, :maxLat, 4326)");
+        bindEnvelope(query, window);
+        return ids(query);
+    }
+
+    /**
+     * Ids of features whose envelope contains the point.
+     */
+    public long[] containing(GeoLayer layer, double lng, double lat) {
+        Query query = entityManager.createNativeQuery("select id from " + table(layer).table()
+            + " where geom && ST_SetSRID(ST_MakePoint(:lng, :lat), 4326)");
+        query.setParameter("lng", lng).setParameter("lat", lat);
+        return ids(query);
+    }
+
+    /**
+     * Ids of the features closest to the point, nearest first, found by a GiST index scan ({@code <->}).
+     */
+    public long[] nearest(GeoLayer layer, double lng, double lat, int limit) {
+        Query query = entityManager.createNativeQuery("select id from " + table(layer).table()
+            + " where geom is not null order by geom <-> ST_SetSRID(ST_MakePoint(:lng, :lat), 4326) limit :limit");
+        query.setParameter("lng", lng).setParameter("lat", lat).setParameter("limit", limit);
+        return ids(query);
+    }
+
+    private static void bindEnvelope(Query query, BoundingBox box) {
+        query.setParameter("minLng", box.minLng())
+            .setParameter("minLat", box.minLat())
+            .setParameter("maxLng", box.maxLng())
+            .setParameter("maxLat", box.maxLat());
+    }
+
+    private static long[] ids(Query query) {
+        List<?> rows = query.getResultList();
+        long[] ids = new long[rows.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = ((Number) rows.get(i)).longValue();
+        }
+        return ids;
+    }
+}
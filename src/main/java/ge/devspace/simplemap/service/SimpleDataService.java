@@ -3,6 +3,7 @@ package ge.devspace.simplemap.service;
 import ge.devspace.simplemap.entity.SimpleFactory;
 import ge.devspace.simplemap.entity.SimpleRoad;
 import ge.devspace.simplemap.entity.SimpleForest;
+import ge.devspace.simplemap.geo.GeoLayer;
 import ge.devspace.simplemap.repository.SimpleFactoryRepository;
 import ge.devspace.simplemap.repository.SimpleRoadRepository;
 import ge.devspace.simplemap.repository.SimpleForestRepository;
@@ -10,6 +11,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+
 @Service
 public class SimpleDataService implements CommandLineRunner {
 
@@ -22,6 +25,15 @@ public class SimpleDataService implements CommandLineRunner {
     @Autowired
     private SimpleForestRepository forestRepository;
 
+    @Autowired
+    private LayerVersionService layerVersionService;
+
+    @Autowired
+    private SyntheticDataService syntheticDataService;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
     @Override
     public void run(String... args) throws Exception {
         // Clear existing data
@@ -29,6 +41,34 @@ public class SimpleDataService implements CommandLineRunner {
         factoryRepository.deleteAll();
         forestRepository.deleteAll();
 
+        if (snapshotService.canRestore()) {
+            try {
+                // Seeds instead if the rows cannot be inserted
+                snapshotService.restore(this::seed);
+                return;
+            } catch (IOException e) {
+                System.err.println("Snapshot not restored, seeding instead: " + e.getMessage());
+            }
+        }
+
+        seed();
+
+        if (snapshotService.isRestoreEnabled()) {
+            // Nothing to restore from yet; the next start restores what was just seeded
+            snapshotService.write();
+        }
+    }
+
+    private void seed() {
+        if (syntheticDataService.isEnabled()) {
+            syntheticDataService.generate();
+        } else {
+            createSamples();
+        }
+        bumpVersions();
+    }
+
+    private void createSamples() {
         // Create sample roads around Tbilisi
         SimpleRoad road1 = new SimpleRoad("რუსთაველის გამზირი", "მთავარი გზა", "ასფალტი", 
             41.7100, 44.7950, 41.7180, 44.8150, 2.3);
@@ -82,4 +122,11 @@ public class SimpleDataService implements CommandLineRunner {
         SimpleForest forest5 = new SimpleForest("თბილისის ზღვის ტყე", "რეკრეაციული", 203.4, "საშუალო", "დაცული", 41.8167, 44.8833, null);
         forestRepository.save(forest5);
     }
+
+    private void bumpVersions() {
+        // Requests can arrive while seeding; anything cached or tagged before this point is stale
+        for (GeoLayer layer : GeoLayer.values()) {
+            layerVersionService.bump(layer);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,551 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.repository.FactoryRow;
+import ge.devspace.simplemap.repository.ForestRow;
+import ge.devspace.simplemap.repository.RoadRow;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Binary dump of the three feature tables, read back through memory-mapped buffers.
+ * <p>
+ * Layout (big-endian): a magic number, the rows of each layer one after another, an index
+ * per layer, then the position of the index and the magic number again. A row holds the
+ * columns of its {@link Table} in order: numbers behind a presence byte, strings (UTF-8)
+ * and byte arrays behind their length, -1 for null. The index has the row count and, for
+ * every row in id order, its id, offset, envelope (NaN without one) and cluster weight, so
+ * the in-memory views can be rebuilt without decoding a single row. One layer's rows must
+ * stay below 2 GB, the most a single mapped buffer can address.
+ * <p>
+ * An opened snapshot is immutable and safe to read from any number of threads. Its buffers
+ * stay mapped until the instance is garbage collected.
+ */
+public final class SnapshotFile {
+
+    private static final long MAGIC = 0x534D534E41503031L; // "SMSNAP01"
+    private static final int FOOTER_BYTES = 16;
+
+    public enum ColumnType {
+        LONG(Types.BIGINT), INTEGER(Types.INTEGER), DOUBLE(Types.DOUBLE), STRING(Types.VARCHAR), BYTES(Types.VARBINARY);
+
+        private final int sqlType;
+
+        ColumnType(int sqlType) {
+            this.sqlType = sqlType;
+        }
+    }
+
+    public record Column(String name, ColumnType type) {
+    }
+
+    /**
+     * A feature table as it is dumped. The id column comes first; {@code envelope} names the
+     * minLng, minLat, maxLng and maxLat columns, {@code weight} the cluster weight column or null.
+     */
+    public record Table(String name, List<Column> columns, List<String> envelope, String weight) {
+
+        public String selectSql() {
+            return "select " + columns.stream().map(Column::name).collect(Collectors.joining(", "))
+                + " from " + name + " order by id";
+        }
+
+        public String insertSql() {
+            return "insert into " + name + " (" + columns.stream().map(Column::name).collect(Collectors.joining(", "))
+                + ") values (" + columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+        }
+
+        /**
+         * The current row of a {@link #selectSql()} result.
+         */
+        public Object[] read(ResultSet resultSet) throws SQLException {
+            Object[] values = new Object[columns.size()];
+            for (int c = 0; c < values.length; c++) {
+                int index = c + 1;
+                values[c] = switch (columns.get(c).type()) {
+                    case LONG -> resultSet.getLong(index);
+                    case INTEGER -> resultSet.getInt(index);
+                    case DOUBLE -> resultSet.getDouble(index);
+                    case STRING -> resultSet.getString(index);
+                    case BYTES -> resultSet.getBytes(index);
+                };
+                if (resultSet.wasNull()) {
+                    values[c] = null;
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Sets the parameters of an {@link #insertSql()} statement.
+         */
+        public void bind(PreparedStatement insert, Object[] values) throws SQLException {
+            for (int c = 0; c < values.length; c++) {
+                int index = c + 1;
+                Object value = values[c];
+                ColumnType type = columns.get(c).type();
+                if (value == null) {
+                    insert.setNull(index, type.sqlType);
+                    continue;
+                }
+                switch (type) {
+                    case LONG -> insert.setLong(index, (Long) value);
+                    case INTEGER -> insert.setInt(index, (Integer) value);
+                    case DOUBLE -> insert.setDouble(index, (Double) value);
+                    case STRING -> insert.setString(index, (String) value);
+                    case BYTES -> insert.setBytes(index, (byte[]) value);
+                }
+            }
+        }
+
+        private int indexOf(String column) {
+            for (int c = 0; c < columns.size(); c++) {
+                if (columns.get(c).name().equals(column)) {
+                    return c;
+                }
+            }
+            throw new IllegalArgumentException("No column " + column + " in " + name);
+        }
+    }
+
+    // Column names as Hibernate's naming strategy maps the entity fields
+    public static final Table ROADS = new Table("simple_roads", List.of(
+        new Column("id", ColumnType.LONG),
+        new Column("name", ColumnType.STRING),
+        new Column("type", ColumnType.STRING),
+        new Column("material", ColumnType.STRING),
+        new Column("start_lat", ColumnType.DOUBLE),
+        new Column("start_lng", ColumnType.DOUBLE),
+        new Column("end_lat", ColumnType.DOUBLE),
+        new Column("end_lng", ColumnType.DOUBLE),
+        new Column("length", ColumnType.DOUBLE),
+        new Column("geometry", ColumnType.BYTES),
+        new Column("simplified", ColumnType.BYTES),
+        new Column("min_lng", ColumnType.DOUBLE),
+        new Column("min_lat", ColumnType.DOUBLE),
+        new Column("max_lng", ColumnType.DOUBLE),
+        new Column("max_lat", ColumnType.DOUBLE)),
+        List.of("min_lng", "min_lat", "max_lng", "max_lat"), null);
+
+    public static final Table FACTORIES = new Table("simple_factories", List.of(
+        new Column("id", ColumnType.LONG),
+        new Column("name", ColumnType.STRING),
+        new Column("type", ColumnType.STRING),
+        new Column("status", ColumnType.STRING),
+        new Column("capacity", ColumnType.INTEGER),
+        new Column("latitude", ColumnType.DOUBLE),
+        new Column("longitude", ColumnType.DOUBLE)),
+        List.of("longitude", "latitude", "longitude", "latitude"), "capacity");
+
+    public static final Table FORESTS = new Table("simple_forests", List.of(
+        new Column("id", ColumnType.LONG),
+        new Column("name", ColumnType.STRING),
+        new Column("type", ColumnType.STRING),
+        new Column("area", ColumnType.DOUBLE),
+        new Column("density", ColumnType.STRING),
+        new Column("status", ColumnType.STRING),
+        new Column("center_lat", ColumnType.DOUBLE),
+        new Column("center_lng", ColumnType.DOUBLE),
+        new Column("geometry", ColumnType.BYTES),
+        new Column("simplified", ColumnType.BYTES),
+        new Column("min_lng", ColumnType.DOUBLE),
+        new Column("min_lat", ColumnType.DOUBLE),
+        new Column("max_lng", ColumnType.DOUBLE),
+        new Column("max_lat", ColumnType.DOUBLE)),
+        List.of("min_lng", "min_lat", "max_lng", "max_lat"), null);
+
+    public static Table table(GeoLayer layer) {
+        return switch (layer) {
+            case ROADS -> ROADS;
+            case FACTORIES -> FACTORIES;
+            case FORESTS -> FORESTS;
+        };
+    }
+
+    /**
+     * Ids, boxes (4 per feature) and weights of the features that have an envelope.
+     */
+    public record Envelopes(long[] ids, double[] boxes, long[] weights, int count) {
+    }
+
+    private record Layer(int count, long[] ids, int[] offsets, double[] boxes, long[] weights, ByteBuffer rows) {
+    }
+
+    private final Map<GeoLayer, Layer> layers;
+
+    private SnapshotFile(Map<GeoLayer, Layer> layers) {
+        this.layers = layers;
+    }
+
+    /**
+     * Maps a snapshot written by {@link Writer} and reads its index.
+     *
+     * @throws IOException also when the file is not a complete snapshot
+     */
+    public static SnapshotFile open(Path path) throws IOException {
+        // Mapped buffers outlive the channel they were mapped from
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 8 + FOOTER_BYTES
+                    || channel.map(FileChannel.MapMode.READ_ONLY, 0, 8).getLong(0) != MAGIC) {
+                throw new IOException(path + " is not a snapshot");
+            }
+            ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, size - FOOTER_BYTES, FOOTER_BYTES);
+            long indexOffset = footer.getLong(0);
+            if (footer.getLong(8) != MAGIC || indexOffset < 8 || indexOffset > size - FOOTER_BYTES) {
+                throw new IOException(path + " is incomplete");
+            }
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - FOOTER_BYTES - indexOffset);
+            Map<GeoLayer, Layer> layers = new EnumMap<>(GeoLayer.class);
+            int layerCount = index.getInt();
+            for (int l = 0; l < layerCount; l++) {
+                GeoLayer layer = GeoLayer.values()[index.getInt()];
+                int count = index.getInt();
+                long rowsOffset = index.getLong();
+                long rowsLength = index.getLong();
+                long[] ids = new long[count];
+                int[] offsets = new int[count];
+                double[] boxes = new double[count * 4];
+                long[] weights = new long[count];
+                index.slice(index.position(), count * 8).asLongBuffer().get(ids);
+                index.position(index.position() + count * 8);
+                index.slice(index.position(), count * 4).asIntBuffer().get(offsets);
+                index.position(index.position() + count * 4);
+                index.slice(index.position(), count * 32).asDoubleBuffer().get(boxes);
+                index.position(index.position() + count * 32);
+                index.slice(index.position(), count * 8).asLongBuffer().get(weights);
+                index.position(index.position() + count * 8);
+                ByteBuffer rows = channel.map(FileChannel.MapMode.READ_ONLY, rowsOffset, rowsLength);
+                layers.put(layer, new Layer(count, ids, offsets, boxes, weights, rows));
+            }
+            if (layers.size() != GeoLayer.values().length) {
+                throw new IOException(path + " does not hold every layer");
+            }
+            return new SnapshotFile(layers);
+        } catch (RuntimeException e) {
+            // Offsets or counts that do not fit the file
+            throw new IOException(path + " is corrupt: " + e, e);
+        }
+    }
+
+    public int count(GeoLayer layer) {
+        return layers.get(layer).count();
+    }
+
+    /**
+     * The largest id in the layer, 0 when it is empty.
+     */
+    public long maxId(GeoLayer layer) {
+        Layer data = layers.get(layer);
+        return data.count() == 0 ? 0 : data.ids()[data.count() - 1];
+    }
+
+    /**
+     * Copies of the envelopes in the index, for loading the spatial index and the cluster grid.
+     */
+    public Envelopes envelopes(GeoLayer layer) {
+        Layer data = layers.get(layer);
+        long[] ids = new long[data.count()];
+        double[] boxes = new double[data.count() * 4];
+        long[] weights = new long[data.count()];
+        int count = 0;
+        for (int i = 0; i < data.count(); i++) {
+            if (Double.isNaN(data.boxes()[i * 4])) {
+                continue;
+            }
+            ids[count] = data.ids()[i];
+            System.arraycopy(data.boxes(), i * 4, boxes, count * 4, 4);
+            weights[count] = data.weights()[i];
+            count++;
+        }
+        return new Envelopes(ids, boxes, weights, count);
+    }
+
+    /**
+     * Column values of the row at {@code index} (in id order), as {@link Table#read} returns them.
+     */
+    public Object[] row(GeoLayer layer, int index) {
+        Layer data = layers.get(layer);
+        ByteBuffer rows = data.rows();
+        int position = data.offsets()[index];
+        List<Column> columns = table(layer).columns();
+        Object[] values = new Object[columns.size()];
+        for (int c = 0; c < values.length; c++) {
+            ColumnType type = columns.get(c).type();
+            if (type == ColumnType.STRING || type == ColumnType.BYTES) {
+                int length = rows.getInt(position);
+                position += 4;
+                if (length >= 0) {
+                    byte[] bytes = new byte[length];
+                    rows.get(position, bytes);
+                    position += length;
+                    values[c] = type == ColumnType.STRING ? new String(bytes, StandardCharsets.UTF_8) : bytes;
+                }
+            } else if (rows.get(position++) != 0) {
+                switch (type) {
+                    case LONG -> {
+                        values[c] = rows.getLong(position);
+                        position += 8;
+                    }
+                    case INTEGER -> {
+                        values[c] = rows.getInt(position);
+                        position += 4;
+                    }
+                    default -> {
+                        values[c] = rows.getDouble(position);
+                        position += 8;
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Roads whose envelope intersects the window, or all roads without a window, in id order
+     * and optionally limited to a keyset page, like the road repository queries. A road
+     * without an envelope never matches a window.
+     */
+    public Stream<RoadRow> roads(BoundingBox window, LayerPage page) {
+        // Values in the column order of ROADS
+        return matches(GeoLayer.ROADS, window, page).mapToObj(i -> row(GeoLayer.ROADS, i)).map(v -> new RoadRow(
+            (Long) v[0], (String) v[1], (String) v[2], (Double) v[8], (String) v[3], (byte[]) v[9], (byte[]) v[10]));
+    }
+
+    public Stream<FactoryRow> factories(BoundingBox window, LayerPage page) {
+        // Values in the column order of FACTORIES
+        return matches(GeoLayer.FACTORIES, window, page).mapToObj(i -> row(GeoLayer.FACTORIES, i)).map(v -> new FactoryRow(
+            (Long) v[0], (String) v[1], (String) v[2], (Integer) v[4], (String) v[3], (Double) v[6], (Double) v[5]));
+    }
+
+    public Stream<ForestRow> forests(BoundingBox window, LayerPage page) {
+        // Values in the column order of FORESTS
+        return matches(GeoLayer.FORESTS, window, page).mapToObj(i -> row(GeoLayer.FORESTS, i)).map(v -> new ForestRow(
+            (Long) v[0], (String) v[1], (String) v[2], (Double) v[3], (String) v[4], (String) v[5],
+            (Double) v[7], (Double) v[6], (byte[]) v[8], (byte[]) v[9]));
+    }
+
+    /**
+     * Row indexes of a query; the bbox test is a scan of the index, the page start a binary search.
+     */
+    private IntStream matches(GeoLayer layer, BoundingBox window, LayerPage page) {
+        Layer data = layers.get(layer);
+        int first = 0;
+        if (page != null) {
+            int found = Arrays.binarySearch(data.ids(), 0, data.count(), page.after());
+            first = found >= 0 ? found + 1 : -found - 1;
+        }
+        IntStream rows = IntStream.range(first, data.count());
+        if (window != null) {
+            double[] boxes = data.boxes();
+            // NaN compares false, so features without an envelope never match a window
+            rows = rows.filter(i -> boxes[i * 4] <= window.maxLng() && boxes[i * 4 + 2] >= window.minLng()
+                && boxes[i * 4 + 1] <= window.maxLat() && boxes[i * 4 + 3] >= window.minLat());
+        }
+        return page == null ? rows : rows.limit(page.limit());
+    }
+
+    /**
+     * Writes a snapshot layer by layer; every layer must be written once, rows in ascending id order.
+     */
+    public static final class Writer implements Closeable {
+
+        private final CountingOutputStream counter;
+        private final DataOutputStream out;
+        private final Map<GeoLayer, long[]> sections = new EnumMap<>(GeoLayer.class);
+        private final Map<GeoLayer, IndexBuffer> indexes = new EnumMap<>(GeoLayer.class);
+
+        private GeoLayer layer;
+        private Table table;
+        private int[] envelope;
+        private int weight;
+        private IndexBuffer index;
+        private long layerStart;
+
+        public Writer(Path path) throws IOException {
+            counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            out = new DataOutputStream(counter);
+            out.writeLong(MAGIC);
+        }
+
+        public void startLayer(GeoLayer layer) {
+            if (this.layer != null || indexes.containsKey(layer)) {
+                throw new IllegalStateException("Layer " + layer + " cannot be started");
+            }
+            this.layer = layer;
+            table = table(layer);
+            envelope = table.envelope().stream().mapToInt(table::indexOf).toArray();
+            weight = table.weight() == null ? -1 : table.indexOf(table.weight());
+            index = new IndexBuffer();
+            layerStart = counter.count;
+        }
+
+        public void writeRow(Object[] values) throws IOException {
+            long offset = counter.count - layerStart;
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Rows of " + layer.getPath() + " exceed 2 GB");
+            }
+            long id = (Long) values[0];
+            if (index.size > 0 && id <= index.ids[index.size - 1]) {
+                throw new IllegalArgumentException("Rows must be in ascending id order, got " + id + " after "
+                    + index.ids[index.size - 1]);
+            }
+            List<Column> columns = table.columns();
+            for (int c = 0; c < values.length; c++) {
+                Object value = values[c];
+                switch (columns.get(c).type()) {
+                    case STRING, BYTES -> {
+                        byte[] bytes = value instanceof String text ? text.getBytes(StandardCharsets.UTF_8) : (byte[]) value;
+                        out.writeInt(bytes == null ? -1 : bytes.length);
+                        if (bytes != null) {
+                            out.write(bytes);
+                        }
+                    }
+                    case LONG -> {
+                        out.writeBoolean(value != null);
+                        if (value != null) {
+                            out.writeLong((Long) value);
+                        }
+                    }
+                    case INTEGER -> {
+                        out.writeBoolean(value != null);
+                        if (value != null) {
+                            out.writeInt((Integer) value);
+                        }
+                    }
+                    case DOUBLE -> {
+                        out.writeBoolean(value != null);
+                        if (value != null) {
+                            out.writeDouble((Double) value);
+                        }
+                    }
+                }
+            }
+            index.add(id, (int) offset, values, envelope, weight);
+        }
+
+        public void endLayer() {
+            sections.put(layer, new long[] {layerStart, counter.count - layerStart});
+            indexes.put(layer, index);
+            layer = null;
+        }
+
+        /**
+         * Writes the index and the footer. The file is only a snapshot once this has returned
+         * and the writer is closed.
+         */
+        public void finish() throws IOException {
+            if (layer != null || indexes.size() != GeoLayer.values().length) {
+                throw new IllegalStateException("Every layer must be written before finishing");
+            }
+            long indexOffset = counter.count;
+            out.writeInt(indexes.size());
+            for (Map.Entry<GeoLayer, IndexBuffer> entry : indexes.entrySet()) {
+                IndexBuffer layerIndex = entry.getValue();
+                long[] section = sections.get(entry.getKey());
+                out.writeInt(entry.getKey().ordinal());
+                out.writeInt(layerIndex.size);
+                out.writeLong(section[0]);
+                out.writeLong(section[1]);
+                for (int i = 0; i < layerIndex.size; i++) {
+                    out.writeLong(layerIndex.ids[i]);
+                }
+                for (int i = 0; i < layerIndex.size; i++) {
+                    out.writeInt(layerIndex.offsets[i]);
+                }
+                for (int i = 0; i < layerIndex.size * 4; i++) {
+                    out.writeDouble(layerIndex.boxes[i]);
+                }
+                for (int i = 0; i < layerIndex.size; i++) {
+                    out.writeLong(layerIndex.weights[i]);
+                }
+            }
+            out.writeLong(indexOffset);
+            out.writeLong(MAGIC);
+            out.flush();
+        }
+
+        public long size() {
+            return counter.count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static final class IndexBuffer {
+        private long[] ids = new long[1024];
+        private int[] offsets = new int[1024];
+        private double[] boxes = new double[1024 * 4];
+        private long[] weights = new long[1024];
+        private int size;
+
+        void add(long id, int offset, Object[] values, int[] envelope, int weight) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+                boxes = Arrays.copyOf(boxes, size * 2 * 4);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            ids[size] = id;
+            offsets[size] = offset;
+            boolean hasEnvelope = true;
+            for (int column : envelope) {
+                hasEnvelope &= values[column] != null;
+            }
+            for (int i = 0; i < 4; i++) {
+                boxes[size * 4 + i] = hasEnvelope ? ((Number) values[envelope[i]]).doubleValue() : Double.NaN;
+            }
+            weights[size] = weight < 0 || values[weight] == null ? 0 : ((Number) values[weight]).longValue();
+            size++;
+        }
+    }
+
+    /**
+     * Tracks the file position; {@link DataOutputStream#size()} stops counting at 2 GB.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
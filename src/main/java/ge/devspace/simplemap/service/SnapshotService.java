@@ -0,0 +1,377 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.geo.GeoLayer;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the feature tables to a {@link SnapshotFile} and restores them from it at startup,
+ * in place of seeding row by row.
+ * <p>
+ * A restore inserts the rows with plain JDBC batches of {@code geo.import.batch-size}, moves
+ * the id sequences past the restored ids and rebuilds the spatial index and the factory
+ * clusters from the snapshot's index. With {@code geo.snapshot.background} the views are
+ * rebuilt first and the inserts run on a background thread: until they are done the layer
+ * endpoints and tiles are served from the mapped snapshot, and other API requests are
+ * turned away by {@code SnapshotLoadingFilter}.
+ * <p>
+ * If inserting the rows fails, the feature tables are emptied and seeded instead, so that
+ * startup never ends with a half-restored database.
+ */
+@Service
+public class SnapshotService {
+
+    // allocationSize of the entities' id sequences
+    private static final int ID_ALLOCATION_SIZE = 50;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SpatialIndexService spatialIndexService;
+
+    @Autowired
+    private FactoryClusterService factoryClusterService;
+
+    @Autowired
+    private LayerVersionService layerVersionService;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${geo.snapshot.file:${java.io.tmpdir}/simple-map.snapshot}")
+    private Path file;
+
+    @Value("${geo.snapshot.restore:false}")
+    private boolean restoreEnabled;
+
+    @Value("${geo.snapshot.background:false}")
+    private boolean background;
+
+    @Value("${geo.import.batch-size:1000}")
+    private int batchSize;
+
+    private final SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("snapshot-restore-");
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private final Map<GeoLayer, AtomicLong> restoredRows = new EnumMap<>(GeoLayer.class);
+
+    // From startup until the restored rows are in the database
+    private volatile boolean restoring;
+    // Set while the database is still being filled from it
+    private volatile SnapshotFile serving;
+    private volatile String state = "idle";
+    private volatile String error;
+    private volatile Map<GeoLayer, Integer> snapshotRows;
+    private volatile long restoreMillis;
+
+    public SnapshotService() {
+        for (GeoLayer layer : GeoLayer.values()) {
+            restoredRows.put(layer, new AtomicLong());
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        executor.setDaemon(true);
+        executor.setVirtualThreads(Threading.VIRTUAL.isActive(environment));
+        // Requests are accepted before the startup runner begins the restore
+        restoring = canRestore();
+        if (restoring) {
+            state = "pending";
+        }
+    }
+
+    public boolean isRestoreEnabled() {
+        return restoreEnabled;
+    }
+
+    /**
+     * Whether startup should restore instead of seeding: enabled and there is a snapshot file.
+     */
+    public boolean canRestore() {
+        return restoreEnabled && Files.isRegularFile(file);
+    }
+
+    /**
+     * Whether a restore is pending or the database is still being filled by one.
+     */
+    public boolean isRestoring() {
+        return restoring;
+    }
+
+    /**
+     * The snapshot reads are served from while the database is loading, otherwise null.
+     */
+    public SnapshotFile getServingSnapshot() {
+        return serving;
+    }
+
+    /**
+     * Restores the snapshot into the (empty) feature tables and the in-memory views. Returns
+     * once the rows are inserted, or with {@code geo.snapshot.background} as soon as the views are.
+     * When the rows cannot be inserted, the tables are emptied and filled by {@code seed} instead.
+     *
+     * @throws IOException when the file cannot be read as a snapshot; nothing has been restored then
+     */
+    public void restore(Runnable seed) throws IOException {
+        long started = System.nanoTime();
+        SnapshotFile snapshot;
+        try {
+            snapshot = SnapshotFile.open(file);
+        } catch (IOException e) {
+            state = "idle";
+            restoring = false;
+            throw e;
+        }
+        Map<GeoLayer, Integer> rows = new EnumMap<>(GeoLayer.class);
+        for (GeoLayer layer : GeoLayer.values()) {
+            rows.put(layer, snapshot.count(layer));
+        }
+        snapshotRows = rows;
+        state = "loading";
+        System.out.println("Snapshot " + file + " opened: " + rows + " rows");
+        if (background) {
+            restoreViews(snapshot);
+            serving = snapshot;
+            executor.execute(() -> load(snapshot, started, seed));
+        } else if (load(snapshot, started, seed)) {
+            // Only now: a tile drawn from the half-filled tables meanwhile is cached under the
+            // index generation of that moment, and restoring the index retires it
+            restoreViews(snapshot);
+        }
+    }
+
+    /**
+     * Rebuilds the spatial index and the factory clusters from the snapshot's index.
+     */
+    private void restoreViews(SnapshotFile snapshot) {
+        for (GeoLayer layer : GeoLayer.values()) {
+            SnapshotFile.Envelopes envelopes = snapshot.envelopes(layer);
+            spatialIndexService.restore(layer, envelopes.ids(), envelopes.boxes(), envelopes.count());
+            if (layer == GeoLayer.FACTORIES) {
+                factoryClusterService.restore(envelopes.ids(), envelopes.boxes(), envelopes.weights(), envelopes.count());
+            }
+        }
+    }
+
+    /**
+     * @return whether the snapshot's rows are in the database, rather than seeded ones
+     */
+    private boolean load(SnapshotFile snapshot, long started, Runnable seed) {
+        boolean restored = false;
+        try {
+            for (GeoLayer layer : GeoLayer.values()) {
+                insertRows(snapshot, layer);
+            }
+            restoreMillis = (System.nanoTime() - started) / 1_000_000;
+            state = "done";
+            restored = true;
+            System.out.println("Snapshot restored into the database in " + restoreMillis + " ms");
+        } catch (RuntimeException e) {
+            state = "failed";
+            error = e.toString();
+            System.err.println("Snapshot restore failed, seeding instead: " + error);
+            try {
+                seedInstead(seed);
+            } catch (RuntimeException seedError) {
+                if (!background) {
+                    throw seedError;
+                }
+                // Nothing left to wait for; serve whatever the database holds
+                System.err.println("Seeding after the failed snapshot restore failed: " + seedError);
+            }
+        }
+        serving = null;
+        restoring = false;
+        // Anything cached while serving from the snapshot is equal, but drop it with the snapshot
+        for (GeoLayer layer : GeoLayer.values()) {
+            layerVersionService.bump(layer);
+        }
+        return restored;
+    }
+
+    /**
+     * Empties the partly restored tables and seeds them. In the background the views were already
+     * restored from the snapshot, so they are rebuilt from the seeded rows.
+     */
+    private void seedInstead(Runnable seed) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+            entityManager.unwrap(Session.class).doWork(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    for (GeoLayer layer : GeoLayer.values()) {
+                        statement.execute("truncate table " + SnapshotFile.table(layer).name());
+                    }
+                }
+            }));
+        seed.run();
+        if (background) {
+            for (GeoLayer layer : GeoLayer.values()) {
+                spatialIndexService.reload(layer);
+            }
+            factoryClusterService.load();
+        }
+    }
+
+    private void insertRows(SnapshotFile snapshot, GeoLayer layer) {
+        long started = System.nanoTime();
+        SnapshotFile.Table table = SnapshotFile.table(layer);
+        String insertSql = table.insertSql();
+        int count = snapshot.count(layer);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (int start = 0; start < count; start += batchSize) {
+            int from = start;
+            int to = Math.min(count, start + batchSize);
+            transaction.executeWithoutResult(status -> entityManager.unwrap(Session.class).doWork(connection -> {
+                try (PreparedStatement insert = connection.prepareStatement(insertSql)) {
+                    for (int i = from; i < to; i++) {
+                        table.bind(insert, snapshot.row(layer, i));
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+            }));
+            restoredRows.get(layer).set(to);
+        }
+        if (count > 0) {
+            // The pooled optimizer hands out the allocationSize - 1 ids below each value it reads
+            // from the sequence, so start one allocation past the largest restored id
+            long next = snapshot.maxId(layer) + ID_ALLOCATION_SIZE + 1;
+            transaction.executeWithoutResult(status -> entityManager.unwrap(Session.class).doWork(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("alter sequence " + table.name() + "_seq restart with " + next);
+                }
+            }));
+        }
+        System.out.println("Restored " + count + " " + layer.getPath() + " from the snapshot in "
+            + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Writes all three layers to the snapshot file, replacing it once the new one is complete.
+     *
+     * @return the rows written and the file size, or null when a write or background restore is in progress
+     */
+    public Map<String, Object> write() throws IOException {
+        if (serving != null || !writing.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            long started = System.nanoTime();
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Map<String, Object> layers = new LinkedHashMap<>();
+            long size;
+            try (SnapshotFile.Writer writer = new SnapshotFile.Writer(temporary)) {
+                TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+                transaction.setReadOnly(true);
+                // One consistent view of every table, also while writes go on
+                transaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+                transaction.executeWithoutResult(status -> entityManager.unwrap(Session.class).doWork(connection -> {
+                    for (GeoLayer layer : GeoLayer.values()) {
+                        SnapshotFile.Table table = SnapshotFile.table(layer);
+                        long count = 0;
+                        writer.startLayer(layer);
+                        try (Statement statement = connection.createStatement()) {
+                            statement.setFetchSize(1000);
+                            try (ResultSet rows = statement.executeQuery(table.selectSql())) {
+                                while (rows.next()) {
+                                    writer.writeRow(table.read(rows));
+                                    count++;
+                                }
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        writer.endLayer();
+                        layers.put(layer.getPath(), count);
+                    }
+                }));
+                writer.finish();
+                size = writer.size();
+            } catch (UncheckedIOException e) {
+                Files.deleteIfExists(temporary);
+                throw e.getCause();
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+            System.out.println("Snapshot written to " + file + ": " + layers + ", " + size + " bytes in " + elapsedMillis + " ms");
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("file", file.toString());
+            result.put("rows", layers);
+            result.put("sizeBytes", size);
+            result.put("elapsedMs", elapsedMillis);
+            return result;
+        } finally {
+            writing.set(false);
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("file", file.toString());
+        status.put("exists", Files.isRegularFile(file));
+        try {
+            status.put("sizeBytes", Files.isRegularFile(file) ? Files.size(file) : 0);
+        } catch (IOException e) {
+            status.put("sizeBytes", 0);
+        }
+        status.put("writing", writing.get());
+        Map<String, Object> restore = new LinkedHashMap<>();
+        restore.put("enabled", restoreEnabled);
+        restore.put("background", background);
+        restore.put("state", state);
+        restore.put("servingFromSnapshot", serving != null);
+        Map<GeoLayer, Integer> rows = snapshotRows;
+        if (rows != null) {
+            for (GeoLayer layer : GeoLayer.values()) {
+                Map<String, Object> progress = new LinkedHashMap<>();
+                progress.put("rows", rows.get(layer));
+                progress.put("restored", restoredRows.get(layer).get());
+                restore.put(layer.getPath(), progress);
+            }
+        }
+        if ("done".equals(state)) {
+            restore.put("elapsedMs", restoreMillis);
+        }
+        if (error != null) {
+            restore.put("error", error);
+        }
+        status.put("restore", restore);
+        return status;
+    }
+}
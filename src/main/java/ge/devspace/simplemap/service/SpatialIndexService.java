@@ -0,0 +1,243 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.SpatialIndex;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import ge.devspace.simplemap.repository.SimpleForestRepository;
+import ge.devspace.simplemap.repository.SimpleRoadRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * In-memory spatial index over feature envelopes for every layer.
+ * Bulk-loaded once the application is ready and kept current from {@link FeatureChangedEvent}s.
+ * With {@code geo.postgis.enabled} queries go to the GiST indexes through {@link PostGisService}
+ * instead and nothing is held in memory; only the generations are still kept.
+ */
+@Service
+public class SpatialIndexService {
+
+    @Autowired
+    private SimpleRoadRepository roadRepository;
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    @Autowired
+    private SimpleForestRepository forestRepository;
+
+    @Autowired
+    private PostGisService postGisService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${geo.postgis.enabled:false}")
+    private boolean postgis;
+
+    private final Map<GeoLayer, SpatialIndex> indexes = new EnumMap<>(GeoLayer.class);
+
+    private final Set<GeoLayer> restored = Collections.synchronizedSet(EnumSet.noneOf(GeoLayer.class));
+
+    public SpatialIndexService() {
+        for (GeoLayer layer : GeoLayer.values()) {
+            indexes.put(layer, new SpatialIndex());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAll() {
+        if (postgis) {
+            System.out.println("Spatial queries run in PostGIS, no in-memory index loaded");
+            return;
+        }
+        for (GeoLayer layer : GeoLayer.values()) {
+            if (!restored.contains(layer)) {
+                reload(layer);
+            }
+        }
+    }
+
+    /**
+     * Loads one layer's index from envelopes read elsewhere, e.g. a {@link SnapshotFile},
+     * in place of the database load once the application is ready.
+     */
+    public void restore(GeoLayer layer, long[] ids, double[] boxes, int count) {
+        restored.add(layer);
+        if (postgis) {
+            return;
+        }
+        long started = System.nanoTime();
+        indexes.get(layer).load(ids, boxes, count);
+        System.out.println("Spatial index restored for " + layer.getPath() + ": " + count
+            + " features in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Rebuilds one layer's index from the database, e.g. after a bulk import. Features
+     * changed while the rows are read are still current in the rebuilt index.
+     */
+    public void reload(GeoLayer layer) {
+        if (postgis) {
+            // Nothing to rebuild, but a new generation still retires cached tiles
+            indexes.get(layer).load(new long[0], new double[0], 0);
+            return;
+        }
+        switch (layer) {
+            case ROADS -> load(GeoLayer.ROADS, roadRepository::streamEnvelopes);
+            case FACTORIES -> load(GeoLayer.FACTORIES, factoryRepository::streamEnvelopes);
+            case FORESTS -> load(GeoLayer.FORESTS, forestRepository::streamEnvelopes);
+        }
+    }
+
+    private void load(GeoLayer layer, Supplier<Stream<Object[]>> envelopes) {
+        long started = System.nanoTime();
+        SpatialIndex index = indexes.get(layer);
+        EnvelopeBuffer buffer;
+        // One reload of a layer at a time, each with its own log of the writes made meanwhile
+        synchronized (index) {
+            index.beginLoad();
+            try {
+                TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+                transaction.setReadOnly(true);
+                buffer = transaction.execute(status -> {
+                    EnvelopeBuffer rows = new EnvelopeBuffer();
+                    try (Stream<Object[]> stream = envelopes.get()) {
+                        stream.forEach(rows::add);
+                    }
+                    return rows;
+                });
+            } catch (RuntimeException e) {
+                index.abortLoad();
+                throw e;
+            }
+            index.load(buffer.ids, buffer.boxes, buffer.size);
+        }
+        System.out.println("Spatial index loaded for " + layer.getPath() + ": " + buffer.size
+            + " features in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeatureChanged(FeatureChangedEvent event) {
+        if (postgis) {
+            return;
+        }
+        SpatialIndex index = indexes.get(event.layer());
+        if (event.after() == null) {
+            index.remove(event.featureId());
+        } else {
+            index.put(event.featureId(), event.after());
+        }
+    }
+
+    /**
+     * Ids of features in the layer whose envelope intersects the window.
+     */
+    public long[] search(GeoLayer layer, BoundingBox window) {
+        if (postgis) {
+            return readOnly(() -> postGisService.search(layer, window));
+        }
+        IdBuffer ids = new IdBuffer();
+        indexes.get(layer).search(window, ids::add);
+        return ids.toArray();
+    }
+
+    /**
+     * Ids of features in the layer whose envelope contains the point.
+     */
+    public long[] containing(GeoLayer layer, double lng, double lat) {
+        if (postgis) {
+            return readOnly(() -> postGisService.containing(layer, lng, lat));
+        }
+        IdBuffer ids = new IdBuffer();
+        indexes.get(layer).containing(lng, lat, ids::add);
+        return ids.toArray();
+    }
+
+    /**
+     * Ids of the features nearest to the point, nearest first. In memory the distance is to
+     * each feature's envelope, in PostGIS to the geometry itself.
+     */
+    public long[] nearest(GeoLayer layer, double lng, double lat, int limit) {
+        if (postgis) {
+            return readOnly(() -> postGisService.nearest(layer, lng, lat, limit));
+        }
+        return indexes.get(layer).nearest(lng, lat, limit);
+    }
+
+    private long[] readOnly(Supplier<long[]> query) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        return transaction.execute(status -> query.get());
+    }
+
+    public long getGeneration(GeoLayer layer) {
+        return indexes.get(layer).getGeneration();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backend", postgis ? "postgis" : "memory");
+        for (GeoLayer layer : GeoLayer.values()) {
+            SpatialIndex index = indexes.get(layer);
+            Map<String, Object> layerStats = new LinkedHashMap<>();
+            layerStats.put("features", index.size());
+            layerStats.put("pendingWrites", index.overlaySize());
+            layerStats.put("generation", index.getGeneration());
+            layerStats.put("memoryBytes", index.memoryBytes());
+            stats.put(layer.getPath(), layerStats);
+        }
+        return stats;
+    }
+
+    private static final class EnvelopeBuffer {
+        private long[] ids = new long[1024];
+        private double[] boxes = new double[1024 * 4];
+        private int size;
+
+        void add(Object[] row) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                boxes = Arrays.copyOf(boxes, size * 2 * 4);
+            }
+            ids[size] = ((Number) row[0]).longValue();
+            for (int i = 0; i < 4; i++) {
+                boxes[size * 4 + i] = ((Number) row[i + 1]).doubleValue();
+            }
+            size++;
+        }
+    }
+
+    private static final class IdBuffer {
+        private long[] ids = new long[64];
+        private int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.entity.SimpleFactory;
+import ge.devspace.simplemap.entity.SimpleForest;
+import ge.devspace.simplemap.entity.SimpleRoad;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.Twkb;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.stream.LongStream;
+
+/**
+ * Generates a country-sized dataset for benchmarking, used instead of the Tbilisi samples
+ * when {@code geo.synthetic.enabled} is set (synthetic profile).
+ * <p>
+ * Features are laid out around the larger Georgian towns, weighted by size: factories in
+ * industrial zones, street networks as random walks with grid-like turns, highways between
+ * towns, and forest polygons of 32-256 vertices in the mountain belts and as town parks.
+ * Every layer draws from its own random stream derived from {@code geo.synthetic.seed}, so
+ * the same seed and size always give the same features. Rows are generated lazily and
+ * written through {@link BulkImportService#insertAll} in JDBC batches.
+ */
+@Service
+public class SyntheticDataService {
+
+    /** Town centres (lng, lat) and their relative share of the features. */
+    private static final double[][] TOWNS = {
+        {44.793, 41.715, 40}, // Tbilisi
+        {41.636, 41.642, 12}, // Batumi
+        {42.699, 42.268, 10}, // Kutaisi
+        {45.000, 41.549, 7},  // Rustavi
+        {41.871, 42.508, 5},  // Zugdidi
+        {44.113, 41.985, 5},  // Gori
+        {41.672, 42.146, 4},  // Poti
+        {44.812, 41.477, 3},  // Marneuli
+        {45.473, 41.919, 3},  // Telavi
+        {42.982, 41.640, 3},  // Akhaltsikhe
+        {43.045, 42.110, 3},  // Zestaponi
+        {42.345, 42.159, 3},  // Samtredia
+        {43.599, 41.993, 2},  // Khashuri
+    };
+
+    /** Forest belts as {minLng, minLat, maxLng, maxLat}: Greater and Lesser Caucasus. */
+    private static final double[][] MOUNTAINS = {
+        {40.50, 42.45, 46.40, 43.30},
+        {42.00, 41.40, 44.00, 41.90},
+    };
+
+    private static final double TOTAL_WEIGHT = Arrays.stream(TOWNS).mapToDouble(town -> town[2]).sum();
+
+    private static final double[] COUNTRY = {40.10, 41.10, 46.60, 43.50};
+
+    private static final double KM_PER_DEGREE = 111.32;
+
+    private static final String[] FACTORY_TYPES = {"ტექსტილი", "საკვები", "ქიმია", "ელექტრონიკა", "ლითონი", "ღვინო"};
+    private static final String[] FACTORY_STATUSES = {"აქტიური", "აქტიური", "აქტიური", "შეჩერებული"};
+    private static final String[] ROAD_TYPES = {"მეორადი გზა", "მეორადი გზა", "მეორადი გზა", "მთავარი გზა"};
+    private static final String[] ROAD_MATERIALS = {"ასფალტი", "ასფალტი", "ბეტონი", "ხრეში"};
+    private static final String[] FOREST_TYPES = {"ბუნებრივი ტყე", "რეკრეაციული"};
+    private static final String[] FOREST_DENSITIES = {"მაღალი", "საშუალო", "დაბალი"};
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Value("${geo.synthetic.enabled:false}")
+    private boolean enabled;
+
+    @Value("${geo.synthetic.seed:42}")
+    private long seed;
+
+    @Value("${geo.synthetic.factories:1000000}")
+    private long factories;
+
+    @Value("${geo.synthetic.roads:200000}")
+    private long roads;
+
+    @Value("${geo.synthetic.forests:50000}")
+    private long forests;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void generate() {
+        System.out.println("Generating synthetic data (seed " + seed + "): " + factories + " factories, "
+            + roads + " roads, " + forests + " forests");
+        generate(GeoLayer.FACTORIES, factories, this::factories);
+        generate(GeoLayer.ROADS, roads, this::roads);
+        generate(GeoLayer.FORESTS, forests, this::forests);
+    }
+
+    /**
+     * @param features creates the feature generator of a layer; it is then called with 0, 1, 2, ... in turn
+     */
+    private void generate(GeoLayer layer, long count, Function<SplittableRandom, LongFunction<?>> features) {
+        long started = System.nanoTime();
+        // One stream per layer, so changing one layer's size leaves the others as they were
+        SplittableRandom random = new SplittableRandom(seed * 31 + layer.ordinal());
+        long written = bulkImportService.insertAll(layer, LongStream.range(0, count).mapToObj(features.apply(random)).iterator());
+        long elapsedMillis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        System.out.println("Generated " + written + " " + layer.getPath() + " in " + elapsedMillis + " ms ("
+            + written * 1000 / elapsedMillis + " rows/s)");
+    }
+
+    private LongFunction<SimpleFactory> factories(SplittableRandom random) {
+        // A handful of industrial zones per town, ten percent of the factories scattered outside them
+        double[][] zones = new double[TOWNS.length * 8][];
+        for (int i = 0; i < zones.length; i++) {
+            double[] town = TOWNS[i / 8];
+            double spread = 0.08 * Math.sqrt(town[2] / 10);
+            zones[i] = new double[] {town[0] + gaussian(random) * spread, town[1] + gaussian(random) * spread};
+        }
+        return i -> {
+            double lng;
+            double lat;
+            if (random.nextInt(10) == 0) {
+                lng = uniform(random, COUNTRY[0], COUNTRY[2]);
+                lat = uniform(random, COUNTRY[1], COUNTRY[3]);
+            } else {
+                double[] zone = zones[townIndex(random) * 8 + random.nextInt(8)];
+                lng = zone[0] + gaussian(random) * 0.01;
+                lat = zone[1] + gaussian(random) * 0.01;
+            }
+            String type = pick(random, FACTORY_TYPES);
+            // Log-normal: mostly small plants, a few large ones
+            int capacity = (int) Math.min(5000, Math.round(Math.exp(5 + gaussian(random))));
+            // Rounded like the TWKB layers, so responses are as large as real data and no larger
+            return new SimpleFactory(type + " " + (i + 1), type, pick(random, FACTORY_STATUSES), capacity,
+                Twkb.quantize(lat), Twkb.quantize(lng));
+        };
+    }
+
+    private LongFunction<SimpleRoad> roads(SplittableRandom random) {
+        return i -> {
+            List<double[]> line;
+            String type;
+            if (random.nextInt(100) == 0) {
+                line = List.of(highway(random));
+                type = "მაგისტრალი";
+            } else {
+                double[] street = street(random);
+                // Some streets are interrupted, e.g. by a river without a bridge
+                line = random.nextInt(20) == 0 && street.length >= 8 ? split(street) : List.of(street);
+                type = pick(random, ROAD_TYPES);
+            }
+            return new SimpleRoad("გზა " + (i + 1), type, pick(random, ROAD_MATERIALS), line, null);
+        };
+    }
+
+    private LongFunction<SimpleForest> forests(SplittableRandom random) {
+        return i -> {
+            double centerLng;
+            double centerLat;
+            double radius;
+            String type;
+            if (random.nextInt(10) < 7) {
+                double[] belt = MOUNTAINS[random.nextInt(3) == 0 ? 1 : 0];
+                centerLng = uniform(random, belt[0], belt[2]);
+                centerLat = uniform(random, belt[1], belt[3]);
+                radius = uniform(random, 0.01, 0.06);
+                type = pick(random, FOREST_TYPES);
+            } else {
+                double[] town = TOWNS[townIndex(random)];
+                double spread = 0.06 * Math.sqrt(town[2] / 10);
+                centerLng = town[0] + gaussian(random) * spread;
+                centerLat = town[1] + gaussian(random) * spread;
+                radius = uniform(random, 0.002, 0.008);
+                type = "საქალაქო პარკი";
+            }
+            centerLng = Twkb.quantize(centerLng);
+            centerLat = Twkb.quantize(centerLat);
+            List<double[]> rings = new ArrayList<>(2);
+            rings.add(ring(random, centerLng, centerLat, radius, 32 + random.nextInt(225), false));
+            if (random.nextInt(10) == 0) {
+                // A clearing, wound the other way as GeoJSON holes are
+                rings.add(ring(random, centerLng, centerLat, radius * 0.25, 16 + random.nextInt(33), true));
+            }
+            double area = Math.round(area(rings) * 10) / 10.0;
+            return new SimpleForest("ტყე " + (i + 1), type, area, pick(random, FOREST_DENSITIES), "დაცული",
+                centerLat, centerLng, rings);
+        };
+    }
+
+    /**
+     * A street as a random walk out of a town: short steps, gentle bends and the odd right-angle turn.
+     */
+    private static double[] street(SplittableRandom random) {
+        double[] town = TOWNS[townIndex(random)];
+        double spread = 0.06 * Math.sqrt(town[2] / 10);
+        double lng = town[0] + gaussian(random) * spread;
+        double lat = town[1] + gaussian(random) * spread;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        int points = 8 + random.nextInt(53);
+        double[] line = new double[points * 2];
+        for (int p = 0; p < points; p++) {
+            line[p * 2] = Twkb.quantize(lng);
+            line[p * 2 + 1] = Twkb.quantize(lat);
+            if (random.nextInt(5) == 0) {
+                heading += random.nextBoolean() ? Math.PI / 2 : -Math.PI / 2;
+            } else {
+                heading += gaussian(random) * 0.15;
+            }
+            double step = uniform(random, 0.0005, 0.002);
+            lng += Math.cos(heading) * step / Math.cos(Math.toRadians(lat));
+            lat += Math.sin(heading) * step;
+        }
+        return line;
+    }
+
+    /**
+     * A highway between two towns with a vertex about every kilometre, meandering around the straight line.
+     */
+    private static double[] highway(SplittableRandom random) {
+        int fromIndex = townIndex(random);
+        int toIndex = townIndex(random);
+        if (toIndex == fromIndex) {
+            toIndex = (fromIndex + 1) % TOWNS.length;
+        }
+        double[] from = TOWNS[fromIndex];
+        double[] to = TOWNS[toIndex];
+        double dLng = to[0] - from[0];
+        double dLat = to[1] - from[1];
+        double distance = Math.hypot(dLng, dLat);
+        int points = Math.max(2, (int) (distance / 0.01));
+        double phase1 = random.nextDouble() * 2 * Math.PI;
+        double phase2 = random.nextDouble() * 2 * Math.PI;
+        double amplitude = distance * uniform(random, 0.02, 0.08);
+        double[] line = new double[points * 2];
+        for (int p = 0; p < points; p++) {
+            double t = (double) p / (points - 1);
+            // Zero at both ends, so the highway starts and ends in the town centres
+            double offset = amplitude * Math.sin(Math.PI * t)
+                * (Math.sin(3 * Math.PI * t + phase1) + 0.5 * Math.sin(7 * Math.PI * t + phase2));
+            line[p * 2] = Twkb.quantize(from[0] + dLng * t - dLat / distance * offset);
+            line[p * 2 + 1] = Twkb.quantize(from[1] + dLat * t + dLng / distance * offset);
+        }
+        return line;
+    }
+
+    /**
+     * Drops one segment from the middle of a line, leaving two parts.
+     */
+    private static List<double[]> split(double[] line) {
+        int points = line.length / 2;
+        int cut = points / 2;
+        double[] first = new double[cut * 2];
+        double[] second = new double[(points - cut) * 2];
+        System.arraycopy(line, 0, first, 0, first.length);
+        System.arraycopy(line, first.length, second, 0, second.length);
+        return List.of(first, second);
+    }
+
+    /**
+     * A closed, star-shaped ring: the radius varies smoothly with the angle (low harmonics)
+     * plus a little noise, and stays positive, so the ring never crosses itself.
+     */
+    private static double[] ring(SplittableRandom random, double centerLng, double centerLat, double radius,
+                                 int vertices, boolean clockwise) {
+        double[] amplitudes = new double[4];
+        double[] phases = new double[4];
+        for (int k = 0; k < 4; k++) {
+            amplitudes[k] = random.nextDouble() * 0.25 / (k + 1);
+            phases[k] = random.nextDouble() * 2 * Math.PI;
+        }
+        double lngScale = 1 / Math.cos(Math.toRadians(centerLat));
+        double[] ring = new double[(vertices + 1) * 2];
+        for (int v = 0; v < vertices; v++) {
+            double angle = 2 * Math.PI * v / vertices * (clockwise ? -1 : 1);
+            double r = 1;
+            for (int k = 0; k < 4; k++) {
+                r += amplitudes[k] * Math.sin((k + 1) * angle + phases[k]);
+            }
+            r *= radius * (1 + (random.nextDouble() - 0.5) * 0.06);
+            ring[v * 2] = Twkb.quantize(centerLng + Math.cos(angle) * r * lngScale);
+            ring[v * 2 + 1] = Twkb.quantize(centerLat + Math.sin(angle) * r);
+        }
+        ring[vertices * 2] = ring[0];
+        ring[vertices * 2 + 1] = ring[1];
+        return ring;
+    }
+
+    /**
+     * Area in km²: exterior minus holes, from the planar area scaled by the latitude.
+     */
+    private static double area(List<double[]> rings) {
+        double degrees = 0;
+        for (double[] ring : rings) {
+            double signed = 0;
+            for (int i = 0; i + 3 < ring.length; i += 2) {
+                signed += ring[i] * ring[i + 3] - ring[i + 2] * ring[i + 1];
+            }
+            degrees += signed / 2;
+        }
+        double[] exterior = rings.get(0);
+        return Math.abs(degrees) * KM_PER_DEGREE * KM_PER_DEGREE * Math.cos(Math.toRadians(exterior[1]));
+    }
+
+    private static int townIndex(SplittableRandom random) {
+        double target = random.nextDouble() * TOTAL_WEIGHT;
+        for (int i = 0; i < TOWNS.length; i++) {
+            target -= TOWNS[i][2];
+            if (target < 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller; SplittableRandom has no nextGaussian() on Java 17
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static double uniform(SplittableRandom random, double from, double to) {
+        return from + random.nextDouble() * (to - from);
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,257 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.LevelOfDetail;
+import ge.devspace.simplemap.geo.TileMath;
+import ge.devspace.simplemap.geo.Twkb;
+import ge.devspace.simplemap.geo.VectorTileEncoder;
+import ge.devspace.simplemap.repository.FactoryRow;
+import ge.devspace.simplemap.repository.ForestRow;
+import ge.devspace.simplemap.repository.RoadRow;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import ge.devspace.simplemap.repository.SimpleForestRepository;
+import ge.devspace.simplemap.repository.SimpleRoadRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Renders Mapbox Vector Tiles for the feature layers and keeps recently served tiles
+ * in a bounded LRU cache. Cache entries are keyed by layer, z/x/y and the spatial index
+ * generation; a write evicts only the cached tiles its old or new envelope touches.
+ * With {@code geo.postgis.enabled} tiles are rendered by PostGIS ({@code ST_AsMVT}).
+ * While a snapshot is being restored in the background, they are drawn from the snapshot.
+ */
+@Service
+public class VectorTileService {
+
+    @Autowired
+    private SimpleRoadRepository roadRepository;
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    @Autowired
+    private SimpleForestRepository forestRepository;
+
+    @Autowired
+    private SpatialIndexService spatialIndexService;
+
+    @Autowired
+    private PostGisService postGisService;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${geo.tiles.cache-size:2048}")
+    private int cacheSize;
+
+    @Value("${geo.postgis.enabled:false}")
+    private boolean postgis;
+
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final LinkedHashMap<TileKey, byte[]> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, byte[]> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private final Map<GeoLayer, AtomicLong> writeCounts = new EnumMap<>(GeoLayer.class);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public VectorTileService() {
+        for (GeoLayer layer : GeoLayer.values()) {
+            writeCounts.put(layer, new AtomicLong());
+        }
+    }
+
+    public byte[] getTile(GeoLayer layer, int z, int x, int y) {
+        TileKey key = new TileKey(layer, z, x, y, spatialIndexService.getGeneration(layer));
+        cacheLock.lock();
+        try {
+            byte[] cached = cache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+
+        misses.incrementAndGet();
+        long writesBeforeRender = writeCounts.get(layer).get();
+        byte[] tile = render(layer, z, x, y);
+        cacheLock.lock();
+        try {
+            // A write that landed while rendering may already be missing from this tile
+            if (writeCounts.get(layer).get() == writesBeforeRender) {
+                cache.put(key, tile);
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+        return tile;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeatureChanged(FeatureChangedEvent event) {
+        writeCounts.get(event.layer()).incrementAndGet();
+        cacheLock.lock();
+        try {
+            Iterator<TileKey> keys = cache.keySet().iterator();
+            while (keys.hasNext()) {
+                TileKey key = keys.next();
+                if (key.layer() != event.layer()) {
+                    continue;
+                }
+                BoundingBox bounds = bufferedBounds(key.z(), key.x(), key.y());
+                if ((event.before() != null && bounds.intersects(event.before()))
+                        || (event.after() != null && bounds.intersects(event.after()))) {
+                    keys.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        cacheLock.lock();
+        try {
+            stats.put("cachedTiles", cache.size());
+        } finally {
+            cacheLock.unlock();
+        }
+        stats.put("maxTiles", cacheSize);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private byte[] render(GeoLayer layer, int z, int x, int y) {
+        SnapshotFile snapshot = snapshotService.getServingSnapshot();
+        if (snapshot != null) {
+            return renderFromSnapshot(snapshot, layer, z, x, y);
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        if (postgis) {
+            return transaction.execute(status -> postGisService.renderTile(layer, z, x, y));
+        }
+
+        BoundingBox bounds = bufferedBounds(z, x, y);
+        VectorTileEncoder encoder = new VectorTileEncoder(layer.getPath(), z, x, y);
+        transaction.executeWithoutResult(status -> {
+            switch (layer) {
+                case ROADS -> {
+                    try (Stream<RoadRow> roads = roadRepository.streamRowsIntersecting(
+                            bounds.minLng(), bounds.minLat(), bounds.maxLng(), bounds.maxLat())) {
+                        int level = LevelOfDetail.forZoom(z);
+                        roads.forEach(road -> addRoad(encoder, road, level));
+                    }
+                }
+                case FACTORIES -> {
+                    try (Stream<FactoryRow> factories = factoryRepository.streamRowsWithinBounds(
+                            bounds.minLng(), bounds.minLat(), bounds.maxLng(), bounds.maxLat())) {
+                        factories.forEach(factory -> addFactory(encoder, factory));
+                    }
+                }
+                case FORESTS -> {
+                    try (Stream<ForestRow> forests = forestRepository.streamRowsIntersecting(
+                            bounds.minLng(), bounds.minLat(), bounds.maxLng(), bounds.maxLat())) {
+                        int level = LevelOfDetail.forZoom(z);
+                        forests.forEach(forest -> addForest(encoder, forest, level));
+                    }
+                }
+            }
+        });
+        return encoder.encode();
+    }
+
+    /**
+     * Draws the tile from the snapshot the database is still being restored from.
+     */
+    private byte[] renderFromSnapshot(SnapshotFile snapshot, GeoLayer layer, int z, int x, int y) {
+        BoundingBox bounds = bufferedBounds(z, x, y);
+        VectorTileEncoder encoder = new VectorTileEncoder(layer.getPath(), z, x, y);
+        int level = LevelOfDetail.forZoom(z);
+        switch (layer) {
+            case ROADS -> snapshot.roads(bounds, null).forEach(road -> addRoad(encoder, road, level));
+            case FACTORIES -> snapshot.factories(bounds, null).forEach(factory -> addFactory(encoder, factory));
+            case FORESTS -> snapshot.forests(bounds, null).forEach(forest -> addForest(encoder, forest, level));
+        }
+        return encoder.encode();
+    }
+
+    /**
+     * Tile envelope padded by the encoder's clip buffer (in 256px tile pixels), so that
+     * features drawn into a tile's margin are both rendered and evicted with it.
+     */
+    private static BoundingBox bufferedBounds(int z, int x, int y) {
+        double bufferPixels = 256.0 * VectorTileEncoder.DEFAULT_BUFFER / VectorTileEncoder.DEFAULT_EXTENT;
+        return TileMath.tileBounds(z, x, y).expandBy(bufferPixels * BoundingBox.degreesPerPixel(z));
+    }
+
+    private void addRoad(VectorTileEncoder encoder, RoadRow road, int level) {
+        if (road.geometry() == null) {
+            return;
+        }
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("id", road.id());
+        properties.put("name", road.name());
+        properties.put("type", road.type());
+        properties.put("length", road.length());
+        properties.put("material", road.material());
+        encoder.addLineString(road.id(), Twkb.parts(road.geometry(level)), properties);
+    }
+
+    private void addFactory(VectorTileEncoder encoder, FactoryRow factory) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("id", factory.id());
+        properties.put("name", factory.name());
+        properties.put("type", factory.type());
+        properties.put("capacity", factory.capacity());
+        properties.put("status", factory.status());
+        encoder.addPoint(factory.id(), factory.longitude(), factory.latitude(), properties);
+    }
+
+    private void addForest(VectorTileEncoder encoder, ForestRow forest, int level) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("id", forest.id());
+        properties.put("name", forest.name());
+        properties.put("type", forest.type());
+        properties.put("area", forest.area());
+        properties.put("density", forest.density());
+        properties.put("status", forest.status());
+        if (forest.geometry() != null) {
+            encoder.addPolygon(forest.id(), Twkb.parts(forest.geometry(level)), properties);
+        } else if (forest.centerLng() != null && forest.centerLat() != null) {
+            encoder.addPoint(forest.id(), forest.centerLng(), forest.centerLat(), properties);
+        }
+    }
+
+    private record TileKey(GeoLayer layer, int z, int x, int y, long generation) {
+    }
+}
@@ -0,0 +1,19 @@
+-- Run by the postgis profile after Hibernate has created the tables.
+-- The entities keep their plain coordinate and TWKB columns; PostGIS derives a real
+-- geometry column from them, so every insert and update through JPA keeps it current.
+
+CREATE EXTENSION IF NOT EXISTS postgis;
+
+-- LineStrings, or MultiLineStrings for roads in several parts
+ALTER TABLE simple_roads ADD COLUMN IF NOT EXISTS geom geometry(Geometry, 4326)
+    GENERATED ALWAYS AS (ST_SetSRID(ST_GeomFromTWKB(geometry), 4326)) STORED;
+CREATE INDEX IF NOT EXISTS idx_simple_roads_geom ON simple_roads USING GIST (geom);
+
+ALTER TABLE simple_factories ADD COLUMN IF NOT EXISTS geom geometry(Point, 4326)
+    GENERATED ALWAYS AS (ST_SetSRID(ST_MakePoint(longitude, latitude), 4326)) STORED;
+CREATE INDEX IF NOT EXISTS idx_simple_factories_geom ON simple_factories USING GIST (geom);
+
+-- Forests without a polygon are stored as their center point, as they are drawn
+ALTER TABLE simple_forests ADD COLUMN IF NOT EXISTS geom geometry(Geometry, 4326)
+    GENERATED ALWAYS AS (ST_SetSRID(COALESCE(ST_GeomFromTWKB(geometry), ST_MakePoint(center_lng, center_lat)), 4326)) STORED;
+CREATE INDEX IF NOT EXISTS idx_simple_forests_geom ON simple_forests USING GIST (geom);
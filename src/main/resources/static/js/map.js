@@ -42,6 +42,9 @@ L.polygon(georgiaBoundary, {
 
 let config = {};
 let layers = {};
+
+// Layers served as Mapbox Vector Tiles by /api/geo/tiles
+const VECTOR_TILE_LAYERS = ['roads', 'factories', 'forests'];
 let wmsLayers = {};
 
 // Load configuration and layers
@@ -79,7 +82,11 @@ Promise.all([
         layerToggles.appendChild(control);
         
         // Load layer data
-        loadGeoJSONLayer(layer);
+        if (VECTOR_TILE_LAYERS.includes(layer.name)) {
+            loadVectorTileLayer(layer);
+        } else {
+            loadGeoJSONLayer(layer);
+        }
         
         // Add event listener
         checkbox.addEventListener('change', function() {
@@ -155,6 +162,43 @@ function loadGeoJSONLayer(layerConfig) {
         .catch(err => console.log('Error loading layer:', layerConfig.name, err));
 }
 
+function loadVectorTileLayer(layerConfig) {
+    const style = {
+        color: layerConfig.color,
+        weight: layerConfig.weight || 2,
+        opacity: layerConfig.opacity || 0.8,
+        fill: true,
+        fillColor: layerConfig.fillColor || layerConfig.color,
+        fillOpacity: layerConfig.fillOpacity || 0.3,
+        radius: 6
+    };
+
+    const layer = L.vectorGrid.protobuf(`/api/geo/tiles/${layerConfig.name}/{z}/{x}/{y}.mvt`, {
+        rendererFactory: L.canvas.tile,
+        interactive: true,
+        maxNativeZoom: 22,
+        getFeatureId: feature => feature.properties.id,
+        vectorTileLayerStyles: {
+            [layerConfig.name]: style
+        }
+    });
+
+    layer.on('click', function(e) {
+        let html = '<h4>' + layerConfig.displayName + ' ინფორმაცია</h4>';
+        for (let key in e.layer.properties) {
+            if (key !== 'id' && e.layer.properties[key] !== null) {
+                html += '<strong>' + key + ':</strong> ' + e.layer.properties[key] + '<br>';
+            }
+        }
+        L.popup().setLatLng(e.latlng).setContent(html).openOn(map);
+    });
+
+    layers[layerConfig.name] = layer;
+    layer.addTo(map);
+
+    console.log(`✅ Loaded vector tile layer: ${layerConfig.name}`);
+}
+
 // Factory Management Functions
 let editingFactoryId = null;
 let coordinatePickingMode = false;
@@ -267,11 +311,9 @@ function saveFactory() {
         clearFactoryForm();
         loadFactories();
         
-        // Reload the factories layer
+        // Fetch the factory tiles again
         if (layers.factories) {
-            map.removeLayer(layers.factories);
-            const factoriesConfig = { name: 'factories', displayName: 'ქარხნები', color: '#ff6b35' };
-            loadGeoJSONLayer(factoriesConfig);
+            layers.factories.redraw();
         }
     })
     .catch(error => {
@@ -299,11 +341,9 @@ function deleteFactory() {
             clearFactoryForm();
             loadFactories();
             
-            // Reload the factories layer
+            // Fetch the factory tiles again
             if (layers.factories) {
-                map.removeLayer(layers.factories);
-                const factoriesConfig = { name: 'factories', displayName: 'ქარხნები', color: '#ff6b35' };
-                loadGeoJSONLayer(factoriesConfig);
+                layers.factories.redraw();
             }
         } else {
             throw new Error('Failed to delete factory');
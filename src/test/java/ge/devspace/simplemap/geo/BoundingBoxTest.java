@@ -0,0 +1,19 @@
+package ge.devspace.simplemap.geo;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundingBoxTest {
+
+    @Test
+    void parsesAndRejectsUnusableValues() {
+        assertThat(BoundingBox.parse("44.7, 41.6,44.9,41.8")).isEqualTo(new BoundingBox(44.7, 41.6, 44.9, 41.8));
+        assertThatThrownBy(() -> BoundingBox.parse("44.7,41.6,44.9")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BoundingBox.parse("44.7,x,44.9,41.8")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BoundingBox.parse("NaN,41.6,44.9,41.8")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BoundingBox.parse("-Infinity,41.6,Infinity,41.8")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BoundingBox.parse("44.9,41.6,44.7,41.8")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,92 @@
+package ge.devspace.simplemap.geo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlatGeobufWriterTest {
+
+    private static final List<FlatGeobufWriter.Column> COLUMNS = List.of(
+        new FlatGeobufWriter.Column("id", FlatGeobufWriter.ColumnType.LONG),
+        new FlatGeobufWriter.Column("name", FlatGeobufWriter.ColumnType.STRING));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void indexLeavesPointAtFeaturesInFileOrder() throws Exception {
+        ByteBuffer file = write(200);
+
+        int headerSize = file.getInt(8);
+        int indexStart = 12 + headerSize;
+        // 200 leaves, 13 nodes above them and the root
+        int nodeCount = 200 + 13 + 1;
+        int featureStart = indexStart + nodeCount * 40;
+
+        long expectedOffset = 0;
+        for (int leaf = nodeCount - 200; leaf < nodeCount; leaf++) {
+            int node = indexStart + leaf * 40;
+            assertThat(file.getLong(node + 32)).isEqualTo(expectedOffset);
+            int featureSize = file.getInt(featureStart + (int) expectedOffset);
+            expectedOffset += 4 + featureSize;
+        }
+        assertThat(featureStart + expectedOffset).isEqualTo(file.limit());
+    }
+
+    @Test
+    void rootCoversTheExtentAndChildrenFollowTheirParents() throws Exception {
+        ByteBuffer file = write(200);
+        int indexStart = 12 + file.getInt(8);
+
+        assertThat(file.getDouble(indexStart)).isEqualTo(0.0);
+        assertThat(file.getDouble(indexStart + 8)).isEqualTo(0.0);
+        assertThat(file.getDouble(indexStart + 16)).isEqualTo(19.0);
+        assertThat(file.getDouble(indexStart + 24)).isEqualTo(9.0);
+        // The root's children are the 13 nodes right after it
+        assertThat(file.getLong(indexStart + 32)).isEqualTo(1);
+    }
+
+    @Test
+    void hilbertOrderKeepsNeighboursTogether() throws Exception {
+        ByteBuffer file = write(200);
+        int indexStart = 12 + file.getInt(8);
+
+        // Points on a 20 x 10 grid, added row by row: 16 consecutive points in that order span
+        // at least 15 columns, 16 consecutive points along the curve stay in a compact block
+        for (int node = 1; node <= 13; node++) {
+            int box = indexStart + node * 40;
+            double width = file.getDouble(box + 16) - file.getDouble(box);
+            double height = file.getDouble(box + 24) - file.getDouble(box + 8);
+            assertThat(width + height).isLessThanOrEqualTo(10);
+        }
+    }
+
+    @Test
+    void writesMagicAndHeaderForEmptyLayer() throws Exception {
+        ByteBuffer file = write(0);
+
+        assertThat(file.get(0)).isEqualTo((byte) 'f');
+        assertThat(file.get(3)).isEqualTo((byte) 3);
+        assertThat(file.limit()).isEqualTo(12 + file.getInt(8));
+    }
+
+    private ByteBuffer write(int count) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FlatGeobufWriter writer = new FlatGeobufWriter("test", Twkb.POINT, COLUMNS, directory.resolve("spill"))) {
+            for (int i = 0; i < count; i++) {
+                writer.add(Twkb.point(i % 20, i / 20), new Object[] {(long) i, "Point " + i});
+            }
+            writer.writeTo(out);
+        }
+        assertThat(Files.exists(directory.resolve("spill"))).isFalse();
+        return ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,46 @@
+package ge.devspace.simplemap.geo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class GeoJsonLineTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void parsesLineStringAndMultiLineString() {
+        List<double[]> line = GeoJsonLine.parse("[[44.7,41.7],[44.75,41.71],[44.8,41.72]]", objectMapper);
+        assertThat(line).hasSize(1);
+        assertThat(line.get(0)).containsExactly(44.7, 41.7, 44.75, 41.71, 44.8, 41.72);
+        assertThat(GeoJsonLine.toJson(line)).isEqualTo("[[44.7,41.7],[44.75,41.71],[44.8,41.72]]");
+
+        List<double[]> parts = GeoJsonLine.parse(
+            List.of(List.of(List.of(44.7, 41.7), List.of(44.8, 41.72)), List.of(List.of(44.9, 41.73), List.of(45.0, 41.75))),
+            objectMapper);
+        assertThat(parts).hasSize(2);
+        assertThat(GeoJsonLine.toJson(parts)).isEqualTo("[[[44.7,41.7],[44.8,41.72]],[[44.9,41.73],[45.0,41.75]]]");
+    }
+
+    @Test
+    void rejectsUnusableLines() {
+        assertThatThrownBy(() -> GeoJsonLine.parse("[[44.7,41.7]]", objectMapper))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> GeoJsonLine.parse("[[44.7,41.7],[190,41.7]]", objectMapper))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> GeoJsonLine.parse("[[44.7,41.7],\"x\"]", objectMapper))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThat(GeoJsonLine.parse("", objectMapper)).isNull();
+    }
+
+    @Test
+    void measuresGreatCircleLength() {
+        // One degree of longitude along the equator
+        assertThat(GeoJsonLine.length(GeoJsonLine.segment(0, 0, 1, 0))).isCloseTo(111.2, within(0.1));
+    }
+}
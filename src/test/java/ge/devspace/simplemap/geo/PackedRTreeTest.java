@@ -0,0 +1,91 @@
+package ge.devspace.simplemap.geo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PackedRTreeTest {
+
+    private static final int COUNT = 5000;
+
+    private final Random random = new Random(7);
+    private final long[] ids = new long[COUNT];
+    private final double[] boxes = new double[COUNT * 4];
+
+    PackedRTreeTest() {
+        for (int i = 0; i < COUNT; i++) {
+            ids[i] = 1000 + i * 3L;
+            double x = 40 + random.nextDouble() * 6;
+            double y = 41 + random.nextDouble() * 3;
+            boxes[i * 4] = x;
+            boxes[i * 4 + 1] = y;
+            // A fifth are points, the rest small envelopes
+            boxes[i * 4 + 2] = i % 5 == 0 ? x : x + random.nextDouble() * 0.1;
+            boxes[i * 4 + 3] = i % 5 == 0 ? y : y + random.nextDouble() * 0.1;
+        }
+    }
+
+    @Test
+    void searchMatchesBruteForce() {
+        for (int nodeSize : new int[] {4, PackedRTree.DEFAULT_NODE_SIZE}) {
+            PackedRTree tree = PackedRTree.build(ids, boxes, COUNT, nodeSize);
+            assertThat(tree.size()).isEqualTo(COUNT);
+            for (int query = 0; query < 50; query++) {
+                double minX = 40 + random.nextDouble() * 6;
+                double minY = 41 + random.nextDouble() * 3;
+                double maxX = minX + random.nextDouble() * 0.8;
+                double maxY = minY + random.nextDouble() * 0.8;
+
+                List<Long> found = new ArrayList<>();
+                tree.search(minX, minY, maxX, maxY, found::add);
+                List<Long> expected = IntStream.range(0, COUNT)
+                    .filter(i -> boxes[i * 4] <= maxX && boxes[i * 4 + 1] <= maxY
+                        && boxes[i * 4 + 2] >= minX && boxes[i * 4 + 3] >= minY)
+                    .mapToObj(i -> ids[i])
+                    .toList();
+                assertThat(found).containsExactlyInAnyOrderElementsOf(expected);
+            }
+        }
+        assertThat(PackedRTree.build(ids, boxes, COUNT).contains(1003)).isTrue();
+        assertThat(PackedRTree.build(ids, boxes, COUNT).contains(1004)).isFalse();
+    }
+
+    @Test
+    void nearestReportsItemsInDistanceOrder() {
+        PackedRTree tree = PackedRTree.build(ids, boxes, COUNT);
+        for (int query = 0; query < 20; query++) {
+            double x = 39 + random.nextDouble() * 8;
+            double y = 40 + random.nextDouble() * 5;
+
+            List<Double> distances = new ArrayList<>();
+            tree.nearest(x, y, (id, distance) -> {
+                distances.add(distance);
+                return distances.size() < 25;
+            });
+            List<Double> expected = IntStream.range(0, COUNT)
+                .mapToObj(i -> {
+                    double dx = Math.max(Math.max(boxes[i * 4] - x, 0), x - boxes[i * 4 + 2]);
+                    double dy = Math.max(Math.max(boxes[i * 4 + 1] - y, 0), y - boxes[i * 4 + 3]);
+                    return Math.sqrt(dx * dx + dy * dy);
+                })
+                .sorted(Comparator.naturalOrder())
+                .limit(25)
+                .toList();
+            // Ties may be reported in any order, so compare the distances
+            assertThat(distances).hasSize(25);
+            for (int i = 0; i < 25; i++) {
+                assertThat(distances.get(i)).isCloseTo(expected.get(i), within(1e-12));
+            }
+        }
+        List<Long> none = new ArrayList<>();
+        PackedRTree.empty().nearest(44, 41, (id, distance) -> none.add(id));
+        assertThat(none).isEmpty();
+    }
+}
@@ -0,0 +1,94 @@
+package ge.devspace.simplemap.geo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpatialIndexTest {
+
+    @Test
+    void staysExactUnderMixedWrites() {
+        Random random = new Random(42);
+        Map<Long, BoundingBox> live = new HashMap<>();
+        int count = 4000;
+        long[] ids = new long[count];
+        double[] boxes = new double[count * 4];
+        for (int i = 0; i < count; i++) {
+            BoundingBox box = randomBox(random);
+            ids[i] = i + 1;
+            boxes[i * 4] = box.minLng();
+            boxes[i * 4 + 1] = box.minLat();
+            boxes[i * 4 + 2] = box.maxLng();
+            boxes[i * 4 + 3] = box.maxLat();
+            live.put(ids[i], box);
+        }
+        SpatialIndex index = new SpatialIndex();
+        index.load(ids, boxes, count);
+
+        // Updates, inserts of new ids, removals of present and absent ids, crossing several rebuilds
+        for (int step = 0; step < 6000; step++) {
+            long id = 1 + random.nextInt(count + 2000);
+            if (random.nextInt(3) == 0) {
+                index.remove(id);
+                live.remove(id);
+            } else {
+                BoundingBox box = randomBox(random);
+                index.put(id, box);
+                live.put(id, box);
+            }
+            if (step % 500 == 0) {
+                assertThat(index.size()).isEqualTo(live.size());
+            }
+        }
+        assertThat(index.size()).isEqualTo(live.size());
+
+        BoundingBox window = new BoundingBox(44.0, 41.5, 44.5, 42.0);
+        List<Long> found = new ArrayList<>();
+        index.search(window, found::add);
+        List<Long> expected = live.entrySet().stream()
+            .filter(entry -> entry.getValue().intersects(window))
+            .map(Map.Entry::getKey)
+            .toList();
+        assertThat(found).containsExactlyInAnyOrderElementsOf(expected);
+    }
+
+    @Test
+    void loadKeepsWritesMadeWhileItsItemsWereRead() {
+        SpatialIndex index = new SpatialIndex();
+        index.load(new long[] {1, 2}, new double[] {44, 41, 44, 41, 45, 42, 45, 42}, 2);
+
+        index.beginLoad();
+        // The items below were read before these writes
+        index.put(3, new BoundingBox(44.5, 41.5, 44.5, 41.5));
+        index.put(1, new BoundingBox(46, 43, 46, 43));
+        index.remove(2);
+        index.load(new long[] {1, 2}, new double[] {44, 41, 44, 41, 45, 42, 45, 42}, 2);
+
+        List<Long> found = new ArrayList<>();
+        index.search(new BoundingBox(43, 40, 47, 44), found::add);
+        assertThat(found).containsExactlyInAnyOrder(1L, 3L);
+        assertThat(index.nearest(46, 43, 1)).containsExactly(1L);
+        assertThat(index.size()).isEqualTo(2);
+
+        // Without beginLoad nothing is replayed
+        index.load(new long[] {2}, new double[] {45, 42, 45, 42}, 1);
+        assertThat(index.size()).isEqualTo(1);
+        index.beginLoad();
+        index.put(5, new BoundingBox(44, 41, 44, 41));
+        index.abortLoad();
+        index.load(new long[] {2}, new double[] {45, 42, 45, 42}, 1);
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    private static BoundingBox randomBox(Random random) {
+        double x = 43 + random.nextDouble() * 2;
+        double y = 41 + random.nextDouble() * 2;
+        return new BoundingBox(x, y, x + random.nextDouble() * 0.05, y + random.nextDouble() * 0.05);
+    }
+}
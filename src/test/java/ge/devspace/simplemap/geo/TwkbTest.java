@@ -0,0 +1,69 @@
+package ge.devspace.simplemap.geo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class TwkbTest {
+
+    @Test
+    void roundTripsPolygonsAtPrecisionSeven() {
+        Random random = new Random(11);
+        double[] exterior = new double[401 * 2];
+        for (int i = 0; i < 400; i++) {
+            double angle = 2 * Math.PI * i / 400;
+            exterior[i * 2] = 44.8 + Math.cos(angle) * (0.1 + random.nextDouble() * 0.01);
+            exterior[i * 2 + 1] = 41.7 + Math.sin(angle) * (0.1 + random.nextDouble() * 0.01);
+        }
+        exterior[800] = exterior[0];
+        exterior[801] = exterior[1];
+        // Crosses zero so the deltas and values are negative as well
+        double[] hole = {-0.00000004, -0.5, 0.12345678, -0.5, 0.12345678, 0.25, -0.00000004, -0.5};
+
+        byte[] twkb = Twkb.polygon(List.of(exterior, hole));
+        // Type 3 in the low nibble, zigzag(7) = 14 in the high one
+        assertThat(twkb[0] & 0xFF).isEqualTo(0xE3);
+        assertThat(Twkb.type(twkb)).isEqualTo(Twkb.POLYGON);
+
+        List<double[]> parts = Twkb.parts(twkb);
+        assertThat(parts).hasSize(2);
+        assertRoundTrip(parts.get(0), exterior);
+        assertRoundTrip(parts.get(1), hole);
+        assertThat(parts.get(1)[2]).isEqualTo(0.1234568);
+    }
+
+    @Test
+    void roundTripsPointsAndLines() {
+        assertThat(Twkb.parts(Twkb.point(-179.9999999, 85.0511287))).singleElement()
+            .satisfies(point -> assertThat(point).containsExactly(-179.9999999, 85.0511287));
+
+        double[] line = {44.7, 41.7, 44.75, 41.71, 44.8, 41.72};
+        byte[] single = Twkb.lines(List.of(line));
+        assertThat(Twkb.type(single)).isEqualTo(Twkb.LINESTRING);
+        assertRoundTrip(Twkb.parts(single).get(0), line);
+
+        double[] other = {45.0, 42.0, 44.9, 41.9};
+        byte[] multi = Twkb.lines(List.of(line, other));
+        assertThat(Twkb.type(multi)).isEqualTo(Twkb.MULTILINESTRING);
+        List<double[]> parts = Twkb.parts(multi);
+        assertThat(parts).hasSize(2);
+        assertRoundTrip(parts.get(0), line);
+        assertRoundTrip(parts.get(1), other);
+
+        assertThatThrownBy(() -> Twkb.parts(new byte[] {(byte) 0xE4, 0, 0}))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void assertRoundTrip(double[] decoded, double[] original) {
+        assertThat(decoded).hasSameSizeAs(original);
+        for (int i = 0; i < original.length; i++) {
+            assertThat(decoded[i]).isEqualTo(Twkb.quantize(original[i]));
+            assertThat(decoded[i]).isCloseTo(original[i], within(0.5e-7 + 1e-12));
+        }
+    }
+}
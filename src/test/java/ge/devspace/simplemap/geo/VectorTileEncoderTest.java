@@ -0,0 +1,239 @@
+package ge.devspace.simplemap.geo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tiles are decoded back to their geometry commands. All cases use tile 1/0/0 with the
+ * default extent 4096 and buffer 64, and give coordinates in tile pixels.
+ */
+class VectorTileEncoderTest {
+
+    private static final int CLIP_MAX = 4096 + 64;
+
+    @Test
+    void encodesPointsWithZigZagDeltas() {
+        VectorTileEncoder encoder = encoder();
+        encoder.addPoint(5, lng(2048), lat(1024), Map.of("name", "Mill"));
+        // Beyond the buffer: dropped
+        encoder.addPoint(6, lng(5000), lat(1024), Map.of());
+
+        List<Feature> features = decode(encoder.encode());
+        assertThat(features).hasSize(1);
+        assertThat(features.get(0).id()).isEqualTo(5);
+        assertThat(features.get(0).type()).isEqualTo(1);
+        // MoveTo(1) = 1 | 1 << 3, then zigzag(2048) and zigzag(1024)
+        assertThat(features.get(0).geometry()).containsExactly(9, 4096, 2048);
+    }
+
+    @Test
+    void clipsLinesToTheBufferedTile() {
+        VectorTileEncoder encoder = encoder();
+        // Leaves the tile on the right and comes back in
+        encoder.addLineString(1, new double[] {lng(2048), lat(2048), lng(5120), lat(2048), lng(3072), lat(2048)}, Map.of());
+        // Crosses the buffered tile diagonally from outside to outside
+        encoder.addLineString(2, new double[] {lng(-1000), lat(1000), lng(5000), lat(4000)}, Map.of());
+        // Entirely outside
+        encoder.addLineString(3, new double[] {lng(4500), lat(100), lng(4800), lat(3000)}, Map.of());
+
+        List<Feature> features = decode(encoder.encode());
+        assertThat(features).extracting(Feature::id).containsExactly(1L, 2L);
+
+        // MoveTo(2048,2048) LineTo(+2112,0), then MoveTo(+0,+0) LineTo(-1088,0): two parts
+        assertThat(features.get(0).geometry()).containsExactly(
+            9, zigZag(2048), zigZag(2048), 10, zigZag(CLIP_MAX - 2048), 0,
+            9, 0, 0, 10, zigZag(3072 - CLIP_MAX), 0);
+        assertThat(features.get(0).parts()).containsExactly(
+            new long[] {2048, 2048, CLIP_MAX, 2048},
+            new long[] {CLIP_MAX, 2048, 3072, 2048});
+
+        assertThat(features.get(1).parts()).containsExactly(new long[] {-64, 1468, CLIP_MAX, 3580});
+    }
+
+    @Test
+    void clipsPolygonsAndWindsRings() {
+        VectorTileEncoder encoder = encoder();
+        // Exterior past the right edge, and a hole, both given counter-clockwise (y down)
+        double[] exterior = {
+            lng(3000), lat(1000), lng(3000), lat(3000), lng(5000), lat(3000), lng(5000), lat(1000), lng(3000), lat(1000)};
+        double[] hole = {
+            lng(3200), lat(1200), lng(3200), lat(1400), lng(3400), lat(1400), lng(3400), lat(1200), lng(3200), lat(1200)};
+        encoder.addPolygon(1, List.of(exterior, hole), Map.of());
+        // A polygon entirely outside the buffer
+        encoder.addPolygon(2, List.of(new double[] {
+            lng(4500), lat(100), lng(4800), lat(100), lng(4800), lat(300), lng(4500), lat(100)}), Map.of());
+
+        List<Feature> features = decode(encoder.encode());
+        assertThat(features).hasSize(1);
+        assertThat(features.get(0).type()).isEqualTo(3);
+
+        List<long[]> rings = features.get(0).parts();
+        assertThat(rings).hasSize(2);
+        assertThat(points(rings.get(0))).containsExactlyInAnyOrder(
+            List.of(3000L, 1000L), List.of((long) CLIP_MAX, 1000L), List.of((long) CLIP_MAX, 3000L), List.of(3000L, 3000L));
+        // Exterior rings have positive area in tile space, holes negative
+        assertThat(signedArea(rings.get(0))).isPositive();
+        assertThat(signedArea(rings.get(1))).isNegative();
+        assertThat(points(rings.get(1))).hasSize(4);
+    }
+
+    private static VectorTileEncoder encoder() {
+        return new VectorTileEncoder("test", 1, 0, 0);
+    }
+
+    private static double lng(double px) {
+        return TileMath.tileToLng(px / 4096, 1);
+    }
+
+    private static double lat(double py) {
+        return TileMath.tileToLat(py / 4096, 1);
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static List<List<Long>> points(long[] part) {
+        List<List<Long>> points = new ArrayList<>();
+        for (int i = 0; i < part.length; i += 2) {
+            points.add(List.of(part[i], part[i + 1]));
+        }
+        return points;
+    }
+
+    private static long signedArea(long[] ring) {
+        long area = 0;
+        int points = ring.length / 2;
+        for (int i = 0; i < points; i++) {
+            int j = (i + 1) % points;
+            area += ring[i * 2] * ring[j * 2 + 1] - ring[j * 2] * ring[i * 2 + 1];
+        }
+        return area;
+    }
+
+    private record Feature(long id, int type, List<Integer> geometry) {
+
+        /**
+         * Replays the commands into absolute coordinates, one array per MoveTo.
+         */
+        List<long[]> parts() {
+            List<long[]> parts = new ArrayList<>();
+            List<Long> current = new ArrayList<>();
+            long x = 0;
+            long y = 0;
+            int i = 0;
+            while (i < geometry.size()) {
+                int command = geometry.get(i) & 0x7;
+                int count = geometry.get(i) >>> 3;
+                i++;
+                if (command == 7) {
+                    continue;
+                }
+                if (command == 1 && !current.isEmpty()) {
+                    parts.add(current.stream().mapToLong(Long::longValue).toArray());
+                    current.clear();
+                }
+                for (int c = 0; c < count; c++) {
+                    x += unZigZag(geometry.get(i++));
+                    y += unZigZag(geometry.get(i++));
+                    current.add(x);
+                    current.add(y);
+                }
+            }
+            parts.add(current.stream().mapToLong(Long::longValue).toArray());
+            return parts;
+        }
+
+        private static long unZigZag(int n) {
+            return (n >>> 1) ^ -(n & 1);
+        }
+    }
+
+    private static List<Feature> decode(byte[] tile) {
+        List<Feature> features = new ArrayList<>();
+        ProtoReader tileReader = new ProtoReader(tile, 0, tile.length);
+        while (tileReader.hasMore()) {
+            int tag = (int) tileReader.varint();
+            if (tag >>> 3 != 3) {
+                tileReader.skip(tag & 0x7);
+                continue;
+            }
+            ProtoReader layer = tileReader.message();
+            while (layer.hasMore()) {
+                int layerTag = (int) layer.varint();
+                if (layerTag >>> 3 != 2) {
+                    layer.skip(layerTag & 0x7);
+                    continue;
+                }
+                ProtoReader feature = layer.message();
+                long id = 0;
+                int type = 0;
+                List<Integer> geometry = new ArrayList<>();
+                while (feature.hasMore()) {
+                    int featureTag = (int) feature.varint();
+                    switch (featureTag >>> 3) {
+                        case 1 -> id = feature.varint();
+                        case 3 -> type = (int) feature.varint();
+                        case 4 -> {
+                            ProtoReader packed = feature.message();
+                            while (packed.hasMore()) {
+                                geometry.add((int) packed.varint());
+                            }
+                        }
+                        default -> feature.skip(featureTag & 0x7);
+                    }
+                }
+                features.add(new Feature(id, type, geometry));
+            }
+        }
+        return features;
+    }
+
+    private static final class ProtoReader {
+        private final byte[] bytes;
+        private int position;
+        private final int end;
+
+        ProtoReader(byte[] bytes, int position, int end) {
+            this.bytes = bytes;
+            this.position = position;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return position < end;
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        ProtoReader message() {
+            int length = (int) varint();
+            ProtoReader message = new ProtoReader(bytes, position, position + length);
+            position += length;
+            return message;
+        }
+
+        void skip(int wireType) {
+            switch (wireType) {
+                case 0 -> varint();
+                case 1 -> position += 8;
+                case 2 -> message();
+                default -> position += 4;
+            }
+        }
+    }
+}
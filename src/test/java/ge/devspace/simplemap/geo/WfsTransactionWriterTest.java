@@ -0,0 +1,98 @@
+package ge.devspace.simplemap.geo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WfsTransactionWriterTest {
+
+    private static final String NAMESPACE = "http://localhost/geoserver/simple_map";
+
+    @Test
+    void writesInsertWithEscapedAttributesAndPoint() throws Exception {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("name", "A & <B>");
+        properties.put("status", null);
+        properties.put("capacity", 5);
+
+        String xml = write(transaction -> transaction.insert(
+            new WfsFeature(GeoLayer.FACTORIES, 7, properties, Twkb.point(44.8, 41.7))));
+
+        assertThat(xml).contains("<simple_map:factories><simple_map:id>7</simple_map:id>");
+        assertThat(xml).contains("<simple_map:name>A &amp; &lt;B&gt;</simple_map:name>");
+        assertThat(xml).doesNotContain("simple_map:status");
+        assertThat(xml).contains("<gml:Point srsName=\"EPSG:4326\"><gml:pos>44.8 41.7</gml:pos></gml:Point>");
+    }
+
+    @Test
+    void writesPolygonRingsAsPosLists() throws Exception {
+        byte[] polygon = Twkb.polygon(List.of(
+            new double[] {0, 0, 1, 0, 1, 1, 0, 0},
+            new double[] {0.2, 0.1, 0.3, 0.1, 0.3, 0.2, 0.2, 0.1}));
+
+        String xml = write(transaction -> transaction.insert(
+            new WfsFeature(GeoLayer.FORESTS, 1, Map.of(), polygon)));
+
+        assertThat(xml).contains("<gml:exterior><gml:LinearRing><gml:posList>0.0 0.0 1.0 0.0 1.0 1.0 0.0 0.0</gml:posList>");
+        assertThat(xml).contains("<gml:interior><gml:LinearRing><gml:posList>0.2 0.1 0.3 0.1 0.3 0.2 0.2 0.1</gml:posList>");
+    }
+
+    @Test
+    void writesRoadPartsAsMultiCurve() throws Exception {
+        byte[] road = Twkb.lines(List.of(new double[] {44.7, 41.7, 44.8, 41.72}, new double[] {44.9, 41.73, 45.0, 41.75}));
+
+        String xml = write(transaction -> transaction.insert(new WfsFeature(GeoLayer.ROADS, 3, Map.of(), road)));
+
+        assertThat(xml).contains("<gml:MultiCurve srsName=\"EPSG:4326\">"
+            + "<gml:curveMember><gml:LineString><gml:posList>44.7 41.7 44.8 41.72</gml:posList></gml:LineString></gml:curveMember>"
+            + "<gml:curveMember><gml:LineString><gml:posList>44.9 41.73 45.0 41.75</gml:posList></gml:LineString></gml:curveMember>"
+            + "</gml:MultiCurve>");
+    }
+
+    @Test
+    void writesUpdateWithPropertiesAndIdFilter() throws Exception {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("name", "Mill & Co");
+        properties.put("status", null);
+
+        String xml = write(transaction -> transaction.update(
+            new WfsFeature(GeoLayer.FACTORIES, 9, properties, Twkb.point(44.8, 41.7))));
+
+        assertThat(xml).contains("<wfs:Update typeName=\"simple_map:factories\">"
+            + "<wfs:Property><wfs:Name>name</wfs:Name><wfs:Value>Mill &amp; Co</wfs:Value></wfs:Property>"
+            // No value sets the attribute to null
+            + "<wfs:Property><wfs:Name>status</wfs:Name></wfs:Property>"
+            + "<wfs:Property><wfs:Name>geom</wfs:Name><wfs:Value>"
+            + "<gml:Point srsName=\"EPSG:4326\"><gml:pos>44.8 41.7</gml:pos></gml:Point></wfs:Value></wfs:Property>"
+            + "<ogc:Filter><ogc:PropertyIsEqualTo><ogc:PropertyName>id</ogc:PropertyName><ogc:Literal>9</ogc:Literal>"
+            + "</ogc:PropertyIsEqualTo></ogc:Filter></wfs:Update>");
+    }
+
+    @Test
+    void writesDeleteWithIdFilter() throws Exception {
+        String xml = write(transaction -> transaction.delete(GeoLayer.ROADS, 42));
+
+        assertThat(xml).startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?><wfs:Transaction");
+        assertThat(xml).contains("<wfs:Delete typeName=\"simple_map:roads\"><ogc:Filter><ogc:PropertyIsEqualTo>"
+            + "<ogc:PropertyName>id</ogc:PropertyName><ogc:Literal>42</ogc:Literal>");
+        assertThat(xml).endsWith("</wfs:Transaction>");
+    }
+
+    private interface Operations {
+        void writeTo(WfsTransactionWriter transaction) throws Exception;
+    }
+
+    private static String write(Operations operations) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (WfsTransactionWriter transaction = new WfsTransactionWriter(out, "simple_map", NAMESPACE)) {
+            operations.writeTo(transaction);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
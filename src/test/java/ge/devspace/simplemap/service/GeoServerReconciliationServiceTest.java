@@ -0,0 +1,211 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.entity.GeoServerOutboxEntry;
+import ge.devspace.simplemap.entity.ReconciliationCheckpoint;
+import ge.devspace.simplemap.entity.SimpleFactory;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.repository.GeoServerOutboxRepository;
+import ge.devspace.simplemap.repository.ReconciliationCheckpointRepository;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import ge.devspace.simplemap.support.GeoServerStandIn;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reconciliation against {@link GeoServerStandIn}, with pages of five features so that every
+ * layer takes several pages. Each test first brings the stand-in in line with the database
+ * and then makes it drift. Outbox dispatch is off, so pending changes stay pending.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:reconcile;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+    "geoserver.sync.enabled=false",
+    "geoserver.health.interval=PT1H",
+    "geoserver.reconcile.page-size=5"
+})
+class GeoServerReconciliationServiceTest {
+
+    private static final String FACTORIES = "simple_map:factories";
+
+    private static final GeoServerStandIn geoServer = startGeoServer();
+
+    @Autowired
+    private GeoServerReconciliationService reconciliationService;
+
+    @Autowired
+    private GeoServerHealthMonitor healthMonitor;
+
+    @Autowired
+    private GeoServerOutboxRepository outboxRepository;
+
+    @Autowired
+    private ReconciliationCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static GeoServerStandIn startGeoServer() {
+        try {
+            return GeoServerStandIn.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void geoServerProperties(DynamicPropertyRegistry registry) {
+        registry.add("geoserver.url", geoServer::getUrl);
+    }
+
+    @AfterAll
+    static void stopGeoServer() {
+        geoServer.close();
+    }
+
+    @BeforeEach
+    void reset() throws InterruptedException {
+        geoServer.reset();
+        outboxRepository.deleteAll();
+        healthMonitor.check();
+        createFactories(12);
+        reconcile(true);
+        assertThat(checkpoint(GeoLayer.FACTORIES).getState()).isEqualTo(ReconciliationCheckpoint.State.DONE);
+        assertThat(geoServer.getFeatureIds(FACTORIES)).containsExactlyInAnyOrderElementsOf(factoryIds());
+    }
+
+    @Test
+    void unchangedLayersSendNothing() throws InterruptedException {
+        long transactions = geoServer.getTransactions();
+
+        reconcile(true);
+
+        assertThat(geoServer.getTransactions()).isEqualTo(transactions);
+        for (GeoLayer layer : GeoLayer.values()) {
+            ReconciliationCheckpoint checkpoint = checkpoint(layer);
+            assertThat(checkpoint.getState()).isEqualTo(ReconciliationCheckpoint.State.DONE);
+            assertThat(checkpoint.getUpserted()).isZero();
+            assertThat(checkpoint.getDeleted()).isZero();
+        }
+        assertThat(checkpoint(GeoLayer.FACTORIES).getScanned()).isEqualTo(factoryRepository.count());
+    }
+
+    @Test
+    void repairsDriftAndLeavesPendingChangesToTheOutbox() throws InterruptedException {
+        List<Long> ids = factoryIds();
+        long drifted = ids.get(1);
+        long missing = ids.get(6);
+        long pending = ids.get(9);
+        long remoteOnly = ids.get(ids.size() - 1) + 1000;
+        inTransaction(() -> {
+            // Changed without an outbox entry, as after a lost synchronization
+            SimpleFactory factory = factoryRepository.findById(drifted).orElseThrow();
+            factory.setName("Renamed");
+            factory.setCapacity(999);
+            // Changed with an outbox entry still waiting to be sent
+            factoryRepository.findById(pending).orElseThrow().setName("Not yet sent");
+            outboxRepository.save(new GeoServerOutboxEntry(GeoLayer.FACTORIES, pending, GeoServerOutboxEntry.Operation.UPSERT));
+        });
+        geoServer.removeFeature(FACTORIES, missing);
+        geoServer.putFeature(FACTORIES, remoteOnly, new GeoServerStandIn.Feature(Map.of("name", "Stray"), null, List.of()));
+        long inserted = geoServer.getInserted(FACTORIES);
+
+        reconcile(true);
+
+        ReconciliationCheckpoint checkpoint = checkpoint(GeoLayer.FACTORIES);
+        assertThat(checkpoint.getState()).isEqualTo(ReconciliationCheckpoint.State.DONE);
+        assertThat(checkpoint.getUpserted()).isEqualTo(2);
+        assertThat(checkpoint.getDeleted()).isEqualTo(1);
+        assertThat(geoServer.getInserted(FACTORIES) - inserted).isEqualTo(2);
+
+        assertThat(geoServer.getFeature(FACTORIES, drifted).properties())
+            .containsEntry("name", "Renamed")
+            .containsEntry("capacity", "999");
+        assertThat(geoServer.getFeature(FACTORIES, missing)).isNotNull();
+        assertThat(geoServer.getFeatureIds(FACTORIES)).doesNotContain(remoteOnly);
+        assertThat(geoServer.getFeature(FACTORIES, pending).properties()).doesNotContainEntry("name", "Not yet sent");
+        assertThat(outboxRepository.findAll()).singleElement()
+            .satisfies(entry -> assertThat(entry.getFeatureId()).isEqualTo(pending));
+    }
+
+    @Test
+    void failedRunResumesFromItsCheckpoint() throws InterruptedException {
+        List<Long> ids = factoryIds();
+        // Missing in the second and third page; the third cannot be sent for now
+        long secondPage = ids.get(6);
+        long thirdPage = ids.get(11);
+        geoServer.removeFeature(FACTORIES, secondPage);
+        geoServer.removeFeature(FACTORIES, thirdPage);
+        geoServer.reject(thirdPage);
+
+        reconcile(true);
+
+        ReconciliationCheckpoint failed = checkpoint(GeoLayer.FACTORIES);
+        assertThat(failed.getState()).isEqualTo(ReconciliationCheckpoint.State.FAILED);
+        assertThat(failed.getLastError()).contains("rejected");
+        assertThat(failed.getLastId()).isEqualTo(ids.get(9));
+        assertThat(failed.getUpserted()).isEqualTo(1);
+        assertThat(geoServer.getFeatureIds(FACTORIES)).contains(secondPage).doesNotContain(thirdPage);
+        int queries = geoServer.getFeatureQueries(FACTORIES).size();
+
+        geoServer.accept(thirdPage);
+        reconcile(false);
+
+        ReconciliationCheckpoint resumed = checkpoint(GeoLayer.FACTORIES);
+        assertThat(resumed.getState()).isEqualTo(ReconciliationCheckpoint.State.DONE);
+        assertThat(resumed.getUpserted()).isEqualTo(2);
+        assertThat(resumed.getScanned()).isEqualTo(factoryRepository.count());
+        // The resumed run only asked GeoServer for ids after the checkpoint
+        List<Long> resumedQueries = geoServer.getFeatureQueries(FACTORIES).subList(queries, geoServer.getFeatureQueries(FACTORIES).size());
+        assertThat(resumedQueries).isNotEmpty().allSatisfy(after -> assertThat(after).isGreaterThanOrEqualTo(ids.get(9)));
+        assertThat(geoServer.getFeatureIds(FACTORIES)).containsExactlyInAnyOrderElementsOf(ids);
+    }
+
+    private void reconcile(boolean restart) throws InterruptedException {
+        assertThat(reconciliationService.start(restart)).isTrue();
+        for (int i = 0; i < 200 && reconciliationService.isRunning(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(reconciliationService.isRunning()).isFalse();
+    }
+
+    private ReconciliationCheckpoint checkpoint(GeoLayer layer) {
+        return checkpointRepository.findById(layer).orElseThrow();
+    }
+
+    private List<Long> factoryIds() {
+        List<Long> ids = new ArrayList<>();
+        factoryRepository.findAll().forEach(factory -> ids.add(factory.getId()));
+        ids.sort(null);
+        return ids;
+    }
+
+    private void createFactories(int count) {
+        inTransaction(() -> {
+            factoryRepository.deleteAll();
+            for (int i = 0; i < count; i++) {
+                factoryRepository.save(new SimpleFactory("Factory " + i, "test", "active", 10 + i, 41.7 + i * 1e-4, 44.8));
+            }
+        });
+    }
+
+    private void inTransaction(Runnable work) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> work.run());
+    }
+}
@@ -0,0 +1,272 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.entity.GeoServerOutboxEntry;
+import ge.devspace.simplemap.entity.SimpleFactory;
+import ge.devspace.simplemap.entity.SimpleForest;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.repository.GeoServerOutboxRepository;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import ge.devspace.simplemap.repository.SimpleForestRepository;
+import ge.devspace.simplemap.support.GeoServerStandIn;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Outbox dispatch against {@link GeoServerStandIn}. Scheduled dispatch and health probes
+ * are pushed out of the way so that each test drives {@link GeoServerSyncService#dispatch()}
+ * itself; backoff is zero so a failed change is due again on the next call.
+ */
+@SpringBootTest(properties = {
+    "geoserver.sync.interval=PT1H",
+    "geoserver.sync.initial-backoff=PT0S",
+    "geoserver.sync.max-backoff=PT0S",
+    "geoserver.sync.batch-size=200",
+    "geoserver.health.interval=PT1H",
+    "geoserver.circuit.failure-threshold=3",
+    "geoserver.circuit.open-duration=PT0.3S",
+    "geoserver.http.read-timeout=PT0.5S"
+})
+class GeoServerSyncServiceTest {
+
+    private static final String FACTORIES = "simple_map:factories";
+
+    private static final String FORESTS = "simple_map:forests";
+
+    private static final GeoServerStandIn geoServer = startGeoServer();
+
+    @Autowired
+    private GeoServerSyncService syncService;
+
+    @Autowired
+    private GeoServerService geoServerService;
+
+    @Autowired
+    private GeoServerHealthMonitor healthMonitor;
+
+    @Autowired
+    private GeoServerOutboxRepository outboxRepository;
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    @Autowired
+    private SimpleForestRepository forestRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static GeoServerStandIn startGeoServer() {
+        try {
+            return GeoServerStandIn.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void geoServerProperties(DynamicPropertyRegistry registry) {
+        registry.add("geoserver.url", geoServer::getUrl);
+    }
+
+    @AfterAll
+    static void stopGeoServer() {
+        geoServer.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        geoServer.reset();
+        outboxRepository.deleteAll();
+        // A successful probe closes a circuit left open by an earlier test
+        healthMonitor.check();
+        geoServer.reset();
+    }
+
+    @Test
+    void sendsPendingChangesAsOneTransaction() {
+        List<Long> ids = createFactories(3);
+
+        syncService.dispatch();
+
+        assertThat(geoServer.getTransactions()).isEqualTo(1);
+        assertThat(geoServer.getInserted(FACTORIES)).isEqualTo(3);
+        assertThat(geoServer.getFeatureIds(FACTORIES)).containsExactlyInAnyOrderElementsOf(ids);
+        assertThat(outboxRepository.count()).isZero();
+    }
+
+    @Test
+    void coalescesRepeatedChangesOfAFeature() {
+        long id = createFactories(1).get(0);
+        inTransaction(() -> {
+            for (int i = 0; i < 4; i++) {
+                syncService.enqueue(GeoLayer.FACTORIES, id, GeoServerOutboxEntry.Operation.UPSERT);
+            }
+        });
+
+        syncService.dispatch();
+
+        assertThat(geoServer.getInserted(FACTORIES)).isEqualTo(1);
+        assertThat(outboxRepository.count()).isZero();
+    }
+
+    @Test
+    void deletedFeatureIsRemovedFromGeoServer() {
+        long id = createFactories(1).get(0);
+        syncService.dispatch();
+        inTransaction(() -> {
+            factoryRepository.deleteById(id);
+            syncService.enqueue(GeoLayer.FACTORIES, id, GeoServerOutboxEntry.Operation.DELETE);
+        });
+
+        syncService.dispatch();
+
+        assertThat(geoServer.getFeatureIds(FACTORIES)).doesNotContain(id);
+        assertThat(geoServer.getInserted(FACTORIES)).isEqualTo(1);
+    }
+
+    @Test
+    void keepsChangesWhileGeoServerFails() {
+        geoServer.errorRate(1);
+        long id = createFactories(1).get(0);
+
+        syncService.dispatch();
+
+        assertThat(geoServer.getErrors()).isEqualTo(1);
+        assertThat(outboxRepository.findAll()).singleElement()
+            .satisfies(entry -> assertThat(entry.getAttempts()).isEqualTo(1));
+
+        geoServer.errorRate(0);
+        syncService.dispatch();
+
+        assertThat(geoServer.getFeatureIds(FACTORIES)).contains(id);
+        assertThat(outboxRepository.count()).isZero();
+    }
+
+    @Test
+    void rejectedFeatureDoesNotBlockTheRest() {
+        List<Long> ids = createFactories(3);
+        geoServer.reject(ids.get(1));
+
+        syncService.dispatch();
+
+        assertThat(geoServer.getFeatureIds(FACTORIES)).contains(ids.get(0), ids.get(2)).doesNotContain(ids.get(1));
+        assertThat(outboxRepository.findAll()).singleElement()
+            .satisfies(entry -> assertThat(entry.getFeatureId()).isEqualTo(ids.get(1)));
+    }
+
+    @Test
+    void unconvertibleFeatureDoesNotBlockTheRest() {
+        long[] forests = new long[2];
+        inTransaction(() -> {
+            // Neither a polygon nor a center point
+            forests[0] = forestRepository.save(new SimpleForest("Bare", "test", null, null, "active", null, null, null)).getId();
+            forests[1] = forestRepository.save(new SimpleForest("Corrupt", "test", null, null, "active", 41.7, 44.8, null)).getId();
+            syncService.enqueue(GeoLayer.FORESTS, forests[0], GeoServerOutboxEntry.Operation.UPSERT);
+            syncService.enqueue(GeoLayer.FORESTS, forests[1], GeoServerOutboxEntry.Operation.UPSERT);
+        });
+        jdbcTemplate.update("update simple_forests set geometry = ? where id = ?", new byte[] {(byte) 0xE4, 0, 0}, forests[1]);
+        List<Long> factories = createFactories(2);
+
+        syncService.dispatch();
+
+        assertThat(geoServer.getFeature(FORESTS, forests[0]).geometryType()).isNull();
+        assertThat(geoServer.getFeatureIds(FORESTS)).doesNotContain(forests[1]);
+        assertThat(geoServer.getFeatureIds(FACTORIES)).containsAll(factories);
+        assertThat(outboxRepository.findAll()).singleElement().satisfies(entry -> {
+            assertThat(entry.getFeatureId()).isEqualTo(forests[1]);
+            assertThat(entry.getAttempts()).isEqualTo(1);
+        });
+    }
+
+    @Test
+    void openCircuitQueuesChangesWithoutCallingGeoServer() throws InterruptedException {
+        geoServer.errorRate(1);
+        long id = createFactories(1).get(0);
+        for (int i = 0; i < 3; i++) {
+            syncService.dispatch();
+        }
+        assertThat(geoServerService.getCircuitStats().get("state")).isEqualTo(CircuitBreaker.State.OPEN);
+
+        long errors = geoServer.getErrors();
+        syncService.dispatch();
+        assertThat(geoServer.getErrors()).isEqualTo(errors);
+        assertThat(outboxRepository.count()).isEqualTo(1);
+
+        geoServer.errorRate(0);
+        Thread.sleep(400);
+        // Half-open: the next dispatch is the trial call and closes the circuit
+        syncService.dispatch();
+
+        assertThat(geoServerService.getCircuitStats().get("state")).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(geoServer.getFeatureIds(FACTORIES)).contains(id);
+        assertThat(outboxRepository.count()).isZero();
+    }
+
+    @Test
+    void stalledGeoServerTimesOutInsteadOfBlockingDispatch() {
+        geoServer.stalls(1, Duration.ofSeconds(2));
+        createFactories(1);
+
+        long started = System.nanoTime();
+        syncService.dispatch();
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        assertThat(elapsedMillis).isLessThan(1500);
+        assertThat(geoServer.getStalls()).isEqualTo(1);
+        assertThat(outboxRepository.count()).isEqualTo(1);
+        assertThat((String) syncService.getStatus().get("lastError")).startsWith("GeoServer is unreachable");
+    }
+
+    @Test
+    void measuresSyncThroughput() {
+        geoServer.latency(Duration.ofMillis(5), Duration.ofMillis(5));
+        int changes = 2000;
+        List<Long> ids = createFactories(changes);
+
+        long started = System.nanoTime();
+        syncService.dispatch();
+        long elapsedMillis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+
+        System.out.println("Synchronized " + changes + " changes in " + geoServer.getTransactions() + " transactions, "
+            + elapsedMillis + " ms (" + changes * 1000L / elapsedMillis + " changes/s)");
+        assertThat(geoServer.getTransactions()).isEqualTo(changes / 200);
+        assertThat(geoServer.getFeatureIds(FACTORIES)).containsAll(ids);
+        assertThat(outboxRepository.count()).isZero();
+    }
+
+    private List<Long> createFactories(int count) {
+        List<Long> ids = new ArrayList<>();
+        inTransaction(() -> {
+            for (int i = 0; i < count; i++) {
+                SimpleFactory factory = factoryRepository.save(
+                    new SimpleFactory("Factory " + i, "test", "active", 10 + i, 41.7 + i * 1e-4, 44.8));
+                syncService.enqueue(GeoLayer.FACTORIES, factory.getId(), GeoServerOutboxEntry.Operation.UPSERT);
+                ids.add(factory.getId());
+            }
+        });
+        return ids;
+    }
+
+    private void inTransaction(Runnable work) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> work.run());
+    }
+}
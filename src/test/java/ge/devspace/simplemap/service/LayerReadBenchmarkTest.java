@@ -0,0 +1,149 @@
+package ge.devspace.simplemap.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ge.devspace.simplemap.entity.SimpleFactory;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares one whole-layer GeoJSON request as the factories endpoint first served it
+ * ({@code findAll()}, a map tree per feature, then Jackson) with the current read path
+ * (record projections streamed through {@code GeoJsonWriter} in a read-only transaction).
+ * <p>
+ * Excluded from the default build; run it with
+ * {@code mvn test -Dgroups=benchmark -DexcludedGroups= -Dtest=LayerReadBenchmarkTest}.
+ * Allocation is measured per thread, which covers the H2 query as well because in-memory
+ * H2 runs statements on the calling thread.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+    "geoserver.sync.enabled=false",
+    "geoserver.health.interval=PT1H"
+})
+class LayerReadBenchmarkTest {
+
+    private static final int FACTORIES = 20_000;
+    private static final int WARMUP = 10;
+    private static final int RUNS = 30;
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private GeoJsonLayerService geoJsonLayerService;
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private record Result(String name, double medianMillis, long bytesPerRequest) {
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        void run() throws IOException;
+    }
+
+    @Test
+    void projectionReadsAllocateLessThanFindAll() throws IOException {
+        importFactories();
+
+        Result findAll = measure("findAll() + maps", () ->
+            objectMapper.writeValue(OutputStream.nullOutputStream(), factoriesFromFindAll()));
+        Result projection = measure("projection stream", () ->
+            geoJsonLayerService.writeFactories(null, null, false, OutputStream.nullOutputStream()));
+
+        System.out.println("Whole factories layer, " + factoryRepository.count() + " features, median of " + RUNS + " requests:");
+        for (Result result : List.of(findAll, projection)) {
+            System.out.printf("  %-18s %8.1f ms %10.1f MB allocated%n",
+                result.name(), result.medianMillis(), result.bytesPerRequest() / 1e6);
+        }
+        System.out.printf("  projection: %.0f%% less allocation, %.0f%% less latency%n",
+            100.0 * (findAll.bytesPerRequest() - projection.bytesPerRequest()) / findAll.bytesPerRequest(),
+            100.0 * (findAll.medianMillis() - projection.medianMillis()) / findAll.medianMillis());
+
+        assertThat(projection.bytesPerRequest()).isLessThan(findAll.bytesPerRequest());
+    }
+
+    private void importFactories() throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < FACTORIES; i++) {
+            double lng = 44.7 + (i % 200) * 0.001;
+            double lat = 41.6 + (i / 200) * 0.001;
+            ndjson.append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                .append(lng).append(',').append(lat)
+                .append("]},\"properties\":{\"name\":\"Factory ").append(i)
+                .append("\",\"type\":\"Steel\",\"status\":\"Active\",\"capacity\":").append(100 + i % 900)
+                .append("}}\n");
+        }
+        bulkImportService.importFeatures(GeoLayer.FACTORIES, BulkImportService.Format.NDJSON,
+            new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The factories endpoint before streaming: every entity loaded and managed, then copied into maps.
+     */
+    private Map<String, Object> factoriesFromFindAll() {
+        List<SimpleFactory> factories = factoryRepository.findAll();
+
+        Map<String, Object> geoJson = new HashMap<>();
+        geoJson.put("type", "FeatureCollection");
+        List<Map<String, Object>> features = factories.stream().map(factory -> {
+            Map<String, Object> feature = new HashMap<>();
+            feature.put("type", "Feature");
+
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("id", factory.getId());
+            properties.put("name", factory.getName());
+            properties.put("type", factory.getType());
+            properties.put("capacity", factory.getCapacity());
+            properties.put("status", factory.getStatus());
+            feature.put("properties", properties);
+
+            Map<String, Object> geometry = new HashMap<>();
+            geometry.put("type", "Point");
+            geometry.put("coordinates", new double[] {factory.getLongitude(), factory.getLatitude()});
+            feature.put("geometry", geometry);
+            return feature;
+        }).collect(Collectors.toList());
+        geoJson.put("features", features);
+        return geoJson;
+    }
+
+    private static Result measure(String name, Request request) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            request.run();
+        }
+        long[] nanos = new long[RUNS];
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < RUNS; i++) {
+            long started = System.nanoTime();
+            request.run();
+            nanos[i] = System.nanoTime() - started;
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        Arrays.sort(nanos);
+        return new Result(name, nanos[RUNS / 2] / 1e6, allocated / RUNS);
+    }
+}
@@ -0,0 +1,118 @@
+package ge.devspace.simplemap.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ge.devspace.simplemap.entity.SimpleFactory;
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.geo.LevelOfDetail;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The PostGIS queries against the database from docker-compose.yml, seeded with the samples.
+ * <p>
+ * Excluded from the default build; with {@code docker compose up db} running, run it with
+ * {@code mvn -Ppostgis test -Dgroups=postgis -DexcludedGroups= -Dtest=PostGisServiceTest}.
+ */
+@Tag("postgis")
+@ActiveProfiles("postgis")
+@SpringBootTest(properties = {
+    "geoserver.sync.enabled=false",
+    "geoserver.health.interval=PT1H"
+})
+class PostGisServiceTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private PostGisService postGisService;
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void pagesComeBackInIdOrder() {
+        List<Long> ids = factoryIds();
+        assertThat(ids).hasSizeGreaterThan(3);
+
+        List<JsonNode> firstPage = geoJson(null, new LayerPage(0, 3));
+        List<JsonNode> secondPage = geoJson(null, new LayerPage(ids.get(2), 3));
+
+        assertThat(firstPage).extracting(feature -> feature.path("properties").path("id").asLong())
+            .containsExactlyElementsOf(ids.subList(0, 3));
+        assertThat(secondPage).extracting(feature -> feature.path("properties").path("id").asLong())
+            .containsExactlyElementsOf(ids.subList(3, Math.min(6, ids.size())));
+        assertThat(firstPage.get(0).path("geometry").path("type").asText()).isEqualTo("Point");
+    }
+
+    @Test
+    void viewportWithoutPageReturnsEveryFeatureInIt() {
+        List<JsonNode> features = geoJson(new BoundingBox(-180, -90, 180, 90), null);
+
+        assertThat(features).extracting(feature -> feature.path("properties").path("id").asLong())
+            .containsExactlyInAnyOrderElementsOf(factoryIds());
+    }
+
+    @Test
+    void tileKeepsTheIdAsAProperty() {
+        SimpleFactory factory = factoryRepository.findById(factoryIds().get(0)).orElseThrow();
+        int z = 12;
+        int x = (int) Math.floor((factory.getLongitude() + 180) / 360 * (1 << z));
+        double latRad = Math.toRadians(factory.getLatitude());
+        int y = (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * (1 << z));
+
+        byte[] tile = new TransactionTemplate(transactionManager).execute(status ->
+            postGisService.renderTile(GeoLayer.FACTORIES, z, x, y));
+
+        assertThat(tile).isNotEmpty();
+        String content = new String(tile, StandardCharsets.ISO_8859_1);
+        assertThat(content).contains("factories");
+        // Layer key (field 3) "id"; the feature id column itself is not a key
+        assertThat(content).contains("\u001a\u0002id").doesNotContain("feature_id");
+    }
+
+    private List<JsonNode> geoJson(BoundingBox viewport, LayerPage page) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        return transaction.execute(status -> {
+            List<JsonNode> features = new ArrayList<>();
+            try (Stream<Object[]> rows = postGisService.streamGeoJson(GeoLayer.FACTORIES, viewport, page, LevelOfDetail.FULL)) {
+                rows.forEach(row -> {
+                    try {
+                        JsonNode feature = objectMapper.readTree((String) row[1]);
+                        assertThat(feature.path("properties").path("id").asLong()).isEqualTo(((Number) row[0]).longValue());
+                        features.add(feature);
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            return features;
+        });
+    }
+
+    private List<Long> factoryIds() {
+        List<Long> ids = new ArrayList<>();
+        factoryRepository.findAll().forEach(factory -> ids.add(factory.getId()));
+        ids.sort(null);
+        return ids;
+    }
+}
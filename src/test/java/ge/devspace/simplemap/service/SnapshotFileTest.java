@@ -0,0 +1,87 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.repository.FactoryRow;
+import ge.devspace.simplemap.repository.RoadRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackRowsAndEnvelopes() throws IOException {
+        Path file = directory.resolve("layers.snapshot");
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(file)) {
+            writer.startLayer(GeoLayer.FACTORIES);
+            writer.writeRow(new Object[] {3L, "ქარხანა", "Steel", "Active", 500, 41.7, 44.8});
+            writer.writeRow(new Object[] {7L, null, null, null, null, null, null});
+            writer.writeRow(new Object[] {9L, "Mill", "Textile", "Idle", 120, 42.2, 43.1});
+            writer.endLayer();
+            writer.startLayer(GeoLayer.ROADS);
+            writer.writeRow(new Object[] {1L, "Road", "Main", "Asphalt", 41.7, 44.7, 41.8, 44.9, 2.5,
+                new byte[] {2, 1, 2}, null, 44.7, 41.7, 44.9, 41.8});
+            writer.writeRow(new Object[] {2L, "Track", null, null, null, null, null, null, null,
+                new byte[] {2, 1, 2}, null, null, null, null, null});
+            writer.endLayer();
+            writer.startLayer(GeoLayer.FORESTS);
+            writer.endLayer();
+            writer.finish();
+        }
+
+        SnapshotFile snapshot = SnapshotFile.open(file);
+        assertThat(snapshot.count(GeoLayer.FACTORIES)).isEqualTo(3);
+        assertThat(snapshot.maxId(GeoLayer.FACTORIES)).isEqualTo(9);
+        assertThat(snapshot.count(GeoLayer.FORESTS)).isZero();
+        assertThat(snapshot.row(GeoLayer.FACTORIES, 0)).containsExactly(3L, "ქარხანა", "Steel", "Active", 500, 41.7, 44.8);
+        assertThat(snapshot.row(GeoLayer.FACTORIES, 1)).containsExactly(7L, null, null, null, null, null, null);
+
+        SnapshotFile.Envelopes envelopes = snapshot.envelopes(GeoLayer.FACTORIES);
+        assertThat(envelopes.count()).isEqualTo(2);
+        assertThat(envelopes.ids()).startsWith(3L, 9L);
+        assertThat(envelopes.boxes()).startsWith(44.8, 41.7, 44.8, 41.7, 43.1, 42.2, 43.1, 42.2);
+        assertThat(envelopes.weights()).startsWith(500L, 120L);
+
+        List<FactoryRow> inWindow = snapshot.factories(new BoundingBox(44, 41, 45, 42), null).toList();
+        assertThat(inWindow).extracting(FactoryRow::id).containsExactly(3L);
+        assertThat(inWindow.get(0).longitude()).isEqualTo(44.8);
+        assertThat(snapshot.factories(null, new LayerPage(3, 1)).toList()).extracting(FactoryRow::id).containsExactly(7L);
+        assertThat(snapshot.factories(null, new LayerPage(4, 10)).toList()).extracting(FactoryRow::id).containsExactly(7L, 9L);
+
+        // A road without an envelope is only listed without a window
+        assertThat(snapshot.roads(new BoundingBox(-180, -90, 180, 90), null).toList()).extracting(RoadRow::id).containsExactly(1L);
+        assertThat(snapshot.roads(null, null).toList()).extracting(RoadRow::id).containsExactly(1L, 2L);
+
+        RoadRow road = snapshot.roads(null, null).findFirst().orElseThrow();
+        assertThat(road.length()).isEqualTo(2.5);
+        assertThat(road.geometry()).containsExactly(2, 1, 2);
+        assertThat(road.simplified()).isNull();
+    }
+
+    @Test
+    void rejectsIncompleteFiles() throws IOException {
+        Path file = directory.resolve("partial.snapshot");
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(file)) {
+            writer.startLayer(GeoLayer.FACTORIES);
+            writer.writeRow(new Object[] {5L, "A", null, null, null, 41.0, 44.0});
+            assertThatThrownBy(() -> writer.writeRow(new Object[] {5L, "B", null, null, null, 41.0, 44.0}))
+                .isInstanceOf(IllegalArgumentException.class);
+            writer.endLayer();
+        }
+        assertThatThrownBy(() -> SnapshotFile.open(file)).isInstanceOf(IOException.class);
+
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThatThrownBy(() -> SnapshotFile.open(file)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,95 @@
+package ge.devspace.simplemap.service;
+
+import ge.devspace.simplemap.entity.SimpleFactory;
+import ge.devspace.simplemap.geo.BoundingBox;
+import ge.devspace.simplemap.geo.GeoLayer;
+import ge.devspace.simplemap.repository.SimpleFactoryRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A background restore whose inserts fail part way: the second batch of factories holds a
+ * name longer than the column allows, after the first batch was already committed.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:snapshot;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+    "geoserver.sync.enabled=false",
+    "geoserver.health.interval=PT1H",
+    "geo.snapshot.restore=true",
+    "geo.snapshot.background=true",
+    "geo.import.batch-size=2"
+})
+class SnapshotServiceTest {
+
+    private static final Path snapshot = writeSnapshot();
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private SpatialIndexService spatialIndexService;
+
+    @Autowired
+    private SimpleFactoryRepository factoryRepository;
+
+    private static Path writeSnapshot() {
+        try {
+            Path file = Files.createTempFile("simple-map-", ".snapshot");
+            file.toFile().deleteOnExit();
+            try (SnapshotFile.Writer writer = new SnapshotFile.Writer(file)) {
+                writer.startLayer(GeoLayer.ROADS);
+                writer.endLayer();
+                writer.startLayer(GeoLayer.FACTORIES);
+                writer.writeRow(new Object[] {1L, "Snapshot 1", "test", "active", 10, 41.7, 44.8});
+                writer.writeRow(new Object[] {2L, "Snapshot 2", "test", "active", 10, 41.7, 44.8});
+                writer.writeRow(new Object[] {3L, "x".repeat(300), "test", "active", 10, 41.7, 44.8});
+                writer.endLayer();
+                writer.startLayer(GeoLayer.FORESTS);
+                writer.endLayer();
+                writer.finish();
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void snapshotProperties(DynamicPropertyRegistry registry) {
+        registry.add("geo.snapshot.file", snapshot::toString);
+    }
+
+    @Test
+    void failedBackgroundRestoreSeedsInstead() throws InterruptedException {
+        for (int i = 0; i < 200 && snapshotService.isRestoring(); i++) {
+            Thread.sleep(50);
+        }
+
+        assertThat(snapshotService.isRestoring()).isFalse();
+        assertThat(snapshotService.getServingSnapshot()).isNull();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> restore = (Map<String, Object>) snapshotService.getStatus().get("restore");
+        assertThat(restore).containsEntry("state", "failed");
+
+        List<SimpleFactory> factories = factoryRepository.findAll();
+        assertThat(factories).isNotEmpty()
+            .allSatisfy(factory -> assertThat(factory.getName()).doesNotStartWith("Snapshot"));
+        // The index shows the seeded factories, not the snapshot's
+        long[] indexed = spatialIndexService.search(GeoLayer.FACTORIES, new BoundingBox(-180, -90, 180, 90));
+        assertThat(Arrays.stream(indexed).boxed().toList())
+            .containsExactlyInAnyOrderElementsOf(factories.stream().map(SimpleFactory::getId).toList());
+    }
+}
@@ -0,0 +1,592 @@
+package ge.devspace.simplemap.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embeddable stand-in for the part of GeoServer that {@code GeoServerService} talks to:
+ * {@code GET /geoserver/rest/workspaces.json}, {@code POST /geoserver/wfs} transactions and
+ * {@code GET /geoserver/wfs} GetFeature requests filtered on an id range.
+ * <p>
+ * Transactions are parsed with StAX. Insert, Update and Delete operations are counted per
+ * typeName, and the features each type currently holds are kept with their attributes and
+ * geometry, so tests can check both traffic and end state, and GetFeature answers them as
+ * GeoJSON. Updates are counted but not applied. Latency, an error rate (HTTP 503), stalls (the connection is
+ * held for a while and then dropped unanswered, as with a hung server) and per-feature
+ * rejections (a WFS ExceptionReport) can be changed at any time while the server runs.
+ */
+public class GeoServerStandIn implements AutoCloseable {
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Pattern ID_RANGE = Pattern.compile("id > (-?\\d+) AND id <= (-?\\d+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Random random = new Random(42);
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile Duration latencyJitter = Duration.ZERO;
+    private volatile double errorRate;
+    private volatile double stallRate;
+    private volatile Duration stallDuration = Duration.ofSeconds(5);
+    private final Set<Long> rejectedIds = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, AtomicLong> inserts = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> updates = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> deletes = new ConcurrentHashMap<>();
+    private final Map<String, NavigableMap<Long, Feature>> features = new ConcurrentHashMap<>();
+    private final Map<String, List<Long>> featureQueries = new ConcurrentHashMap<>();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong workspaceRequests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    /**
+     * A stored feature: attribute values as sent, and the geometry as its GML element name
+     * ({@code Point}, {@code LineString}, {@code MultiCurve} or {@code Polygon}) with one
+     * position list per part.
+     */
+    public record Feature(Map<String, String> properties, String geometryType, List<double[]> parts) {
+    }
+
+    private GeoServerStandIn(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Starts a stand-in on a free port of the loopback interface.
+     */
+    public static GeoServerStandIn start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        GeoServerStandIn standIn = new GeoServerStandIn(server);
+        server.createContext("/geoserver/rest/workspaces.json", standIn::handleWorkspaces);
+        server.createContext("/geoserver/wfs", standIn::handleWfs);
+        server.setExecutor(standIn.executor);
+        server.start();
+        return standIn;
+    }
+
+    /**
+     * Base URL to use as {@code geoserver.url}.
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/geoserver";
+    }
+
+    public GeoServerStandIn latency(Duration latency, Duration jitter) {
+        this.latency = latency;
+        this.latencyJitter = jitter;
+        return this;
+    }
+
+    /**
+     * Fraction of requests, 0 to 1, answered with HTTP 503.
+     */
+    public GeoServerStandIn errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Fraction of requests, 0 to 1, that are held for {@code duration} and then dropped unanswered.
+     */
+    public GeoServerStandIn stalls(double stallRate, Duration duration) {
+        this.stallRate = stallRate;
+        this.stallDuration = duration;
+        return this;
+    }
+
+    /**
+     * Transactions that insert, update or delete the given feature id are answered with an ExceptionReport.
+     */
+    public GeoServerStandIn reject(long featureId) {
+        rejectedIds.add(featureId);
+        return this;
+    }
+
+    /**
+     * Stops rejecting transactions that touch the given feature id.
+     */
+    public GeoServerStandIn accept(long featureId) {
+        rejectedIds.remove(featureId);
+        return this;
+    }
+
+    /**
+     * Stores a feature directly, as if another client had written it.
+     */
+    public void putFeature(String typeName, long id, Feature feature) {
+        features.computeIfAbsent(typeName, key -> new ConcurrentSkipListMap<>()).put(id, feature);
+    }
+
+    /**
+     * Removes a feature directly, without a transaction.
+     */
+    public void removeFeature(String typeName, long id) {
+        NavigableMap<Long, Feature> stored = features.get(typeName);
+        if (stored != null) {
+            stored.remove(id);
+        }
+    }
+
+    /**
+     * Clears the injected faults and all counters and features.
+     */
+    public void reset() {
+        latency = Duration.ZERO;
+        latencyJitter = Duration.ZERO;
+        errorRate = 0;
+        stallRate = 0;
+        rejectedIds.clear();
+        inserts.clear();
+        updates.clear();
+        deletes.clear();
+        features.clear();
+        featureQueries.clear();
+        transactions.set(0);
+        workspaceRequests.set(0);
+        errors.set(0);
+        stalls.set(0);
+        rejections.set(0);
+        maxInFlight.set(0);
+    }
+
+    public long getInserted(String typeName) {
+        return count(inserts, typeName);
+    }
+
+    public long getUpdated(String typeName) {
+        return count(updates, typeName);
+    }
+
+    public long getDeleted(String typeName) {
+        return count(deletes, typeName);
+    }
+
+    /**
+     * Ids currently held for a typeName such as {@code simple_map:roads}.
+     */
+    public Set<Long> getFeatureIds(String typeName) {
+        return Set.copyOf(features.getOrDefault(typeName, new TreeMap<>()).keySet());
+    }
+
+    /**
+     * The feature with this id, or null.
+     */
+    public Feature getFeature(String typeName, long id) {
+        NavigableMap<Long, Feature> stored = features.get(typeName);
+        return stored == null ? null : stored.get(id);
+    }
+
+    /**
+     * Lower id bound of every GetFeature request for a typeName, in the order they came.
+     */
+    public List<Long> getFeatureQueries(String typeName) {
+        return List.copyOf(featureQueries.getOrDefault(typeName, List.of()));
+    }
+
+    /**
+     * Accepted transactions.
+     */
+    public long getTransactions() {
+        return transactions.get();
+    }
+
+    public long getWorkspaceRequests() {
+        return workspaceRequests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getStalls() {
+        return stalls.get();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    /**
+     * Highest number of requests handled at the same time since the last reset.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("transactions", transactions.get());
+        stats.put("errors", errors.get());
+        stats.put("stalls", stalls.get());
+        stats.put("rejections", rejections.get());
+        stats.put("maxInFlight", maxInFlight.get());
+        stats.put("inserted", new TreeMap<>(inserts));
+        stats.put("deleted", new TreeMap<>(deletes));
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static long count(Map<String, AtomicLong> counts, String typeName) {
+        AtomicLong count = counts.get(typeName);
+        return count == null ? 0 : count.get();
+    }
+
+    private void handleWorkspaces(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            workspaceRequests.incrementAndGet();
+            respond(exchange, 200, "application/json",
+                "{\"workspaces\":{\"workspace\":[{\"name\":\"simple_map\"}]}}");
+        });
+    }
+
+    private void handleWfs(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                getFeature(exchange);
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "text/plain", "Only GetFeature and WFS-T are supported");
+                return;
+            }
+            List<Operation> operations;
+            try (InputStream body = exchange.getRequestBody()) {
+                operations = parse(body);
+            } catch (XMLStreamException e) {
+                respond(exchange, 200, "application/xml", exceptionReport("Could not parse the transaction: " + e.getMessage()));
+                return;
+            }
+            for (Operation operation : operations) {
+                if (operation.featureId() != null && rejectedIds.contains(operation.featureId())) {
+                    rejections.incrementAndGet();
+                    respond(exchange, 200, "application/xml", exceptionReport("Feature " + operation.featureId() + " rejected"));
+                    return;
+                }
+            }
+            apply(operations);
+            transactions.incrementAndGet();
+            respond(exchange, 200, "application/xml", transactionResponse(operations));
+        });
+    }
+
+    /**
+     * Answers {@code request=GetFeature} for one typeName with a {@code CQL_FILTER} of the form
+     * {@code id > a AND id <= b}, sorted by id and cut at {@code count}, as GeoJSON.
+     */
+    private void getFeature(HttpExchange exchange) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        for (String pair : rawQuery == null ? new String[0] : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        String typeName = query.get("typeNames");
+        Matcher range = ID_RANGE.matcher(query.getOrDefault("CQL_FILTER", ""));
+        if (!"GetFeature".equals(query.get("request")) || typeName == null || !range.matches()) {
+            respond(exchange, 200, "application/xml", exceptionReport("Unsupported request: " + rawQuery));
+            return;
+        }
+        long after = Long.parseLong(range.group(1));
+        long upTo = Long.parseLong(range.group(2));
+        int count = Integer.parseInt(query.getOrDefault("count", String.valueOf(Integer.MAX_VALUE)));
+        featureQueries.computeIfAbsent(typeName, key -> new CopyOnWriteArrayList<>()).add(after);
+
+        ObjectNode collection = JsonNodeFactory.instance.objectNode();
+        collection.put("type", "FeatureCollection");
+        ArrayNode list = collection.putArray("features");
+        NavigableMap<Long, Feature> stored = features.getOrDefault(typeName, new TreeMap<>());
+        for (Map.Entry<Long, Feature> entry : stored.subMap(after, false, upTo, true).entrySet()) {
+            if (list.size() == count) {
+                break;
+            }
+            list.add(toGeoJson(entry.getKey(), entry.getValue()));
+        }
+        respond(exchange, 200, "application/json", OBJECT_MAPPER.writeValueAsString(collection));
+    }
+
+    private static ObjectNode toGeoJson(long id, Feature feature) {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        json.put("type", "Feature");
+        json.put("id", "feature." + id);
+        ObjectNode properties = json.putObject("properties");
+        properties.put("id", id);
+        for (Map.Entry<String, String> property : feature.properties().entrySet()) {
+            // Typed as GeoServer would from the column type: numbers as numbers
+            try {
+                properties.put(property.getKey(), new BigDecimal(property.getValue()));
+            } catch (NumberFormatException e) {
+                properties.put(property.getKey(), property.getValue());
+            }
+        }
+        if (feature.geometryType() == null) {
+            json.putNull("geometry");
+            return json;
+        }
+        ObjectNode geometry = json.putObject("geometry");
+        List<double[]> parts = feature.parts();
+        switch (feature.geometryType()) {
+            case "Point" -> {
+                geometry.put("type", "Point");
+                geometry.set("coordinates", positions(parts.get(0)).get(0));
+            }
+            case "LineString" -> {
+                geometry.put("type", "LineString");
+                geometry.set("coordinates", positions(parts.get(0)));
+            }
+            default -> {
+                geometry.put("type", "Polygon".equals(feature.geometryType()) ? "Polygon" : "MultiLineString");
+                ArrayNode coordinates = geometry.putArray("coordinates");
+                for (double[] part : parts) {
+                    coordinates.add(positions(part));
+                }
+            }
+        }
+        return json;
+    }
+
+    private static ArrayNode positions(double[] part) {
+        ArrayNode positions = JsonNodeFactory.instance.arrayNode();
+        for (int i = 0; i + 1 < part.length; i += 2) {
+            positions.addArray().add(part[i]).add(part[i + 1]);
+        }
+        return positions;
+    }
+
+    private interface Handler {
+        void handle() throws IOException;
+    }
+
+    /**
+     * Applies the injected latency and faults around a handler.
+     */
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            double errorDraw;
+            double stallDraw;
+            long jitter;
+            synchronized (random) {
+                errorDraw = random.nextDouble();
+                stallDraw = random.nextDouble();
+                jitter = latencyJitter.isZero() ? 0 : (long) (random.nextDouble() * latencyJitter.toMillis());
+            }
+            sleep(latency.toMillis() + jitter);
+            if (stallDraw < stallRate) {
+                // Hold the connection, then drop it without an answer or any effect
+                stalls.incrementAndGet();
+                exchange.getRequestBody().readAllBytes();
+                sleep(stallDuration.toMillis());
+                return;
+            }
+            if (errorDraw < errorRate) {
+                errors.incrementAndGet();
+                exchange.getRequestBody().readAllBytes();
+                respond(exchange, 503, "text/plain", "Injected failure");
+                return;
+            }
+            handler.handle();
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Operation(String kind, String typeName, Long featureId, Feature feature) {
+    }
+
+    private static List<Operation> parse(InputStream body) throws XMLStreamException {
+        List<Operation> operations = new ArrayList<>();
+        XMLStreamReader xml = INPUT_FACTORY.createXMLStreamReader(body);
+        try {
+            String kind = null;
+            String typeName = null;
+            Long featureId = null;
+            int depth = 0;
+            int featureDepth = -1;
+            Map<String, String> properties = null;
+            String geometryType = null;
+            List<double[]> parts = null;
+            String element = null;
+            StringBuilder text = null;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = xml.getLocalName();
+                    element = name;
+                    if (depth == 2) {
+                        kind = name;
+                        typeName = xml.getAttributeValue(null, "typeName");
+                        featureId = null;
+                    } else if (depth == 3 && "Insert".equals(kind)) {
+                        // Each child of an Insert is one feature, named after its type
+                        featureDepth = depth;
+                        typeName = xml.getPrefix() == null || xml.getPrefix().isEmpty()
+                            ? name : xml.getPrefix() + ":" + name;
+                        featureId = null;
+                        properties = new LinkedHashMap<>();
+                        geometryType = null;
+                        parts = new ArrayList<>();
+                    } else if (featureDepth > 0 && depth == featureDepth + 2) {
+                        // The GML element inside the geometry property
+                        geometryType = name;
+                    }
+                    boolean property = featureDepth > 0 && depth == featureDepth + 1;
+                    boolean positions = featureDepth > 0 && ("pos".equals(name) || "posList".equals(name));
+                    boolean filterId = !"Insert".equals(kind) && "Literal".equals(name);
+                    text = property || positions || filterId ? new StringBuilder() : null;
+                } else if (event == XMLStreamConstants.CHARACTERS && text != null) {
+                    text.append(xml.getText());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = xml.getLocalName();
+                    if (text != null && name.equals(element)) {
+                        String value = text.toString().trim();
+                        if ("Literal".equals(name) || (featureDepth > 0 && depth == featureDepth + 1 && "id".equals(name))) {
+                            featureId = Long.valueOf(value);
+                        } else if ("pos".equals(name) || "posList".equals(name)) {
+                            parts.add(parsePositions(value));
+                        } else if (depth == featureDepth + 1) {
+                            properties.put(name, value);
+                        }
+                    }
+                    text = null;
+                    if (depth == featureDepth) {
+                        operations.add(new Operation(kind, typeName, featureId, new Feature(properties, geometryType, parts)));
+                        featureDepth = -1;
+                    } else if (depth == 2 && !"Insert".equals(kind)) {
+                        operations.add(new Operation(kind, typeName, featureId, null));
+                    }
+                    depth--;
+                }
+            }
+        } finally {
+            xml.close();
+        }
+        return operations;
+    }
+
+    private static double[] parsePositions(String text) {
+        String[] values = text.split("\\s+");
+        double[] positions = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            positions[i] = Double.parseDouble(values[i]);
+        }
+        return positions;
+    }
+
+    private void apply(List<Operation> operations) {
+        for (Operation operation : operations) {
+            NavigableMap<Long, Feature> stored = features.computeIfAbsent(operation.typeName(), key -> new ConcurrentSkipListMap<>());
+            switch (operation.kind()) {
+                case "Insert" -> {
+                    inserts.computeIfAbsent(operation.typeName(), key -> new AtomicLong()).incrementAndGet();
+                    if (operation.featureId() != null) {
+                        stored.put(operation.featureId(), operation.feature());
+                    }
+                }
+                case "Update" -> updates.computeIfAbsent(operation.typeName(), key -> new AtomicLong()).incrementAndGet();
+                case "Delete" -> {
+                    deletes.computeIfAbsent(operation.typeName(), key -> new AtomicLong()).incrementAndGet();
+                    if (operation.featureId() != null) {
+                        stored.remove(operation.featureId());
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static String transactionResponse(List<Operation> operations) {
+        long inserted = operations.stream().filter(operation -> "Insert".equals(operation.kind())).count();
+        long updated = operations.stream().filter(operation -> "Update".equals(operation.kind())).count();
+        long deleted = operations.stream().filter(operation -> "Delete".equals(operation.kind())).count();
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<wfs:TransactionResponse xmlns:wfs=\"http://www.opengis.net/wfs\" version=\"1.1.0\">"
+            + "<wfs:TransactionSummary>"
+            + "<wfs:totalInserted>" + inserted + "</wfs:totalInserted>"
+            + "<wfs:totalUpdated>" + updated + "</wfs:totalUpdated>"
+            + "<wfs:totalDeleted>" + deleted + "</wfs:totalDeleted>"
+            + "</wfs:TransactionSummary>"
+            + "</wfs:TransactionResponse>";
+    }
+
+    private static String exceptionReport(String message) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows\" version=\"1.0.0\">"
+            + "<ows:Exception exceptionCode=\"InvalidParameterValue\"><ows:ExceptionText>"
+            + message.replace("&", "&amp;").replace("<", "&lt;")
+            + "</ows:ExceptionText></ows:Exception></ows:ExceptionReport>";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}